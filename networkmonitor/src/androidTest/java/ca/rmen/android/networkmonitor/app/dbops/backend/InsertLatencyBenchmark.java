@@ -0,0 +1,185 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ *
+ * Copyright (C) 2016 Carmen Alvarez (c@rmen.ca)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.rmen.android.networkmonitor.app.dbops.backend;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.provider.BaseColumns;
+import android.text.TextUtils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import ca.rmen.android.networkmonitor.Constants;
+import ca.rmen.android.networkmonitor.app.dbops.backend.export.CSVExport;
+import ca.rmen.android.networkmonitor.provider.NetMonColumns;
+import ca.rmen.android.networkmonitor.provider.NetMonDao;
+import ca.rmen.android.networkmonitor.provider.NetMonDatabase;
+import ca.rmen.android.networkmonitor.provider.Sample;
+import ca.rmen.android.networkmonitor.util.Log;
+
+/**
+ * Measures how long it takes to insert a sample while a CSV export is reading the whole table, compared to the same inserts without an export.
+ *
+ * The export is only long enough to be meaningful with a big DB, such as the DB of a device which has been logging for a while. The benchmark
+ * overwrites the CSV export file, and deletes the rows it inserted. Call {@link #run(int, int)} on a background thread.
+ */
+public class InsertLatencyBenchmark {
+    private static final String TAG = Constants.TAG + InsertLatencyBenchmark.class.getSimpleName();
+
+    private final Context mContext;
+
+    public InsertLatencyBenchmark(Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+    /**
+     * The latencies of the inserts, in milliseconds.
+     */
+    public static class Latencies {
+        public final int count;
+        public final long p50;
+        public final long p95;
+        public final long max;
+
+        /**
+         * @param latencies only the first count latencies are used.
+         */
+        Latencies(long[] latencies, int count) {
+            this.count = count;
+            long[] sorted = Arrays.copyOf(latencies, count);
+            Arrays.sort(sorted);
+            p50 = count == 0 ? 0 : sorted[count / 2];
+            p95 = count == 0 ? 0 : sorted[Math.min(count - 1, count * 95 / 100)];
+            max = count == 0 ? 0 : sorted[count - 1];
+        }
+
+        @Override
+        public String toString() {
+            return "Latencies{" +
+                    "count=" + count +
+                    ", p50=" + p50 +
+                    ", p95=" + p95 +
+                    ", max=" + max +
+                    '}';
+        }
+    }
+
+    public static class Result {
+        public final String journalMode;
+        public final long exportDuration;
+        public final Latencies duringExport;
+        public final Latencies withoutExport;
+
+        private Result(String journalMode, long exportDuration, Latencies duringExport, Latencies withoutExport) {
+            this.journalMode = journalMode;
+            this.exportDuration = exportDuration;
+            this.duringExport = duringExport;
+            this.withoutExport = withoutExport;
+        }
+
+        @Override
+        public String toString() {
+            return "Result{" +
+                    "journalMode=" + journalMode +
+                    ", exportDuration=" + exportDuration +
+                    ", duringExport=" + duringExport +
+                    ", withoutExport=" + withoutExport +
+                    '}';
+        }
+    }
+
+    /**
+     * Insert a sample every insertInterval milliseconds while the export runs (but no more than maxInserts), then insert the same number of samples at
+     * the same interval without an export.
+     */
+    public Result run(int maxInserts, int insertInterval) {
+        Log.v(TAG, "run: maxInserts=" + maxInserts + ", insertInterval=" + insertInterval);
+        String journalMode = NetMonDatabase.getJournalMode(mContext);
+        NetMonDao dao = new NetMonDao(mContext);
+        Sample sample = new Sample();
+        long[] latencies = new long[maxInserts];
+        long[] insertedIds = new long[maxInserts * 2];
+        int insertedCount = 0;
+
+        // Inserts during the export
+        final long[] exportDuration = new long[1];
+        Thread exportThread = new Thread(() -> {
+            long exportStart = SystemClock.elapsedRealtime();
+            new CSVExport(mContext).execute(null);
+            exportDuration[0] = SystemClock.elapsedRealtime() - exportStart;
+        });
+        exportThread.start();
+        int duringExportCount = 0;
+        while (exportThread.isAlive() && duringExportCount < maxInserts) {
+            latencies[duringExportCount++] = insert(dao, sample, insertedIds, insertedCount++);
+            SystemClock.sleep(insertInterval);
+        }
+        try {
+            exportThread.join();
+        } catch (InterruptedException e) {
+            Log.w(TAG, "Interrupted waiting for the export", e);
+        }
+        Latencies duringExport = new Latencies(latencies, duringExportCount);
+
+        // The same inserts, without the export
+        for (int i = 0; i < duringExportCount; i++) {
+            latencies[i] = insert(dao, sample, insertedIds, insertedCount++);
+            SystemClock.sleep(insertInterval);
+        }
+        Latencies withoutExport = new Latencies(latencies, duringExportCount);
+        dao.close();
+
+        deleteRows(insertedIds, insertedCount);
+        Result result = new Result(journalMode, exportDuration[0], duringExport, withoutExport);
+        Log.v(TAG, "run: " + result);
+        return result;
+    }
+
+    /**
+     * Insert one sample in its own transaction, as the sampler does at the usual polling intervals.
+     *
+     * @return how long the insert took.
+     */
+    private long insert(NetMonDao dao, Sample sample, long[] insertedIds, int position) {
+        sample.clear();
+        sample.put(NetMonColumns.TIMESTAMP, System.currentTimeMillis());
+        sample.put(NetMonColumns.SOCKET_CONNECTION_TEST, Constants.CONNECTION_TEST_PASS);
+        List<Sample> samples = Collections.singletonList(sample);
+        long start = SystemClock.elapsedRealtime();
+        insertedIds[position] = dao.insert(samples);
+        dao.notifyChanges();
+        return SystemClock.elapsedRealtime() - start;
+    }
+
+    private void deleteRows(long[] ids, int count) {
+        if (count == 0) return;
+        String[] idStrings = new String[count];
+        for (int i = 0; i < count; i++) idStrings[i] = String.valueOf(ids[i]);
+        int deleted = mContext.getContentResolver().delete(NetMonColumns.CONTENT_URI,
+                BaseColumns._ID + " IN (" + TextUtils.join(",", idStrings) + ")", null);
+        Log.v(TAG, "Deleted " + deleted + " benchmark rows");
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ *
+ * Copyright (C) 2016 Carmen Alvarez (c@rmen.ca)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.rmen.android.networkmonitor.app.dbops.backend;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import ca.rmen.android.networkmonitor.Constants;
+import ca.rmen.android.networkmonitor.util.Log;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the {@link InsertLatencyBenchmark} on the device, and logs the latencies.
+ */
+@RunWith(AndroidJUnit4.class)
+public class InsertLatencyBenchmarkTest {
+    private static final String TAG = Constants.TAG + InsertLatencyBenchmarkTest.class.getSimpleName();
+
+    @Test
+    public void testInsertLatency() {
+        Context context = InstrumentationRegistry.getTargetContext();
+        InsertLatencyBenchmark.Result result = new InsertLatencyBenchmark(context).run(100, 50);
+        Log.i(TAG, "testInsertLatency: " + result);
+        assertTrue(result.duringExport.count > 0);
+        assertEquals(result.duringExport.count, result.withoutExport.count);
+        assertOrdered(result.duringExport);
+        assertOrdered(result.withoutExport);
+    }
+
+    @Test
+    public void testPercentiles() {
+        long[] latencies = new long[110];
+        // The latencies 100 to 1, then values which aren't counted.
+        for (int i = 0; i < 100; i++) latencies[i] = 100 - i;
+        for (int i = 100; i < latencies.length; i++) latencies[i] = 1000;
+        InsertLatencyBenchmark.Latencies result = new InsertLatencyBenchmark.Latencies(latencies, 100);
+        assertEquals(100, result.count);
+        assertEquals(51, result.p50);
+        assertEquals(96, result.p95);
+        assertEquals(100, result.max);
+        // The latencies aren't modified.
+        assertEquals(100, latencies[0]);
+    }
+
+    @Test
+    public void testPercentilesOfOneLatency() {
+        InsertLatencyBenchmark.Latencies result = new InsertLatencyBenchmark.Latencies(new long[]{7}, 1);
+        assertEquals(7, result.p50);
+        assertEquals(7, result.p95);
+        assertEquals(7, result.max);
+    }
+
+    private static void assertOrdered(InsertLatencyBenchmark.Latencies latencies) {
+        assertTrue(latencies.p50 >= 0);
+        assertTrue(latencies.p50 <= latencies.p95);
+        assertTrue(latencies.p95 <= latencies.max);
+    }
+}
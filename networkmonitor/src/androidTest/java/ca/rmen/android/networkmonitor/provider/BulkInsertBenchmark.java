@@ -0,0 +1,178 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ *
+ * Copyright (C) 2016 Carmen Alvarez (c@rmen.ca)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.rmen.android.networkmonitor.provider;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+
+import ca.rmen.android.networkmonitor.Constants;
+import ca.rmen.android.networkmonitor.util.Log;
+
+/**
+ * Measures how many rows per second can be loaded with the {@link BulkInserter}, compared to {@link SQLiteDatabase#insert} for each row, in
+ * transactions of 100 rows. This is what the {@link NetMonProvider} does for the batches of insert operations which the
+ * {@link ca.rmen.android.networkmonitor.app.dbops.backend.imp0rt.DBImport} used to send.
+ *
+ * The rows are loaded in a separate DB, {@link #DATABASE_NAME}, with the same schema and triggers as the app's DB, which is left untouched. The
+ * DB is deleted before each load and at the end. The benchmark is most meaningful with a lot of rows (1 million). Call {@link #run(int)} on a
+ * background thread.
+ */
+public class BulkInsertBenchmark {
+    private static final String TAG = Constants.TAG + BulkInsertBenchmark.class.getSimpleName();
+    private static final String DATABASE_NAME = "benchmark_" + NetMonDatabase.DATABASE_NAME;
+
+    // The same sizes as the DBImport, before and after the BulkInserter.
+    private static final int BATCH_SIZE = 100;
+    private static final int TRANSACTION_SIZE = 5000;
+
+    private static final String[] NETWORK_TYPES = {"LTE", "HSPAP", "UMTS", "EDGE"};
+    private static final String[] WIFI_SSIDS = {"home", "office", null};
+
+    private final Context mContext;
+
+    public BulkInsertBenchmark(Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+    public static class Result {
+        public final int rowCount;
+        // The number of rows in the DB after each load.
+        public final long insertRowCount;
+        public final long bulkInserterRowCount;
+        public final long insertRowsPerSecond;
+        public final long bulkInserterRowsPerSecond;
+
+        private Result(int rowCount, long insertRowCount, long bulkInserterRowCount, long insertRowsPerSecond, long bulkInserterRowsPerSecond) {
+            this.rowCount = rowCount;
+            this.insertRowCount = insertRowCount;
+            this.bulkInserterRowCount = bulkInserterRowCount;
+            this.insertRowsPerSecond = insertRowsPerSecond;
+            this.bulkInserterRowsPerSecond = bulkInserterRowsPerSecond;
+        }
+
+        @Override
+        public String toString() {
+            return "Result{" +
+                    "rowCount=" + rowCount +
+                    ", insertRowCount=" + insertRowCount +
+                    ", bulkInserterRowCount=" + bulkInserterRowCount +
+                    ", insertRowsPerSecond=" + insertRowsPerSecond +
+                    ", bulkInserterRowsPerSecond=" + bulkInserterRowsPerSecond +
+                    '}';
+        }
+    }
+
+    /**
+     * Load rowCount rows in an empty DB with {@link SQLiteDatabase#insert}, then load rowCount rows in an empty DB with the {@link BulkInserter}.
+     */
+    public Result run(int rowCount) {
+        Log.v(TAG, "run: rowCount=" + rowCount);
+        try {
+            mContext.deleteDatabase(DATABASE_NAME);
+            NetMonDatabase netMonDatabase = new NetMonDatabase(mContext, DATABASE_NAME);
+            long insertRowsPerSecond = getRowsPerSecond(rowCount, insertWithInsert(netMonDatabase, rowCount));
+            long insertRowCount = countRows(netMonDatabase);
+            netMonDatabase.close();
+
+            mContext.deleteDatabase(DATABASE_NAME);
+            netMonDatabase = new NetMonDatabase(mContext, DATABASE_NAME);
+            long bulkInserterRowsPerSecond = getRowsPerSecond(rowCount, insertWithBulkInserter(netMonDatabase, rowCount));
+            long bulkInserterRowCount = countRows(netMonDatabase);
+            netMonDatabase.close();
+
+            Result result = new Result(rowCount, insertRowCount, bulkInserterRowCount, insertRowsPerSecond, bulkInserterRowsPerSecond);
+            Log.v(TAG, "run: " + result);
+            return result;
+        } finally {
+            mContext.deleteDatabase(DATABASE_NAME);
+        }
+    }
+
+    /**
+     * @return how long it took to insert the rows.
+     */
+    private static long insertWithInsert(NetMonDatabase netMonDatabase, int rowCount) {
+        SQLiteDatabase db = netMonDatabase.getWritableDatabase();
+        Dictionaries dictionaries = netMonDatabase.getDictionaries();
+        long start = SystemClock.elapsedRealtime();
+        for (int i = 0; i < rowCount; i += BATCH_SIZE) {
+            db.beginTransaction();
+            try {
+                for (int j = i; j < Math.min(rowCount, i + BATCH_SIZE); j++) {
+                    db.insert(NetMonColumns.DATA_TABLE_NAME, null, dictionaries.encode(SpeedColumns.convert(createRow(j))));
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        }
+        return SystemClock.elapsedRealtime() - start;
+    }
+
+    /**
+     * @return how long it took to insert the rows.
+     */
+    private long insertWithBulkInserter(NetMonDatabase netMonDatabase, int rowCount) {
+        BulkInserter bulkInserter = new BulkInserter(mContext, netMonDatabase);
+        ContentValues[] rows = new ContentValues[TRANSACTION_SIZE];
+        int pending = 0;
+        long start = SystemClock.elapsedRealtime();
+        try {
+            for (int i = 0; i < rowCount; i++) {
+                rows[pending++] = createRow(i);
+                if (pending == TRANSACTION_SIZE || i == rowCount - 1) {
+                    bulkInserter.insert(NetMonColumns.TABLE_NAME, rows, 0, pending);
+                    pending = 0;
+                }
+            }
+        } finally {
+            bulkInserter.close();
+        }
+        return SystemClock.elapsedRealtime() - start;
+    }
+
+    /**
+     * @return a row with a few of the values a sample usually has.
+     */
+    private static ContentValues createRow(int i) {
+        ContentValues values = new ContentValues(5);
+        values.put(NetMonColumns.TIMESTAMP, 1000L * i);
+        values.put(NetMonColumns.NETWORK_TYPE, NETWORK_TYPES[i % NETWORK_TYPES.length]);
+        values.put(NetMonColumns.CELL_SIGNAL_STRENGTH_DBM, -60 - i % 50);
+        values.put(NetMonColumns.WIFI_SSID, WIFI_SSIDS[i % WIFI_SSIDS.length]);
+        values.put(NetMonColumns.SOCKET_CONNECTION_TEST, i % 10 == 0 ? Constants.CONNECTION_TEST_FAIL : Constants.CONNECTION_TEST_PASS);
+        return values;
+    }
+
+    private static long getRowsPerSecond(int rowCount, long duration) {
+        return duration == 0 ? rowCount : rowCount * 1000L / duration;
+    }
+
+    private static long countRows(NetMonDatabase netMonDatabase) {
+        return DatabaseUtils.queryNumEntries(netMonDatabase.getReadableDatabase(), NetMonColumns.DATA_TABLE_NAME);
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ *
+ * Copyright (C) 2016 Carmen Alvarez (c@rmen.ca)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.rmen.android.networkmonitor.provider;
+
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import ca.rmen.android.networkmonitor.Constants;
+import ca.rmen.android.networkmonitor.util.Log;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the {@link BulkInsertBenchmark} on the device, and logs the insert rates.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BulkInsertBenchmarkTest {
+    private static final String TAG = Constants.TAG + BulkInsertBenchmarkTest.class.getSimpleName();
+    private static final int ROW_COUNT = 1000000;
+
+    @Test
+    public void testBulkInsert() {
+        BulkInsertBenchmark.Result result = new BulkInsertBenchmark(InstrumentationRegistry.getTargetContext()).run(ROW_COUNT);
+        Log.i(TAG, "testBulkInsert: " + result);
+        assertEquals(ROW_COUNT, result.insertRowCount);
+        assertEquals(ROW_COUNT, result.bulkInserterRowCount);
+        assertTrue(result.insertRowsPerSecond > 0);
+        assertTrue(result.bulkInserterRowsPerSecond > 0);
+    }
+}
@@ -23,11 +23,11 @@
  */
 package ca.rmen.android.networkmonitor.app.service.datasources;
 
-import android.content.ContentValues;
 import android.content.Context;
 
 import ca.rmen.android.networkmonitor.Constants;
 import ca.rmen.android.networkmonitor.provider.NetMonColumns;
+import ca.rmen.android.networkmonitor.provider.Sample;
 import ca.rmen.android.networkmonitor.util.Log;
 
 
@@ -48,13 +48,13 @@ public class DeviceLocationDataSource implements NetMonDataSource {
     }
 
     /**
-     * @return the last location the device recorded in a ContentValues with keys {@link NetMonColumns#DEVICE_LATITUDE} and
+     * Puts the last location the device recorded in the sample, with keys {@link NetMonColumns#DEVICE_LATITUDE} and
      *         {@link NetMonColumns#DEVICE_LONGITUDE}. Uses the most recently retrieved location among all the providers.
      */
     @Override
-    public ContentValues getContentValues() {
-        Log.v(TAG, "getContentValues");
-        return mDeviceLocationDataSourceImpl.getContentValues();
+    public void fillSample(Sample sample) {
+        Log.v(TAG, "fillSample");
+        mDeviceLocationDataSourceImpl.fillSample(sample);
     }
 
     @Override
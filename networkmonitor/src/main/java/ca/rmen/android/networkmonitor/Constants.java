@@ -32,6 +32,8 @@ public class Constants {
     public static final String CONNECTION_TEST_FAIL = "FAIL";
     public static final String CONNECTION_TEST_SLOW = "SLOW";
     public static final String DATA_STATE_CONNECTED = "CONNECTED";
+    // Logged instead of a value, when a data source took too long to provide it.
+    public static final String DATA_SOURCE_TIMEOUT = "TIMEOUT";
 
     public enum ConnectionType {
         GSM, CDMA, WIFI
@@ -28,6 +28,9 @@ import android.os.Looper;
 
 import org.greenrobot.eventbus.EventBus;
 
+import ca.rmen.android.networkmonitor.provider.NetMonColumns;
+import ca.rmen.android.networkmonitor.provider.Sample;
+
 
 public class NetMonBus {
     private static final EventBus BUS = EventBus.getDefault();
@@ -50,15 +53,19 @@ public class NetMonBus {
     // region bus events
     public static class DBOperationStarted {
         public final String name;
+        // true if the operation modifies the data: nobody else should write to the DB until it's done.
+        public final boolean isExclusive;
 
-        public DBOperationStarted(String name) {
+        public DBOperationStarted(String name, boolean isExclusive) {
             this.name = name;
+            this.isExclusive = isExclusive;
         }
 
         @Override
         public String toString() {
             return "DBOperationStarted{" +
                     "name='" + name + '\'' +
+                    ", isExclusive=" + isExclusive +
                     '}';
         }
     }
@@ -77,6 +84,43 @@ public class NetMonBus {
                     '}';
         }
     }
+
+    /**
+     * Posted synchronously, on the polling thread, every time a sample has been collected. Only contains the fields which tell us
+     * how stable the network is.
+     */
+    public static class SampleCollected {
+        private static final String CONNECTION_TEST_FAIL = "FAIL";
+        public final String networkType;
+        public final long cellId;
+        public final long cellSignalStrengthDbm;
+        public final long wifiRssi;
+        public final boolean isConnectionTestFailed;
+        // If false, the values which come from snapshots (network type, WiFi...) are the same as in the previous sample.
+        public final boolean isSnapshotChanged;
+
+        public SampleCollected(Sample sample, boolean isSnapshotChanged) {
+            this.isSnapshotChanged = isSnapshotChanged;
+            networkType = sample.getString(NetMonColumns.NETWORK_TYPE);
+            cellId = sample.getLong(NetMonColumns.GSM_FULL_CELL_ID) + sample.getLong(NetMonColumns.CDMA_CELL_BASE_STATION_ID);
+            cellSignalStrengthDbm = sample.getLong(NetMonColumns.CELL_SIGNAL_STRENGTH_DBM);
+            wifiRssi = sample.getLong(NetMonColumns.WIFI_RSSI);
+            isConnectionTestFailed = CONNECTION_TEST_FAIL.equals(sample.getString(NetMonColumns.SOCKET_CONNECTION_TEST))
+                    || CONNECTION_TEST_FAIL.equals(sample.getString(NetMonColumns.HTTP_CONNECTION_TEST));
+        }
+
+        @Override
+        public String toString() {
+            return "SampleCollected{" +
+                    "networkType='" + networkType + '\'' +
+                    ", cellId=" + cellId +
+                    ", cellSignalStrengthDbm=" + cellSignalStrengthDbm +
+                    ", wifiRssi=" + wifiRssi +
+                    ", isConnectionTestFailed=" + isConnectionTestFailed +
+                    ", isSnapshotChanged=" + isSnapshotChanged +
+                    '}';
+        }
+    }
     // endregion
 
 }
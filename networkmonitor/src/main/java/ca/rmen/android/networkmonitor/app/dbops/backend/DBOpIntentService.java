@@ -55,6 +55,7 @@ import ca.rmen.android.networkmonitor.app.dbops.backend.export.HTMLExport;
 import ca.rmen.android.networkmonitor.app.dbops.backend.export.kml.KMLExport;
 import ca.rmen.android.networkmonitor.app.dbops.backend.imp0rt.DBImport;
 import ca.rmen.android.networkmonitor.app.main.MainActivity;
+import ca.rmen.android.networkmonitor.provider.NetMonDatabase;
 import ca.rmen.android.networkmonitor.util.Log;
 
 /**
@@ -186,43 +187,52 @@ public class DBOpIntentService extends IntentService {
         if (intent != null) {
             final String action = intent.getAction();
             String dbOp = intent.getStringExtra(EXTRA_DB_OP_NAME);
+            final boolean isDataChanged = !ACTION_EXPORT.equals(action);
             synchronized (lock) {
-                mDBOperationStarted = new NetMonBus.DBOperationStarted(getString(R.string.db_op_in_progress, dbOp));
+                mDBOperationStarted = new NetMonBus.DBOperationStarted(getString(R.string.db_op_in_progress, dbOp), isDataChanged);
+                // Posted from this thread, before the operation starts: the SampleWriter receives the event synchronously. It returns once the
+                // batch it's writing, if any, is committed, and doesn't write again until DBOperationEnded.
+                NetMonBus.getBus().postSticky(mDBOperationStarted);
             }
 
-            // Show a toast
-            mHandler.post(() -> {
-                String toast = intent.getStringExtra(EXTRA_DB_OP_TOAST);
-                Toast.makeText(DBOpIntentService.this, toast, Toast.LENGTH_LONG).show();
+            try {
+                // Show a toast
+                mHandler.post(() -> {
+                    String toast = intent.getStringExtra(EXTRA_DB_OP_TOAST);
+                    Toast.makeText(DBOpIntentService.this, toast, Toast.LENGTH_LONG).show();
+                });
+
+                // Do the db operation
+                if (ACTION_COMPRESS.equals(action)) {
+                    handleActionCompress();
+                } else if (ACTION_PURGE.equals(action)) {
+                    final int numRowsToKeep = intent.getIntExtra(EXTRA_PURGE_NUM_ROWS_TO_KEEP, 0);
+                    handleActionPurge(numRowsToKeep);
+                } else if (ACTION_EXPORT.equals(action)) {
+                    final ExportFormat exportFileFormat = (ExportFormat) intent.getSerializableExtra(EXTRA_EXPORT_FORMAT);
+                    handleActionExport(exportFileFormat, intent.getExtras());
+                } else if (ACTION_IMPORT.equals(action)) {
+                    final Uri uri = intent.getData();
+                    handleActionImport(uri);
+                }
+                if (isDataChanged) {
+                    // Compress, purge and import delete rows without updating the rollups. The connection test stats are also recomputed from
+                    // scratch after the many updates of their triggers.
+                    NetMonDatabase.rebuildAggregates(this);
+                    // They can also leave a big WAL: move it into the DB file now, instead of during a later sampler insert.
+                    NetMonDatabase.checkpoint(this);
+                }
+            } finally {
+                // Even if the operation failed: the SampleWriter must not wait forever.
+                mDBOperation = null;
                 synchronized (lock) {
-                    if (mDBOperationStarted != null) {
-                        NetMonBus.getBus().postSticky(mDBOperationStarted);
-                    }
+                    mDBOperationStarted = null;
+                    NetMonBus.DBOperationStarted stickyEvent = NetMonBus.getBus().getStickyEvent(NetMonBus.DBOperationStarted.class);
+                    if (stickyEvent != null) NetMonBus.getBus().removeStickyEvent(stickyEvent);
                 }
-            });
-
-            // Do the db operation
-            if (ACTION_COMPRESS.equals(action)) {
-                handleActionCompress();
-                NetMonBus.post(new NetMonBus.DBOperationEnded(true));
-            } else if (ACTION_PURGE.equals(action)) {
-                final int numRowsToKeep = intent.getIntExtra(EXTRA_PURGE_NUM_ROWS_TO_KEEP, 0);
-                handleActionPurge(numRowsToKeep);
-                NetMonBus.post(new NetMonBus.DBOperationEnded(true));
-            } else if (ACTION_EXPORT.equals(action)) {
-                final ExportFormat exportFileFormat = (ExportFormat) intent.getSerializableExtra(EXTRA_EXPORT_FORMAT);
-                handleActionExport(exportFileFormat, intent.getExtras());
-                NetMonBus.post(new NetMonBus.DBOperationEnded(false));
-            } else if (ACTION_IMPORT.equals(action)) {
-                final Uri uri = intent.getData();
-                handleActionImport(uri);
-                NetMonBus.post(new NetMonBus.DBOperationEnded(true));
-            }
-            mDBOperation = null;
-            synchronized (lock) {
-                mDBOperationStarted = null;
-                NetMonBus.DBOperationStarted stickyEvent = NetMonBus.getBus().getStickyEvent(NetMonBus.DBOperationStarted.class);
-                if (stickyEvent != null) NetMonBus.getBus().removeStickyEvent(stickyEvent);
+                // Only now that the aggregates and the WAL are done can the SampleWriter write again. Posted from this thread, so the
+                // SampleWriter can't receive it after the DBOperationStarted of the next operation.
+                NetMonBus.getBus().post(new NetMonBus.DBOperationEnded(isDataChanged));
             }
         }
     }
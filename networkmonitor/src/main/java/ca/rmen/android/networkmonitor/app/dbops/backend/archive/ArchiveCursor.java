@@ -0,0 +1,242 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ *
+ * Copyright (C) 2016 Carmen Alvarez (c@rmen.ca)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.rmen.android.networkmonitor.app.dbops.backend.archive;
+
+import android.database.AbstractCursor;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import ca.rmen.android.networkmonitor.Constants;
+import ca.rmen.android.networkmonitor.util.IoUtil;
+import ca.rmen.android.networkmonitor.util.Log;
+
+/**
+ * Reads the rows of the archive which match a filter, in the order they were logged, or in the reverse order.
+ *
+ * Only one row group is decoded at a time, and only the columns of the projection: reading the whole archive takes about as much memory as
+ * reading a single row group. Finding the matching rows, to get the count, only decodes the filtered columns.
+ */
+public class ArchiveCursor extends AbstractCursor {
+    private static final String TAG = Constants.TAG + ArchiveCursor.class.getSimpleName();
+
+    private final RandomAccessFile mFile;
+    private final String[] mColumnNames;
+    private final boolean mIsDescending;
+    // The row groups with at least one matching row, in reading order.
+    private final List<ArchiveFile.RowGroup> mRowGroups = new ArrayList<>();
+    // For each row group: the matching rows in reading order, or null if all the rows match.
+    private final List<int[]> mMatchingRows = new ArrayList<>();
+    // For each row group: the position of its first matching row in this cursor.
+    private final int[] mFirstPositions;
+    private final int mCount;
+
+    private int mLoadedRowGroup = -1;
+    private ColumnBlock[] mColumns;
+    private int mRow;
+
+    /**
+     * @param limit read at most this number of rows. If limit is 0 or less, all matching rows are read.
+     */
+    public ArchiveCursor(File file, String[] projection, ArchiveFilter filter, boolean isDescending, int limit) throws IOException {
+        mFile = new RandomAccessFile(file, "r");
+        mColumnNames = projection;
+        mIsDescending = isDescending;
+        try {
+            List<ArchiveFile.RowGroup> rowGroups = ArchiveFile.readRowGroups(mFile);
+            if (isDescending) Collections.reverse(rowGroups);
+            List<Integer> firstPositions = new ArrayList<>();
+            int count = 0;
+            for (ArchiveFile.RowGroup rowGroup : rowGroups) {
+                if (limit > 0 && count >= limit) break;
+                int[] matchingRows = null;
+                int matchingRowCount = rowGroup.rowCount;
+                if (!filter.getColumnNames().isEmpty()) {
+                    matchingRows = findMatchingRows(rowGroup, filter);
+                    if (matchingRows == null) continue;
+                    matchingRowCount = matchingRows.length;
+                }
+                if (matchingRowCount == 0) continue;
+                mRowGroups.add(rowGroup);
+                mMatchingRows.add(matchingRows);
+                firstPositions.add(count);
+                count += matchingRowCount;
+            }
+            mCount = limit > 0 ? Math.min(count, limit) : count;
+            mFirstPositions = new int[firstPositions.size()];
+            for (int i = 0; i < mFirstPositions.length; i++)
+                mFirstPositions[i] = firstPositions.get(i);
+        } catch (IOException | RuntimeException e) {
+            IoUtil.closeSilently(mFile);
+            throw e;
+        }
+        Log.v(TAG, mCount + " matching rows in " + mRowGroups.size() + " row groups");
+    }
+
+    /**
+     * @return the rows of the row group which are accepted by the filter, in reading order, or null if the row group can't be read.
+     */
+    private int[] findMatchingRows(ArchiveFile.RowGroup rowGroup, ArchiveFilter filter) throws IOException {
+        byte[] payload;
+        try {
+            payload = rowGroup.readPayload(mFile);
+        } catch (IOException e) {
+            Log.w(TAG, "Skipping " + rowGroup + ": " + e.getMessage(), e);
+            return null;
+        }
+        Map<String, Integer> columnOffsets = ArchiveFile.readColumnOffsets(payload);
+        Set<String> filteredColumnNames = filter.getColumnNames();
+        String[] columnNames = filteredColumnNames.toArray(new String[filteredColumnNames.size()]);
+        ColumnBlock[] columns = new ColumnBlock[columnNames.length];
+        for (int i = 0; i < columnNames.length; i++)
+            columns[i] = readColumn(payload, columnOffsets, columnNames[i], rowGroup.rowCount);
+
+        int[] result = new int[rowGroup.rowCount];
+        int matchingRowCount = 0;
+        for (int i = 0; i < rowGroup.rowCount; i++) {
+            int row = mIsDescending ? rowGroup.rowCount - 1 - i : i;
+            boolean isMatch = true;
+            for (int j = 0; j < columns.length && isMatch; j++)
+                isMatch = filter.accept(columnNames[j], columns[j] == null ? null : columns[j].getString(row));
+            if (isMatch) result[matchingRowCount++] = row;
+        }
+        return Arrays.copyOf(result, matchingRowCount);
+    }
+
+    /**
+     * @return the column, or null if the column didn't exist yet when the row group was written.
+     */
+    private static ColumnBlock readColumn(byte[] payload, Map<String, Integer> columnOffsets, String columnName, int rowCount) {
+        Integer offset = columnOffsets.get(columnName);
+        if (offset == null) return null;
+        return new ColumnBlock(new ArchiveInput(payload, offset), rowCount);
+    }
+
+    @Override
+    public boolean onMove(int oldPosition, int newPosition) {
+        int rowGroupIndex = Arrays.binarySearch(mFirstPositions, newPosition);
+        if (rowGroupIndex < 0) rowGroupIndex = -rowGroupIndex - 2;
+        ArchiveFile.RowGroup rowGroup = mRowGroups.get(rowGroupIndex);
+        if (rowGroupIndex != mLoadedRowGroup) {
+            try {
+                byte[] payload = rowGroup.readPayload(mFile);
+                Map<String, Integer> columnOffsets = ArchiveFile.readColumnOffsets(payload);
+                mColumns = new ColumnBlock[mColumnNames.length];
+                for (int i = 0; i < mColumnNames.length; i++)
+                    mColumns[i] = readColumn(payload, columnOffsets, mColumnNames[i], rowGroup.rowCount);
+                mLoadedRowGroup = rowGroupIndex;
+            } catch (IOException e) {
+                Log.w(TAG, "Could not read " + rowGroup + ": " + e.getMessage(), e);
+                mLoadedRowGroup = -1;
+                return false;
+            }
+        }
+        int index = newPosition - mFirstPositions[rowGroupIndex];
+        int[] matchingRows = mMatchingRows.get(rowGroupIndex);
+        if (matchingRows != null) mRow = matchingRows[index];
+        else mRow = mIsDescending ? rowGroup.rowCount - 1 - index : index;
+        return true;
+    }
+
+    @Override
+    public int getCount() {
+        return mCount;
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        return mColumnNames;
+    }
+
+    private ColumnBlock getColumn(int column) {
+        checkPosition();
+        return mColumns[column];
+    }
+
+    @Override
+    public String getString(int column) {
+        ColumnBlock columnBlock = getColumn(column);
+        return columnBlock == null ? null : columnBlock.getString(mRow);
+    }
+
+    @Override
+    public short getShort(int column) {
+        return (short) getLong(column);
+    }
+
+    @Override
+    public int getInt(int column) {
+        return (int) getLong(column);
+    }
+
+    @Override
+    public long getLong(int column) {
+        ColumnBlock columnBlock = getColumn(column);
+        return columnBlock == null ? 0 : columnBlock.getLong(mRow);
+    }
+
+    @Override
+    public float getFloat(int column) {
+        return (float) getDouble(column);
+    }
+
+    @Override
+    public double getDouble(int column) {
+        ColumnBlock columnBlock = getColumn(column);
+        return columnBlock == null ? 0 : columnBlock.getDouble(mRow);
+    }
+
+    @Override
+    public int getType(int column) {
+        ColumnBlock columnBlock = getColumn(column);
+        return columnBlock == null ? FIELD_TYPE_NULL : columnBlock.getType(mRow);
+    }
+
+    @Override
+    public boolean isNull(int column) {
+        ColumnBlock columnBlock = getColumn(column);
+        return columnBlock == null || columnBlock.isNull(mRow);
+    }
+
+    /**
+     * @return the value of the column in the current row, with its type.
+     */
+    Object getValue(int column) {
+        ColumnBlock columnBlock = getColumn(column);
+        return columnBlock == null ? null : columnBlock.getValue(mRow);
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        IoUtil.closeSilently(mFile);
+    }
+}
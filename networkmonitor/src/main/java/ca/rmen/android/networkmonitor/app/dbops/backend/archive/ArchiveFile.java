@@ -0,0 +1,269 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ *
+ * Copyright (C) 2016 Carmen Alvarez (c@rmen.ca)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.rmen.android.networkmonitor.app.dbops.backend.archive;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.provider.BaseColumns;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import ca.rmen.android.networkmonitor.Constants;
+import ca.rmen.android.networkmonitor.util.IoUtil;
+import ca.rmen.android.networkmonitor.util.Log;
+
+/**
+ * The archive: an append-only file with the old rows moved out of the DB by {@link DBArchive}.
+ *
+ * The file starts with {@link #MAGIC}, followed by row groups. Each row group has a header with the length and CRC of its payload, its
+ * number of rows, its first and last _id, and the timestamp before which its rows were archived. The payload has the name and length
+ * of each column, followed by a {@link ColumnBlock} for each column.
+ *
+ * Row groups are only appended whole, and synced to the disk before their rows are deleted from the DB. If the app dies while
+ * appending a row group, readers ignore it, and the next append overwrites it.
+ */
+public final class ArchiveFile {
+    private static final String TAG = Constants.TAG + ArchiveFile.class.getSimpleName();
+
+    private static final String FILE_NAME = "networkmonitor.archive";
+    private static final int MAGIC = 0x4E4D4131; // "NMA1"
+    private static final int HEADER_SIZE = 4 + 4 + 4 + 8 + 8 + 8;
+
+    static class RowGroup {
+        private final long mPosition;
+        private final int mLength;
+        private final int mCrc;
+        final int rowCount;
+        final long firstId;
+        final long lastId;
+        final long archivedBefore;
+
+        private RowGroup(long position, int length, int crc, int rowCount, long firstId, long lastId, long archivedBefore) {
+            mPosition = position;
+            mLength = length;
+            mCrc = crc;
+            this.rowCount = rowCount;
+            this.firstId = firstId;
+            this.lastId = lastId;
+            this.archivedBefore = archivedBefore;
+        }
+
+        /**
+         * @return the payload of this row group
+         * @throws IOException if the payload is corrupt.
+         */
+        byte[] readPayload(RandomAccessFile file) throws IOException {
+            byte[] payload = new byte[mLength];
+            file.seek(mPosition);
+            file.readFully(payload);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            if ((int) crc.getValue() != mCrc) throw new IOException("Corrupt row group at " + mPosition);
+            return payload;
+        }
+
+        private long getEnd() {
+            return mPosition + mLength;
+        }
+
+        @Override
+        public String toString() {
+            return "RowGroup{" + "rowCount=" + rowCount + ", firstId=" + firstId + ", lastId=" + lastId + ", archivedBefore=" + archivedBefore + '}';
+        }
+    }
+
+    private ArchiveFile() {
+        // prevent instantiation
+    }
+
+    public static File getFile(Context context) {
+        return new File(context.getFilesDir(), FILE_NAME);
+    }
+
+    /**
+     * Delete the archived rows. To be called when the rows of the DB are deleted or replaced: the archive only contains rows older than them.
+     */
+    public static void delete(Context context) {
+        File file = getFile(context);
+        if (file.exists() && !file.delete()) Log.w(TAG, "Could not delete " + file);
+    }
+
+    /**
+     * @return the row groups which were completely written to the file.
+     */
+    static List<RowGroup> readRowGroups(RandomAccessFile file) throws IOException {
+        List<RowGroup> result = new ArrayList<>();
+        long fileLength = file.length();
+        if (fileLength < 4) return result;
+        file.seek(0);
+        if (file.readInt() != MAGIC) throw new IOException("Not an archive file");
+        long position = 4;
+        while (position + HEADER_SIZE <= fileLength) {
+            file.seek(position);
+            int length = file.readInt();
+            int crc = file.readInt();
+            int rowCount = file.readInt();
+            long firstId = file.readLong();
+            long lastId = file.readLong();
+            long archivedBefore = file.readLong();
+            RowGroup rowGroup = new RowGroup(position + HEADER_SIZE, length, crc, rowCount, firstId, lastId, archivedBefore);
+            if (length < 0 || rowGroup.getEnd() > fileLength) break;
+            result.add(rowGroup);
+            position = rowGroup.getEnd();
+        }
+        return result;
+    }
+
+    /**
+     * @return the last row group of the file, or null if the archive is empty.
+     */
+    static RowGroup readLastRowGroup(File file) throws IOException {
+        if (!file.exists()) return null;
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            List<RowGroup> rowGroups = readRowGroups(raf);
+            return rowGroups.isEmpty() ? null : rowGroups.get(rowGroups.size() - 1);
+        } finally {
+            IoUtil.closeSilently(raf);
+        }
+    }
+
+    /**
+     * @return the offset of each column's block in the payload of a row group.
+     */
+    static Map<String, Integer> readColumnOffsets(byte[] payload) {
+        ArchiveInput in = new ArchiveInput(payload, 0);
+        int columnCount = in.readVarInt();
+        String[] columnNames = new String[columnCount];
+        int[] lengths = new int[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            columnNames[i] = in.readString();
+            lengths[i] = in.readVarInt();
+        }
+        Map<String, Integer> result = new HashMap<>(columnCount);
+        int offset = in.getPosition();
+        for (int i = 0; i < columnCount; i++) {
+            result.put(columnNames[i], offset);
+            offset += lengths[i];
+        }
+        return result;
+    }
+
+    /**
+     * Write all the rows of the cursor, which must include the _id column, to a new row group at the end of the file.
+     *
+     * @param archivedBefore the rows of the cursor are all the rows of the DB before this timestamp, between their first and last _id.
+     * @return the row group which was written.
+     */
+    static RowGroup append(File file, Cursor cursor, long archivedBefore) throws IOException {
+        byte[] payload = encode(cursor);
+        int idIndex = cursor.getColumnIndexOrThrow(BaseColumns._ID);
+        cursor.moveToFirst();
+        long firstId = cursor.getLong(idIndex);
+        cursor.moveToLast();
+        long lastId = cursor.getLong(idIndex);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            List<RowGroup> rowGroups = readRowGroups(raf);
+            long end = 4;
+            if (!rowGroups.isEmpty()) {
+                RowGroup lastRowGroup = rowGroups.get(rowGroups.size() - 1);
+                end = lastRowGroup.getEnd();
+                try {
+                    lastRowGroup.readPayload(raf);
+                } catch (IOException e) {
+                    // The app died while writing this row group: its rows are still in the DB.
+                    Log.w(TAG, "Overwriting " + lastRowGroup + ": " + e.getMessage(), e);
+                    end = lastRowGroup.mPosition - HEADER_SIZE;
+                }
+            }
+            raf.setLength(end);
+            raf.seek(0);
+            raf.writeInt(MAGIC);
+            raf.seek(end);
+            raf.writeInt(payload.length);
+            raf.writeInt((int) crc.getValue());
+            raf.writeInt(cursor.getCount());
+            raf.writeLong(firstId);
+            raf.writeLong(lastId);
+            raf.writeLong(archivedBefore);
+            raf.write(payload);
+            raf.getFD().sync();
+            return new RowGroup(end + HEADER_SIZE, payload.length, (int) crc.getValue(), cursor.getCount(), firstId, lastId, archivedBefore);
+        } finally {
+            IoUtil.closeSilently(raf);
+        }
+    }
+
+    /**
+     * @return the payload of a row group with the rows of the cursor.
+     */
+    private static byte[] encode(Cursor cursor) {
+        int rowCount = cursor.getCount();
+        String[] columnNames = cursor.getColumnNames();
+        Object[][] values = new Object[columnNames.length][rowCount];
+        String[][] texts = new String[columnNames.length][rowCount];
+        cursor.moveToPosition(-1);
+        while (cursor.moveToNext()) {
+            int row = cursor.getPosition();
+            for (int i = 0; i < columnNames.length; i++) {
+                values[i][row] = ArchiveValues.readValue(cursor, i);
+                texts[i][row] = cursor.getString(i);
+            }
+        }
+        return encode(columnNames, values, texts, rowCount);
+    }
+
+    /**
+     * @param values the values of each column, as read by {@link ArchiveValues#readValue(Cursor, int)}.
+     * @param texts the values of each column, as read by {@link Cursor#getString(int)}.
+     * @return the payload of a row group with the given values.
+     */
+    static byte[] encode(String[] columnNames, Object[][] values, String[][] texts, int rowCount) {
+        ArchiveOutput[] blocks = new ArchiveOutput[columnNames.length];
+        for (int i = 0; i < columnNames.length; i++) {
+            blocks[i] = new ArchiveOutput();
+            ColumnBlock.write(blocks[i], values[i], texts[i], rowCount);
+        }
+        ArchiveOutput payload = new ArchiveOutput();
+        payload.writeVarLong(columnNames.length);
+        for (int i = 0; i < columnNames.length; i++) {
+            payload.writeString(columnNames[i]);
+            payload.writeVarLong(blocks[i].size());
+        }
+        for (ArchiveOutput block : blocks)
+            payload.write(block.toByteArray(), 0, block.size());
+        return payload.toByteArray();
+    }
+}
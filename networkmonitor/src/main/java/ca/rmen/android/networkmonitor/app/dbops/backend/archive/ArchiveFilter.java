@@ -0,0 +1,68 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ *
+ * Copyright (C) 2016 Carmen Alvarez (c@rmen.ca)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.rmen.android.networkmonitor.app.dbops.backend.archive;
+
+import android.text.TextUtils;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The rows of the archive to read: the equivalent of the selection used to query the DB.
+ */
+public class ArchiveFilter {
+    private final Map<String, Set<String>> mValues = new HashMap<>();
+    private final Set<String> mNotNullColumns = new HashSet<>();
+
+    /**
+     * Only accept rows with one of the given values for the given column. The null value accepts rows with null or an empty string.
+     */
+    public void addValues(String columnName, Collection<String> values) {
+        mValues.put(columnName, new HashSet<>(values));
+    }
+
+    /**
+     * Only accept rows with a value for the given column.
+     */
+    public void addNotNull(String columnName) {
+        mNotNullColumns.add(columnName);
+    }
+
+    Set<String> getColumnNames() {
+        Set<String> result = new HashSet<>(mValues.keySet());
+        result.addAll(mNotNullColumns);
+        return result;
+    }
+
+    boolean accept(String columnName, String value) {
+        if (value == null && mNotNullColumns.contains(columnName)) return false;
+        Set<String> values = mValues.get(columnName);
+        if (values == null) return true;
+        if (TextUtils.isEmpty(value)) return values.contains(null);
+        return values.contains(value);
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ *
+ * Copyright (C) 2016 Carmen Alvarez (c@rmen.ca)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.rmen.android.networkmonitor.app.dbops.backend.archive;
+
+/**
+ * Reads the values written by {@link ArchiveOutput}.
+ */
+class ArchiveInput {
+    private final byte[] mBuffer;
+    private int mPosition;
+    private long mBits;
+    private int mBitCount;
+
+    ArchiveInput(byte[] buffer, int position) {
+        mBuffer = buffer;
+        mPosition = position;
+    }
+
+    int getPosition() {
+        return mPosition;
+    }
+
+    void skip(int byteCount) {
+        mPosition += byteCount;
+    }
+
+    int readByte() {
+        return mBuffer[mPosition++] & 0xFF;
+    }
+
+    long readVarLong() {
+        long result = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = readByte();
+            result |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return result;
+    }
+
+    int readVarInt() {
+        return (int) readVarLong();
+    }
+
+    long readSignedVarLong() {
+        long value = readVarLong();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    String readString() {
+        int length = readVarInt();
+        String result = new String(mBuffer, mPosition, length, ArchiveOutput.UTF_8);
+        mPosition += length;
+        return result;
+    }
+
+    double readDouble() {
+        long bits = 0;
+        for (int i = 0; i < 8; i++)
+            bits |= (long) readByte() << (i * 8);
+        return Double.longBitsToDouble(bits);
+    }
+
+    long readBits(int bitCount) {
+        if (bitCount > 32) {
+            long low = readBits(32);
+            long high = readBits(bitCount - 32);
+            return low | (high << 32);
+        }
+        while (mBitCount < bitCount) {
+            mBits |= (long) readByte() << mBitCount;
+            mBitCount += 8;
+        }
+        long result = mBits & ArchiveOutput.mask(bitCount);
+        mBits >>>= bitCount;
+        mBitCount -= bitCount;
+        return result;
+    }
+
+    /**
+     * Skip the unused bits of the last packed byte.
+     */
+    void alignToByte() {
+        mBits = 0;
+        mBitCount = 0;
+    }
+}
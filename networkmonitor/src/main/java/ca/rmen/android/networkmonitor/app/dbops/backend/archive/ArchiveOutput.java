@@ -0,0 +1,109 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ *
+ * Copyright (C) 2016 Carmen Alvarez (c@rmen.ca)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.rmen.android.networkmonitor.app.dbops.backend.archive;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Buffer for the encoded data of a row group: varints, zigzag varints, strings and bit-packed values.
+ */
+class ArchiveOutput extends ByteArrayOutputStream {
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private long mBits;
+    private int mBitCount;
+
+    /**
+     * Write the value in 7-bit groups, low bits first: small values take a single byte.
+     */
+    void writeVarLong(long value) {
+        while ((value & ~0x7FL) != 0) {
+            write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        write((int) value);
+    }
+
+    /**
+     * Write a value which may be negative: small negative values take as few bytes as small positive values.
+     */
+    void writeSignedVarLong(long value) {
+        writeVarLong(zigzag(value));
+    }
+
+    void writeString(String value) {
+        byte[] bytes = value.getBytes(UTF_8);
+        writeVarLong(bytes.length);
+        write(bytes, 0, bytes.length);
+    }
+
+    void writeDouble(double value) {
+        long bits = Double.doubleToLongBits(value);
+        for (int i = 0; i < 8; i++)
+            write((int) (bits >>> (i * 8)) & 0xFF);
+    }
+
+    /**
+     * Append the lowest bitCount bits of the value. {@link #flushBits()} must be called after the last packed value.
+     */
+    void writeBits(long value, int bitCount) {
+        if (bitCount > 32) {
+            writeBits(value & 0xFFFFFFFFL, 32);
+            writeBits(value >>> 32, bitCount - 32);
+            return;
+        }
+        mBits |= (value & mask(bitCount)) << mBitCount;
+        mBitCount += bitCount;
+        while (mBitCount >= 8) {
+            write((int) (mBits & 0xFF));
+            mBits >>>= 8;
+            mBitCount -= 8;
+        }
+    }
+
+    /**
+     * Pad the last packed byte with zeros.
+     */
+    void flushBits() {
+        if (mBitCount > 0) write((int) (mBits & 0xFF));
+        mBits = 0;
+        mBitCount = 0;
+    }
+
+    static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long mask(int bitCount) {
+        return bitCount == 64 ? -1L : (1L << bitCount) - 1;
+    }
+
+    /**
+     * @return the number of bits needed to store the given unsigned value.
+     */
+    static int getBitCount(long value) {
+        return 64 - Long.numberOfLeadingZeros(value);
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ *
+ * Copyright (C) 2016 Carmen Alvarez (c@rmen.ca)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.rmen.android.networkmonitor.app.dbops.backend.archive;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.database.MergeCursor;
+import android.net.Uri;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Queue;
+
+import ca.rmen.android.networkmonitor.Constants;
+import ca.rmen.android.networkmonitor.app.prefs.FilterPreferences.Selection;
+import ca.rmen.android.networkmonitor.app.prefs.SortPreferences;
+import ca.rmen.android.networkmonitor.app.prefs.SortPreferences.SortOrder;
+import ca.rmen.android.networkmonitor.provider.NetMonColumns;
+import ca.rmen.android.networkmonitor.provider.NetMonProvider;
+import ca.rmen.android.networkmonitor.util.Log;
+
+/**
+ * Queries the rows of the log for the exports: the rows of the archive, followed or preceded by the rows of the DB.
+ *
+ * When the rows are sorted by timestamp, the archive is streamed: its rows are all older than the rows of the DB. When the rows are sorted
+ * by another column, the matching rows of the archive are sorted, and merged with the rows of the DB. With a limit, only the first rows are
+ * kept in memory. Without a limit, the rows are sorted by a {@link SortedArchiveCursor}, which spills them to a temporary file.
+ */
+public final class ArchiveQuery {
+    private static final String TAG = Constants.TAG + ArchiveQuery.class.getSimpleName();
+
+    private ArchiveQuery() {
+        // prevent instantiation
+    }
+
+    /**
+     * @param selection the rows of the DB to read.
+     * @param filter the rows of the archive to read: the same rows as the selection.
+     * @param orderBy the order by clause for the DB: the rows must be sorted like the sort preferences, with nulls at the end, and then by timestamp in the given order.
+     * @param limit read at most this number of rows. If limit is 0 or less, all rows are read.
+     * @return a cursor on the rows of the archive and the DB. If the sort column or the timestamp aren't in the projection, they are added
+     * at the end.
+     */
+    public static Cursor query(Context context, String[] projection, Selection selection, ArchiveFilter filter, String orderBy,
+                               SortPreferences sortPreferences, SortOrder timestampOrder, int limit) {
+        File file = ArchiveFile.getFile(context);
+        if (!file.exists()) return queryDB(context, projection, selection, orderBy, limit);
+        try {
+            if (sortPreferences.sortColumnName.equals(NetMonColumns.TIMESTAMP)) {
+                if (sortPreferences.sortOrder == SortOrder.DESC) return queryMostRecentFirst(context, file, projection, selection, filter, orderBy, limit);
+                return queryOldestFirst(context, file, projection, selection, filter, orderBy, limit);
+            }
+            return querySorted(context, file, projection, selection, filter, orderBy, sortPreferences, timestampOrder, limit);
+        } catch (IOException e) {
+            Log.w(TAG, "Could not read the archive: " + e.getMessage(), e);
+            return queryDB(context, projection, selection, orderBy, limit);
+        }
+    }
+
+    private static Cursor queryDB(Context context, String[] projection, Selection selection, String orderBy, int limit) {
+        Uri uri = NetMonColumns.CONTENT_URI;
+        if (limit > 0) uri = uri.buildUpon().appendQueryParameter(NetMonProvider.QUERY_PARAMETER_LIMIT, String.valueOf(limit)).build();
+        return context.getContentResolver().query(uri, projection, selection.selectionString, selection.selectionArgs, orderBy);
+    }
+
+    /**
+     * The rows of the DB, followed by the rows of the archive. The archive isn't read if the DB has enough rows.
+     */
+    private static Cursor queryMostRecentFirst(Context context, File file, String[] projection, Selection selection, ArchiveFilter filter,
+                                               String orderBy, int limit) throws IOException {
+        Cursor dbCursor = queryDB(context, projection, selection, orderBy, limit);
+        if (dbCursor == null || (limit > 0 && dbCursor.getCount() >= limit)) return dbCursor;
+        int archiveLimit = limit > 0 ? limit - dbCursor.getCount() : 0;
+        try {
+            return new MergeCursor(new Cursor[]{dbCursor, new ArchiveCursor(file, projection, filter, true, archiveLimit)});
+        } catch (IOException e) {
+            dbCursor.close();
+            throw e;
+        }
+    }
+
+    /**
+     * The rows of the archive, followed by the rows of the DB. The DB isn't read if the archive has enough rows.
+     */
+    private static Cursor queryOldestFirst(Context context, File file, String[] projection, Selection selection, ArchiveFilter filter,
+                                           String orderBy, int limit) throws IOException {
+        ArchiveCursor archiveCursor = new ArchiveCursor(file, projection, filter, false, limit);
+        if (limit > 0 && archiveCursor.getCount() >= limit) return archiveCursor;
+        int dbLimit = limit > 0 ? limit - archiveCursor.getCount() : 0;
+        Cursor dbCursor = queryDB(context, projection, selection, orderBy, dbLimit);
+        if (dbCursor == null) {
+            archiveCursor.close();
+            return null;
+        }
+        return new MergeCursor(new Cursor[]{archiveCursor, dbCursor});
+    }
+
+    private static Cursor querySorted(Context context, File file, String[] projection, Selection selection, ArchiveFilter filter,
+                                      String orderBy, SortPreferences sortPreferences, SortOrder timestampOrder, int limit) throws IOException {
+        projection = addColumn(projection, sortPreferences.sortColumnName);
+        projection = addColumn(projection, NetMonColumns.TIMESTAMP);
+        List<String> columnNames = Arrays.asList(projection);
+        RowComparator comparator = new RowComparator(columnNames.indexOf(sortPreferences.sortColumnName), sortPreferences.sortOrder,
+                columnNames.indexOf(NetMonColumns.TIMESTAMP), timestampOrder);
+
+        Cursor sortedArchiveCursor = limit > 0 ? queryFirstSorted(file, projection, filter, comparator, limit)
+                : new SortedArchiveCursor(file, context.getCacheDir(), projection, filter, comparator);
+        Cursor dbCursor = queryDB(context, projection, selection, orderBy, limit);
+        if (dbCursor == null) {
+            sortedArchiveCursor.close();
+            return null;
+        }
+        return new SortedMergeCursor(dbCursor, sortedArchiveCursor, comparator, limit);
+    }
+
+    /**
+     * @return the first matching rows of the archive, sorted in memory: only the given number of rows are kept while reading the archive.
+     */
+    private static Cursor queryFirstSorted(File file, String[] projection, ArchiveFilter filter, RowComparator comparator, int limit)
+            throws IOException {
+        // The head of this queue is the last row we keep.
+        Queue<Object[]> archivedRows = new PriorityQueue<>(limit + 1, Collections.reverseOrder(comparator));
+        ArchiveCursor archiveCursor = new ArchiveCursor(file, projection, filter, false, 0);
+        try {
+            while (archiveCursor.moveToNext()) {
+                Object[] row = new Object[projection.length];
+                for (int i = 0; i < projection.length; i++)
+                    row[i] = archiveCursor.getValue(i);
+                archivedRows.add(row);
+                if (archivedRows.size() > limit) archivedRows.poll();
+            }
+        } finally {
+            archiveCursor.close();
+        }
+        List<Object[]> sortedArchivedRows = new ArrayList<>(archivedRows);
+        Collections.sort(sortedArchivedRows, comparator);
+        MatrixCursor result = new MatrixCursor(projection, sortedArchivedRows.size());
+        for (Object[] row : sortedArchivedRows)
+            result.addRow(row);
+        return result;
+    }
+
+    private static String[] addColumn(String[] projection, String columnName) {
+        if (Arrays.asList(projection).contains(columnName)) return projection;
+        String[] result = Arrays.copyOf(projection, projection.length + 1);
+        result[projection.length] = columnName;
+        return result;
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ *
+ * Copyright (C) 2016 Carmen Alvarez (c@rmen.ca)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.rmen.android.networkmonitor.app.dbops.backend.archive;
+
+import android.annotation.TargetApi;
+import android.database.Cursor;
+import android.os.Build;
+
+/**
+ * The values of the archive are Longs, Doubles, Strings or null, like the values of an SQLite column.
+ */
+final class ArchiveValues {
+
+    private ArchiveValues() {
+        // prevent instantiation
+    }
+
+    /**
+     * @return the value at the given column of the current row of the cursor, with the type SQLite stored it with.
+     * Before Honeycomb, the type isn't available: integers are recognized from their text, other values are kept as text.
+     */
+    static Object readValue(Cursor cursor, int column) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) return readTypedValue(cursor, column);
+        String value = cursor.getString(column);
+        if (value == null) return null;
+        Long longValue = parseCanonicalLong(value);
+        return longValue == null ? value : longValue;
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static Object readTypedValue(Cursor cursor, int column) {
+        switch (cursor.getType(column)) {
+            case Cursor.FIELD_TYPE_NULL:
+                return null;
+            case Cursor.FIELD_TYPE_INTEGER:
+                return cursor.getLong(column);
+            case Cursor.FIELD_TYPE_FLOAT:
+                return cursor.getDouble(column);
+            default:
+                return cursor.getString(column);
+        }
+    }
+
+    /**
+     * @return the value if the text is exactly how the value would be printed ("01" is a string, not an integer), null otherwise.
+     */
+    static Long parseCanonicalLong(String value) {
+        try {
+            long result = Long.parseLong(value);
+            return Long.toString(result).equals(value) ? result : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Convert text to a number like SQLite does for getLong() and getDouble(): text which isn't a number is 0.
+     */
+    static double toDouble(String value) {
+        if (value == null) return 0;
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    static long toLong(String value) {
+        if (value == null) return 0;
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return (long) toDouble(value);
+        }
+    }
+
+    /**
+     * Compare two non-null values like SQLite does: numbers are before text, and text is compared as is.
+     */
+    static int compare(Object value1, Object value2) {
+        boolean isNumber1 = value1 instanceof Number;
+        boolean isNumber2 = value2 instanceof Number;
+        if (isNumber1 && isNumber2) {
+            if (value1 instanceof Long && value2 instanceof Long) return compare((Long) value1, (Long) value2);
+            return Double.compare(((Number) value1).doubleValue(), ((Number) value2).doubleValue());
+        }
+        if (isNumber1) return -1;
+        if (isNumber2) return 1;
+        return value1.toString().compareTo(value2.toString());
+    }
+
+    private static int compare(long value1, long value2) {
+        return value1 < value2 ? -1 : (value1 == value2 ? 0 : 1);
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ *
+ * Copyright (C) 2016 Carmen Alvarez (c@rmen.ca)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.rmen.android.networkmonitor.app.dbops.backend.archive;
+
+import android.database.Cursor;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The values of one column, in one row group of the archive.
+ *
+ * A block starts with its encoding. Unless all the values are null, the encoding is followed by the number of null values, and if there are
+ * any, a bitmap of the rows which have a value. Only the non-null values are stored, with one of these encodings:
+ * <ul>
+ * <li>{@link #ENCODING_LONG_DELTA}: the difference with the previous value, as a zigzag varint. The timestamps and ids take a byte or two
+ * per row.</li>
+ * <li>{@link #ENCODING_LONG_PACKED}: the smallest value, and the difference with it, in as few bits as the largest difference needs. Signal
+ * strengths and other small ints take a few bits per row.</li>
+ * <li>{@link #ENCODING_DOUBLE}: the 8 bytes of each value.</li>
+ * <li>{@link #ENCODING_STRING_DICTIONARY}: the distinct values of the block, and the index of each row's value in them, bit-packed.
+ * This is also used for columns with a mix of types, using the text of each value.</li>
+ * </ul>
+ */
+class ColumnBlock {
+    static final int ENCODING_NULL = 0;
+    static final int ENCODING_LONG_DELTA = 1;
+    static final int ENCODING_LONG_PACKED = 2;
+    static final int ENCODING_DOUBLE = 3;
+    static final int ENCODING_STRING_DICTIONARY = 4;
+
+    private final int mEncoding;
+    private boolean[] mIsNull;
+    private long[] mLongs;
+    private double[] mDoubles;
+    private String[] mDictionary;
+    private int[] mDictionaryIndexes;
+
+    /**
+     * Encode the values of one column.
+     *
+     * @param values the values as read by {@link ArchiveValues#readValue(Cursor, int)}.
+     * @param texts the values as read by {@link Cursor#getString(int)}, used if the values don't all have the same type.
+     */
+    static void write(ArchiveOutput out, Object[] values, String[] texts, int rowCount) {
+        int nullCount = 0;
+        boolean isLong = true;
+        boolean isDouble = true;
+        for (int i = 0; i < rowCount; i++) {
+            if (values[i] == null) nullCount++;
+            else if (values[i] instanceof Long) isDouble = false;
+            else if (values[i] instanceof Double) isLong = false;
+            else isLong = isDouble = false;
+        }
+        if (nullCount == rowCount) {
+            out.write(ENCODING_NULL);
+            return;
+        }
+
+        if (isLong) {
+            ArchiveOutput deltas = new ArchiveOutput();
+            writeLongDeltas(deltas, values, rowCount);
+            ArchiveOutput packed = new ArchiveOutput();
+            boolean isPacked = writePackedLongs(packed, values, rowCount);
+            ArchiveOutput smallest = isPacked && packed.size() < deltas.size() ? packed : deltas;
+            out.write(smallest == packed ? ENCODING_LONG_PACKED : ENCODING_LONG_DELTA);
+            writeNulls(out, values, rowCount, nullCount);
+            out.write(smallest.toByteArray(), 0, smallest.size());
+        } else if (isDouble) {
+            out.write(ENCODING_DOUBLE);
+            writeNulls(out, values, rowCount, nullCount);
+            for (int i = 0; i < rowCount; i++)
+                if (values[i] != null) out.writeDouble((Double) values[i]);
+        } else {
+            out.write(ENCODING_STRING_DICTIONARY);
+            writeNulls(out, values, rowCount, nullCount);
+            writeDictionary(out, values, texts, rowCount);
+        }
+    }
+
+    private static void writeNulls(ArchiveOutput out, Object[] values, int rowCount, int nullCount) {
+        out.writeVarLong(nullCount);
+        if (nullCount == 0) return;
+        for (int i = 0; i < rowCount; i++)
+            out.writeBits(values[i] == null ? 0 : 1, 1);
+        out.flushBits();
+    }
+
+    private static void writeLongDeltas(ArchiveOutput out, Object[] values, int rowCount) {
+        long previous = 0;
+        for (int i = 0; i < rowCount; i++) {
+            if (values[i] == null) continue;
+            long value = (Long) values[i];
+            out.writeSignedVarLong(value - previous);
+            previous = value;
+        }
+    }
+
+    /**
+     * @return false if the range of the values is too big to be packed.
+     */
+    private static boolean writePackedLongs(ArchiveOutput out, Object[] values, int rowCount) {
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (int i = 0; i < rowCount; i++) {
+            if (values[i] == null) continue;
+            long value = (Long) values[i];
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+        long range = max - min;
+        if (range < 0) return false;
+        int bitCount = ArchiveOutput.getBitCount(range);
+        out.writeSignedVarLong(min);
+        out.write(bitCount);
+        for (int i = 0; i < rowCount; i++)
+            if (values[i] != null) out.writeBits((Long) values[i] - min, bitCount);
+        out.flushBits();
+        return true;
+    }
+
+    private static void writeDictionary(ArchiveOutput out, Object[] values, String[] texts, int rowCount) {
+        Map<String, Integer> dictionary = new LinkedHashMap<>();
+        for (int i = 0; i < rowCount; i++)
+            if (values[i] != null && !dictionary.containsKey(texts[i])) dictionary.put(texts[i], dictionary.size());
+        out.writeVarLong(dictionary.size());
+        for (String value : dictionary.keySet())
+            out.writeString(value);
+        int bitCount = ArchiveOutput.getBitCount(dictionary.size() - 1);
+        out.write(bitCount);
+        for (int i = 0; i < rowCount; i++)
+            if (values[i] != null) out.writeBits(dictionary.get(texts[i]), bitCount);
+        out.flushBits();
+    }
+
+    /**
+     * Decode a block written by {@link #write(ArchiveOutput, Object[], String[], int)}.
+     */
+    ColumnBlock(ArchiveInput in, int rowCount) {
+        mEncoding = in.readByte();
+        if (mEncoding == ENCODING_NULL) return;
+        int nullCount = in.readVarInt();
+        if (nullCount > 0) {
+            mIsNull = new boolean[rowCount];
+            for (int i = 0; i < rowCount; i++)
+                mIsNull[i] = in.readBits(1) == 0;
+            in.alignToByte();
+        }
+        switch (mEncoding) {
+            case ENCODING_LONG_DELTA:
+                mLongs = new long[rowCount];
+                long previous = 0;
+                for (int i = 0; i < rowCount; i++) {
+                    if (isNull(i)) continue;
+                    previous += in.readSignedVarLong();
+                    mLongs[i] = previous;
+                }
+                break;
+            case ENCODING_LONG_PACKED:
+                mLongs = new long[rowCount];
+                long min = in.readSignedVarLong();
+                int bitCount = in.readByte();
+                for (int i = 0; i < rowCount; i++)
+                    if (!isNull(i)) mLongs[i] = min + in.readBits(bitCount);
+                in.alignToByte();
+                break;
+            case ENCODING_DOUBLE:
+                mDoubles = new double[rowCount];
+                for (int i = 0; i < rowCount; i++)
+                    if (!isNull(i)) mDoubles[i] = in.readDouble();
+                break;
+            case ENCODING_STRING_DICTIONARY:
+                mDictionary = new String[in.readVarInt()];
+                for (int i = 0; i < mDictionary.length; i++)
+                    mDictionary[i] = in.readString();
+                int indexBitCount = in.readByte();
+                mDictionaryIndexes = new int[rowCount];
+                for (int i = 0; i < rowCount; i++)
+                    if (!isNull(i)) mDictionaryIndexes[i] = (int) in.readBits(indexBitCount);
+                in.alignToByte();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown encoding " + mEncoding);
+        }
+    }
+
+    boolean isNull(int row) {
+        return mEncoding == ENCODING_NULL || (mIsNull != null && mIsNull[row]);
+    }
+
+    Object getValue(int row) {
+        if (isNull(row)) return null;
+        if (mLongs != null) return mLongs[row];
+        if (mDoubles != null) return mDoubles[row];
+        return mDictionary[mDictionaryIndexes[row]];
+    }
+
+    String getString(int row) {
+        Object value = getValue(row);
+        return value == null ? null : value.toString();
+    }
+
+    long getLong(int row) {
+        if (isNull(row)) return 0;
+        if (mLongs != null) return mLongs[row];
+        if (mDoubles != null) return (long) mDoubles[row];
+        return ArchiveValues.toLong(mDictionary[mDictionaryIndexes[row]]);
+    }
+
+    double getDouble(int row) {
+        if (isNull(row)) return 0;
+        if (mLongs != null) return mLongs[row];
+        if (mDoubles != null) return mDoubles[row];
+        return ArchiveValues.toDouble(mDictionary[mDictionaryIndexes[row]]);
+    }
+
+    int getType(int row) {
+        if (isNull(row)) return Cursor.FIELD_TYPE_NULL;
+        if (mLongs != null) return Cursor.FIELD_TYPE_INTEGER;
+        if (mDoubles != null) return Cursor.FIELD_TYPE_FLOAT;
+        return Cursor.FIELD_TYPE_STRING;
+    }
+}
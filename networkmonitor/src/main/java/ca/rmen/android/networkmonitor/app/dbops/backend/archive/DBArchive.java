@@ -0,0 +1,140 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ *
+ * Copyright (C) 2016 Carmen Alvarez (c@rmen.ca)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.rmen.android.networkmonitor.app.dbops.backend.archive;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.BaseColumns;
+import android.text.format.DateUtils;
+
+import java.io.File;
+import java.io.IOException;
+
+import ca.rmen.android.networkmonitor.Constants;
+import ca.rmen.android.networkmonitor.app.prefs.NetMonPreferences;
+import ca.rmen.android.networkmonitor.provider.NetMonColumns;
+import ca.rmen.android.networkmonitor.provider.NetMonDao;
+import ca.rmen.android.networkmonitor.provider.NetMonProvider;
+import ca.rmen.android.networkmonitor.util.Log;
+
+/**
+ * Moves the rows older than the age set by the user from the DB to the {@link ArchiveFile}, as new rows are inserted.
+ *
+ * Rows are moved {@link #ROWS_PER_ROW_GROUP} at a time, so some rows stay in the DB a bit longer than the age. When there aren't enough old
+ * rows to fill a row group, the DB isn't checked again before {@link #CHECK_INTERVAL_MS}, or before {@link #invalidate()} is called.
+ */
+public class DBArchive {
+    private static final String TAG = Constants.TAG + DBArchive.class.getSimpleName();
+
+    private static final int ROWS_PER_ROW_GROUP = 4096;
+    // Archiving runs on the thread which writes the samples: limit how long it can hold them back.
+    private static final int MAX_ROW_GROUPS_PER_CALL = 4;
+    private static final long CHECK_INTERVAL_MS = DateUtils.HOUR_IN_MILLIS;
+
+    private final Context mContext;
+    private final NetMonDao mDao;
+    private long mNextCheckTime;
+    private boolean mIsLastRowGroupChecked;
+
+    /**
+     * @param dao used to delete the archived rows: the caller notifies the observers of the log.
+     */
+    public DBArchive(Context context, NetMonDao dao) {
+        mContext = context.getApplicationContext();
+        mDao = dao;
+    }
+
+    /**
+     * The log was modified by someone else: check for old rows again next time.
+     */
+    public void invalidate() {
+        mNextCheckTime = 0;
+    }
+
+    /**
+     * To be called after inserting rows into the log. Moves the old rows to the archive, if there are enough of them.
+     *
+     * @return the number of rows which were moved.
+     */
+    public int onRowsInserted() {
+        int archiveAge = NetMonPreferences.getInstance(mContext).getArchiveAge();
+        if (archiveAge <= 0) return 0;
+        long now = System.currentTimeMillis();
+        if (now < mNextCheckTime) return 0;
+
+        File file = ArchiveFile.getFile(mContext);
+        long archiveBefore = now - archiveAge * DateUtils.DAY_IN_MILLIS;
+        int result = 0;
+        try {
+            if (!mIsLastRowGroupChecked) {
+                // If the app died after appending the last row group, its rows may still be in the DB.
+                result += deleteArchivedRows(ArchiveFile.readLastRowGroup(file));
+                mIsLastRowGroupChecked = true;
+            }
+            for (int i = 0; i < MAX_ROW_GROUPS_PER_CALL; i++) {
+                int archivedRowCount = archiveRowGroup(file, archiveBefore);
+                result += archivedRowCount;
+                if (archivedRowCount == 0) {
+                    mNextCheckTime = now + CHECK_INTERVAL_MS;
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Could not archive rows: " + e.getMessage(), e);
+            mNextCheckTime = now + CHECK_INTERVAL_MS;
+        }
+        return result;
+    }
+
+    /**
+     * Append the oldest {@link #ROWS_PER_ROW_GROUP} rows before the given timestamp to the archive, and delete them from the DB.
+     *
+     * @return the number of rows which were moved: 0 if there weren't enough old rows.
+     */
+    private int archiveRowGroup(File file, long archiveBefore) throws IOException {
+        Uri uri = NetMonColumns.CONTENT_URI.buildUpon().appendQueryParameter(NetMonProvider.QUERY_PARAMETER_LIMIT, String.valueOf(ROWS_PER_ROW_GROUP))
+                .build();
+        Cursor cursor = mContext.getContentResolver().query(uri, null, NetMonColumns.TIMESTAMP + " < ?", new String[]{String.valueOf(archiveBefore)},
+                BaseColumns._ID);
+        if (cursor == null) return 0;
+        try {
+            if (cursor.getCount() < ROWS_PER_ROW_GROUP) return 0;
+            ArchiveFile.RowGroup rowGroup = ArchiveFile.append(file, cursor, archiveBefore);
+            Log.v(TAG, "Archived " + rowGroup);
+            return deleteArchivedRows(rowGroup);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Delete the rows of the given row group from the DB: they are the rows before its timestamp, between its first and last _id.
+     */
+    private int deleteArchivedRows(ArchiveFile.RowGroup rowGroup) {
+        if (rowGroup == null) return 0;
+        return mDao.delete(BaseColumns._ID + " BETWEEN ? AND ? AND " + NetMonColumns.TIMESTAMP + " < ?",
+                new String[]{String.valueOf(rowGroup.firstId), String.valueOf(rowGroup.lastId), String.valueOf(rowGroup.archivedBefore)});
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ *
+ * Copyright (C) 2016 Carmen Alvarez (c@rmen.ca)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.rmen.android.networkmonitor.app.dbops.backend.archive;
+
+import java.util.Comparator;
+
+import ca.rmen.android.networkmonitor.app.prefs.SortPreferences.SortOrder;
+
+/**
+ * Compares rows like {@link ca.rmen.android.networkmonitor.app.prefs.SortPreferences#getOrderByClause()}: by the sort column, with nulls
+ * at the end, then by timestamp.
+ */
+class RowComparator implements Comparator<Object[]> {
+    private final int mSortColumn;
+    private final SortOrder mSortOrder;
+    private final int mTimestampColumn;
+    private final SortOrder mTimestampOrder;
+
+    RowComparator(int sortColumn, SortOrder sortOrder, int timestampColumn, SortOrder timestampOrder) {
+        mSortColumn = sortColumn;
+        mSortOrder = sortOrder;
+        mTimestampColumn = timestampColumn;
+        mTimestampOrder = timestampOrder;
+    }
+
+    /**
+     * @return the columns this comparator reads.
+     */
+    int[] getColumns() {
+        return new int[]{mSortColumn, mTimestampColumn};
+    }
+
+    @Override
+    public int compare(Object[] row1, Object[] row2) {
+        Object value1 = row1[mSortColumn];
+        Object value2 = row2[mSortColumn];
+        if (value1 == null && value2 != null) return 1;
+        if (value1 != null && value2 == null) return -1;
+        if (value1 != null) {
+            int result = ArchiveValues.compare(value1, value2);
+            if (result != 0) return mSortOrder == SortOrder.ASC ? result : -result;
+        }
+        int result = compareTimestamps(row1[mTimestampColumn], row2[mTimestampColumn]);
+        return mTimestampOrder == SortOrder.ASC ? result : -result;
+    }
+
+    private static int compareTimestamps(Object timestamp1, Object timestamp2) {
+        if (timestamp1 == null || timestamp2 == null) return timestamp1 == null ? (timestamp2 == null ? 0 : -1) : 1;
+        return ArchiveValues.compare(timestamp1, timestamp2);
+    }
+}
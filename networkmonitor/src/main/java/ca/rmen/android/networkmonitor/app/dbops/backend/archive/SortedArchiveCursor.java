@@ -0,0 +1,294 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ *
+ * Copyright (C) 2016 Carmen Alvarez (c@rmen.ca)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.rmen.android.networkmonitor.app.dbops.backend.archive;
+
+import android.database.AbstractCursor;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import ca.rmen.android.networkmonitor.Constants;
+import ca.rmen.android.networkmonitor.util.IoUtil;
+import ca.rmen.android.networkmonitor.util.Log;
+
+/**
+ * Reads the rows of the archive which match a filter, sorted by a {@link RowComparator}, without reading all of them into memory.
+ *
+ * The rows are read {@link #ROWS_PER_RUN} at a time, sorted, and written to a temporary file as a sorted run, in blocks of
+ * {@link #ROWS_PER_BLOCK} rows. Moving through the cursor merges the runs: only the current block of each run is decoded.
+ * The cursor is meant to be read forward: moving back merges the runs again from the start.
+ */
+class SortedArchiveCursor extends AbstractCursor {
+    private static final String TAG = Constants.TAG + SortedArchiveCursor.class.getSimpleName();
+
+    private static final int ROWS_PER_RUN = 4096;
+    private static final int ROWS_PER_BLOCK = 64;
+
+    private static class Block {
+        private final long mPosition;
+        private final int mLength;
+        private final int mRowCount;
+
+        private Block(long position, int length, int rowCount) {
+            mPosition = position;
+            mLength = length;
+            mRowCount = rowCount;
+        }
+    }
+
+    /**
+     * Reads the rows of one run, in order.
+     */
+    private class RunReader {
+        private final List<Block> mBlocks;
+        private final Object[] mRow = new Object[mColumnNames.length];
+        private int mBlockIndex = -1;
+        private ColumnBlock[] mColumns;
+        private int mRowIndex;
+
+        private RunReader(List<Block> blocks) {
+            mBlocks = blocks;
+        }
+
+        /**
+         * @return false if the run has no more rows.
+         */
+        private boolean moveToNext() throws IOException {
+            if (mColumns == null || ++mRowIndex >= mBlocks.get(mBlockIndex).mRowCount) {
+                if (++mBlockIndex >= mBlocks.size()) return false;
+                Block block = mBlocks.get(mBlockIndex);
+                byte[] payload = new byte[block.mLength];
+                mRunFile.seek(block.mPosition);
+                mRunFile.readFully(payload);
+                Map<String, Integer> columnOffsets = ArchiveFile.readColumnOffsets(payload);
+                mColumns = new ColumnBlock[mColumnNames.length];
+                for (int i = 0; i < mColumnNames.length; i++)
+                    mColumns[i] = new ColumnBlock(new ArchiveInput(payload, columnOffsets.get(mColumnNames[i])), block.mRowCount);
+                mRowIndex = 0;
+            }
+            for (int i = 0; i < mColumnNames.length; i++)
+                mRow[i] = mColumns[i].getValue(mRowIndex);
+            return true;
+        }
+    }
+
+    private final String[] mColumnNames;
+    private final RowComparator mComparator;
+    private final File mFile;
+    private final RandomAccessFile mRunFile;
+    private final List<List<Block>> mRuns = new ArrayList<>();
+    private final int mCount;
+
+    // The runs which have rows left, by their next row. The current row isn't in it.
+    private PriorityQueue<RunReader> mRunReaders;
+    private RunReader mCurrentRunReader;
+    private int mMergedPosition;
+
+    /**
+     * @param tempDir the folder for the temporary file with the sorted runs. It is deleted when the cursor is closed.
+     */
+    SortedArchiveCursor(File file, File tempDir, String[] projection, ArchiveFilter filter, RowComparator comparator) throws IOException {
+        mColumnNames = projection;
+        mComparator = comparator;
+        mFile = File.createTempFile("archive", ".sort", tempDir);
+        RandomAccessFile runFile = null;
+        try {
+            runFile = new RandomAccessFile(mFile, "rw");
+            mCount = writeRuns(file, filter, runFile);
+        } catch (IOException | RuntimeException e) {
+            IoUtil.closeSilently(runFile);
+            deleteFile();
+            throw e;
+        }
+        mRunFile = runFile;
+        Log.v(TAG, mCount + " matching rows sorted in " + mRuns.size() + " runs");
+        restart();
+    }
+
+    /**
+     * Write the matching rows of the archive to the run file, in sorted runs.
+     *
+     * @return the number of rows which were written.
+     */
+    private int writeRuns(File file, ArchiveFilter filter, RandomAccessFile runFile) throws IOException {
+        List<Object[]> rows = new ArrayList<>(ROWS_PER_RUN);
+        int count = 0;
+        ArchiveCursor archiveCursor = new ArchiveCursor(file, mColumnNames, filter, false, 0);
+        try {
+            while (archiveCursor.moveToNext()) {
+                Object[] row = new Object[mColumnNames.length];
+                for (int i = 0; i < mColumnNames.length; i++)
+                    row[i] = archiveCursor.getValue(i);
+                rows.add(row);
+                if (rows.size() == ROWS_PER_RUN) {
+                    writeRun(runFile, rows);
+                    count += rows.size();
+                    rows.clear();
+                }
+            }
+        } finally {
+            archiveCursor.close();
+        }
+        if (!rows.isEmpty()) {
+            writeRun(runFile, rows);
+            count += rows.size();
+        }
+        return count;
+    }
+
+    private void writeRun(RandomAccessFile runFile, List<Object[]> rows) throws IOException {
+        Collections.sort(rows, mComparator);
+        List<Block> blocks = new ArrayList<>();
+        for (int first = 0; first < rows.size(); first += ROWS_PER_BLOCK) {
+            int rowCount = Math.min(ROWS_PER_BLOCK, rows.size() - first);
+            Object[][] values = new Object[mColumnNames.length][rowCount];
+            String[][] texts = new String[mColumnNames.length][rowCount];
+            for (int row = 0; row < rowCount; row++) {
+                for (int i = 0; i < mColumnNames.length; i++) {
+                    Object value = rows.get(first + row)[i];
+                    values[i][row] = value;
+                    texts[i][row] = value == null ? null : value.toString();
+                }
+            }
+            byte[] payload = ArchiveFile.encode(mColumnNames, values, texts, rowCount);
+            blocks.add(new Block(runFile.getFilePointer(), payload.length, rowCount));
+            runFile.write(payload);
+        }
+        mRuns.add(blocks);
+    }
+
+    private void restart() {
+        mRunReaders = new PriorityQueue<>(Math.max(1, mRuns.size()), (runReader1, runReader2) -> mComparator.compare(runReader1.mRow, runReader2.mRow));
+        for (List<Block> run : mRuns)
+            mRunReaders.add(new RunReader(run));
+        mCurrentRunReader = null;
+        mMergedPosition = -1;
+    }
+
+    @Override
+    public boolean onMove(int oldPosition, int newPosition) {
+        if (newPosition < mMergedPosition) restart();
+        try {
+            if (mMergedPosition < 0) {
+                // Read the first row of each run.
+                List<RunReader> runReaders = new ArrayList<>(mRunReaders);
+                mRunReaders.clear();
+                for (RunReader runReader : runReaders)
+                    if (runReader.moveToNext()) mRunReaders.add(runReader);
+            }
+            while (mMergedPosition < newPosition) {
+                if (mCurrentRunReader != null && mCurrentRunReader.moveToNext()) mRunReaders.add(mCurrentRunReader);
+                mCurrentRunReader = mRunReaders.poll();
+                if (mCurrentRunReader == null) return false;
+                mMergedPosition++;
+            }
+            return true;
+        } catch (IOException e) {
+            Log.w(TAG, "Could not read the sorted rows: " + e.getMessage(), e);
+            restart();
+            return false;
+        }
+    }
+
+    @Override
+    public int getCount() {
+        return mCount;
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        return mColumnNames;
+    }
+
+    private Object getValue(int column) {
+        checkPosition();
+        return mCurrentRunReader.mRow[column];
+    }
+
+    @Override
+    public String getString(int column) {
+        Object value = getValue(column);
+        return value == null ? null : value.toString();
+    }
+
+    @Override
+    public short getShort(int column) {
+        return (short) getLong(column);
+    }
+
+    @Override
+    public int getInt(int column) {
+        return (int) getLong(column);
+    }
+
+    @Override
+    public long getLong(int column) {
+        Object value = getValue(column);
+        if (value instanceof Number) return ((Number) value).longValue();
+        return value == null ? 0 : ArchiveValues.toLong(value.toString());
+    }
+
+    @Override
+    public float getFloat(int column) {
+        return (float) getDouble(column);
+    }
+
+    @Override
+    public double getDouble(int column) {
+        Object value = getValue(column);
+        if (value instanceof Number) return ((Number) value).doubleValue();
+        return value == null ? 0 : ArchiveValues.toDouble(value.toString());
+    }
+
+    @Override
+    public int getType(int column) {
+        Object value = getValue(column);
+        if (value == null) return FIELD_TYPE_NULL;
+        if (value instanceof Long) return FIELD_TYPE_INTEGER;
+        if (value instanceof Double) return FIELD_TYPE_FLOAT;
+        return FIELD_TYPE_STRING;
+    }
+
+    @Override
+    public boolean isNull(int column) {
+        return getValue(column) == null;
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        IoUtil.closeSilently(mRunFile);
+        deleteFile();
+    }
+
+    private void deleteFile() {
+        if (!mFile.delete()) Log.w(TAG, "Could not delete " + mFile);
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ *
+ * Copyright (C) 2016 Carmen Alvarez (c@rmen.ca)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.rmen.android.networkmonitor.app.dbops.backend.archive;
+
+import android.database.AbstractCursor;
+import android.database.Cursor;
+
+/**
+ * Merges two cursors which are sorted in the same order into one sorted cursor.
+ */
+class SortedMergeCursor extends AbstractCursor {
+    private final Cursor mCursor1;
+    private final Cursor mCursor2;
+    private final RowComparator mComparator;
+    private final int mCount;
+    private final Object[] mRow1;
+    private final Object[] mRow2;
+    // The cursor positioned on the current row.
+    private Cursor mCursor;
+    private int mMergedPosition = -1;
+
+    /**
+     * @param limit merge at most this number of rows. If limit is 0 or less, all rows are merged.
+     */
+    SortedMergeCursor(Cursor cursor1, Cursor cursor2, RowComparator comparator, int limit) {
+        mCursor1 = cursor1;
+        mCursor2 = cursor2;
+        mComparator = comparator;
+        int count = cursor1.getCount() + cursor2.getCount();
+        mCount = limit > 0 ? Math.min(count, limit) : count;
+        mRow1 = new Object[cursor1.getColumnCount()];
+        mRow2 = new Object[cursor2.getColumnCount()];
+        restart();
+    }
+
+    private void restart() {
+        mCursor1.moveToFirst();
+        mCursor2.moveToFirst();
+        mCursor = null;
+        mMergedPosition = -1;
+    }
+
+    @Override
+    public boolean onMove(int oldPosition, int newPosition) {
+        if (newPosition < mMergedPosition) restart();
+        while (mMergedPosition < newPosition) {
+            if (mCursor != null) mCursor.moveToNext();
+            if (mCursor1.isAfterLast()) mCursor = mCursor2;
+            else if (mCursor2.isAfterLast()) mCursor = mCursor1;
+            else mCursor = mComparator.compare(readRow(mCursor1, mRow1), readRow(mCursor2, mRow2)) <= 0 ? mCursor1 : mCursor2;
+            mMergedPosition++;
+        }
+        return true;
+    }
+
+    /**
+     * @return the values of the current row of the cursor which are needed by the comparator.
+     */
+    private Object[] readRow(Cursor cursor, Object[] row) {
+        for (int column : mComparator.getColumns())
+            row[column] = ArchiveValues.readValue(cursor, column);
+        return row;
+    }
+
+    @Override
+    public int getCount() {
+        return mCount;
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        return mCursor1.getColumnNames();
+    }
+
+    @Override
+    public String getString(int column) {
+        return mCursor.getString(column);
+    }
+
+    @Override
+    public short getShort(int column) {
+        return mCursor.getShort(column);
+    }
+
+    @Override
+    public int getInt(int column) {
+        return mCursor.getInt(column);
+    }
+
+    @Override
+    public long getLong(int column) {
+        return mCursor.getLong(column);
+    }
+
+    @Override
+    public float getFloat(int column) {
+        return mCursor.getFloat(column);
+    }
+
+    @Override
+    public double getDouble(int column) {
+        return mCursor.getDouble(column);
+    }
+
+    @Override
+    public int getType(int column) {
+        return mCursor.getType(column);
+    }
+
+    @Override
+    public boolean isNull(int column) {
+        return mCursor.isNull(column);
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        mCursor1.close();
+        mCursor2.close();
+    }
+}
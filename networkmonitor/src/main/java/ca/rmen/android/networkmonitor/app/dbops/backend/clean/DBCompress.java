@@ -25,6 +25,7 @@ package ca.rmen.android.networkmonitor.app.dbops.backend.clean;
 
 import android.content.Context;
 import android.database.Cursor;
+import android.net.Uri;
 import android.provider.BaseColumns;
 import android.text.TextUtils;
 import android.util.SparseArray;
@@ -37,7 +38,11 @@ import ca.rmen.android.networkmonitor.Constants;
 import ca.rmen.android.networkmonitor.R;
 import ca.rmen.android.networkmonitor.app.dbops.ProgressListener;
 import ca.rmen.android.networkmonitor.app.dbops.backend.DBOperation;
+import ca.rmen.android.networkmonitor.provider.AggregateColumns;
 import ca.rmen.android.networkmonitor.provider.NetMonColumns;
+import ca.rmen.android.networkmonitor.provider.NetMonDao;
+import ca.rmen.android.networkmonitor.provider.NetMonProvider;
+import ca.rmen.android.networkmonitor.util.DBUtil;
 import ca.rmen.android.networkmonitor.util.Log;
 
 /**
@@ -46,6 +51,9 @@ import ca.rmen.android.networkmonitor.util.Log;
 public class DBCompress implements DBOperation {
     private static final String TAG = Constants.TAG + DBCompress.class.getSimpleName();
 
+    // Each page is read with the primary key, so the cost of a page doesn't depend on its position in the log.
+    private static final int PAGE_SIZE = 5000;
+
     private final Context mContext;
     private final AtomicBoolean mIsCanceled = new AtomicBoolean(false);
 
@@ -56,20 +64,26 @@ public class DBCompress implements DBOperation {
     @Override
     public void execute(ProgressListener listener) {
         Log.v(TAG, "compress DB");
-        Cursor c = mContext.getContentResolver().query(NetMonColumns.CONTENT_URI, null, null, null, BaseColumns._ID);
         SparseArray<String> previousRow = null;
         List<Integer> rowIdsToDelete = new ArrayList<>();
         int idLastRow = 0;
         int posLastNewRow = 0;
-        if (c != null) {
+        int rowCount = readRowCount();
+        int position = 0;
+        // Read the log one page at a time: each page starts after the last row of the previous one.
+        while (!mIsCanceled.get()) {
+            Uri.Builder uriBuilder = NetMonColumns.CONTENT_URI.buildUpon()
+                    .appendQueryParameter(NetMonProvider.QUERY_PARAMETER_PAGE_SIZE, String.valueOf(PAGE_SIZE));
+            if (position > 0) uriBuilder.appendQueryParameter(NetMonProvider.QUERY_PARAMETER_AFTER_ID, String.valueOf(idLastRow));
+            Cursor c = mContext.getContentResolver().query(uriBuilder.build(), null, null, null, BaseColumns._ID);
+            if (c == null) break;
             try {
-                int rowCount = c.getCount();
+                if (c.getCount() == 0) break;
                 int columnCount = c.getColumnCount();
                 // We will not include the _id and _timestamp fields when comparing rows.
                 int timestampIndex = c.getColumnIndex(NetMonColumns.TIMESTAMP);
                 int idIndex = c.getColumnIndex(BaseColumns._ID);
                 while (c.moveToNext() && !mIsCanceled.get()) {
-                    int position = c.getPosition();
                     int id = c.getInt(idIndex);
                     SparseArray<String> currentRow = readRow(c, columnCount, timestampIndex, idIndex);
                     if (previousRow != null) {
@@ -89,6 +103,7 @@ public class DBCompress implements DBOperation {
                     if (listener != null) listener.onProgress(position, rowCount);
                     idLastRow = id;
                     previousRow = currentRow;
+                    position++;
                 }
             } finally {
                 c.close();
@@ -98,17 +113,23 @@ public class DBCompress implements DBOperation {
         int numRowsToDelete = rowIdsToDelete.size();
         Log.v(TAG, "compress DB: " + numRowsToDelete + " rows to delete");
         StringBuilder inClause = new StringBuilder();
-        for (int i = 0; i < numRowsToDelete; i++) {
-            inClause.append(rowIdsToDelete.get(i));
-            if (i % 100 == 0 || i == numRowsToDelete - 1) {
-                String whereClause = BaseColumns._ID + " in (" + inClause + ")";
-                numRowsDeleted += mContext.getContentResolver().delete(NetMonColumns.CONTENT_URI, whereClause, null);
-                Log.v(TAG, "compress DB: deleted " + numRowsDeleted + " rows");
-                inClause = new StringBuilder();
+        NetMonDao dao = new NetMonDao(mContext);
+        try {
+            for (int i = 0; i < numRowsToDelete; i++) {
+                inClause.append(rowIdsToDelete.get(i));
+                if (i % 100 == 0 || i == numRowsToDelete - 1) {
+                    String whereClause = BaseColumns._ID + " in (" + inClause + ")";
+                    numRowsDeleted += dao.delete(whereClause, null);
+                    Log.v(TAG, "compress DB: deleted " + numRowsDeleted + " rows");
+                    inClause = new StringBuilder();
 
-            } else {
-                inClause.append(",");
+                } else {
+                    inClause.append(",");
+                }
             }
+        } finally {
+            // A single notification for all the deletes.
+            dao.close();
         }
         if (listener != null) {
             if (numRowsToDelete >= 0) {
@@ -123,6 +144,11 @@ public class DBCompress implements DBOperation {
         }
     }
 
+    private int readRowCount() {
+        Long count = DBUtil.readLongAggregate(mContext, AggregateColumns.Function.COUNT, BaseColumns._ID, null);
+        return count == null ? 0 : count.intValue();
+    }
+
     private static boolean areEqual(SparseArray<String> o1, SparseArray<String> o2) {
         if (o1.size() != o2.size()) return false;
         for (int i = 0; i < o1.size(); i++) {
@@ -29,11 +29,15 @@ import android.database.Cursor;
 import android.net.Uri;
 import android.provider.BaseColumns;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import ca.rmen.android.networkmonitor.Constants;
 import ca.rmen.android.networkmonitor.R;
 import ca.rmen.android.networkmonitor.app.dbops.ProgressListener;
 import ca.rmen.android.networkmonitor.app.dbops.backend.DBOperation;
+import ca.rmen.android.networkmonitor.app.dbops.backend.archive.ArchiveFile;
 import ca.rmen.android.networkmonitor.provider.NetMonColumns;
+import ca.rmen.android.networkmonitor.provider.NetMonDao;
 import ca.rmen.android.networkmonitor.provider.NetMonProvider;
 import ca.rmen.android.networkmonitor.util.Log;
 
@@ -43,9 +47,13 @@ import ca.rmen.android.networkmonitor.util.Log;
  */
 public class DBPurge implements DBOperation {
     private static final String TAG = Constants.TAG + DBPurge.class.getSimpleName();
+    // The oldest rows are deleted first, this many ids at a time. Each delete is a short transaction, so the WAL stays within its size limit. The
+    // purge is an exclusive operation: the sampler doesn't write until it ends.
+    private static final int MAX_IDS_PER_DELETE = 10000;
 
     private final Context mContext;
     private final int mNumRowsToKeep;
+    private final AtomicBoolean mIsCanceled = new AtomicBoolean(false);
 
     /**
      * This task will delete data from the database, keeping at most numRowsToKeep rows.
@@ -68,7 +76,10 @@ public class DBPurge implements DBOperation {
         Log.v(TAG, "purgeDB");
 
         if (mNumRowsToKeep == 0) {
-            int result = mContext.getContentResolver().delete(NetMonColumns.CONTENT_URI, null, null);
+            ArchiveFile.delete(mContext);
+            NetMonDao dao = new NetMonDao(mContext);
+            int result = dao.delete(null, null);
+            dao.close();
             if (listener != null) listener.onComplete(mContext.getString(R.string.purge_notif_complete_content, result));
             return;
         }
@@ -87,6 +98,8 @@ public class DBPurge implements DBOperation {
                 if (cursor.moveToLast()) {
                     oldestIdToKeep = cursor.getInt(0);
                 }
+                // The archived rows are older than all the rows of the DB.
+                if (cursor.getCount() >= mNumRowsToKeep) ArchiveFile.delete(mContext);
             } finally {
                 cursor.close();
             }
@@ -94,16 +107,44 @@ public class DBPurge implements DBOperation {
 
         if (oldestIdToKeep > 0) {
             Log.v(TAG, "Will delete rows before id=" + oldestIdToKeep);
-            int result = mContext.getContentResolver().delete(NetMonColumns.CONTENT_URI, BaseColumns._ID + " < ?",
-                    new String[] { String.valueOf(oldestIdToKeep) });
+            int firstId = readFirstId();
+            int result = 0;
+            int deleteBeforeId = firstId;
+            NetMonDao dao = new NetMonDao(mContext);
+            try {
+                while (deleteBeforeId < oldestIdToKeep && !mIsCanceled.get()) {
+                    deleteBeforeId = Math.min(deleteBeforeId + MAX_IDS_PER_DELETE, oldestIdToKeep);
+                    result += dao.delete(BaseColumns._ID + " < ?", new String[] { String.valueOf(deleteBeforeId) });
+                    if (listener != null) listener.onProgress(deleteBeforeId - firstId, oldestIdToKeep - firstId);
+                }
+            } finally {
+                // A single notification for all the deletes.
+                dao.close();
+            }
             Log.v(TAG, "Deleted " + result + " rows");
             if (listener != null) listener.onComplete(mContext.getString(R.string.purge_notif_complete_content, result));
         }
     }
 
+    /**
+     * @return the id of the oldest row, or 0 if there are no rows.
+     */
+    private int readFirstId() {
+        Uri uri = NetMonColumns.CONTENT_URI.buildUpon().appendQueryParameter(NetMonProvider.QUERY_PARAMETER_LIMIT, "1").build();
+        Cursor cursor = mContext.getContentResolver().query(uri, new String[] { BaseColumns._ID }, null, null, BaseColumns._ID);
+        if (cursor != null) {
+            try {
+                if (cursor.moveToFirst()) return cursor.getInt(0);
+            } finally {
+                cursor.close();
+            }
+        }
+        return 0;
+    }
+
     @Override
     public void cancel() {
-        // nothing
+        mIsCanceled.set(true);
     }
 
 }
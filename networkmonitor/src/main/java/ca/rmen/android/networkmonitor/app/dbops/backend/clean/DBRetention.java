@@ -0,0 +1,133 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ *
+ * Copyright (C) 2016 Carmen Alvarez (c@rmen.ca)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.rmen.android.networkmonitor.app.dbops.backend.clean;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.provider.BaseColumns;
+
+import ca.rmen.android.networkmonitor.Constants;
+import ca.rmen.android.networkmonitor.app.prefs.NetMonPreferences;
+import ca.rmen.android.networkmonitor.provider.AggregateColumns;
+import ca.rmen.android.networkmonitor.provider.NetMonColumns;
+import ca.rmen.android.networkmonitor.provider.NetMonDao;
+import ca.rmen.android.networkmonitor.util.DBUtil;
+import ca.rmen.android.networkmonitor.util.Log;
+
+/**
+ * Keeps the log at about X records, where X is determined by the preference set by the user, as new records are inserted.
+ *
+ * Unlike {@link DBPurge}, which looks for the oldest record to keep each time it runs, this keeps track of the number of records in memory.
+ * Records are only deleted once the count goes over a high-water mark above X, and then at most {@link #MAX_ROWS_PER_DELETE} at a time. The cost
+ * of each call to {@link #onRowsInserted(int)} therefore doesn't depend on the size of the log.
+ *
+ * The row count is read from the DB the first time it's needed, and again after {@link #invalidate()} is called (for example after an
+ * import or a compress).
+ *
+ * A record is a row: when only changes are logged, a row which merges repeated samples counts as one record. The limit bounds the size of the
+ * DB, and the rows are what take space.
+ */
+public class DBRetention {
+    private static final String TAG = Constants.TAG + DBRetention.class.getSimpleName();
+
+    private static final int MAX_ROWS_PER_DELETE = 1000;
+    // Let the log grow by this fraction of the max number of records, before deleting records.
+    private static final int HIGH_WATER_MARK_PERCENT = 5;
+    private static final int UNKNOWN = -1;
+
+    private final Context mContext;
+    private final NetMonDao mDao;
+    private volatile boolean mIsStale = true;
+    private int mRowCount = UNKNOWN;
+
+    /**
+     * @param dao used to delete the rows: the caller notifies the observers of the log.
+     */
+    public DBRetention(Context context, NetMonDao dao) {
+        mContext = context.getApplicationContext();
+        mDao = dao;
+    }
+
+    /**
+     * The log was modified by someone else: read the row count again next time.
+     */
+    public void invalidate() {
+        mIsStale = true;
+    }
+
+    /**
+     * To be called after inserting rows into the log. Deletes the oldest rows if the log is too big.
+     */
+    public void onRowsInserted(int numInsertedRows) {
+        int numRowsToKeep = getNumRowsToKeep();
+        if (numRowsToKeep < 0) {
+            // No limit: don't bother counting.
+            mIsStale = true;
+            return;
+        }
+
+        if (mIsStale) {
+            mIsStale = false;
+            mRowCount = readRowCount();
+            Log.v(TAG, "Log contains " + mRowCount + " rows");
+        } else if (mRowCount != UNKNOWN) {
+            mRowCount += numInsertedRows;
+        }
+        if (mRowCount == UNKNOWN) {
+            mIsStale = true;
+            return;
+        }
+
+        int highWaterMark = numRowsToKeep + Math.max(1, Math.min(numRowsToKeep * HIGH_WATER_MARK_PERCENT / 100, MAX_ROWS_PER_DELETE));
+        if (mRowCount < highWaterMark) return;
+
+        int numRowsToDelete = Math.min(mRowCount - numRowsToKeep, MAX_ROWS_PER_DELETE);
+        int result = deleteOldestRows(numRowsToDelete);
+        Log.v(TAG, "Deleted " + result + " rows");
+        mRowCount -= result;
+    }
+
+    private int getNumRowsToKeep() {
+        // For monkey tests we want to avoid clearing the whole log, otherwise the
+        // remaining tests will be uninteresting.
+        if (ActivityManager.isUserAMonkey()) return 500;
+        return NetMonPreferences.getInstance(mContext).getDBRecordCount();
+    }
+
+    private int readRowCount() {
+        Long count = DBUtil.readLongAggregate(mContext, AggregateColumns.Function.COUNT, BaseColumns._ID, null);
+        return count == null ? UNKNOWN : count.intValue();
+    }
+
+    /**
+     * Walks the beginning of the primary key only: the cost depends on numRowsToDelete, not on the size of the table.
+     */
+    private int deleteOldestRows(int numRowsToDelete) {
+        String whereClause = BaseColumns._ID + " IN (SELECT " + BaseColumns._ID
+                + " FROM " + NetMonColumns.TABLE_NAME
+                + " ORDER BY " + BaseColumns._ID
+                + " LIMIT " + numRowsToDelete + ")";
+        return mDao.delete(whereClause, null);
+    }
+}
@@ -31,6 +31,7 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
 
 import ca.rmen.android.networkmonitor.Constants;
 import ca.rmen.android.networkmonitor.R;
@@ -51,6 +52,8 @@ public class DBExport extends FileExport {
     @Override
     public void execute(ProgressListener listener) {
         File db = mContext.getDatabasePath(NetMonDatabase.DATABASE_NAME);
+        // The latest rows may only be in the WAL file.
+        NetMonDatabase.checkpoint(mContext);
         try {
             InputStream is = new FileInputStream(db);
             OutputStream os = new FileOutputStream(mFile);
@@ -66,6 +69,7 @@ public class DBExport extends FileExport {
             }
             is.close();
             os.close();
+            if (!isCanceled()) setRollbackJournalMode();
             if (listener != null){
                 if(isCanceled()) {
                     listener.onError(mContext.getString(R.string.export_notif_canceled_content));
@@ -79,4 +83,19 @@ public class DBExport extends FileExport {
         }
     }
 
+    /**
+     * Mark the exported file as using a rollback journal instead of WAL, by setting the file format write and read versions of its header to 1.
+     * This way, the exported file can also be opened read-only, or by an older SQLite, without its WAL file.
+     */
+    private void setRollbackJournalMode() throws IOException {
+        RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+        try {
+            if (file.length() < 20) return;
+            file.seek(18);
+            file.write(new byte[] { 1, 1 });
+        } finally {
+            file.close();
+        }
+    }
+
 }
\ No newline at end of file
@@ -28,6 +28,7 @@ import android.database.Cursor;
 import android.text.TextUtils;
 
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
@@ -37,6 +38,7 @@ import ca.rmen.android.networkmonitor.Constants;
 import ca.rmen.android.networkmonitor.R;
 import ca.rmen.android.networkmonitor.app.prefs.NetMonPreferences;
 import ca.rmen.android.networkmonitor.app.prefs.NetMonPreferences.CellIdFormat;
+import ca.rmen.android.networkmonitor.app.speedtest.SpeedTestResult.SpeedTestStatus;
 import ca.rmen.android.networkmonitor.provider.NetMonColumns;
 import ca.rmen.android.networkmonitor.util.Log;
 
@@ -62,6 +64,28 @@ public class FormatterFactory {
         }
     }
 
+    /**
+     * @return the projection to query, to be able to format the given columns: the speed columns need their status columns.
+     * The given columns are at the beginning of the returned projection, in the same order.
+     */
+    public static String[] getProjection(String[] columns) {
+        List<String> projection = new ArrayList<>(Arrays.asList(columns));
+        for (String column : columns) {
+            String statusColumn = getSpeedStatusColumn(column);
+            if (statusColumn != null && !projection.contains(statusColumn)) projection.add(statusColumn);
+        }
+        return projection.toArray(new String[projection.size()]);
+    }
+
+    /**
+     * @return the column containing the status of the speed test for the given speed column, or null if the column isn't a speed column.
+     */
+    private static String getSpeedStatusColumn(String columnName) {
+        if (NetMonColumns.DOWNLOAD_SPEED.equals(columnName)) return NetMonColumns.DOWNLOAD_SPEED_STATUS;
+        if (NetMonColumns.UPLOAD_SPEED.equals(columnName)) return NetMonColumns.UPLOAD_SPEED_STATUS;
+        return null;
+    }
+
     /**
      * This formats values with a format which is common to all export types.
      */
@@ -89,6 +113,11 @@ public class FormatterFactory {
                 Date date = new Date(timestamp);
                 result = mDateFormat.format(date);
             }
+            // Only set if this row was extended by identical samples.
+            else if (NetMonColumns.LAST_SEEN_TIMESTAMP.equals(columnName)) {
+                if (c.isNull(columnIndex)) result = "";
+                else result = mDateFormat.format(new Date(c.getLong(columnIndex)));
+            }
             // Format cell ids
             else if (NetMonColumns.CDMA_CELL_BASE_STATION_ID.equals(columnName) || NetMonColumns.CDMA_CELL_NETWORK_ID.equals(columnName)
                     || NetMonColumns.CDMA_CELL_SYSTEM_ID.equals(columnName) || NetMonColumns.GSM_FULL_CELL_ID.equals(columnName)
@@ -126,6 +155,18 @@ public class FormatterFactory {
                     result = "";
                 }
             }
+            // Speeds are stored in Mbps.  If there is no speed, the status tells us if the test was disabled.
+            else if (NetMonColumns.DOWNLOAD_SPEED.equals(columnName) || NetMonColumns.UPLOAD_SPEED.equals(columnName)) {
+                if (!c.isNull(columnIndex)) {
+                    result = String.format(Locale.getDefault(), "%.3f", c.getDouble(columnIndex));
+                } else {
+                    int statusIndex = c.getColumnIndex(getSpeedStatusColumn(columnName));
+                    if (statusIndex >= 0 && SpeedTestStatus.SKIPPED.name().equals(c.getString(statusIndex)))
+                        result = mContext.getString(R.string.speed_test_disabled);
+                    else
+                        result = "";
+                }
+            }
             // Anything else: just return the raw value as a string
             else {
                 result = c.getString(columnIndex);
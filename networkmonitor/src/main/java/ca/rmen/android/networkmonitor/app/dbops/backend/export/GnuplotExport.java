@@ -25,7 +25,6 @@ package ca.rmen.android.networkmonitor.app.dbops.backend.export;
 
 import android.content.Context;
 import android.database.Cursor;
-import android.net.Uri;
 import android.text.TextUtils;
 
 import java.io.File;
@@ -33,21 +32,27 @@ import java.io.FileNotFoundException;
 import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.Locale;
 
 import ca.rmen.android.networkmonitor.Constants;
 import ca.rmen.android.networkmonitor.R;
 import ca.rmen.android.networkmonitor.app.dbops.ProgressListener;
+import ca.rmen.android.networkmonitor.app.dbops.backend.archive.ArchiveFilter;
+import ca.rmen.android.networkmonitor.app.dbops.backend.archive.ArchiveQuery;
 import ca.rmen.android.networkmonitor.app.prefs.FilterPreferences;
 import ca.rmen.android.networkmonitor.app.prefs.NetMonPreferences;
+import ca.rmen.android.networkmonitor.app.prefs.SortPreferences;
+import ca.rmen.android.networkmonitor.app.prefs.SortPreferences.SortOrder;
+import ca.rmen.android.networkmonitor.provider.IndexAdvisor;
 import ca.rmen.android.networkmonitor.provider.NetMonColumns;
-import ca.rmen.android.networkmonitor.provider.UniqueValuesColumns;
 import ca.rmen.android.networkmonitor.util.IoUtil;
 import ca.rmen.android.networkmonitor.util.Log;
 
 /**
- * Export the Network Monitor data to a gnuplot file.
+ * Export the Network Monitor data, including the archived rows, to a gnuplot file.
  */
 public class GnuplotExport extends FileExport {
     private static final String TAG = Constants.TAG + GnuplotExport.class.getSimpleName();
@@ -57,6 +62,7 @@ public class GnuplotExport extends FileExport {
     private final String mSeriesField;
     private final String mYAxisField;
     private final FilterPreferences.Selection mSelection;
+    private final ArchiveFilter mArchiveFilter;
     private PrintWriter mPrintWriter;
     private final SimpleDateFormat mDateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.US);
 
@@ -75,6 +81,9 @@ public class GnuplotExport extends FileExport {
         } else {
             mSelection = new FilterPreferences.Selection(seriesAndYAxisSelection + " AND " + filterSelection.selectionString, filterSelection.selectionArgs);
         }
+        mArchiveFilter = FilterPreferences.getArchiveFilter(mContext);
+        mArchiveFilter.addNotNull(mSeriesField);
+        mArchiveFilter.addNotNull(mYAxisField);
     }
 
     @Override
@@ -84,23 +93,42 @@ public class GnuplotExport extends FileExport {
 
             String[] projection = new String[]{NetMonColumns.TIMESTAMP, mSeriesField, mYAxisField};
             String orderBy = String.format("%s ASC, %s ASC", mSeriesField, NetMonColumns.TIMESTAMP);
+            IndexAdvisor.getInstance(mContext).adviseIndex(mSelection.selectionString, mSelection.selectionArgs, orderBy, mSeriesField,
+                    NetMonColumns.TIMESTAMP);
 
-            Cursor c = mContext.getContentResolver().query(NetMonColumns.CONTENT_URI, projection, mSelection.selectionString, mSelection.selectionArgs, orderBy);
+            Cursor c = ArchiveQuery.query(mContext, projection, mSelection, mArchiveFilter, orderBy, new SortPreferences(mSeriesField, SortOrder.ASC),
+                    SortOrder.ASC, 0);
             if (c != null) {
                 if (c.getCount() < 1) {
                     // We have no data to export. Give up.
                     if (listener != null) listener.onError(mContext.getString(R.string.export_notif_error_content));
                 } else {
                     try {
+                        int timestampIndex = c.getColumnIndex(NetMonColumns.TIMESTAMP);
+                        int seriesIndex = c.getColumnIndex(mSeriesField);
+                        int yAxisIndex = c.getColumnIndex(mYAxisField);
+
+                        // The first and last dates, and the series, are read from the rows themselves, because some rows may
+                        // come from the archive instead of the DB.
+                        long beginDate = Long.MAX_VALUE;
+                        long endDate = Long.MIN_VALUE;
+                        List<String> seriesNames = new ArrayList<>();
+                        while (c.moveToNext()) {
+                            long timestamp = c.getLong(timestampIndex);
+                            beginDate = Math.min(beginDate, timestamp);
+                            endDate = Math.max(endDate, timestamp);
+                            // The rows are sorted by series.
+                            String seriesValue = c.getString(seriesIndex);
+                            if (seriesNames.isEmpty() || !seriesValue.equals(seriesNames.get(seriesNames.size() - 1))) seriesNames.add(seriesValue);
+                        }
+                        c.moveToPosition(-1);
+
                         // Write the stuff to the gnuplot script that comes before the actual data
                         // (graph title, axis titles, styles, etc).
-                        printGraphConfig();
-                        printSeriesDefinitions();
+                        printGraphConfig(beginDate, endDate);
+                        printSeriesDefinitions(seriesNames);
 
                         // Write the actual data.
-                        int timestampIndex = c.getColumnIndex(NetMonColumns.TIMESTAMP);
-                        int seriesIndex = c.getColumnIndex(mSeriesField);
-                        int yAxisIndex = c.getColumnIndex(mYAxisField);
 
                         String currentSeriesValue = null;
                         while (c.moveToNext() && !isCanceled()) {
@@ -145,59 +173,32 @@ public class GnuplotExport extends FileExport {
     /**
      * Write the first part of the gnuplot script (ex: configuring the chart style)
      */
-    private void printGraphConfig() {
-        // Get the first and last dates for the xrange
-        String[] projection = new String[]{
-                String.format("MIN(%s)", NetMonColumns.TIMESTAMP),
-                String.format("MAX(%s)", NetMonColumns.TIMESTAMP),
-        };
-
-        Cursor c = mContext.getContentResolver().query(NetMonColumns.CONTENT_URI, projection, mSelection.selectionString, mSelection.selectionArgs,
-                NetMonColumns.TIMESTAMP + " ASC");
-        if (c != null) {
-            try {
-                if (c.moveToNext()) {
-                    long beginDate = c.getLong(0);
-                    long endDate = c.getLong(1);
-                    mPrintWriter.println(
-                            mContext.getString(R.string.gnuplot_script,
-                                    NetMonColumns.getColumnLabel(mContext, mYAxisField),
-                                    NetMonColumns.getColumnLabel(mContext, mSeriesField),
-                                    mDateFormat.format(new Date(beginDate)),
-                                    mDateFormat.format(new Date(endDate))
-                            ));
-                }
-
-            } finally {
-                c.close();
-            }
-        }
+    private void printGraphConfig(long beginDate, long endDate) {
+        // Use the first and last dates for the xrange
+        mPrintWriter.println(
+                mContext.getString(R.string.gnuplot_script,
+                        NetMonColumns.getColumnLabel(mContext, mYAxisField),
+                        NetMonColumns.getColumnLabel(mContext, mSeriesField),
+                        mDateFormat.format(new Date(beginDate)),
+                        mDateFormat.format(new Date(endDate))
+                ));
     }
 
     /**
      * Write a line to the gnuplot script for each series (includes the series name, and style
      * of the series).
      */
-    private void printSeriesDefinitions() {
-        String[] projection = new String[]{UniqueValuesColumns.VALUE};
-        Uri uri = Uri.withAppendedPath(UniqueValuesColumns.CONTENT_URI, mSeriesField);
-        Cursor c = mContext.getContentResolver().query(uri, projection, mSelection.selectionString, mSelection.selectionArgs, mSeriesField + " ASC");
-        if (c != null) {
-            try {
-                while (c.moveToNext()) {
-                    String seriesName = c.getString(0);
-                    seriesName = seriesName.replaceAll("_", "\\\\_");
-                    seriesName = seriesName.replaceAll("&", "\\\\&");
-                    if (TextUtils.isEmpty(seriesName)) seriesName = "?";
-                    mPrintWriter.print(mContext.getString(R.string.gnuplot_series, seriesName));
-                    if (c.isLast()) {
-                        mPrintWriter.println();
-                    } else {
-                        mPrintWriter.println(", \\");
-                    }
-                }
-            } finally {
-                c.close();
+    private void printSeriesDefinitions(List<String> seriesNames) {
+        for (int i = 0; i < seriesNames.size(); i++) {
+            String seriesName = seriesNames.get(i);
+            seriesName = seriesName.replaceAll("_", "\\\\_");
+            seriesName = seriesName.replaceAll("&", "\\\\&");
+            if (TextUtils.isEmpty(seriesName)) seriesName = "?";
+            mPrintWriter.print(mContext.getString(R.string.gnuplot_series, seriesName));
+            if (i == seriesNames.size() - 1) {
+                mPrintWriter.println();
+            } else {
+                mPrintWriter.println(", \\");
             }
         }
     }
@@ -39,8 +39,10 @@ import android.text.format.DateUtils;
 import ca.rmen.android.networkmonitor.Constants;
 import ca.rmen.android.networkmonitor.Constants.ConnectionType;
 import ca.rmen.android.networkmonitor.R;
+import ca.rmen.android.networkmonitor.provider.AggregateColumns;
 import ca.rmen.android.networkmonitor.provider.ConnectionTestStatsColumns;
 import ca.rmen.android.networkmonitor.provider.NetMonColumns;
+import ca.rmen.android.networkmonitor.util.DBUtil;
 import ca.rmen.android.networkmonitor.util.Log;
 
 public class SummaryExport {
@@ -229,18 +231,11 @@ public class SummaryExport {
      */
     public static String getDataCollectionDateRange(Context context) {
         Log.v(TAG, "getDataCollectionDateRange");
-        String[] projection = new String[] { "MIN(" + NetMonColumns.TIMESTAMP + ")", "MAX(" + NetMonColumns.TIMESTAMP + ")" };
-        Cursor c = context.getContentResolver().query(NetMonColumns.CONTENT_URI, projection, null, null, null);
-        String dateRange = "";
-        if (c != null) {
-            if (c.moveToNext()) {
-                long firstTimestamp = c.getLong(0);
-                long lastTimestamp = c.getLong(1);
-                dateRange = DateUtils.formatDateRange(context, firstTimestamp, lastTimestamp, DateUtils.FORMAT_SHOW_DATE | DateUtils.FORMAT_SHOW_TIME);
-            }
-            c.close();
-        }
-        return dateRange;
+        // Both are read from the timestamp index.
+        Long firstTimestamp = DBUtil.readLongAggregate(context, AggregateColumns.Function.MIN, NetMonColumns.TIMESTAMP, null);
+        Long lastTimestamp = DBUtil.readLongAggregate(context, AggregateColumns.Function.MAX, NetMonColumns.TIMESTAMP, null);
+        if (firstTimestamp == null || lastTimestamp == null) return "";
+        return DateUtils.formatDateRange(context, firstTimestamp, lastTimestamp, DateUtils.FORMAT_SHOW_DATE | DateUtils.FORMAT_SHOW_TIME);
     }
 
     private static <T> void add(Map<String, TreeSet<T>> map, String key, T value) {
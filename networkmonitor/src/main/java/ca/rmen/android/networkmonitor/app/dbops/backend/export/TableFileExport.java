@@ -25,7 +25,6 @@ package ca.rmen.android.networkmonitor.app.dbops.backend.export;
 
 import android.content.Context;
 import android.database.Cursor;
-import android.net.Uri;
 
 import java.io.File;
 import java.io.IOException;
@@ -34,17 +33,19 @@ import java.util.Arrays;
 import ca.rmen.android.networkmonitor.Constants;
 import ca.rmen.android.networkmonitor.R;
 import ca.rmen.android.networkmonitor.app.dbops.ProgressListener;
+import ca.rmen.android.networkmonitor.app.dbops.backend.archive.ArchiveQuery;
 import ca.rmen.android.networkmonitor.app.dbops.backend.export.FormatterFactory.FormatterStyle;
 import ca.rmen.android.networkmonitor.app.prefs.FilterPreferences;
 import ca.rmen.android.networkmonitor.app.prefs.FilterPreferences.Selection;
 import ca.rmen.android.networkmonitor.app.prefs.NetMonPreferences;
 import ca.rmen.android.networkmonitor.app.prefs.SortPreferences;
+import ca.rmen.android.networkmonitor.app.prefs.SortPreferences.SortOrder;
+import ca.rmen.android.networkmonitor.provider.IndexAdvisor;
 import ca.rmen.android.networkmonitor.provider.NetMonColumns;
-import ca.rmen.android.networkmonitor.provider.NetMonProvider;
 import ca.rmen.android.networkmonitor.util.Log;
 
 /**
- * Export the Network Monitor data from the DB to a file in a table format.
+ * Export the Network Monitor data from the DB and the archive to a file in a table format.
  */
 abstract class TableFileExport extends FileExport {
     private static final String TAG = Constants.TAG + TableFileExport.class.getSimpleName();
@@ -89,11 +90,9 @@ abstract class TableFileExport extends FileExport {
         // Order and filter the results based on the user's preferences.
         SortPreferences sortPreferences = NetMonPreferences.getInstance(mContext).getSortPreferences();
         Selection selection = FilterPreferences.getSelectionClause(mContext);
-        Uri uri = NetMonColumns.CONTENT_URI;
-        if (recordCount > 0)
-            uri = uri.buildUpon().appendQueryParameter(NetMonProvider.QUERY_PARAMETER_LIMIT, String.valueOf(recordCount)).build();
-        Cursor c = mContext.getContentResolver().query(uri, usedColumnNames, selection.selectionString, selection.selectionArgs,
-                sortPreferences.getOrderByClause());
+        adviseIndexes(sortPreferences, selection);
+        Cursor c = ArchiveQuery.query(mContext, FormatterFactory.getProjection(usedColumnNames), selection, FilterPreferences.getArchiveFilter(mContext),
+                sortPreferences.getOrderByClause(), sortPreferences, SortOrder.DESC, recordCount);
         if (c != null) {
             try {
                 for (int i = 0; i < usedColumnNames.length; i++)
@@ -105,8 +104,9 @@ abstract class TableFileExport extends FileExport {
                 // Start writing to the file.
                 writeHeader(usedColumnNames);
                 while (c.moveToNext() && !isCanceled()) {
-                    String[] cellValues = new String[c.getColumnCount()];
-                    for (int i = 0; i < c.getColumnCount(); i++)
+                    // The cursor may have extra columns needed by the formatter: only export the selected ones.
+                    String[] cellValues = new String[usedColumnNames.length];
+                    for (int i = 0; i < usedColumnNames.length; i++)
                         cellValues[i] = formatter.format(c, i);
                     writeRow(c.getPosition(), cellValues);
                     // Notify the listener of our progress (progress is 1-based)
@@ -153,4 +153,18 @@ abstract class TableFileExport extends FileExport {
         return null;
     }
 
+    /**
+     * Let the {@link IndexAdvisor} create indexes for the user's sort column and filtered columns, if this speeds up the export query.
+     */
+    private void adviseIndexes(SortPreferences sortPreferences, Selection selection) {
+        IndexAdvisor indexAdvisor = IndexAdvisor.getInstance(mContext);
+        String orderBy = sortPreferences.getOrderByClause();
+        if (sortPreferences.sortColumnName.equals(NetMonColumns.TIMESTAMP))
+            indexAdvisor.adviseIndex(selection.selectionString, selection.selectionArgs, orderBy, NetMonColumns.TIMESTAMP);
+        else
+            indexAdvisor.adviseIndex(selection.selectionString, selection.selectionArgs, orderBy, sortPreferences.sortColumnName, NetMonColumns.TIMESTAMP);
+        for (String filteredColumn : FilterPreferences.getFilteredColumns(mContext))
+            indexAdvisor.adviseIndex(selection.selectionString, selection.selectionArgs, orderBy, filteredColumn);
+    }
+
 }
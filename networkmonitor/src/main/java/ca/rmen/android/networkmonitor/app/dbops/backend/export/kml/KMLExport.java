@@ -41,6 +41,7 @@ import java.util.Map;
 import ca.rmen.android.networkmonitor.Constants;
 import ca.rmen.android.networkmonitor.R;
 import ca.rmen.android.networkmonitor.app.dbops.ProgressListener;
+import ca.rmen.android.networkmonitor.app.dbops.backend.archive.ArchiveQuery;
 import ca.rmen.android.networkmonitor.app.dbops.backend.export.FileExport;
 import ca.rmen.android.networkmonitor.app.dbops.backend.export.Formatter;
 import ca.rmen.android.networkmonitor.app.dbops.backend.export.FormatterFactory;
@@ -48,6 +49,8 @@ import ca.rmen.android.networkmonitor.app.dbops.backend.export.FormatterFactory.
 import ca.rmen.android.networkmonitor.app.prefs.FilterPreferences;
 import ca.rmen.android.networkmonitor.app.prefs.FilterPreferences.Selection;
 import ca.rmen.android.networkmonitor.app.prefs.NetMonPreferences;
+import ca.rmen.android.networkmonitor.app.prefs.SortPreferences;
+import ca.rmen.android.networkmonitor.app.prefs.SortPreferences.SortOrder;
 import ca.rmen.android.networkmonitor.provider.NetMonColumns;
 import ca.rmen.android.networkmonitor.util.Log;
 
@@ -83,8 +86,8 @@ public class KMLExport extends FileExport {
         Map<String, String> columnNamesMapping = new HashMap<>(columnsToExport.length);
         // Filter the results based on the user's preferences.
         Selection selection = FilterPreferences.getSelectionClause(mContext);
-        Cursor c = mContext.getContentResolver().query(NetMonColumns.CONTENT_URI, columnsToExport, selection.selectionString, selection.selectionArgs,
-                NetMonColumns.TIMESTAMP);
+        Cursor c = ArchiveQuery.query(mContext, FormatterFactory.getProjection(columnsToExport), selection, FilterPreferences.getArchiveFilter(mContext),
+                NetMonColumns.TIMESTAMP, new SortPreferences(NetMonColumns.TIMESTAMP, SortOrder.ASC), SortOrder.ASC, 0);
         if (c != null) {
             try {
                 Log.v(TAG, "Find user-friendly labels for columns " + Arrays.toString(columnsToExport));
@@ -112,12 +115,13 @@ public class KMLExport extends FileExport {
 
                 // Write one KML placemark for each row in the DB.
                 while (c.moveToNext() && !isCanceled()) {
-                    Map<String, String> cellValues = new LinkedHashMap<>(c.getColumnCount());
+                    Map<String, String> cellValues = new LinkedHashMap<>(columnsToExport.length);
                     long timestamp = -1;
                     if (timestampIndex >= 0) {
                         timestamp = c.getLong(timestampIndex);
                     }
-                    for (int i = 0; i < c.getColumnCount(); i++) {
+                    // The cursor may have extra columns needed by the formatter: only export the selected ones.
+                    for (int i = 0; i < columnsToExport.length; i++) {
                         String cellValue = formatter.format(c, i);
                         cellValues.put(c.getColumnName(i), cellValue);
                     }
@@ -23,30 +23,29 @@
  */
 package ca.rmen.android.networkmonitor.app.dbops.backend.imp0rt;
 
-import android.content.ContentProviderOperation;
-import android.content.ContentProviderOperation.Builder;
+import android.annotation.TargetApi;
+import android.content.ContentValues;
 import android.content.Context;
-import android.content.OperationApplicationException;
 import android.database.Cursor;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteException;
 import android.net.Uri;
-import android.os.RemoteException;
+import android.os.Build;
 
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.ArrayList;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import ca.rmen.android.networkmonitor.Constants;
 import ca.rmen.android.networkmonitor.R;
 import ca.rmen.android.networkmonitor.app.dbops.ProgressListener;
 import ca.rmen.android.networkmonitor.app.dbops.backend.DBOperation;
+import ca.rmen.android.networkmonitor.app.dbops.backend.archive.ArchiveFile;
 import ca.rmen.android.networkmonitor.provider.NetMonColumns;
-import ca.rmen.android.networkmonitor.provider.NetMonProvider;
+import ca.rmen.android.networkmonitor.provider.NetMonDao;
 import ca.rmen.android.networkmonitor.util.IoUtil;
 import ca.rmen.android.networkmonitor.util.Log;
 
@@ -57,6 +56,9 @@ import ca.rmen.android.networkmonitor.util.Log;
 public class DBImport implements DBOperation {
     private static final String TAG = Constants.TAG + DBImport.class.getSimpleName();
 
+    // A transaction which is too small spends most of its time committing; one which is too big grows the WAL file.
+    private static final int IMPORT_TRANSACTION_SIZE = 5000;
+
     private final Context mContext;
     private final Uri mUri;
     private final AtomicBoolean mIsCanceled = new AtomicBoolean(false);
@@ -85,7 +87,7 @@ public class DBImport implements DBOperation {
                     tempDb.delete();
                 }
             }
-        } catch (RemoteException | OperationApplicationException | SQLException | IOException e) {
+        } catch (SQLException | IOException e) {
             Log.w(TAG, "Error importing the db: " + e.getMessage(), e);
         }
     }
@@ -96,29 +98,29 @@ public class DBImport implements DBOperation {
     }
 
     /**
-     * In a single database transaction, delete all the cells from the current database, read the data from the given importDb file, create a batch of
-     * corresponding insert operations, and execute the inserts.
+     * Delete all the cells from the current database, read the data from the given importDb file, and insert it in large transactions.
      */
-    private void importDB(File importDb, ProgressListener listener) throws RemoteException, OperationApplicationException {
+    private void importDB(File importDb, ProgressListener listener) {
         Log.v(TAG, "importDB from " + importDb);
         SQLiteDatabase dbImport = SQLiteDatabase.openDatabase(importDb.getAbsolutePath(), null, SQLiteDatabase.OPEN_READONLY);
-        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
-        operations.add(ContentProviderOperation.newDelete(NetMonColumns.CONTENT_URI).build());
-        Uri insertUri = new Uri.Builder().authority(NetMonProvider.AUTHORITY).appendPath(NetMonColumns.TABLE_NAME)
-                .appendQueryParameter(NetMonProvider.QUERY_PARAMETER_NOTIFY, "false").build();
-        buildInsertOperations(dbImport, insertUri, operations, listener);
-        dbImport.close();
+        // The archived rows belong to the data which is being replaced.
+        ArchiveFile.delete(mContext);
+        NetMonDao dao = new NetMonDao(mContext);
+        try {
+            dao.delete(null, null);
+            insertRows(dbImport, dao, listener);
+        } finally {
+            // A single notification for the whole import.
+            dao.close();
+            dbImport.close();
+        }
     }
 
     /**
-     * Read all cells from the given table from the dbImport database, and add corresponding insert operations to the operations parameter.
-     *
-     * @throws OperationApplicationException
-     * @throws RemoteException
+     * Read all cells from the networkmonitor table of the dbImport database, and insert them, IMPORT_TRANSACTION_SIZE rows per transaction.
      */
-    private void buildInsertOperations(SQLiteDatabase dbImport, Uri uri, ArrayList<ContentProviderOperation> operations, ProgressListener listener)
-            throws RemoteException, OperationApplicationException {
-        Log.v(TAG, "buildInsertOperations: uri = " + uri);
+    private void insertRows(SQLiteDatabase dbImport, NetMonDao dao, ProgressListener listener) {
+        Log.v(TAG, "insertRows");
         try {
             Cursor c = dbImport.query(false, NetMonColumns.TABLE_NAME, null, null, null, null, null, null, null);
             if (c != null) {
@@ -126,22 +128,23 @@ public class DBImport implements DBOperation {
                     int count = c.getCount();
                     if (c.moveToFirst()) {
                         int columnCount = c.getColumnCount();
+                        String[] columnNames = c.getColumnNames();
+                        ContentValues[] rows = new ContentValues[IMPORT_TRANSACTION_SIZE];
+                        int rowCount = 0;
                         do {
-                            Builder builder = ContentProviderOperation.newInsert(uri);
+                            ContentValues values = new ContentValues(columnCount);
                             for (int i = 0; i < columnCount; i++) {
-                                String columnName = c.getColumnName(i);
-                                Object value = c.getString(i);
-                                builder.withValue(columnName, value);
+                                putValue(values, columnNames[i], c, i);
                             }
-                            operations.add(builder.build());
-                            if (operations.size() >= 100) {
-                                mContext.getContentResolver().applyBatch(NetMonProvider.AUTHORITY, operations);
-                                operations.clear();
+                            rows[rowCount++] = values;
+                            if (rowCount == IMPORT_TRANSACTION_SIZE) {
+                                dao.insert(rows, 0, rowCount);
+                                rowCount = 0;
                             }
                             if (listener != null) listener.onProgress(c.getPosition(), count);
                         } while (c.moveToNext() && !mIsCanceled.get());
-                        if (operations.size() > 0 && !mIsCanceled.get())
-                            mContext.getContentResolver().applyBatch(NetMonProvider.AUTHORITY, operations);
+                        if (rowCount > 0 && !mIsCanceled.get())
+                            dao.insert(rows, 0, rowCount);
                     }
                     if (listener != null) {
                         if (mIsCanceled.get())
@@ -159,4 +162,31 @@ public class DBImport implements DBOperation {
         }
         if (listener != null) listener.onError(mContext.getString(R.string.import_notif_error_content, mUri.getPath()));
     }
+
+    /**
+     * Copy the value with the type it has in the imported DB, so it is bound as a number, and not as text, when it is a number.
+     * Before Honeycomb, the type isn't available and all the values are copied as text.
+     */
+    private static void putValue(ContentValues values, String columnName, Cursor c, int column) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) putTypedValue(values, columnName, c, column);
+        else values.put(columnName, c.getString(column));
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static void putTypedValue(ContentValues values, String columnName, Cursor c, int column) {
+        switch (c.getType(column)) {
+            case Cursor.FIELD_TYPE_NULL:
+                values.putNull(columnName);
+                break;
+            case Cursor.FIELD_TYPE_INTEGER:
+                values.put(columnName, c.getLong(column));
+                break;
+            case Cursor.FIELD_TYPE_FLOAT:
+                values.put(columnName, c.getDouble(column));
+                break;
+            default:
+                values.put(columnName, c.getString(column));
+                break;
+        }
+    }
 }
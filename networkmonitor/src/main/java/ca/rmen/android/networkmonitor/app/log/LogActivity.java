@@ -350,7 +350,7 @@ public class LogActivity extends AppCompatActivity implements DialogButtonListen
     }
 
     @SuppressWarnings("unused")
-    @Subscribe
+    @Subscribe(threadMode = ThreadMode.MAIN)
     public void onDBOperationEnded(NetMonBus.DBOperationEnded event) {
         Log.d(TAG, "onDBOperationEnded() called with " + "event = [" + event + "]");
         mDBOpInProgress = false;
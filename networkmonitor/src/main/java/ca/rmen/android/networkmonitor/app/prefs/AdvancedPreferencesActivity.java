@@ -291,7 +291,7 @@ public class AdvancedPreferencesActivity extends AppCompatActivity implements Co
     }
 
     @SuppressWarnings("unused")
-    @Subscribe
+    @Subscribe(threadMode = ThreadMode.MAIN)
     public void onDBOperationEnded(NetMonBus.DBOperationEnded event) {
         Log.d(TAG, "onDBOperationEnded() called with " + "event = [" + event + "]");
         mPreferenceFragment.findPreference(PREF_IMPORT_DB).setEnabled(true);
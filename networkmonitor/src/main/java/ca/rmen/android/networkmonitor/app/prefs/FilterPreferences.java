@@ -31,6 +31,7 @@ import java.util.Arrays;
 import java.util.List;
 
 import ca.rmen.android.networkmonitor.Constants;
+import ca.rmen.android.networkmonitor.app.dbops.backend.archive.ArchiveFilter;
 import ca.rmen.android.networkmonitor.provider.NetMonColumns;
 import ca.rmen.android.networkmonitor.util.Log;
 
@@ -79,6 +80,33 @@ public class FilterPreferences {
         return getSelectionClause(context, Arrays.asList(filterableColumnNames));
     }
 
+    /**
+     * @return a filter for the archived rows, which accepts the same rows as {@link #getSelectionClause(Context)}.
+     */
+    public static ArchiveFilter getArchiveFilter(Context context) {
+        ArchiveFilter result = new ArchiveFilter();
+        NetMonPreferences prefs = NetMonPreferences.getInstance(context);
+        for (String filteredColumn : getFilteredColumns(context)) {
+            List<String> values = new ArrayList<>(prefs.getColumnFilterValues(filteredColumn));
+            // The archive filter uses null for the special empty value.
+            int emptyIndex = values.indexOf(EMPTY);
+            if (emptyIndex >= 0) values.set(emptyIndex, null);
+            result.addValues(filteredColumn, values);
+        }
+        return result;
+    }
+
+    /**
+     * @return the columns the user chose to filter on.
+     */
+    public static List<String> getFilteredColumns(Context context) {
+        List<String> result = new ArrayList<>();
+        NetMonPreferences prefs = NetMonPreferences.getInstance(context);
+        for (String filterableColumnName : NetMonColumns.getFilterableColumns(context))
+            if (!prefs.getColumnFilterValues(filterableColumnName).isEmpty()) result.add(filterableColumnName);
+        return result;
+    }
+
     /**
      * @return a selection clause based on all the filters the user chose for the given column names.
      */
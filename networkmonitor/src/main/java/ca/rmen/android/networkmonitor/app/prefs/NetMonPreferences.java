@@ -39,6 +39,7 @@ import java.util.List;
 
 import ca.rmen.android.networkmonitor.R;
 import ca.rmen.android.networkmonitor.app.prefs.SortPreferences.SortOrder;
+import ca.rmen.android.networkmonitor.app.service.scheduler.AdaptiveScheduler;
 import ca.rmen.android.networkmonitor.app.service.scheduler.AlarmManagerScheduler;
 import ca.rmen.android.networkmonitor.app.service.scheduler.ExecutorServiceScheduler;
 import ca.rmen.android.networkmonitor.app.service.scheduler.NetworkChangeScheduler;
@@ -58,6 +59,25 @@ public class NetMonPreferences {
         SAVE_POWER, HIGH_ACCURACY, SAVE_POWER_GMS, HIGH_ACCURACY_GMS
     }
 
+    /**
+     * What a {@link ca.rmen.android.networkmonitor.app.service.scheduler.Scheduler} does with a tick which should have started while the previous
+     * tick was still running.
+     */
+    public enum OverrunPolicy {
+        /**
+         * Don't run the late tick. The next tick runs at its planned time.
+         */
+        SKIP,
+        /**
+         * Run the late tick once, in place of all the ticks which were missed. The next tick runs at its planned time.
+         */
+        COALESCE,
+        /**
+         * Run the late tick, and plan the next ticks one interval after it.
+         */
+        DELAY
+    }
+
     public enum NetMonTheme {
         DAY, NIGHT, AUTO
     }
@@ -70,6 +90,8 @@ public class NetMonPreferences {
     public static final String PREF_SERVICE_ENABLED = "PREF_SERVICE_ENABLED";
     public static final boolean PREF_SERVICE_ENABLED_DEFAULT = false;
     public static final String PREF_SCHEDULER = "PREF_SCHEDULER";
+    private static final String PREF_ADAPTIVE_MAX_INTERVAL = "PREF_ADAPTIVE_MAX_INTERVAL";
+    private static final String PREF_OVERRUN_POLICY = "PREF_OVERRUN_POLICY";
     public static final String PREF_SORT_ORDER = "PREF_SORT_ORDER";
     public static final String PREF_SORT_COLUMN_NAME = "PREF_SORT_COLUMN_NAME";
 
@@ -77,6 +99,7 @@ public class NetMonPreferences {
     public static final String PREF_FILTER_RECORD_COUNT = "PREF_FILTER_RECORD_COUNT";
     public static final String PREF_FILTER_RECORD_COUNT_DEFAULT = "100";
     public static final String PREF_DB_RECORD_COUNT = "PREF_DB_RECORD_COUNT";
+    private static final String PREF_ARCHIVE_AGE = "PREF_ARCHIVE_AGE";
     public static final String PREF_ENABLE_CONNECTION_TEST = "PREF_ENABLE_CONNECTION_TEST";
     public static final String PREF_CELL_ID_FORMAT = "PREF_CELL_ID_FORMAT";
     public static final String PREF_CELL_ID_FORMAT_DEFAULT = "decimal";
@@ -86,16 +109,23 @@ public class NetMonPreferences {
     public static final String PREF_EXPORT_GNUPLOT_SERIES = "PREF_EXPORT_GNUPLOT_SERIES";
     public static final String PREF_EXPORT_GNUPLOT_Y_AXIS = "PREF_EXPORT_GNUPLOT_Y_AXIS";
     public static final String PREF_THEME = "PREF_THEME";
+    public static final String PREF_CONCURRENT_DATA_SOURCES = "PREF_CONCURRENT_DATA_SOURCES";
+    private static final String PREF_CHANGE_ONLY_RECORDING = "PREF_CHANGE_ONLY_RECORDING";
 
     private static final String PREF_FREEZE_HTML_TABLE_HEADER = "PREF_FREEZE_HTML_TABLE_HEADER";
     private static final boolean PREF_FREEZE_HTML_TABLE_HEADER_DEFAULT = false;
     private static final String PREF_WAKE_INTERVAL = "PREF_WAKE_INTERVAL";
     private static final String PREF_UPDATE_INTERVAL_DEFAULT = "10000";
     private static final String PREF_DB_RECORD_COUNT_DEFAULT = "-1";
+    private static final String PREF_ARCHIVE_AGE_DEFAULT = "-1";
     private static final boolean PREF_ENABLE_CONNECTION_TEST_DEFAULT = true;
+    private static final boolean PREF_CONCURRENT_DATA_SOURCES_DEFAULT = false;
+    private static final boolean PREF_CHANGE_ONLY_RECORDING_DEFAULT = false;
 
     private static final String PREF_TEST_SERVER_DEFAULT = "216.58.208.206";
     private static final String PREF_WAKE_INTERVAL_DEFAULT = "0";
+    private static final String PREF_ADAPTIVE_MAX_INTERVAL_DEFAULT = "600000";
+    private static final String PREF_OVERRUN_POLICY_DEFAULT = OverrunPolicy.COALESCE.name();
     private static final String PREF_SCHEDULER_DEFAULT = ExecutorServiceScheduler.class.getSimpleName();
     private static final String PREF_SELECTED_COLUMNS = "PREF_SELECTED_COLUMNS";
     private static final String PREF_SORT_COLUMN_NAME_DEFAULT = NetMonColumns.TIMESTAMP;
@@ -147,6 +177,21 @@ public class NetMonPreferences {
         return getIntPreference(NetMonPreferences.PREF_UPDATE_INTERVAL, NetMonPreferences.PREF_UPDATE_INTERVAL_DEFAULT);
     }
 
+    /**
+     * @return the longest interval, in millis, the {@link AdaptiveScheduler} may wait between log entries when nothing changes.
+     */
+    public int getAdaptiveMaxInterval() {
+        return getIntPreference(NetMonPreferences.PREF_ADAPTIVE_MAX_INTERVAL, NetMonPreferences.PREF_ADAPTIVE_MAX_INTERVAL_DEFAULT);
+    }
+
+    /**
+     * @return what the scheduler should do when a test run lasts longer than the interval.
+     */
+    public OverrunPolicy getOverrunPolicy() {
+        String value = mSharedPrefs.getString(PREF_OVERRUN_POLICY, PREF_OVERRUN_POLICY_DEFAULT);
+        return OverrunPolicy.valueOf(value);
+    }
+
     /**
      * @return true if we're polling quickly
      */
@@ -209,6 +254,13 @@ public class NetMonPreferences {
         setIntPreference(NetMonPreferences.PREF_DB_RECORD_COUNT, recordCount);
     }
 
+    /**
+     * @return the age, in days, after which rows are moved from the database to the archive, or -1 if rows shouldn't be archived.
+     */
+    public int getArchiveAge() {
+        return getIntPreference(NetMonPreferences.PREF_ARCHIVE_AGE, NetMonPreferences.PREF_ARCHIVE_AGE_DEFAULT);
+    }
+
     /**
      * @return true if we should do connection tests with each test.
      */
@@ -223,6 +275,20 @@ public class NetMonPreferences {
         setBooleanPreference(NetMonPreferences.PREF_ENABLE_CONNECTION_TEST, enabled);
     }
 
+    /**
+     * @return true if we should call all the data sources at the same time, instead of one after the other.
+     */
+    public boolean isConcurrentDataSourcesEnabled() {
+        return mSharedPrefs.getBoolean(NetMonPreferences.PREF_CONCURRENT_DATA_SOURCES, NetMonPreferences.PREF_CONCURRENT_DATA_SOURCES_DEFAULT);
+    }
+
+    /**
+     * @return true if a sample identical to the previous one should update the previous row, instead of being inserted as a new row.
+     */
+    public boolean isChangeOnlyRecordingEnabled() {
+        return mSharedPrefs.getBoolean(NetMonPreferences.PREF_CHANGE_ONLY_RECORDING, NetMonPreferences.PREF_CHANGE_ONLY_RECORDING_DEFAULT);
+    }
+
     /**
      * @return the format in which numeric cell id fields should be displayed and exported.
      */
@@ -241,6 +307,7 @@ public class NetMonPreferences {
         if (updateInterval == PREF_UPDATE_ON_NETWORK_CHANGE) return NetworkChangeScheduler.class;
         String schedulerPref = mSharedPrefs.getString(NetMonPreferences.PREF_SCHEDULER, NetMonPreferences.PREF_SCHEDULER_DEFAULT);
         if (schedulerPref.equals(AlarmManagerScheduler.class.getSimpleName())) return AlarmManagerScheduler.class;
+        else if (schedulerPref.equals(AdaptiveScheduler.class.getSimpleName())) return AdaptiveScheduler.class;
         else
             return ExecutorServiceScheduler.class;
     }
@@ -52,9 +52,14 @@ public class SortPreferences {
         // @formatter:off
         // Special case if the sort field is timestamp: don't need to check for null 
         // and don't need to add timestamp as a second sort column.d
+        // In descending order, SQLite already puts nulls at the end: without the null check,
+        // the query can use an index on the sort column and the timestamp.
         final String orderBy;
         if(sortColumnName.equals(NetMonColumns.TIMESTAMP))
             orderBy = sortColumnName + " " + sortOrder;
+        else if (sortOrder == SortOrder.DESC)
+            orderBy = sortColumnName + " " + sortOrder.name() + ", "
+            + NetMonColumns.TIMESTAMP + " " + SortOrder.DESC.name();
         else
             orderBy = sortColumnName + " IS NULL, " 
             + sortColumnName + " " + sortOrder.name() +", "
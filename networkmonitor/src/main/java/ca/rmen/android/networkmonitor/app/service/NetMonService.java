@@ -26,7 +26,6 @@ package ca.rmen.android.networkmonitor.app.service;
 
 import android.app.Notification;
 import android.app.Service;
-import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences.OnSharedPreferenceChangeListener;
@@ -35,14 +34,17 @@ import android.os.PowerManager;
 import android.os.PowerManager.WakeLock;
 import android.preference.PreferenceManager;
 
+import org.greenrobot.eventbus.EventBus;
+
 import ca.rmen.android.networkmonitor.Constants;
-import ca.rmen.android.networkmonitor.app.dbops.backend.clean.DBPurge;
+import ca.rmen.android.networkmonitor.app.bus.NetMonBus;
 import ca.rmen.android.networkmonitor.app.email.ReportEmailer;
 import ca.rmen.android.networkmonitor.app.prefs.NetMonPreferences;
 import ca.rmen.android.networkmonitor.app.prefs.PreferencesMigrator;
 import ca.rmen.android.networkmonitor.app.service.datasources.NetMonDataSources;
 import ca.rmen.android.networkmonitor.app.service.scheduler.Scheduler;
 import ca.rmen.android.networkmonitor.provider.NetMonColumns;
+import ca.rmen.android.networkmonitor.provider.Sample;
 import ca.rmen.android.networkmonitor.util.Log;
 
 /**
@@ -57,6 +59,7 @@ public class NetMonService extends Service {
     private NetMonDataSources mDataSources;
     private ReportEmailer mReportEmailer;
     private Scheduler mScheduler;
+    private SampleWriter mSampleWriter;
 
     @Override
     public IBinder onBind(Intent intent) {
@@ -79,6 +82,9 @@ public class NetMonService extends Service {
 
         mReportEmailer = new ReportEmailer(this);
 
+        mSampleWriter = new SampleWriter(this);
+        mSampleWriter.start();
+
         PreferenceManager.getDefaultSharedPreferences(this).registerOnSharedPreferenceChangeListener(mSharedPreferenceListener);
 
         scheduleTests();
@@ -97,6 +103,7 @@ public class NetMonService extends Service {
         mDataSources.onDestroy();
         NetMonNotification.dismissNotifications(this);
         mScheduler.onDestroy();
+        mSampleWriter.stop();
         super.onDestroy();
     }
 
@@ -154,14 +161,7 @@ public class NetMonService extends Service {
                     mLastWakeUp = now;
                 }
 
-                // Insert this ContentValues into the DB.
-                Log.v(TAG, "Inserting data into DB");
-                // Put all the data we want to log, into a ContentValues.
-                ContentValues values = new ContentValues();
-                values.put(NetMonColumns.TIMESTAMP, System.currentTimeMillis());
-                values.putAll(mDataSources.getContentValues());
-                getContentResolver().insert(NetMonColumns.CONTENT_URI, values);
-                new DBPurge(NetMonService.this, prefs.getDBRecordCount()).execute(null);
+                collectSample(mDataSources, mSampleWriter, System.currentTimeMillis());
 
                 // Send mail
                 mReportEmailer.send();
@@ -175,6 +175,20 @@ public class NetMonService extends Service {
         }
     };
 
+    /**
+     * Put all the data we want to log into a Sample, and queue it to be written to the DB.
+     */
+    static void collectSample(NetMonDataSources dataSources, SampleWriter sampleWriter, long timestamp) {
+        Sample sample = sampleWriter.obtainSample();
+        sample.put(NetMonColumns.TIMESTAMP, timestamp);
+        boolean isSnapshotChanged = dataSources.fillSample(sample);
+        EventBus bus = NetMonBus.getBus();
+        if (bus.hasSubscriberForEvent(NetMonBus.SampleCollected.class)) bus.post(new NetMonBus.SampleCollected(sample, isSnapshotChanged));
+        // The writer thread will insert this Sample into the DB.
+        Log.v(TAG, "Queuing data for the DB");
+        sampleWriter.enqueue(sample);
+    }
+
     private final OnSharedPreferenceChangeListener mSharedPreferenceListener = (sharedPreferences, key) -> {
         Log.v(TAG, "onSharedPreferenceChanged: " + key);
         // Listen for the user disabling the service
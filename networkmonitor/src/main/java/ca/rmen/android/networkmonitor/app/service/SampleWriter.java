@@ -0,0 +1,359 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ *
+ * Copyright (C) 2016 Carmen Alvarez (c@rmen.ca)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.rmen.android.networkmonitor.app.service;
+
+import android.content.Context;
+import android.os.SystemClock;
+
+import org.greenrobot.eventbus.Subscribe;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import ca.rmen.android.networkmonitor.Constants;
+import ca.rmen.android.networkmonitor.app.bus.NetMonBus;
+import ca.rmen.android.networkmonitor.app.dbops.backend.archive.DBArchive;
+import ca.rmen.android.networkmonitor.app.dbops.backend.clean.DBRetention;
+import ca.rmen.android.networkmonitor.app.prefs.NetMonPreferences;
+import ca.rmen.android.networkmonitor.provider.NetMonColumns;
+import ca.rmen.android.networkmonitor.provider.NetMonDao;
+import ca.rmen.android.networkmonitor.provider.Sample;
+import ca.rmen.android.networkmonitor.util.Log;
+
+/**
+ * Persists the samples collected by {@link NetMonService}, on a dedicated thread.
+ *
+ * Samples are added to a bounded queue, so collecting a sample never waits for the DB. The writer thread takes the samples off the queue, and
+ * inserts them in batches, each batch in a single transaction. A batch is committed when it contains {@link #MAX_BATCH_SIZE} samples, or when its
+ * first sample has waited {@link #MAX_BATCH_DELAY_MS}. Once written, the samples are cleared and can be obtained again with {@link #obtainSample()}.
+ *
+ * If the user only wants to log changes, a sample identical to the previous one (except for the timestamp) isn't inserted: the previous row's
+ * {@link NetMonColumns#LAST_SEEN_TIMESTAMP} and {@link NetMonColumns#REPEAT_COUNT} are updated instead.
+ *
+ * While an exclusive DB operation (import, compress, purge) is in progress, the writer doesn't write: the samples stay in the queue. If the queue
+ * fills up, the oldest samples are dropped. The operation only starts once the batch being written, if any, is committed. Old rows are moved to the archive after a batch is written, except while any DB operation is in
+ * progress: an export reads both the archive and the DB.
+ */
+class SampleWriter {
+    private static final String TAG = Constants.TAG + SampleWriter.class.getSimpleName();
+
+    private static final int QUEUE_CAPACITY = 1000;
+    private static final int MAX_BATCH_SIZE = 50;
+    private static final long MAX_BATCH_DELAY_MS = 5000;
+    private static final String[] MERGE_COLUMNS = new String[] { NetMonColumns.TIMESTAMP, NetMonColumns.LAST_SEEN_TIMESTAMP, NetMonColumns.REPEAT_COUNT };
+
+    private final Context mContext;
+    private final DBRetention mRetention;
+    private final DBArchive mArchive;
+    private final NetMonDao mDao;
+    private final BlockingQueue<Sample> mQueue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    // Samples which have been written, and can be reused.
+    private final BlockingQueue<Sample> mFreeSamples = new ArrayBlockingQueue<>(MAX_BATCH_SIZE * 2);
+    private Thread mWriterThread;
+    private boolean mIsDBOperationInProgress;
+    // True while the writer thread writes a batch.
+    private boolean mIsWriting;
+    private volatile boolean mIsArchivingPaused;
+
+    // Only used by the writer thread.
+    private final List<Sample> mBatch = new ArrayList<>(MAX_BATCH_SIZE);
+    private final List<Sample> mRows = new ArrayList<>(MAX_BATCH_SIZE);
+    // The last row we inserted, when only logging changes.
+    private Sample mLastRow;
+    private long mLastRowId = -1;
+    private volatile boolean mIsLastRowStale;
+
+    SampleWriter(Context context) {
+        mContext = context.getApplicationContext();
+        mDao = new NetMonDao(mContext);
+        mRetention = new DBRetention(mContext, mDao);
+        mArchive = new DBArchive(mContext, mDao);
+    }
+
+    /**
+     * Start the writer thread.
+     */
+    void start() {
+        Log.v(TAG, "start");
+        NetMonBus.getBus().register(this);
+        mWriterThread = new Thread(this::writeSamples, TAG);
+        mWriterThread.start();
+    }
+
+    /**
+     * Stop the writer thread, and wait for it to finish. The samples still in the queue are written before the thread finishes, unless an exclusive
+     * DB operation is in progress: they are dropped then. Nothing is written after this returns.
+     */
+    void stop() {
+        Log.v(TAG, "stop");
+        if (mWriterThread == null) {
+            // We were only used with flush()
+            flush();
+            mDao.close();
+            return;
+        }
+        mWriterThread.interrupt();
+        try {
+            mWriterThread.join();
+        } catch (InterruptedException e) {
+            Log.w(TAG, "Interrupted while waiting for the writer thread", e);
+            Thread.currentThread().interrupt();
+        }
+        // Only now: a DB operation starting until the thread finished has to wait for its last write.
+        NetMonBus.getBus().unregister(this);
+    }
+
+    /**
+     * Write the samples in the queue now, on the calling thread, in batches of at most {@link #MAX_BATCH_SIZE} samples.
+     * This is for the tests, which don't start the writer thread: this must not be called after {@link #start()}.
+     */
+    void flush() {
+        while (mQueue.drainTo(mBatch, MAX_BATCH_SIZE) > 0) {
+            write(mBatch);
+            mBatch.clear();
+        }
+    }
+
+    /**
+     * @return an empty sample, to fill and pass to {@link #enqueue(Sample)}.
+     */
+    Sample obtainSample() {
+        Sample sample = mFreeSamples.poll();
+        return sample == null ? new Sample() : sample;
+    }
+
+    /**
+     * Add a sample to be written to the DB.  The sample must not be modified after this call.
+     */
+    void enqueue(Sample sample) {
+        while (!mQueue.offer(sample)) {
+            Sample droppedSample = mQueue.poll();
+            if (droppedSample != null) {
+                Log.w(TAG, "Queue full: dropped the sample from " + droppedSample.getLong(NetMonColumns.TIMESTAMP));
+                recycle(droppedSample);
+            }
+        }
+    }
+
+    @SuppressWarnings("unused")
+    @Subscribe(sticky = true)
+    public void onDBOperationStarted(NetMonBus.DBOperationStarted event) {
+        Log.d(TAG, "onDBOperationStarted() called with " + "event = [" + event + "]");
+        mIsArchivingPaused = true;
+        if (event.isExclusive) {
+            synchronized (this) {
+                mIsDBOperationInProgress = true;
+                // The operation starts when we return: let the writer thread commit the batch it's writing first.
+                while (mIsWriting) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Log.w(TAG, "Interrupted while waiting for the writer thread", e);
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings("unused")
+    @Subscribe
+    public void onDBOperationEnded(NetMonBus.DBOperationEnded event) {
+        Log.d(TAG, "onDBOperationEnded() called with " + "event = [" + event + "]");
+        mIsArchivingPaused = false;
+        if (event.isDataChanged) {
+            mRetention.invalidate();
+            mArchive.invalidate();
+            mIsLastRowStale = true;
+        }
+        synchronized (this) {
+            mIsDBOperationInProgress = false;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Loop until we're stopped: collect a batch of samples from the queue and write it.
+     */
+    private void writeSamples() {
+        try {
+            while (true) {
+                mBatch.add(mQueue.take());
+                long batchDeadline = SystemClock.elapsedRealtime() + MAX_BATCH_DELAY_MS;
+                while (mBatch.size() < MAX_BATCH_SIZE) {
+                    long timeout = batchDeadline - SystemClock.elapsedRealtime();
+                    if (timeout <= 0) break;
+                    Sample sample = mQueue.poll(timeout, TimeUnit.MILLISECONDS);
+                    if (sample == null) break;
+                    mBatch.add(sample);
+                }
+                waitForDBOperation();
+                try {
+                    write(mBatch);
+                } finally {
+                    endWriting();
+                }
+                mBatch.clear();
+            }
+        } catch (InterruptedException e) {
+            Log.v(TAG, "Writer thread stopped");
+        }
+        // Write what's left, if we can.
+        mQueue.drainTo(mBatch);
+        if (startWriting()) {
+            try {
+                write(mBatch);
+            } finally {
+                endWriting();
+            }
+        } else if (!mBatch.isEmpty()) {
+            Log.w(TAG, "A DB operation is in progress: dropped " + mBatch.size() + " samples");
+            for (Sample sample : mBatch)
+                recycle(sample);
+        }
+        mBatch.clear();
+        mDao.close();
+    }
+
+    /**
+     * Wait until no exclusive DB operation is in progress, and record that we're writing.
+     */
+    private synchronized void waitForDBOperation() throws InterruptedException {
+        while (mIsDBOperationInProgress) {
+            Log.v(TAG, "Waiting for a DB operation to finish. " + mQueue.size() + " samples in the queue");
+            wait();
+        }
+        mIsWriting = true;
+    }
+
+    /**
+     * Record that we're writing, unless an exclusive DB operation is in progress.
+     *
+     * @return false if a DB operation is in progress.
+     */
+    private synchronized boolean startWriting() {
+        if (mIsDBOperationInProgress) return false;
+        mIsWriting = true;
+        return true;
+    }
+
+    /**
+     * Let a DB operation waiting for the batch being written start.
+     */
+    private synchronized void endWriting() {
+        mIsWriting = false;
+        notifyAll();
+    }
+
+    /**
+     * Insert the given samples in a single transaction, and delete old rows if needed.
+     */
+    private void write(List<Sample> batch) {
+        if (batch.isEmpty()) return;
+        Log.v(TAG, "Writing " + batch.size() + " samples");
+        try {
+            boolean isChangeOnlyRecordingEnabled = NetMonPreferences.getInstance(mContext).isChangeOnlyRecordingEnabled();
+            List<Sample> rows;
+            if (isChangeOnlyRecordingEnabled) {
+                rows = mergeRepeatedSamples(batch);
+            } else {
+                rows = batch;
+                setLastRow(null, -1);
+            }
+            if (rows.isEmpty()) return;
+            long lastRowId = mDao.insert(rows);
+            Sample lastRow = rows.get(rows.size() - 1);
+            for (int i = 0; i < rows.size() - 1; i++)
+                recycle(rows.get(i));
+            if (isChangeOnlyRecordingEnabled) setLastRow(lastRow, lastRowId);
+            else recycle(lastRow);
+            mRetention.onRowsInserted(rows.size());
+            if (!mIsArchivingPaused && mArchive.onRowsInserted() > 0) {
+                mRetention.invalidate();
+                // The last row may have been archived, if it was repeated for longer than the archive age.
+                mIsLastRowStale = true;
+            }
+        } catch (Throwable t) {
+            Log.w(TAG, "Error writing samples: " + t.getMessage(), t);
+            mLastRow = null;
+        } finally {
+            mRows.clear();
+            // One notification for the inserts, updates and deletes of the batch.
+            mDao.notifyChanges();
+        }
+    }
+
+    /**
+     * Merge each sample which is identical to the previous one into the previous one.  If the first samples are identical to the last row
+     * we inserted, that row is updated in the DB.
+     *
+     * @return the rows to insert.
+     */
+    private List<Sample> mergeRepeatedSamples(List<Sample> batch) {
+        if (mIsLastRowStale) {
+            mIsLastRowStale = false;
+            setLastRow(null, -1);
+        }
+        boolean isLastRowExtended = false;
+        for (int i = 0; i < batch.size(); i++) {
+            Sample sample = batch.get(i);
+            Sample previousRow = mRows.isEmpty() ? mLastRow : mRows.get(mRows.size() - 1);
+            if (previousRow != null && previousRow.hasSameValues(sample, MERGE_COLUMNS)) {
+                long repeatCount = previousRow.getLong(NetMonColumns.REPEAT_COUNT);
+                previousRow.put(NetMonColumns.REPEAT_COUNT, repeatCount + 1);
+                previousRow.put(NetMonColumns.LAST_SEEN_TIMESTAMP, sample.getLong(NetMonColumns.TIMESTAMP));
+                if (mRows.isEmpty()) isLastRowExtended = true;
+                recycle(sample);
+            } else {
+                mRows.add(sample);
+            }
+        }
+        if (isLastRowExtended) {
+            boolean isUpdated = mDao.updateRepeatCount(mLastRowId, mLastRow.getLong(NetMonColumns.LAST_SEEN_TIMESTAMP),
+                    mLastRow.getLong(NetMonColumns.REPEAT_COUNT));
+            // If the last row has been deleted in the meantime, insert it again.
+            if (!isUpdated) {
+                mRows.add(0, mLastRow);
+                mLastRow = null;
+            }
+        }
+        Log.v(TAG, "Merged " + batch.size() + " samples into " + mRows.size() + " new rows");
+        return mRows;
+    }
+
+    private void setLastRow(Sample lastRow, long lastRowId) {
+        if (mLastRow != null && mLastRow != lastRow) recycle(mLastRow);
+        mLastRow = lastRow;
+        mLastRowId = lastRowId;
+    }
+
+    private void recycle(Sample sample) {
+        sample.clear();
+        mFreeSamples.offer(sample);
+    }
+}
@@ -24,57 +24,78 @@
 package ca.rmen.android.networkmonitor.app.service.datasources;
 
 import android.annotation.TargetApi;
-import android.content.ContentValues;
 import android.content.Context;
+import android.content.IntentFilter;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
 import android.os.Build;
+import android.telephony.PhoneStateListener;
+import android.telephony.TelephonyManager;
 import ca.rmen.android.networkmonitor.util.Log;
 
 import ca.rmen.android.networkmonitor.Constants;
 import ca.rmen.android.networkmonitor.provider.NetMonColumns;
+import ca.rmen.android.networkmonitor.provider.Sample;
 import ca.rmen.android.networkmonitor.util.TelephonyUtil;
 
 /**
  * Retrieves information from the currently active {@link NetworkInfo}.
+ * This is read again when the connectivity changes, or when the mobile data network type changes (which doesn't always change the connectivity).
  */
-public class ActiveNetworkInfoDataSource implements NetMonDataSource {
+public class ActiveNetworkInfoDataSource extends SnapshotDataSource {
     private static final String TAG = Constants.TAG + ActiveNetworkInfoDataSource.class.getSimpleName();
-    private Context mContext;
     private ConnectivityManager mConnectivityManager;
+    private TelephonyManager mTelephonyManager;
 
     @Override
     public void onCreate(Context context) {
         Log.v(TAG, "onCreate");
-        mContext = context;
         mConnectivityManager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        super.onCreate(context);
+        mTelephonyManager = (TelephonyManager) context.getSystemService(Context.TELEPHONY_SERVICE);
+        mTelephonyManager.listen(mPhoneStateListener, PhoneStateListener.LISTEN_DATA_CONNECTION_STATE);
     }
 
     @Override
-    public void onDestroy() {}
+    public void onDestroy() {
+        Log.v(TAG, "onDestroy");
+        if (mTelephonyManager != null) mTelephonyManager.listen(mPhoneStateListener, PhoneStateListener.LISTEN_NONE);
+        super.onDestroy();
+    }
 
     @Override
-    public ContentValues getContentValues() {
-        Log.v(TAG, "getContentValues");
-        ContentValues values = new ContentValues();
+    protected IntentFilter getIntentFilter() {
+        return new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION);
+    }
+
+    @Override
+    protected void readSnapshot(Sample snapshot) {
+        Log.v(TAG, "readSnapshot");
 
         NetworkInfo activeNetworkInfo = mConnectivityManager.getActiveNetworkInfo();
-        if (activeNetworkInfo == null) return values;
-        String networkType = TelephonyUtil.getNetworkType(mContext);
-        values.put(NetMonColumns.NETWORK_TYPE, networkType);
-        values.put(NetMonColumns.IS_ROAMING, activeNetworkInfo.isRoaming());
-        values.put(NetMonColumns.IS_AVAILABLE, activeNetworkInfo.isAvailable());
-        values.put(NetMonColumns.IS_CONNECTED, activeNetworkInfo.isConnected());
-        values.put(NetMonColumns.IS_FAILOVER, activeNetworkInfo.isFailover());
-        values.put(NetMonColumns.DETAILED_STATE, activeNetworkInfo.getDetailedState().toString());
-        values.put(NetMonColumns.REASON, activeNetworkInfo.getReason());
-        values.put(NetMonColumns.EXTRA_INFO, activeNetworkInfo.getExtraInfo());
-        if (Build.VERSION.SDK_INT >= 16) values.put(NetMonColumns.IS_NETWORK_METERED, isActiveNetworkMetered());
-        return values;
+        if (activeNetworkInfo == null) return;
+        String networkType = TelephonyUtil.getNetworkType(getContext());
+        snapshot.put(NetMonColumns.NETWORK_TYPE, networkType);
+        snapshot.put(NetMonColumns.IS_ROAMING, activeNetworkInfo.isRoaming());
+        snapshot.put(NetMonColumns.IS_AVAILABLE, activeNetworkInfo.isAvailable());
+        snapshot.put(NetMonColumns.IS_CONNECTED, activeNetworkInfo.isConnected());
+        snapshot.put(NetMonColumns.IS_FAILOVER, activeNetworkInfo.isFailover());
+        snapshot.put(NetMonColumns.DETAILED_STATE, activeNetworkInfo.getDetailedState().toString());
+        snapshot.put(NetMonColumns.REASON, activeNetworkInfo.getReason());
+        snapshot.put(NetMonColumns.EXTRA_INFO, activeNetworkInfo.getExtraInfo());
+        if (Build.VERSION.SDK_INT >= 16) snapshot.put(NetMonColumns.IS_NETWORK_METERED, isActiveNetworkMetered());
     }
 
     @TargetApi(16)
     private boolean isActiveNetworkMetered() {
         return mConnectivityManager.isActiveNetworkMetered();
     }
+
+    private final PhoneStateListener mPhoneStateListener = new PhoneStateListener() {
+        @Override
+        public void onDataConnectionStateChanged(int state, int networkType) {
+            Log.v(TAG, "onDataConnectionStateChanged: state=" + state + ", networkType=" + networkType);
+            refresh();
+        }
+    };
 }
@@ -23,7 +23,6 @@
  */
 package ca.rmen.android.networkmonitor.app.service.datasources;
 
-import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
@@ -31,6 +30,7 @@ import android.os.BatteryManager;
 
 import ca.rmen.android.networkmonitor.Constants;
 import ca.rmen.android.networkmonitor.provider.NetMonColumns;
+import ca.rmen.android.networkmonitor.provider.Sample;
 import ca.rmen.android.networkmonitor.util.Log;
 
 /**
@@ -50,18 +50,16 @@ public class BatteryDataSource implements NetMonDataSource {
     public void onDestroy() {}
 
     @Override
-    public ContentValues getContentValues() {
-        Log.v(TAG, "getContentValues");
-        ContentValues result = new ContentValues();
+    public void fillSample(Sample sample) {
+        Log.v(TAG, "fillSample");
         IntentFilter filter = new IntentFilter(Intent.ACTION_BATTERY_CHANGED);
         Intent batteryStatus = mContext.registerReceiver(null, filter);
         if(batteryStatus != null) {
             int level = batteryStatus.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
             int scale = batteryStatus.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
             float batteryPct = level / (float) scale;
-            result.put(NetMonColumns.BATTERY_LEVEL, (int) (batteryPct * 100));
+            sample.put(NetMonColumns.BATTERY_LEVEL, (int) (batteryPct * 100));
         }
-        return result;
     }
 
 }
@@ -24,7 +24,6 @@
 package ca.rmen.android.networkmonitor.app.service.datasources;
 
 import android.annotation.TargetApi;
-import android.content.ContentValues;
 import android.content.Context;
 import android.os.Build;
 import android.telephony.CellLocation;
@@ -37,6 +36,7 @@ import ca.rmen.android.networkmonitor.util.Log;
 
 import ca.rmen.android.networkmonitor.Constants;
 import ca.rmen.android.networkmonitor.provider.NetMonColumns;
+import ca.rmen.android.networkmonitor.provider.Sample;
 import ca.rmen.android.networkmonitor.util.PermissionUtil;
 
 /**
@@ -63,12 +63,11 @@ public class CellLocationDataSource implements NetMonDataSource {
     public void onDestroy() {}
 
     @Override
-    public ContentValues getContentValues() {
-        Log.v(TAG, "getContentValues");
-        ContentValues values = new ContentValues();
+    public void fillSample(Sample sample) {
+        Log.v(TAG, "fillSample");
         if (!PermissionUtil.hasLocationPermission(mContext)) {
             Log.d(TAG, "No location permissions");
-            return values;
+            return;
         }
         CellLocation cellLocation = mTelephonyManager.getCellLocation();
         if (cellLocation instanceof GsmCellLocation) {
@@ -79,26 +78,25 @@ public class CellLocationDataSource implements NetMonDataSource {
             // Android, and the truncated one (taking only the last 2 bytes).
             int shortCid = cid > 0 ? cid & 0xFFFF : cid;
             int rnc = cid > 0 ? cid >> 16 & 0xFFFF : 0;
-            values.put(NetMonColumns.GSM_FULL_CELL_ID, cid);
-            if (rnc > 0) values.put(NetMonColumns.GSM_RNC, rnc);
-            values.put(NetMonColumns.GSM_SHORT_CELL_ID, shortCid);
-            values.put(NetMonColumns.GSM_CELL_LAC, gsmCellLocation.getLac());
-            if (Build.VERSION.SDK_INT >= 9) values.put(NetMonColumns.GSM_CELL_PSC, getPsc(gsmCellLocation));
+            sample.put(NetMonColumns.GSM_FULL_CELL_ID, cid);
+            if (rnc > 0) sample.put(NetMonColumns.GSM_RNC, rnc);
+            sample.put(NetMonColumns.GSM_SHORT_CELL_ID, shortCid);
+            sample.put(NetMonColumns.GSM_CELL_LAC, gsmCellLocation.getLac());
+            if (Build.VERSION.SDK_INT >= 9) sample.put(NetMonColumns.GSM_CELL_PSC, getPsc(gsmCellLocation));
         } else if (cellLocation instanceof CdmaCellLocation) {
             CdmaCellLocation cdmaCellLocation = (CdmaCellLocation) cellLocation;
-            values.put(NetMonColumns.CDMA_CELL_BASE_STATION_ID, cdmaCellLocation.getBaseStationId());
+            sample.put(NetMonColumns.CDMA_CELL_BASE_STATION_ID, cdmaCellLocation.getBaseStationId());
             int latitude = cdmaCellLocation.getBaseStationLatitude();
             if (latitude < Integer.MAX_VALUE) {
-                values.put(NetMonColumns.CDMA_CELL_LATITUDE, (double) latitude / CDMA_COORDINATE_DIVISOR);
+                sample.put(NetMonColumns.CDMA_CELL_LATITUDE, (double) latitude / CDMA_COORDINATE_DIVISOR);
             }
             int longitude = cdmaCellLocation.getBaseStationLongitude();
             if (longitude < Integer.MAX_VALUE) {
-                values.put(NetMonColumns.CDMA_CELL_LONGITUDE, (double) longitude / CDMA_COORDINATE_DIVISOR);
+                sample.put(NetMonColumns.CDMA_CELL_LONGITUDE, (double) longitude / CDMA_COORDINATE_DIVISOR);
             }
-            values.put(NetMonColumns.CDMA_CELL_NETWORK_ID, cdmaCellLocation.getNetworkId());
-            values.put(NetMonColumns.CDMA_CELL_SYSTEM_ID, cdmaCellLocation.getSystemId());
+            sample.put(NetMonColumns.CDMA_CELL_NETWORK_ID, cdmaCellLocation.getNetworkId());
+            sample.put(NetMonColumns.CDMA_CELL_SYSTEM_ID, cdmaCellLocation.getSystemId());
         }
-        return values;
     }
 
     @TargetApi(9)
@@ -23,7 +23,6 @@
  */
 package ca.rmen.android.networkmonitor.app.service.datasources;
 
-import android.content.ContentValues;
 import android.content.Context;
 import android.os.Build;
 import android.telephony.PhoneStateListener;
@@ -33,6 +32,7 @@ import android.telephony.TelephonyManager;
 
 import ca.rmen.android.networkmonitor.Constants;
 import ca.rmen.android.networkmonitor.provider.NetMonColumns;
+import ca.rmen.android.networkmonitor.provider.Sample;
 import ca.rmen.android.networkmonitor.util.Log;
 import ca.rmen.android.networkmonitor.util.NetMonSignalStrength;
 
@@ -68,23 +68,21 @@ public class CellSignalStrengthDataSource implements NetMonDataSource {
     }
 
     /**
-     * @return a ContentValues having the following elements: {@link NetMonColumns#CELL_SIGNAL_STRENGTH}, {@link NetMonColumns#CELL_SIGNAL_STRENGTH_DBM}, and
+     * Puts the following elements in the sample: {@link NetMonColumns#CELL_SIGNAL_STRENGTH}, {@link NetMonColumns#CELL_SIGNAL_STRENGTH_DBM}, and
      *         {@link NetMonColumns#CELL_ASU_LEVEL}. Any of these values may be absent if they could not be retrieved.
      */
     @Override
-    public ContentValues getContentValues() {
-        Log.v(TAG, "getContentValues");
-        ContentValues values = new ContentValues(5);
-        values.put(NetMonColumns.CELL_SIGNAL_STRENGTH, mLastSignalStrength);
+    public void fillSample(Sample sample) {
+        Log.v(TAG, "fillSample");
+        sample.put(NetMonColumns.CELL_SIGNAL_STRENGTH, mLastSignalStrength);
         if (mLastSignalStrengthDbm != NetMonSignalStrength.SIGNAL_STRENGTH_NONE_OR_UNKNOWN)
-            values.put(NetMonColumns.CELL_SIGNAL_STRENGTH_DBM, mLastSignalStrengthDbm);
-        values.put(NetMonColumns.CELL_ASU_LEVEL, mLastAsuLevel);
-        if (mLastBer >= 0 && mLastBer <= 7 || mLastBer == 99) values.put(NetMonColumns.GSM_BER, mLastBer);
+            sample.put(NetMonColumns.CELL_SIGNAL_STRENGTH_DBM, mLastSignalStrengthDbm);
+        sample.put(NetMonColumns.CELL_ASU_LEVEL, mLastAsuLevel);
+        if (mLastBer >= 0 && mLastBer <= 7 || mLastBer == 99) sample.put(NetMonColumns.GSM_BER, mLastBer);
         // Valid values from -3 to -19.5:
         // http://www.sharetechnote.com/html/Handbook_LTE_RSRQ.html
-        if (mLastLteRsrq <= -3) values.put(NetMonColumns.LTE_RSRQ, mLastLteRsrq);
-        //if (mLastEcio != NetMonSignalStrength.UNKNOWN) values.put(NetMonColumns.EVDO_ECIO, mLastEvdoEcio);
-        return values;
+        if (mLastLteRsrq <= -3) sample.put(NetMonColumns.LTE_RSRQ, mLastLteRsrq);
+        //if (mLastEcio != NetMonSignalStrength.UNKNOWN) sample.put(NetMonColumns.EVDO_ECIO, mLastEvdoEcio);
     }
 
     private final PhoneStateListener mPhoneStateListener = new PhoneStateListener() {
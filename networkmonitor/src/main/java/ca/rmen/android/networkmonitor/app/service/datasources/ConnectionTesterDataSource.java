@@ -34,7 +34,6 @@ import java.net.Socket;
 import java.net.URL;
 import java.net.URLConnection;
 
-import android.content.ContentValues;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.content.SharedPreferences.OnSharedPreferenceChangeListener;
@@ -46,6 +45,7 @@ import ca.rmen.android.networkmonitor.Constants;
 import ca.rmen.android.networkmonitor.app.prefs.NetMonPreferences;
 import ca.rmen.android.networkmonitor.app.service.NetMonNotification;
 import ca.rmen.android.networkmonitor.provider.NetMonColumns;
+import ca.rmen.android.networkmonitor.provider.Sample;
 import ca.rmen.android.networkmonitor.util.Log;
 import ca.rmen.android.networkmonitor.util.TelephonyUtil;
 
@@ -104,24 +104,22 @@ public class ConnectionTesterDataSource implements NetMonDataSource {
      * @return Run the different connection tests and return their results. The keys are db column names and values the results of the tests as strings.
      */
     @Override
-    public ContentValues getContentValues() {
-        Log.v(TAG, "getContentValues");
-        ContentValues values = new ContentValues(2);
+    public void fillSample(Sample sample) {
+        Log.v(TAG, "fillSample");
         if (!NetMonPreferences.getInstance(mContext).isConnectionTestEnabled()) {
             Log.v(TAG, "Not doing data test");
-            return values;
+            return;
         }
         NetworkTestResult socketTestResult = getSocketTestResult();
         NetworkTestResult httpTestResult = getHttpTestResult();
-        values.put(NetMonColumns.SOCKET_CONNECTION_TEST, socketTestResult.name());
-        values.put(NetMonColumns.HTTP_CONNECTION_TEST, httpTestResult.name());
+        sample.put(NetMonColumns.SOCKET_CONNECTION_TEST, socketTestResult.name());
+        sample.put(NetMonColumns.HTTP_CONNECTION_TEST, httpTestResult.name());
         if ((socketTestResult == NetworkTestResult.FAIL || httpTestResult == NetworkTestResult.FAIL) && shouldHaveDataConnection()) {
             Log.v(TAG, "A connection test failed even though we expect to have a data connection");
             NetMonNotification.showFailedTestNotification(mContext);
         } else {
             NetMonNotification.dismissFailedTestNotification(mContext);
         }
-        return values;
     }
 
     /**
@@ -27,7 +27,6 @@ import android.annotation.SuppressLint;
 import android.annotation.TargetApi;
 import android.app.usage.NetworkStats;
 import android.app.usage.NetworkStatsManager;
-import android.content.ContentValues;
 import android.content.Context;
 import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageManager;
@@ -43,6 +42,7 @@ import java.util.List;
 import ca.rmen.android.networkmonitor.Constants;
 import ca.rmen.android.networkmonitor.app.prefs.NetMonPreferences;
 import ca.rmen.android.networkmonitor.provider.NetMonColumns;
+import ca.rmen.android.networkmonitor.provider.Sample;
 import ca.rmen.android.networkmonitor.util.Log;
 import ca.rmen.android.networkmonitor.util.PermissionUtil;
 
@@ -78,24 +78,23 @@ public class ConsumingAppDataSource implements NetMonDataSource {
     }
 
     @Override
-    public ContentValues getContentValues() {
-        Log.v(TAG, "getContentValues");
-        ContentValues values = new ContentValues(2);
+    public void fillSample(Sample sample) {
+        Log.v(TAG, "fillSample");
         if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
-            return values;
+            return;
         }
 
         if (mPrefs.isFastPollingEnabled()) {
-            return values;
+            return;
         }
 
         if (!PermissionUtil.hasUsageStatsPermission(mContext)) {
-            return values;
+            return;
         }
 
         NetworkInfo activeNetworkInfo = mConnectivityManager.getActiveNetworkInfo();
         if (activeNetworkInfo == null) {
-            return values;
+            return;
         }
 
         List<ApplicationInfo> packages = mPackageManager.getInstalledApplications(
@@ -114,11 +113,10 @@ public class ConsumingAppDataSource implements NetMonDataSource {
         }
 
         if (!TextUtils.isEmpty(processName)) {
-            values.put(NetMonColumns.MOST_CONSUMING_APP_NAME, processName);
-            values.put(NetMonColumns.MOST_CONSUMING_APP_BYTES, maxBytes);
+            sample.put(NetMonColumns.MOST_CONSUMING_APP_NAME, processName);
+            sample.put(NetMonColumns.MOST_CONSUMING_APP_BYTES, maxBytes);
         }
-        Log.v(TAG, "getContentValues end");
-        return values;
+        Log.v(TAG, "fillSample end");
     }
 
     @SuppressLint("HardwareIds")
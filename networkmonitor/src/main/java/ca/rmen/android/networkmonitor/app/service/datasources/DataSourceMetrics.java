@@ -0,0 +1,140 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ *
+ * Copyright (C) 2016 Carmen Alvarez (c@rmen.ca)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.rmen.android.networkmonitor.app.service.datasources;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.SQLException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import ca.rmen.android.networkmonitor.Constants;
+import ca.rmen.android.networkmonitor.provider.DataSourceStatsColumns;
+import ca.rmen.android.networkmonitor.provider.NetMonDatabase;
+import ca.rmen.android.networkmonitor.util.Log;
+
+/**
+ * Keeps track of how long each {@link NetMonDataSource} takes to provide its values, and how often it fails or misses its deadline.
+ * The durations are kept in a rolling window of the most recent calls, from which we compute the median, 95th percentile and maximum.
+ */
+class DataSourceMetrics {
+    private static final String TAG = Constants.TAG + DataSourceMetrics.class.getSimpleName();
+    // The number of most recent calls we keep for each data source.
+    private static final int WINDOW_SIZE = 100;
+
+    private final Map<String, SourceMetrics> mMetrics = new LinkedHashMap<>();
+
+    /**
+     * Record a call to the given data source, which took the given duration, and which may have failed.
+     */
+    synchronized void recordCall(NetMonDataSource source, long durationMs, boolean isError) {
+        SourceMetrics metrics = getMetrics(source);
+        metrics.durations[metrics.callCount % WINDOW_SIZE] = durationMs;
+        metrics.callCount++;
+        if (isError) metrics.errorCount++;
+    }
+
+    /**
+     * Record that the given data source didn't provide its values before its deadline.
+     */
+    synchronized void recordTimeout(NetMonDataSource source) {
+        getMetrics(source).timeoutCount++;
+    }
+
+    /**
+     * Add the counts since the previous save to the data source statistics in the DB, and replace the durations with the current ones.
+     */
+    void save(Context context) {
+        List<ContentValues> stats = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            for (Map.Entry<String, SourceMetrics> entry : mMetrics.entrySet()) {
+                SourceMetrics metrics = entry.getValue();
+                int windowCount = Math.min(metrics.callCount, WINDOW_SIZE);
+                long[] durations = Arrays.copyOf(metrics.durations, windowCount);
+                Arrays.sort(durations);
+                ContentValues values = new ContentValues(8);
+                values.put(DataSourceStatsColumns.DATA_SOURCE_NAME, entry.getKey());
+                values.put(DataSourceStatsColumns.CALL_COUNT, metrics.callCount - metrics.savedCallCount);
+                values.put(DataSourceStatsColumns.ERROR_COUNT, metrics.errorCount - metrics.savedErrorCount);
+                values.put(DataSourceStatsColumns.TIMEOUT_COUNT, metrics.timeoutCount - metrics.savedTimeoutCount);
+                values.put(DataSourceStatsColumns.DURATION_P50, getPercentile(durations, 50));
+                values.put(DataSourceStatsColumns.DURATION_P95, getPercentile(durations, 95));
+                values.put(DataSourceStatsColumns.DURATION_MAX, windowCount == 0 ? 0 : durations[windowCount - 1]);
+                values.put(DataSourceStatsColumns.TIMESTAMP, now);
+                stats.add(values);
+            }
+        }
+        try {
+            NetMonDatabase.addDataSourceStats(context, stats);
+        } catch (SQLException e) {
+            // The counts which we couldn't add will be added at the next save.
+            Log.w(TAG, "Could not save the data source stats: " + e.getMessage(), e);
+            return;
+        }
+        synchronized (this) {
+            for (ContentValues values : stats) {
+                SourceMetrics metrics = mMetrics.get(values.getAsString(DataSourceStatsColumns.DATA_SOURCE_NAME));
+                metrics.savedCallCount += values.getAsInteger(DataSourceStatsColumns.CALL_COUNT);
+                metrics.savedErrorCount += values.getAsInteger(DataSourceStatsColumns.ERROR_COUNT);
+                metrics.savedTimeoutCount += values.getAsInteger(DataSourceStatsColumns.TIMEOUT_COUNT);
+            }
+        }
+    }
+
+    private SourceMetrics getMetrics(NetMonDataSource source) {
+        String name = source.getClass().getSimpleName();
+        SourceMetrics metrics = mMetrics.get(name);
+        if (metrics == null) {
+            metrics = new SourceMetrics();
+            mMetrics.put(name, metrics);
+        }
+        return metrics;
+    }
+
+    /**
+     * @param sortedValues values sorted in ascending order
+     * @return the value below which the given percentage of values fall.
+     */
+    private static long getPercentile(long[] sortedValues, int percentile) {
+        if (sortedValues.length == 0) return 0;
+        int index = (int) Math.ceil(percentile / 100.0 * sortedValues.length) - 1;
+        return sortedValues[Math.max(0, index)];
+    }
+
+    private static class SourceMetrics {
+        final long[] durations = new long[WINDOW_SIZE];
+        int callCount;
+        int errorCount;
+        int timeoutCount;
+        // The counts which are already in the DB.
+        int savedCallCount;
+        int savedErrorCount;
+        int savedTimeoutCount;
+    }
+}
@@ -24,13 +24,9 @@
  */
 package ca.rmen.android.networkmonitor.app.service.datasources;
 
-import android.content.ContentValues;
 import android.content.Context;
 
-import java.util.Locale;
-
 import ca.rmen.android.networkmonitor.Constants;
-import ca.rmen.android.networkmonitor.R;
 import ca.rmen.android.networkmonitor.app.speedtest.SpeedTestDownload;
 import ca.rmen.android.networkmonitor.app.speedtest.SpeedTestDownloadConfig;
 import ca.rmen.android.networkmonitor.app.speedtest.SpeedTestExecutionDecider;
@@ -38,6 +34,7 @@ import ca.rmen.android.networkmonitor.app.speedtest.SpeedTestPreferences;
 import ca.rmen.android.networkmonitor.app.speedtest.SpeedTestResult;
 import ca.rmen.android.networkmonitor.app.speedtest.SpeedTestResult.SpeedTestStatus;
 import ca.rmen.android.networkmonitor.provider.NetMonColumns;
+import ca.rmen.android.networkmonitor.provider.Sample;
 import ca.rmen.android.networkmonitor.util.Log;
 
 /**
@@ -48,7 +45,6 @@ public class DownloadSpeedTestDataSource implements NetMonDataSource {
 
     private Context mContext;
     private SpeedTestPreferences mPreferences;
-    private String mDisabledValue;
     private SpeedTestExecutionDecider mSpeedTestExecutionDecider;
 
     @Override
@@ -56,7 +52,6 @@ public class DownloadSpeedTestDataSource implements NetMonDataSource {
         Log.v(TAG, "onCreate");
         mContext = context;
         mPreferences = SpeedTestPreferences.getInstance(context);
-        mDisabledValue = context.getString(R.string.speed_test_disabled);
         mSpeedTestExecutionDecider = new SpeedTestExecutionDecider(context);
     }
 
@@ -66,19 +61,18 @@ public class DownloadSpeedTestDataSource implements NetMonDataSource {
     }
 
     @Override
-    public ContentValues getContentValues() {
-        Log.v(TAG, "getContentValues");
-        ContentValues values = new ContentValues();
+    public void fillSample(Sample sample) {
+        Log.v(TAG, "fillSample");
 
         if (mSpeedTestExecutionDecider.shouldExecute()) {
             SpeedTestDownloadConfig downloadConfig = mPreferences.getDownloadConfig(mContext);
-            if (!downloadConfig.isValid()) return values;
+            if (!downloadConfig.isValid()) return;
             SpeedTestResult result = SpeedTestDownload.download(downloadConfig);
             mPreferences.setLastDownloadResult(result);
-            if (result.status == SpeedTestStatus.SUCCESS) values.put(NetMonColumns.DOWNLOAD_SPEED, String.format(Locale.getDefault(), "%.3f", result.getSpeedMbps()));
+            sample.put(NetMonColumns.DOWNLOAD_SPEED_STATUS, result.status.name());
+            if (result.status == SpeedTestStatus.SUCCESS) sample.put(NetMonColumns.DOWNLOAD_SPEED, result.getSpeedMbps());
         } else {
-            values.put(NetMonColumns.DOWNLOAD_SPEED, mDisabledValue);
+            sample.put(NetMonColumns.DOWNLOAD_SPEED_STATUS, SpeedTestStatus.SKIPPED.name());
         }
-        return values;
     }
 }
@@ -23,7 +23,6 @@
  */
 package ca.rmen.android.networkmonitor.app.service.datasources;
 
-import android.content.ContentValues;
 import android.content.Context;
 import android.telephony.TelephonyManager;
 
@@ -32,6 +31,7 @@ import ca.rmen.android.networkmonitor.util.Log;
 
 import ca.rmen.android.networkmonitor.Constants;
 import ca.rmen.android.networkmonitor.provider.NetMonColumns;
+import ca.rmen.android.networkmonitor.provider.Sample;
 
 /**
  * Retrieves attributes of the mobile data connection.
@@ -51,13 +51,11 @@ public class MobileDataConnectionDataSource implements NetMonDataSource {
     public void onDestroy() {}
 
     @Override
-    public ContentValues getContentValues() {
-        Log.v(TAG, "getContentValues");
-        ContentValues values = new ContentValues(3);
-        values.put(NetMonColumns.MOBILE_DATA_NETWORK_TYPE, AndroidConstantsUtil.getConstantName(TelephonyManager.class, "NETWORK_TYPE", null, mTelephonyManager.getNetworkType()));
-        values.put(NetMonColumns.DATA_ACTIVITY, AndroidConstantsUtil.getConstantName(TelephonyManager.class, "DATA_ACTIVITY", null, mTelephonyManager.getDataActivity()));
-        values.put(NetMonColumns.DATA_STATE, AndroidConstantsUtil.getConstantName(TelephonyManager.class, "DATA", "DATA_ACTIVITY", mTelephonyManager.getDataState()));
-        return values;
+    public void fillSample(Sample sample) {
+        Log.v(TAG, "fillSample");
+        sample.put(NetMonColumns.MOBILE_DATA_NETWORK_TYPE, AndroidConstantsUtil.getConstantName(TelephonyManager.class, "NETWORK_TYPE", null, mTelephonyManager.getNetworkType()));
+        sample.put(NetMonColumns.DATA_ACTIVITY, AndroidConstantsUtil.getConstantName(TelephonyManager.class, "DATA_ACTIVITY", null, mTelephonyManager.getDataActivity()));
+        sample.put(NetMonColumns.DATA_STATE, AndroidConstantsUtil.getConstantName(TelephonyManager.class, "DATA", "DATA_ACTIVITY", mTelephonyManager.getDataState()));
     }
 
 }
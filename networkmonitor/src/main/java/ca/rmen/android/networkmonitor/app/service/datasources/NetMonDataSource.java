@@ -23,10 +23,10 @@
  */
 package ca.rmen.android.networkmonitor.app.service.datasources;
 
-import android.content.ContentValues;
 import android.content.Context;
 
 import ca.rmen.android.networkmonitor.app.service.NetMonService;
+import ca.rmen.android.networkmonitor.provider.Sample;
 
 /**
  * A {@link NetMonDataSource} implementation is called periodically to retrieve values for one or several related fields, which will be stored in the database.
@@ -46,8 +46,9 @@ interface NetMonDataSource {
 
     /**
      * This will be called periodically, on a background thread, according to the interval the user selected in the preferences.
-     * 
-     * @return the attributes of the particular data source, at the current time.
+     *
+     * @param sample put the attributes of the particular data source, at the current time, in this sample. The sample is reused: don't keep a
+     *               reference to it.
      */
-    ContentValues getContentValues();
+    void fillSample(Sample sample);
 }
\ No newline at end of file
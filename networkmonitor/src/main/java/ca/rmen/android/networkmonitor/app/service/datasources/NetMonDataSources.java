@@ -24,24 +24,67 @@
 package ca.rmen.android.networkmonitor.app.service.datasources;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
-import android.content.ContentValues;
 import android.content.Context;
+import android.os.SystemClock;
 
 import ca.rmen.android.networkmonitor.Constants;
+import ca.rmen.android.networkmonitor.app.prefs.NetMonPreferences;
 import ca.rmen.android.networkmonitor.app.service.NetMonService;
+import ca.rmen.android.networkmonitor.provider.Sample;
 import ca.rmen.android.networkmonitor.util.Log;
 import java8.util.stream.StreamSupport;
 
 /**
  * Maintains the list of {@link NetMonDataSource}s. For now, the list of available data sources is hardcoded in this class. {@link NetMonService} has a
  * reference to this class, which delegates the data retrieval to the individual data sources.
+ *
+ * The data sources are either called one after the other, or, if the user enabled concurrent collection, all at the same time on a bounded pool of
+ * worker threads. The slow data sources have their own threads, so they never keep the quick data sources waiting for a free thread.
+ * In the concurrent mode, each data source has a deadline. A data source which misses its deadline doesn't delay the row: its text
+ * fields are logged as {@link Constants#DATA_SOURCE_TIMEOUT} instead.
+ *
+ * The speed tests would compete for the bandwidth with the other data sources which use the network, and bias both measurements. So they always
+ * run after the other data sources, one after the other: in the concurrent mode, on their own thread, once the other data sources are done.
  */
 public class NetMonDataSources {
 
     private static final String TAG = Constants.TAG + NetMonDataSources.class.getSimpleName();
+    // The maximum number of quick data sources which can be called at the same time, in concurrent mode.
+    private static final int MAX_WORKER_THREADS = 4;
+    // The deadline for data sources which only read cached values or system state, in concurrent mode.
+    private static final int QUICK_DATA_SOURCE_DEADLINE_MS = 3000;
+    // The time we give to all data sources in one tick, when we don't poll at a fixed interval.
+    private static final int DEFAULT_TICK_DEADLINE_MS = 15000;
+    // We save the data source statistics to the DB every this many ticks.
+    private static final int METRICS_SAVE_INTERVAL_TICKS = 10;
     private final List<NetMonDataSource> mSources = new ArrayList<>();
+    // For each data source, the columns for which it returned text values the last time it completed in time.
+    private final Map<NetMonDataSource, Set<String>> mTextColumns = new HashMap<>();
+    // In concurrent mode, each data source writes into its own sample, which we copy into the tick's sample.
+    private final Map<NetMonDataSource, Sample> mDataSourceSamples = new HashMap<>();
+    // Calls to data sources which missed their deadline, and which haven't finished yet.
+    private final Map<NetMonDataSource, Future<Sample>> mPendingResults = new HashMap<>();
+    private final DataSourceMetrics mMetrics = new DataSourceMetrics();
+    // Runs the quick data sources.
+    private ExecutorService mExecutorService;
+    // Runs the slow data sources, except the speed tests: one thread for each of them.
+    private ExecutorService mSlowExecutorService;
+    // Runs the speed tests, one after the other.
+    private ExecutorService mSpeedTestExecutorService;
+    private Context mContext;
+    private int mTickCount;
     // @formatter:off
     private static final Class<?>[] DATA_SOURCE_CLASSES = new Class<?>[] { 
         ActiveNetworkInfoDataSource.class,
@@ -59,44 +102,283 @@ public class NetMonDataSources {
         DownloadSpeedTestDataSource.class,
         UploadSpeedTestDataSource.class
     };
+    // Data sources which do network I/O or heavy queries: they may use the whole tick.
+    private static final Class<?>[] SLOW_DATA_SOURCE_CLASSES = new Class<?>[] {
+        ConnectionTesterDataSource.class,
+        ConsumingAppDataSource.class,
+        DownloadSpeedTestDataSource.class,
+        UploadSpeedTestDataSource.class
+    };
+    // Data sources which use the bandwidth: they must not run at the same time as the other data sources.
+    private static final Class<?>[] SPEED_TEST_DATA_SOURCE_CLASSES = new Class<?>[] {
+        DownloadSpeedTestDataSource.class,
+        UploadSpeedTestDataSource.class
+    };
     // @formatter:on
 
     /**
      * Instantiate all the data sources and call {@link NetMonDataSource#onCreate(Context)} on them.
      */
     public void onCreate(Context context) {
-        Log.v(TAG, "onCreate");
+        List<NetMonDataSource> dataSources = new ArrayList<>();
         for (Class<?> clazz : DATA_SOURCE_CLASSES) {
-            NetMonDataSource dataSource;
             //noinspection TryWithIdenticalCatches
             try {
-                dataSource = (NetMonDataSource) clazz.newInstance();
-                Log.v(TAG, "Added data source " + dataSource);
-                dataSource.onCreate(context);
-                mSources.add(dataSource);
+                dataSources.add((NetMonDataSource) clazz.newInstance());
             } catch (InstantiationException e) {
                 Log.e(TAG, "NetMonDataSources Could not create a " + clazz + ": " + e.getMessage(), e);
             } catch (IllegalAccessException e) {
                 Log.e(TAG, "NetMonDataSources Could not create a " + clazz + ": " + e.getMessage(), e);
             }
         }
+        onCreate(context, dataSources);
+    }
+
+    /**
+     * Use the given data sources instead of the ones of the device. Tests use this to collect samples without a device or a network.
+     */
+    void onCreate(Context context, List<NetMonDataSource> dataSources) {
+        Log.v(TAG, "onCreate");
+        mContext = context;
+        for (NetMonDataSource dataSource : dataSources)
+            addDataSource(dataSource);
+        int slowSourceCount = (int) StreamSupport.stream(mSources).filter(source -> isSlow(source) && !isSpeedTest(source)).count();
+        int quickSourceCount = (int) StreamSupport.stream(mSources).filter(source -> !isSlow(source)).count();
+        mExecutorService = Executors.newFixedThreadPool(Math.max(1, Math.min(MAX_WORKER_THREADS, quickSourceCount)));
+        mSlowExecutorService = Executors.newFixedThreadPool(Math.max(1, slowSourceCount));
+        mSpeedTestExecutorService = Executors.newSingleThreadExecutor();
+    }
+
+    private void addDataSource(NetMonDataSource dataSource) {
+        Log.v(TAG, "Added data source " + dataSource);
+        dataSource.onCreate(mContext);
+        mSources.add(dataSource);
+        mDataSourceSamples.put(dataSource, new Sample());
+    }
+
+    /**
+     * Put the fetched data from all data sources in the given sample.
+     *
+     * @return true if the snapshot of any {@link SnapshotDataSource} changed since the previous call.  If false, the values of these data sources
+     * are the same as in the previous sample.
+     */
+    public boolean fillSample(Sample sample) {
+        Log.v(TAG, "fillSample");
+        if (NetMonPreferences.getInstance(mContext).isConcurrentDataSourcesEnabled()) {
+            fillSampleConcurrently(sample);
+        } else {
+            for (NetMonDataSource source : mSources)
+                if (!isSpeedTest(source)) callDataSource(source, sample);
+            for (NetMonDataSource source : mSources)
+                if (isSpeedTest(source)) callDataSource(source, sample);
+        }
+        if (++mTickCount % METRICS_SAVE_INTERVAL_TICKS == 0) mMetrics.save(mContext);
+        boolean isDirty = false;
+        for (NetMonDataSource source : mSources) {
+            if (source instanceof SnapshotDataSource && ((SnapshotDataSource) source).clearDirty()) isDirty = true;
+        }
+        return isDirty;
+    }
+
+    /**
+     * Put the values of the given data source in the sample. The duration of the call, and whether it failed, are recorded in the data source statistics.
+     */
+    private void callDataSource(NetMonDataSource source, Sample sample) {
+        long before = SystemClock.elapsedRealtime();
+        boolean isError = true;
+        try {
+            source.fillSample(sample);
+            isError = false;
+        } finally {
+            mMetrics.recordCall(source, SystemClock.elapsedRealtime() - before, isError);
+        }
+    }
+
+    /**
+     * Call all the data sources on the worker threads, and merge the values which are available when the tick closes.
+     * A data source which is still busy with a previous tick isn't called again: we wait for its pending result instead.
+     * The {@link SnapshotDataSource}s only copy their latest snapshot, so they are called directly on this thread.
+     *
+     * The speed tests are only called once the other data sources are done. If one of them is still using the network, because it missed its
+     * deadline, the speed tests are skipped for this tick. A speed test which missed the deadline of a previous tick delays the other data
+     * sources until it's done, or until the tick closes.
+     *
+     * The sample will contain timeout markers for the data sources which missed their deadline.
+     */
+    private void fillSampleConcurrently(Sample sample) {
+        long tickStart = SystemClock.elapsedRealtime();
+        long tickDeadline = getTickDeadline();
+        List<NetMonDataSource> speedTestSources = new ArrayList<>();
+        List<NetMonDataSource> otherSources = new ArrayList<>();
+        for (NetMonDataSource source : mSources) {
+            if (isSpeedTest(source)) speedTestSources.add(source);
+            else otherSources.add(source);
+        }
+        if (!awaitPendingResults(speedTestSources, tickStart + tickDeadline)) return;
+        submit(otherSources);
+        if (!collectResults(otherSources, sample, tickStart, tickDeadline)) return;
+        if (hasPendingResults(otherSources)) {
+            Log.w(TAG, "fillSampleConcurrently: skipping the speed tests, the other data sources aren't done");
+        } else {
+            submit(speedTestSources);
+            collectResults(speedTestSources, sample, tickStart, tickDeadline);
+        }
+        Log.v(TAG, "fillSampleConcurrently: tick closed after " + (SystemClock.elapsedRealtime() - tickStart) + "ms");
+    }
+
+    /**
+     * Call the given data sources on the worker threads, unless they are still busy with a previous tick.
+     */
+    private void submit(List<NetMonDataSource> sources) {
+        for (NetMonDataSource source : sources) {
+            if (source instanceof SnapshotDataSource) continue;
+            Future<Sample> pendingResult = mPendingResults.get(source);
+            // A result which arrived after its tick closed is obsolete.
+            if (pendingResult == null || pendingResult.isDone()) {
+                Sample dataSourceSample = mDataSourceSamples.get(source);
+                mPendingResults.put(source, getExecutorService(source).submit(() -> {
+                    dataSourceSample.clear();
+                    callDataSource(source, dataSourceSample);
+                    return dataSourceSample;
+                }));
+            }
+        }
+    }
+
+    /**
+     * Merge the values of the given data sources which are available at their deadline into the sample.
+     *
+     * @return false if we were interrupted.
+     */
+    private boolean collectResults(List<NetMonDataSource> sources, Sample sample, long tickStart, long tickDeadline) {
+        for (NetMonDataSource source : sources) {
+            if (source instanceof SnapshotDataSource) {
+                callDataSource(source, sample);
+                continue;
+            }
+            Future<Sample> future = mPendingResults.get(source);
+            long timeout = Math.max(0, tickStart + getDeadline(source, tickDeadline) - SystemClock.elapsedRealtime());
+            try {
+                Sample dataSourceSample = future.get(timeout, TimeUnit.MILLISECONDS);
+                mPendingResults.remove(source);
+                Set<String> textColumns = mTextColumns.get(source);
+                if (textColumns == null) {
+                    textColumns = new HashSet<>();
+                    mTextColumns.put(source, textColumns);
+                } else {
+                    textColumns.clear();
+                }
+                dataSourceSample.getTextColumns(textColumns);
+                sample.putAll(dataSourceSample);
+            } catch (TimeoutException e) {
+                Log.w(TAG, source + " missed its deadline");
+                mMetrics.recordTimeout(source);
+                putTimeoutMarkers(source, sample);
+            } catch (ExecutionException e) {
+                mPendingResults.remove(source);
+                Log.e(TAG, "Error retrieving data from " + source + ": " + e.getMessage(), e);
+            } catch (InterruptedException e) {
+                Log.w(TAG, "Interrupted while waiting for " + source);
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Wait until the calls of the given data sources which missed the deadline of a previous tick are done, or until the given time.
+     * Their results are obsolete: they are ignored.
+     *
+     * @return false if we were interrupted.
+     */
+    private boolean awaitPendingResults(List<NetMonDataSource> sources, long until) {
+        for (NetMonDataSource source : sources) {
+            Future<Sample> pendingResult = mPendingResults.get(source);
+            if (pendingResult == null) continue;
+            try {
+                pendingResult.get(Math.max(0, until - SystemClock.elapsedRealtime()), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException | ExecutionException e) {
+                Log.v(TAG, source + " from a previous tick isn't done: " + e);
+            } catch (InterruptedException e) {
+                Log.w(TAG, "Interrupted while waiting for " + source);
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean hasPendingResults(List<NetMonDataSource> sources) {
+        for (NetMonDataSource source : sources) {
+            Future<Sample> pendingResult = mPendingResults.get(source);
+            if (pendingResult != null && !pendingResult.isDone()) return true;
+        }
+        return false;
+    }
+
+    private ExecutorService getExecutorService(NetMonDataSource source) {
+        if (isSpeedTest(source)) return mSpeedTestExecutorService;
+        if (isSlow(source)) return mSlowExecutorService;
+        return mExecutorService;
+    }
+
+    /**
+     * @return the maximum time, in milliseconds from the start of the tick, the given data source may take.
+     */
+    private static long getDeadline(NetMonDataSource source, long tickDeadline) {
+        if (isSlow(source)) return tickDeadline;
+        return Math.min(QUICK_DATA_SOURCE_DEADLINE_MS, tickDeadline);
+    }
+
+    /**
+     * @return true if the given data source does network I/O or heavy queries, and may use the whole tick.
+     */
+    private static boolean isSlow(NetMonDataSource source) {
+        for (Class<?> clazz : SLOW_DATA_SOURCE_CLASSES) {
+            if (clazz.isInstance(source)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the given data source measures the bandwidth, and must not run at the same time as the other data sources.
+     */
+    private static boolean isSpeedTest(NetMonDataSource source) {
+        for (Class<?> clazz : SPEED_TEST_DATA_SOURCE_CLASSES) {
+            if (clazz.isInstance(source)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the maximum time, in milliseconds, a tick may take: the polling interval, so that ticks don't overrun.
+     */
+    private long getTickDeadline() {
+        int updateInterval = NetMonPreferences.getInstance(mContext).getUpdateInterval();
+        if (updateInterval <= 0) return DEFAULT_TICK_DEADLINE_MS;
+        return updateInterval;
     }
 
     /**
-     * @return the fetched data from all data sources.
+     * Mark the text fields of the given data source as timed out. We can only do this for fields the data source returned before.
+     * We leave numeric fields empty, so they don't contain garbage in reports and graphs.
      */
-    public ContentValues getContentValues() {
-        Log.v(TAG, "getContentValues");
-        ContentValues result = new ContentValues();
-        for (NetMonDataSource source : mSources)
-            result.putAll(source.getContentValues());
-        return result;
+    private void putTimeoutMarkers(NetMonDataSource source, Sample sample) {
+        Set<String> textColumns = mTextColumns.get(source);
+        if (textColumns == null) return;
+        for (String textColumn : textColumns)
+            sample.put(textColumn, Constants.DATA_SOURCE_TIMEOUT);
     }
 
     /**
      * Perform cleanup: call {@link NetMonDataSource#onDestroy()} on all data sources.
      */
     public void onDestroy() {
+        if (mExecutorService != null) mExecutorService.shutdownNow();
+        if (mSlowExecutorService != null) mSlowExecutorService.shutdownNow();
+        if (mSpeedTestExecutorService != null) mSpeedTestExecutorService.shutdownNow();
+        mMetrics.save(mContext);
         StreamSupport.stream(mSources).forEach(NetMonDataSource::onDestroy);
     }
 }
@@ -32,31 +32,31 @@ import java.util.Enumeration;
 import java.util.List;
 
 import android.annotation.TargetApi;
-import android.content.ContentValues;
-import android.content.Context;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
 import android.os.Build;
 import android.text.TextUtils;
 import ca.rmen.android.networkmonitor.util.Log;
 
 import ca.rmen.android.networkmonitor.Constants;
 import ca.rmen.android.networkmonitor.provider.NetMonColumns;
+import ca.rmen.android.networkmonitor.provider.Sample;
 
 /**
  * Retrieve the network interface names and IP addresses, of all network interfaces which are up and which are not a loopback interface.
+ * These are read again when the connectivity changes.
  */
-public class NetworkInterfaceDataSource implements NetMonDataSource {
+public class NetworkInterfaceDataSource extends SnapshotDataSource {
     private static final String TAG = Constants.TAG + NetworkInterfaceDataSource.class.getSimpleName();
 
     @Override
-    public void onCreate(Context context) {}
-
-    @Override
-    public void onDestroy() {}
+    protected IntentFilter getIntentFilter() {
+        return new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION);
+    }
 
     @Override
-    public ContentValues getContentValues() {
-        Log.v(TAG, "getContentValues");
-        ContentValues result = new ContentValues(1);
+    protected void readSnapshot(Sample snapshot) {
+        Log.v(TAG, "readSnapshot");
         try {
             // It's possible for the device to have multiple interfaces up at a given time.  
             // This can happen on "normal" phones when switching between WiFi and 3G, 
@@ -82,13 +82,12 @@ public class NetworkInterfaceDataSource implements NetMonDataSource {
                     }
                 }
             }
-            result.put(NetMonColumns.NETWORK_INTERFACE, TextUtils.join(";", interfaceNames));
-            result.put(NetMonColumns.IPV4_ADDRESS, TextUtils.join(";", ipv4Addresses));
-            result.put(NetMonColumns.IPV6_ADDRESS, TextUtils.join(";", ipv6Addresses));
+            snapshot.put(NetMonColumns.NETWORK_INTERFACE, TextUtils.join(";", interfaceNames));
+            snapshot.put(NetMonColumns.IPV4_ADDRESS, TextUtils.join(";", ipv4Addresses));
+            snapshot.put(NetMonColumns.IPV6_ADDRESS, TextUtils.join(";", ipv6Addresses));
         } catch (SocketException e) {
-            Log.e(TAG, "getContentValues Could not retrieve NetworkInterfaces:  " + e.getMessage(), e);
+            Log.e(TAG, "readSnapshot Could not retrieve NetworkInterfaces:  " + e.getMessage(), e);
         }
-        return result;
     }
 
     private boolean isValidNetworkInterface(NetworkInterface networkInterface) throws SocketException {
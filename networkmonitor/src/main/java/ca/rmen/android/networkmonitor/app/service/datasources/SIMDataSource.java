@@ -23,7 +23,6 @@
  */
 package ca.rmen.android.networkmonitor.app.service.datasources;
 
-import android.content.ContentValues;
 import android.content.Context;
 import android.telephony.TelephonyManager;
 
@@ -32,6 +31,7 @@ import ca.rmen.android.networkmonitor.util.Log;
 
 import ca.rmen.android.networkmonitor.Constants;
 import ca.rmen.android.networkmonitor.provider.NetMonColumns;
+import ca.rmen.android.networkmonitor.provider.Sample;
 import ca.rmen.android.networkmonitor.util.TelephonyUtil;
 
 /**
@@ -52,20 +52,18 @@ public class SIMDataSource implements NetMonDataSource {
     public void onDestroy() {}
 
     @Override
-    public ContentValues getContentValues() {
-        Log.v(TAG, "getContentValues");
-        ContentValues values = new ContentValues(3);
-        values.put(NetMonColumns.SIM_OPERATOR, mTelephonyManager.getSimOperatorName());
+    public void fillSample(Sample sample) {
+        Log.v(TAG, "fillSample");
+        sample.put(NetMonColumns.SIM_OPERATOR, mTelephonyManager.getSimOperatorName());
         String[] simMccMnc = TelephonyUtil.getMccMnc(mTelephonyManager.getSimOperator());
-        values.put(NetMonColumns.SIM_MCC, simMccMnc[0]);
-        values.put(NetMonColumns.SIM_MNC, simMccMnc[1]);
-        values.put(NetMonColumns.NETWORK_OPERATOR, mTelephonyManager.getNetworkOperatorName());
+        sample.put(NetMonColumns.SIM_MCC, simMccMnc[0]);
+        sample.put(NetMonColumns.SIM_MNC, simMccMnc[1]);
+        sample.put(NetMonColumns.NETWORK_OPERATOR, mTelephonyManager.getNetworkOperatorName());
         String[] networkMccMnc = TelephonyUtil.getMccMnc(mTelephonyManager.getNetworkOperator());
-        values.put(NetMonColumns.NETWORK_MCC, networkMccMnc[0]);
-        values.put(NetMonColumns.NETWORK_MNC, networkMccMnc[1]);
+        sample.put(NetMonColumns.NETWORK_MCC, networkMccMnc[0]);
+        sample.put(NetMonColumns.NETWORK_MNC, networkMccMnc[1]);
         int simState = mTelephonyManager.getSimState();
-        values.put(NetMonColumns.SIM_STATE, AndroidConstantsUtil.getConstantName(TelephonyManager.class, "SIM_STATE", null, simState));
-        return values;
+        sample.put(NetMonColumns.SIM_STATE, AndroidConstantsUtil.getConstantName(TelephonyManager.class, "SIM_STATE", null, simState));
     }
 
 }
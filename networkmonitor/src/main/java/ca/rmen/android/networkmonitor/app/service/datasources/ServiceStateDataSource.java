@@ -23,7 +23,6 @@
  */
 package ca.rmen.android.networkmonitor.app.service.datasources;
 
-import android.content.ContentValues;
 import android.content.Context;
 import android.telephony.PhoneStateListener;
 import android.telephony.ServiceState;
@@ -31,6 +30,7 @@ import android.telephony.TelephonyManager;
 
 import ca.rmen.android.networkmonitor.Constants;
 import ca.rmen.android.networkmonitor.provider.NetMonColumns;
+import ca.rmen.android.networkmonitor.provider.Sample;
 import ca.rmen.android.networkmonitor.util.AndroidConstantsUtil;
 import ca.rmen.android.networkmonitor.util.Log;
 
@@ -58,14 +58,12 @@ public class ServiceStateDataSource implements NetMonDataSource {
     }
 
     @Override
-    public ContentValues getContentValues() {
-        Log.v(TAG, "getContentValues");
-        ContentValues values = new ContentValues(1);
+    public void fillSample(Sample sample) {
+        Log.v(TAG, "fillSample");
         if (mLastServiceState == null)
-            return values;
+            return;
         String lastServiceState = AndroidConstantsUtil.getConstantName(ServiceState.class, "STATE", null, mLastServiceState.getState());
-        values.put(NetMonColumns.SERVICE_STATE, lastServiceState);
-        return values;
+        sample.put(NetMonColumns.SERVICE_STATE, lastServiceState);
     }
 
     private final PhoneStateListener mPhoneStateListener = new PhoneStateListener() {
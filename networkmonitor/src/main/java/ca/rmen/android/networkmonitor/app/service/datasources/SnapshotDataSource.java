@@ -0,0 +1,144 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ *
+ * Copyright (C) 2016 Carmen Alvarez (c@rmen.ca)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.rmen.android.networkmonitor.app.service.datasources;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Handler;
+import android.os.HandlerThread;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import ca.rmen.android.networkmonitor.Constants;
+import ca.rmen.android.networkmonitor.provider.Sample;
+import ca.rmen.android.networkmonitor.util.Log;
+
+/**
+ * A data source which keeps the latest state of what it monitors in a snapshot, updated when the system tells us that the state changed, instead of
+ * querying the system at every tick.
+ *
+ * A subclass reads the state in {@link #readSnapshot(Sample)}. This is called on a background thread when the data source is created, whenever
+ * one of the broadcasts of {@link #getIntentFilter()} is received, and when the subclass calls {@link #refresh()}. A snapshot is never modified
+ * once it is published, so {@link #fillSample(Sample)} only copies it, without any call to the system.
+ *
+ * The data source is dirty when its snapshot changed since the last call to {@link #clearDirty()}.
+ */
+abstract class SnapshotDataSource implements NetMonDataSource {
+    private static final String TAG = Constants.TAG + SnapshotDataSource.class.getSimpleName();
+
+    private Context mContext;
+    private HandlerThread mHandlerThread;
+    private Handler mHandler;
+    private volatile Sample mSnapshot;
+    private final AtomicBoolean mIsDirty = new AtomicBoolean(true);
+
+    @Override
+    public void onCreate(Context context) {
+        Log.v(TAG, "onCreate " + getClass().getSimpleName());
+        mContext = context;
+        // Read the snapshots in a background thread
+        mHandlerThread = new HandlerThread(TAG + getClass().getSimpleName());
+        mHandlerThread.start();
+        mHandler = new Handler(mHandlerThread.getLooper());
+        mContext.registerReceiver(mBroadcastReceiver, getIntentFilter(), null, mHandler);
+        refresh();
+    }
+
+    @Override
+    public void onDestroy() {
+        Log.v(TAG, "onDestroy " + getClass().getSimpleName());
+        mContext.unregisterReceiver(mBroadcastReceiver);
+        mHandlerThread.quit();
+    }
+
+    /**
+     * Copy the latest snapshot into the given sample.
+     */
+    @Override
+    public void fillSample(Sample sample) {
+        Sample snapshot = mSnapshot;
+        // We may be called before the first snapshot has been read.
+        if (snapshot == null) {
+            updateSnapshot();
+            snapshot = mSnapshot;
+        }
+        if (snapshot != null) sample.putAll(snapshot);
+    }
+
+    /**
+     * @return true if the snapshot changed since the previous call to this method.
+     */
+    boolean clearDirty() {
+        return mIsDirty.getAndSet(false);
+    }
+
+    protected Context getContext() {
+        return mContext;
+    }
+
+    /**
+     * Read the state again, on the background thread.  Requests made while a read is pending are merged into it.
+     */
+    protected void refresh() {
+        mHandler.removeCallbacks(mRefreshRunnable);
+        mHandler.post(mRefreshRunnable);
+    }
+
+    /**
+     * @return the broadcasts which tell us that the state may have changed.
+     */
+    protected abstract IntentFilter getIntentFilter();
+
+    /**
+     * Put the current state in the given snapshot.  This is called on a background thread.
+     */
+    protected abstract void readSnapshot(Sample snapshot);
+
+    private synchronized void updateSnapshot() {
+        Sample snapshot = new Sample();
+        try {
+            readSnapshot(snapshot);
+        } catch (Throwable t) {
+            Log.w(TAG, "Could not read the snapshot of " + getClass().getSimpleName() + ": " + t.getMessage(), t);
+            return;
+        }
+        Sample previousSnapshot = mSnapshot;
+        if (previousSnapshot != null && previousSnapshot.hasSameValues(snapshot)) return;
+        Log.v(TAG, "New snapshot: " + snapshot);
+        mSnapshot = snapshot;
+        mIsDirty.set(true);
+    }
+
+    private final Runnable mRefreshRunnable = this::updateSnapshot;
+
+    private final BroadcastReceiver mBroadcastReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            Log.v(TAG, "onReceive: " + intent);
+            updateSnapshot();
+        }
+    };
+}
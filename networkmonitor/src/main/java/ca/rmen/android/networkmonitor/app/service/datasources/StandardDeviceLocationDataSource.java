@@ -23,7 +23,6 @@
  */
 package ca.rmen.android.networkmonitor.app.service.datasources;
 
-import android.content.ContentValues;
 import android.content.Context;
 import android.content.SharedPreferences.OnSharedPreferenceChangeListener;
 import android.location.Location;
@@ -38,6 +37,7 @@ import ca.rmen.android.networkmonitor.Constants;
 import ca.rmen.android.networkmonitor.app.prefs.NetMonPreferences;
 import ca.rmen.android.networkmonitor.app.prefs.NetMonPreferences.LocationFetchingStrategy;
 import ca.rmen.android.networkmonitor.provider.NetMonColumns;
+import ca.rmen.android.networkmonitor.provider.Sample;
 import ca.rmen.android.networkmonitor.util.Log;
 import ca.rmen.android.networkmonitor.util.PermissionUtil;
 
@@ -62,16 +62,15 @@ public class StandardDeviceLocationDataSource implements NetMonDataSource {
     }
 
     /**
-     * @return the last location the device recorded in a ContentValues with keys {@link NetMonColumns#DEVICE_LATITUDE} and
+     * Puts the last location the device recorded in the sample, with keys {@link NetMonColumns#DEVICE_LATITUDE} and
      *         Uses the most recently retrieved location among all the providers.
      */
     @Override
-    public ContentValues getContentValues() {
-        Log.v(TAG, "getContentValues");
-        ContentValues values = new ContentValues(3);
+    public void fillSample(Sample sample) {
+        Log.v(TAG, "fillSample");
         if (!PermissionUtil.hasLocationPermission(mContext)) {
             Log.v(TAG, "No location permission");
-            return values;
+            return;
         }
         Location mostRecentLocation = null;
         List<String> providers = mLocationManager.getProviders(true);
@@ -83,13 +82,12 @@ public class StandardDeviceLocationDataSource implements NetMonDataSource {
         }
         Log.v(TAG, "Most recent location: " + mostRecentLocation);
         if (mostRecentLocation != null) {
-            values.put(NetMonColumns.DEVICE_LATITUDE, mostRecentLocation.getLatitude());
-            values.put(NetMonColumns.DEVICE_LONGITUDE, mostRecentLocation.getLongitude());
-            values.put(NetMonColumns.DEVICE_POSITION_ACCURACY, mostRecentLocation.getAccuracy());
-            values.put(NetMonColumns.DEVICE_SPEED, mostRecentLocation.getSpeed());
+            sample.put(NetMonColumns.DEVICE_LATITUDE, mostRecentLocation.getLatitude());
+            sample.put(NetMonColumns.DEVICE_LONGITUDE, mostRecentLocation.getLongitude());
+            sample.put(NetMonColumns.DEVICE_POSITION_ACCURACY, mostRecentLocation.getAccuracy());
+            sample.put(NetMonColumns.DEVICE_SPEED, mostRecentLocation.getSpeed());
         }
         mMostRecentLocation = mostRecentLocation;
-        return values;
     }
 
     @Override
@@ -24,13 +24,9 @@
  */
 package ca.rmen.android.networkmonitor.app.service.datasources;
 
-import android.content.ContentValues;
 import android.content.Context;
 
-import java.util.Locale;
-
 import ca.rmen.android.networkmonitor.Constants;
-import ca.rmen.android.networkmonitor.R;
 import ca.rmen.android.networkmonitor.app.speedtest.SpeedTestExecutionDecider;
 import ca.rmen.android.networkmonitor.app.speedtest.SpeedTestPreferences;
 import ca.rmen.android.networkmonitor.app.speedtest.SpeedTestResult;
@@ -38,6 +34,7 @@ import ca.rmen.android.networkmonitor.app.speedtest.SpeedTestResult.SpeedTestSta
 import ca.rmen.android.networkmonitor.app.speedtest.SpeedTestUpload;
 import ca.rmen.android.networkmonitor.app.speedtest.SpeedTestUploadConfig;
 import ca.rmen.android.networkmonitor.provider.NetMonColumns;
+import ca.rmen.android.networkmonitor.provider.Sample;
 import ca.rmen.android.networkmonitor.util.Log;
 
 /**
@@ -47,7 +44,6 @@ public class UploadSpeedTestDataSource implements NetMonDataSource {
     private static final String TAG = Constants.TAG + UploadSpeedTestDataSource.class.getSimpleName();
 
     private SpeedTestPreferences mPreferences;
-    private String mDisabledValue;
 
     private SpeedTestExecutionDecider mSpeedTestExecutionDecider;
     private Context mContext;
@@ -57,7 +53,6 @@ public class UploadSpeedTestDataSource implements NetMonDataSource {
         Log.v(TAG, "onCreate");
         mContext = context;
         mPreferences = SpeedTestPreferences.getInstance(context);
-        mDisabledValue = context.getString(R.string.speed_test_disabled);
         mSpeedTestExecutionDecider = new SpeedTestExecutionDecider(context);
     }
 
@@ -67,18 +62,17 @@ public class UploadSpeedTestDataSource implements NetMonDataSource {
     }
 
     @Override
-    public ContentValues getContentValues() {
-        Log.v(TAG, "getContentValues");
-        ContentValues values = new ContentValues();
+    public void fillSample(Sample sample) {
+        Log.v(TAG, "fillSample");
 
         if (mSpeedTestExecutionDecider.shouldExecute()) {
             SpeedTestUploadConfig uploadConfig = mPreferences.getUploadConfig(mContext);
-            if (!uploadConfig.isValid()) return values;
+            if (!uploadConfig.isValid()) return;
             SpeedTestResult result = SpeedTestUpload.upload(uploadConfig);
-            if (result.status == SpeedTestStatus.SUCCESS) values.put(NetMonColumns.UPLOAD_SPEED, String.format(Locale.getDefault(), "%.3f", result.getSpeedMbps()));
+            sample.put(NetMonColumns.UPLOAD_SPEED_STATUS, result.status.name());
+            if (result.status == SpeedTestStatus.SUCCESS) sample.put(NetMonColumns.UPLOAD_SPEED, result.getSpeedMbps());
         } else {
-            values.put(NetMonColumns.UPLOAD_SPEED, mDisabledValue);
+            sample.put(NetMonColumns.UPLOAD_SPEED_STATUS, SpeedTestStatus.SKIPPED.name());
         }
-        return values;
     }
 }
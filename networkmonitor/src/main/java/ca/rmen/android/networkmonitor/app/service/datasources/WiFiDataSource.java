@@ -25,8 +25,8 @@ package ca.rmen.android.networkmonitor.app.service.datasources;
 
 import java.util.List;
 
-import android.content.ContentValues;
 import android.content.Context;
+import android.content.IntentFilter;
 import android.net.wifi.ScanResult;
 import android.net.wifi.WifiInfo;
 import android.net.wifi.WifiManager;
@@ -34,18 +34,19 @@ import android.util.SparseIntArray;
 
 import ca.rmen.android.networkmonitor.Constants;
 import ca.rmen.android.networkmonitor.provider.NetMonColumns;
+import ca.rmen.android.networkmonitor.provider.Sample;
 import ca.rmen.android.networkmonitor.util.Log;
 import ca.rmen.android.networkmonitor.util.PermissionUtil;
 
 /**
  * retrieves the SSID, BSSID, signal strength, and RSSI of the currently connected WiFi network, if any.
+ * These are read again when the WiFi state, the RSSI, or the scan results change.
  */
-public class WiFiDataSource implements NetMonDataSource {
+public class WiFiDataSource extends SnapshotDataSource {
 
     private static final String TAG = Constants.TAG + WiFiDataSource.class.getSimpleName();
     private static final SparseIntArray CHANNEL_FREQUENCIES = new SparseIntArray(14);
     private WifiManager mWifiManager;
-    private Context mContext;
 
     static {
         CHANNEL_FREQUENCIES.append(2412, 1);
@@ -67,39 +68,43 @@ public class WiFiDataSource implements NetMonDataSource {
     @Override
     public void onCreate(Context context) {
         Log.v(TAG, "onCreate");
-        mContext = context;
         mWifiManager = (WifiManager) context.getSystemService(Context.WIFI_SERVICE);
+        super.onCreate(context);
     }
 
     @Override
-    public void onDestroy() {}
+    protected IntentFilter getIntentFilter() {
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(WifiManager.WIFI_STATE_CHANGED_ACTION);
+        filter.addAction(WifiManager.NETWORK_STATE_CHANGED_ACTION);
+        filter.addAction(WifiManager.RSSI_CHANGED_ACTION);
+        filter.addAction(WifiManager.SCAN_RESULTS_AVAILABLE_ACTION);
+        return filter;
+    }
 
     @Override
-    public ContentValues getContentValues() {
-        Log.v(TAG, "getContentValues");
+    protected void readSnapshot(Sample snapshot) {
+        Log.v(TAG, "readSnapshot");
         WifiInfo connectionInfo = mWifiManager.getConnectionInfo();
-        ContentValues result = new ContentValues(2);
-        if (connectionInfo == null || connectionInfo.getNetworkId() < 0) return result;
-        result.put(NetMonColumns.WIFI_SSID, connectionInfo.getSSID());
-        result.put(NetMonColumns.WIFI_BSSID, connectionInfo.getBSSID());
+        if (connectionInfo == null || connectionInfo.getNetworkId() < 0) return;
+        snapshot.put(NetMonColumns.WIFI_SSID, connectionInfo.getSSID());
+        snapshot.put(NetMonColumns.WIFI_BSSID, connectionInfo.getBSSID());
         int signalLevel = WifiManager.calculateSignalLevel(connectionInfo.getRssi(), 5);
-        result.put(NetMonColumns.WIFI_SIGNAL_STRENGTH, signalLevel);
-        result.put(NetMonColumns.WIFI_RSSI, connectionInfo.getRssi());
+        snapshot.put(NetMonColumns.WIFI_SIGNAL_STRENGTH, signalLevel);
+        snapshot.put(NetMonColumns.WIFI_RSSI, connectionInfo.getRssi());
 
-        if (PermissionUtil.hasLocationPermission(mContext)) {
+        if (PermissionUtil.hasLocationPermission(getContext())) {
             List<ScanResult> scanResults = mWifiManager.getScanResults();
             if (scanResults != null) {
                 for (ScanResult scanResult : scanResults) {
                     if (scanResult.BSSID != null && scanResult.BSSID.equals(connectionInfo.getBSSID())) {
                         int channel = CHANNEL_FREQUENCIES.get(scanResult.frequency);
-                        result.put(NetMonColumns.WIFI_FREQUENCY, scanResult.frequency);
-                        result.put(NetMonColumns.WIFI_CHANNEL, channel);
+                        snapshot.put(NetMonColumns.WIFI_FREQUENCY, scanResult.frequency);
+                        snapshot.put(NetMonColumns.WIFI_CHANNEL, channel);
                         break;
                     }
                 }
             }
         }
-
-        return result;
     }
 }
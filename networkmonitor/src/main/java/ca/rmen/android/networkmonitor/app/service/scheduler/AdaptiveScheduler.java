@@ -0,0 +1,189 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ *
+ * Copyright (C) 2016 Carmen Alvarez (c@rmen.ca)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.rmen.android.networkmonitor.app.service.scheduler;
+
+import android.annotation.TargetApi;
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.text.TextUtils;
+
+import org.greenrobot.eventbus.Subscribe;
+
+import ca.rmen.android.networkmonitor.Constants;
+import ca.rmen.android.networkmonitor.app.bus.NetMonBus;
+import ca.rmen.android.networkmonitor.app.prefs.NetMonPreferences;
+import ca.rmen.android.networkmonitor.util.Log;
+
+/**
+ * Schedules a single Runnable with an interval which depends on how stable the network is.
+ *
+ * The interval given to {@link #schedule(Runnable, int)} is the shortest interval. Each time the task runs, we compare the sample it collected
+ * with the previous one. If the network type or cell changed, the signal strength swung, or a connection test failed, the next run is scheduled at
+ * the shortest interval. Otherwise, the interval grows, up to the longest interval set in the preferences.
+ *
+ * Like the {@link AlarmManagerScheduler}, this uses the AlarmManager, so the device can sleep between runs, and the {@link TickTimer} plans
+ * when each run should start.
+ */
+public class AdaptiveScheduler implements Scheduler {
+
+    private static final String TAG = Constants.TAG + AdaptiveScheduler.class.getSimpleName();
+    private static final String ACTION = TAG + "_action";
+    // A change of at least this many dBm in the signal strength between two samples means the network is unstable.
+    private static final int SIGNAL_SWING_DBM = 6;
+    // Each run without any change multiplies the interval by this factor.
+    private static final float BACKOFF_FACTOR = 1.5f;
+
+    private Context mContext;
+    private AlarmManager mAlarmManager;
+    private PendingIntent mPendingIntent;
+    private HandlerThread mHandlerThread;
+    private Handler mHandler;
+    private Runnable mRunnableImpl;
+    private TickTimer mTickTimer;
+
+    // Only used on the handler thread.
+    private int mMinInterval;
+    private int mInterval;
+    private NetMonBus.SampleCollected mLastSample;
+    private boolean mIsNetworkUnstable;
+
+    @Override
+    public void onCreate(Context context) {
+        Log.v(TAG, "onCreate");
+        mContext = context;
+        mAlarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        mTickTimer = new TickTimer(context, AdaptiveScheduler.class);
+        // Register the broadcast receiver in a background thread
+        mHandlerThread = new HandlerThread(TAG);
+        mHandlerThread.start();
+        mHandler = new Handler(mHandlerThread.getLooper());
+        mContext.registerReceiver(mBroadcastReceiver, new IntentFilter(ACTION), null, mHandler);
+        NetMonBus.getBus().register(this);
+    }
+
+    @Override
+    public void onDestroy() {
+        Log.v(TAG, "onDestroy");
+        NetMonBus.getBus().unregister(this);
+        mContext.unregisterReceiver(mBroadcastReceiver);
+        if (mPendingIntent != null) mAlarmManager.cancel(mPendingIntent);
+        mHandlerThread.quit();
+        mTickTimer.saveInBackground();
+    }
+
+    @Override
+    public void schedule(Runnable runnable, int interval) {
+        Log.v(TAG, "schedule at interval " + interval);
+        mRunnableImpl = runnable;
+        Intent intent = new Intent(ACTION);
+        mPendingIntent = PendingIntent.getBroadcast(mContext, TAG.hashCode(), intent, PendingIntent.FLAG_CANCEL_CURRENT);
+        setInterval(interval);
+    }
+
+    @Override
+    public void setInterval(int interval) {
+        Log.v(TAG, "Set interval " + interval);
+        mHandler.post(() -> {
+            mMinInterval = interval;
+            mInterval = interval;
+            mTickTimer.start(interval);
+            scheduleAlarm(0);
+        });
+    }
+
+    @SuppressWarnings("unused")
+    @Subscribe
+    public void onSampleCollected(NetMonBus.SampleCollected event) {
+        Log.v(TAG, "onSampleCollected() called with " + "event = [" + event + "]");
+        if (event.isConnectionTestFailed) {
+            mIsNetworkUnstable = true;
+        } else if (mLastSample != null) {
+            if (event.cellId != mLastSample.cellId
+                    || Math.abs(event.cellSignalStrengthDbm - mLastSample.cellSignalStrengthDbm) >= SIGNAL_SWING_DBM
+                    // The network type and the WiFi signal come from snapshots: no need to compare them if the snapshots didn't change.
+                    || event.isSnapshotChanged && (!TextUtils.equals(event.networkType, mLastSample.networkType)
+                    || Math.abs(event.wifiRssi - mLastSample.wifiRssi) >= SIGNAL_SWING_DBM)) {
+                mIsNetworkUnstable = true;
+            }
+        }
+        mLastSample = event;
+    }
+
+    /**
+     * @return the interval until the next run: the shortest interval if the network was unstable during the last run, or a longer interval
+     * otherwise.
+     */
+    private int computeNextInterval() {
+        if (mIsNetworkUnstable) {
+            mIsNetworkUnstable = false;
+            return mMinInterval;
+        }
+        int maxInterval = Math.max(mMinInterval, NetMonPreferences.getInstance(mContext).getAdaptiveMaxInterval());
+        return (int) Math.min(maxInterval, Math.ceil(mInterval * BACKOFF_FACTOR));
+    }
+
+    private void scheduleAlarm(long delay) {
+        Log.v(TAG, "scheduleAlarm: delay=" + delay);
+        long triggerAtMillis = SystemClock.elapsedRealtime() + delay;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) setAlarmKitKat(triggerAtMillis);
+        else
+            mAlarmManager.set(AlarmManager.ELAPSED_REALTIME_WAKEUP, triggerAtMillis, mPendingIntent);
+    }
+
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    private void setAlarmKitKat(long triggerAtMillis) {
+        mAlarmManager.setExact(AlarmManager.ELAPSED_REALTIME_WAKEUP, triggerAtMillis, mPendingIntent);
+    }
+
+    private final BroadcastReceiver mBroadcastReceiver = new BroadcastReceiver() {
+
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            Log.v(TAG, "onReceive: " + intent);
+            if (mTickTimer.onTickStarted()) {
+                try {
+                    Log.v(TAG, "Executing task");
+                    mRunnableImpl.run();
+                } catch (Throwable t) {
+                    Log.v(TAG, "Error executing task: " + t.getMessage(), t);
+                }
+                mTickTimer.onTickFinished();
+                // Only a run which collected a sample tells us something new about the network.
+                mInterval = computeNextInterval();
+                mTickTimer.setInterval(mInterval);
+            }
+            long delay = mTickTimer.getDelayUntilNextTick();
+            Log.v(TAG, "Next run in " + delay + " ms");
+            scheduleAlarm(delay);
+        }
+    };
+}
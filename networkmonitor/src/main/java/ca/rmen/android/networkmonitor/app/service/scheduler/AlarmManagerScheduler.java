@@ -42,9 +42,9 @@ import ca.rmen.android.networkmonitor.util.Log;
  * Schedule a single Runnable periodically. Note that on KitKat devices (and emulator), the specified interval may not be respected, even if the target SDK is
  * less than 19 or methods like setExact are used.
  * 
- * The implementation on KitKat is different compared to older devices. On older devices, the setRepeating method of AlarmManager is used, which results in our
- * task being executed at precise intervals.
- * On KitKat, there is no exact repeating method. So, we schedule a task one time, and when the task is executed, it reschedules itself.
+ * We schedule a one-time alarm, and when the task is executed, it schedules the next alarm at the time planned by the {@link TickTimer}. This way,
+ * the delivery delays of the alarms don't add up.
+ * On KitKat, setExact is used, as the set method may deliver the alarm much later than requested.
  * 
  * For more accurate scheduling, but possible more battery drain, use {@link ExecutorServiceScheduler}.
  */
@@ -54,21 +54,23 @@ public class AlarmManagerScheduler implements Scheduler {
     private static final String ACTION = TAG + "_action";
     private PendingIntent mPendingIntent;
     private HandlerThread mHandlerThread;
+    private Handler mHandler;
     private AlarmManager mAlarmManager;
     private Context mContext;
-    private int mInterval;
     private Runnable mRunnableImpl;
+    private TickTimer mTickTimer;
 
     @Override
     public void onCreate(Context context) {
         Log.v(TAG, "onCreate");
         mContext = context;
         mAlarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        mTickTimer = new TickTimer(context, AlarmManagerScheduler.class);
         // Register the broadcast receiver in a background thread
         mHandlerThread = new HandlerThread(TAG);
         mHandlerThread.start();
-        Handler handler = new Handler(mHandlerThread.getLooper());
-        mContext.registerReceiver(mBroadcastReceiver, new IntentFilter(ACTION), null, handler);
+        mHandler = new Handler(mHandlerThread.getLooper());
+        mContext.registerReceiver(mBroadcastReceiver, new IntentFilter(ACTION), null, mHandler);
     }
 
     @Override
@@ -77,6 +79,7 @@ public class AlarmManagerScheduler implements Scheduler {
         mContext.unregisterReceiver(mBroadcastReceiver);
         mAlarmManager.cancel(mPendingIntent);
         mHandlerThread.quit();
+        mTickTimer.saveInBackground();
     }
 
     @Override
@@ -91,16 +94,24 @@ public class AlarmManagerScheduler implements Scheduler {
     @Override
     public void setInterval(int interval) {
         Log.v(TAG, "Set interval " + interval);
-        mInterval = interval;
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) scheduleAlarmKitKat(0);
+        // Change the plan on the same thread which reschedules the alarm after each run.
+        mHandler.post(() -> {
+            mTickTimer.start(interval);
+            scheduleAlarm(0);
+        });
+    }
+
+    private void scheduleAlarm(long delay) {
+        Log.v(TAG, "scheduleAlarm: delay=" + delay);
+        long triggerAtMillis = SystemClock.elapsedRealtime() + delay;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) setAlarmKitKat(triggerAtMillis);
         else
-            mAlarmManager.setRepeating(AlarmManager.ELAPSED_REALTIME_WAKEUP, SystemClock.elapsedRealtime(), interval, mPendingIntent);
+            mAlarmManager.set(AlarmManager.ELAPSED_REALTIME_WAKEUP, triggerAtMillis, mPendingIntent);
     }
 
     @TargetApi(Build.VERSION_CODES.KITKAT)
-    private void scheduleAlarmKitKat(int delay) {
-        Log.v(TAG, "scheduleAlarmKitKat: delay=" + delay);
-        mAlarmManager.setExact(AlarmManager.ELAPSED_REALTIME_WAKEUP, SystemClock.elapsedRealtime() + delay, mPendingIntent);
+    private void setAlarmKitKat(long triggerAtMillis) {
+        mAlarmManager.setExact(AlarmManager.ELAPSED_REALTIME_WAKEUP, triggerAtMillis, mPendingIntent);
     }
 
     private final BroadcastReceiver mBroadcastReceiver = new BroadcastReceiver() {
@@ -109,19 +120,16 @@ public class AlarmManagerScheduler implements Scheduler {
         public void onReceive(Context context, Intent intent) {
             Log.v(TAG, "onReceive: " + intent);
             // The AlarmManager called us.
-            if (ACTION.equals(intent.getAction())) {
-                // On KitKat we need to reschedule ourselves:
-                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
-                    Log.v(TAG, "rescheduling for kitkat");
-                    scheduleAlarmKitKat(mInterval);
+            if (mTickTimer.onTickStarted()) {
+                try {
+                    Log.v(TAG, "Executing task");
+                    mRunnableImpl.run();
+                } catch (Throwable t) {
+                    Log.v(TAG, "Error executing task: " + t.getMessage(), t);
                 }
+                mTickTimer.onTickFinished();
             }
-            try {
-                Log.v(TAG, "Executing task");
-                mRunnableImpl.run();
-            } catch (Throwable t) {
-                Log.v(TAG, "Error executing task: " + t.getMessage(), t);
-            }
+            scheduleAlarm(mTickTimer.getDelayUntilNextTick());
         }
     };
 }
@@ -41,6 +41,9 @@ import ca.rmen.android.networkmonitor.util.Log;
  * To ensure accurate scheduling, this class obtains a wake lock as soon as the runnable is first scheduled, which it releases in onDestroy().
  * 
  * The wake lock may result in battery drain. For less battery drain, but less accurate scheduling, use {@link AlarmManagerScheduler}.
+ *
+ * Each run schedules the next one at the time planned by the {@link TickTimer}, so that runs which last longer than the interval don't bunch up
+ * and execute back to back.
  */
 public class ExecutorServiceScheduler implements Scheduler {
     private static final String TAG = Constants.TAG + ExecutorServiceScheduler.class.getSimpleName();
@@ -49,11 +52,15 @@ public class ExecutorServiceScheduler implements Scheduler {
     private Future<?> mFuture;
     private WakeLock mWakeLock = null;
     private Runnable mRunnableImpl;
+    private TickTimer mTickTimer;
+    // Incremented each time the interval changes, so that a run started with the previous interval doesn't schedule another one.
+    private int mGeneration;
 
     @Override
     public void onCreate(Context context) {
         Log.v(TAG, "onCreate");
         mExecutorService = Executors.newSingleThreadScheduledExecutor();
+        mTickTimer = new TickTimer(context, ExecutorServiceScheduler.class);
         // Prevent the system from closing the connection after 30 minutes of screen off.
         PowerManager powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
         mWakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, TAG);
@@ -68,31 +75,43 @@ public class ExecutorServiceScheduler implements Scheduler {
     }
 
     @Override
-    public void setInterval(int interval) {
+    public synchronized void setInterval(int interval) {
         Log.v(TAG, "setInterval " + interval);
         if (mFuture != null) mFuture.cancel(true);
         // Issue #20: We should respect the testing interval.  We shouldn't wait for more than this interval for
         // the connection tests to timeout.  
-        mFuture = mExecutorService.scheduleAtFixedRate(mRunnable, 0, interval, TimeUnit.MILLISECONDS);
+        mTickTimer.start(interval);
+        scheduleTick(0, ++mGeneration);
     }
 
     @Override
     public void onDestroy() {
         Log.v(TAG, "onDestroy");
         if (mWakeLock != null) mWakeLock.release();
-        if (mFuture != null) mFuture.cancel(true);
-        if (mExecutorService != null) mExecutorService.shutdownNow();
+        synchronized (this) {
+            if (mFuture != null) mFuture.cancel(true);
+            if (mExecutorService != null) mExecutorService.shutdownNow();
+        }
+        if (mTickTimer != null) mTickTimer.saveInBackground();
     }
 
-    private final Runnable mRunnable = new Runnable() {
-        @Override
-        public void run() {
+    private void scheduleTick(long delay, int generation) {
+        mFuture = mExecutorService.schedule(() -> runTick(generation), delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void runTick(int generation) {
+        if (mTickTimer.onTickStarted()) {
             try {
                 Log.v(TAG, "Executing task");
                 mRunnableImpl.run();
             } catch (Throwable t) {
                 Log.v(TAG, "Error executing task: " + t.getMessage(), t);
             }
+            mTickTimer.onTickFinished();
+        }
+        synchronized (this) {
+            if (generation != mGeneration || mExecutorService.isShutdown()) return;
+            scheduleTick(mTickTimer.getDelayUntilNextTick(), generation);
         }
-    };
+    }
 }
@@ -40,6 +40,9 @@ import ca.rmen.android.networkmonitor.util.Log;
 
 /**
  * Execute the runnable when the network changes.
+ *
+ * The {@link TickTimer} measures how long after a network change the runnable is executed. The runnable always runs after a network change:
+ * a change is a one-off event, so the overrun policy doesn't apply here.
  */
 public class NetworkChangeScheduler implements Scheduler {
 
@@ -50,11 +53,13 @@ public class NetworkChangeScheduler implements Scheduler {
     private HandlerThread mHandlerThread;
     private long mLastPollTime;
     private TelephonyManager mTelephonyManager;
+    private TickTimer mTickTimer;
 
     @Override
     public void onCreate(Context context) {
         Log.v(TAG, "onCreate");
         mContext = context;
+        mTickTimer = new TickTimer(context, NetworkChangeScheduler.class);
         // Register the broadcast receiver in a background thread
         mHandlerThread = new HandlerThread(TAG);
         mHandlerThread.start();
@@ -71,6 +76,7 @@ public class NetworkChangeScheduler implements Scheduler {
         if (mTelephonyManager != null)
             mTelephonyManager.listen(mPhoneStateListener, PhoneStateListener.LISTEN_NONE);
         mHandlerThread.quit();
+        mTickTimer.saveInBackground();
     }
 
     @Override
@@ -101,12 +107,14 @@ public class NetworkChangeScheduler implements Scheduler {
             long now = System.currentTimeMillis();
             if (now - mLastPollTime > NetMonPreferences.PREF_MIN_POLLING_INTERVAL) {
                 Log.v(TAG, "Will run the task now");
+                mTickTimer.onTickStarted();
                 try {
                     mRunnableImpl.run();
                     mLastPollTime = System.currentTimeMillis();
                 } catch (Throwable t) {
                     Log.v(TAG, "Error executing task: " + t.getMessage(), t);
                 }
+                mTickTimer.onTickFinished();
             } else {
                 Log.v(TAG, "Ran the task too recently: will schedule it for later");
                 mHandler.removeCallbacksAndMessages(null);
@@ -122,6 +130,7 @@ public class NetworkChangeScheduler implements Scheduler {
         @Override
         public void onReceive(Context context, Intent intent) {
             Log.v(TAG, "onReceive: intent = " + intent);
+            mTickTimer.requestTick();
             mHandler.post(mBufferedRunnable);
         }
     };
@@ -131,6 +140,7 @@ public class NetworkChangeScheduler implements Scheduler {
         @Override
         public void onServiceStateChanged(ServiceState serviceState) {
             Log.v(TAG, "onServiceStateChanged " + serviceState);
+            mTickTimer.requestTick();
             mHandler.post(mBufferedRunnable);
         }
     };
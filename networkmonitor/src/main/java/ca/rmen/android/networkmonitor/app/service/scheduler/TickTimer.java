@@ -0,0 +1,216 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ *
+ * Copyright (C) 2016 Carmen Alvarez (c@rmen.ca)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.rmen.android.networkmonitor.app.service.scheduler;
+
+import android.content.ContentProviderOperation;
+import android.content.Context;
+import android.content.OperationApplicationException;
+import android.os.RemoteException;
+
+import java.util.ArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+import ca.rmen.android.networkmonitor.Constants;
+import ca.rmen.android.networkmonitor.app.prefs.NetMonPreferences;
+import ca.rmen.android.networkmonitor.app.prefs.NetMonPreferences.OverrunPolicy;
+import ca.rmen.android.networkmonitor.provider.NetMonProvider;
+import ca.rmen.android.networkmonitor.provider.SchedulerStatsColumns;
+import ca.rmen.android.networkmonitor.util.Log;
+
+/**
+ * Plans when the ticks of a {@link Scheduler} should start, and measures when they actually start.
+ *
+ * Periodic ticks are planned on a fixed grid: each tick is planned one interval after the previous planned tick, so a tick which starts a bit late
+ * doesn't shift the following ones. A tick overruns when the previous tick was still running at the time it was planned to start. What we do then
+ * depends on the {@link OverrunPolicy} in the preferences.
+ *
+ * Schedulers which react to events rather than run periodically don't have an interval: their tick is planned when the event occurs. Such a
+ * tick is a one-off event, so the overrun policy doesn't apply to it: it always runs.
+ *
+ * The counters are saved periodically in the {@link SchedulerStatsColumns} table.
+ */
+class TickTimer {
+    private static final String TAG = Constants.TAG + TickTimer.class.getSimpleName();
+    // Save the stats every this many ticks.
+    private static final int STATS_SAVE_INTERVAL_TICKS = 10;
+    private static final long NOT_PLANNED = -1;
+    // One thread, so that the stats are saved in the order of the calls.
+    private static final Executor SAVE_EXECUTOR = Executors.newSingleThreadExecutor();
+
+    private final Context mContext;
+    private final String mSchedulerName;
+    private final Clock mClock;
+
+    private int mInterval;
+    // In the Clock.elapsedRealtime() time base.
+    private long mNextPlannedStart = NOT_PLANNED;
+    private long mCurrentTickStart;
+    private long mLastTickEnd;
+
+    private int mTickCount;
+    private int mOverrunCount;
+    private int mSkippedCount;
+    private int mDriftCount;
+    private long mTotalDrift;
+    private long mMaxDrift;
+    private long mTotalDuration;
+    private long mMaxDuration;
+
+    TickTimer(Context context, Class<? extends Scheduler> schedulerClass) {
+        this(context, schedulerClass, Clock.SYSTEM);
+    }
+
+    TickTimer(Context context, Class<? extends Scheduler> schedulerClass, Clock clock) {
+        mContext = context;
+        mSchedulerName = schedulerClass.getSimpleName();
+        mClock = clock;
+    }
+
+    /**
+     * Plan periodic ticks at the given interval, starting now.
+     */
+    synchronized void start(int interval) {
+        Log.v(TAG, "start: interval=" + interval);
+        mInterval = interval;
+        mNextPlannedStart = mClock.elapsedRealtime();
+    }
+
+    /**
+     * Change the interval between the next planned tick and the previous one, without restarting the plan.
+     */
+    synchronized void setInterval(int interval) {
+        if (mNextPlannedStart != NOT_PLANNED) mNextPlannedStart += interval - mInterval;
+        mInterval = interval;
+    }
+
+    /**
+     * For event-driven schedulers: plan a tick now, unless one is already planned.
+     */
+    synchronized void requestTick() {
+        if (mNextPlannedStart == NOT_PLANNED) mNextPlannedStart = mClock.elapsedRealtime();
+    }
+
+    /**
+     * @return the number of milliseconds from now until the next planned tick.
+     */
+    synchronized long getDelayUntilNextTick() {
+        if (mNextPlannedStart == NOT_PLANNED) return mInterval;
+        return Math.max(0, mNextPlannedStart - mClock.elapsedRealtime());
+    }
+
+    /**
+     * Must be called when a tick is due, before running the task. If this returns true, {@link #onTickFinished()} must be called once the task
+     * is done.
+     *
+     * @return true if the task should run now, false if this tick should be skipped. Always true without an interval.
+     */
+    synchronized boolean onTickStarted() {
+        long now = mClock.elapsedRealtime();
+        long plannedStart = mNextPlannedStart == NOT_PLANNED ? now : mNextPlannedStart;
+        long lateness = Math.max(0, now - plannedStart);
+        // The number of planned ticks, after this one, whose time has already passed.
+        long missedTicks = mInterval > 0 ? lateness / mInterval : 0;
+        boolean shouldRun = true;
+        if (mInterval > 0 && mLastTickEnd > plannedStart) {
+            mOverrunCount++;
+            OverrunPolicy policy = NetMonPreferences.getInstance(mContext).getOverrunPolicy();
+            Log.v(TAG, "Tick overrun by " + (mLastTickEnd - plannedStart) + " ms, started " + lateness + " ms late: " + policy);
+            if (policy == OverrunPolicy.DELAY) {
+                mNextPlannedStart = now + mInterval;
+            } else {
+                if (policy == OverrunPolicy.SKIP) {
+                    shouldRun = false;
+                    mSkippedCount++;
+                }
+                mSkippedCount += missedTicks;
+                mNextPlannedStart = plannedStart + (missedTicks + 1) * mInterval;
+            }
+        } else {
+            mDriftCount++;
+            mTotalDrift += lateness;
+            mMaxDrift = Math.max(mMaxDrift, lateness);
+            // If we started so late that the next ticks are already due (ex: the device was asleep), run only once for all of them.
+            mSkippedCount += missedTicks;
+            mNextPlannedStart = plannedStart + (missedTicks + 1) * mInterval;
+        }
+        if (mInterval == 0) mNextPlannedStart = NOT_PLANNED;
+        if (shouldRun) mCurrentTickStart = now;
+        return shouldRun;
+    }
+
+    /**
+     * Must be called when the task of a tick is done.
+     */
+    void onTickFinished() {
+        boolean shouldSave;
+        synchronized (this) {
+            mLastTickEnd = mClock.elapsedRealtime();
+            long duration = mLastTickEnd - mCurrentTickStart;
+            mTickCount++;
+            mTotalDuration += duration;
+            mMaxDuration = Math.max(mMaxDuration, duration);
+            shouldSave = mTickCount % STATS_SAVE_INTERVAL_TICKS == 0;
+        }
+        if (shouldSave) save();
+    }
+
+    /**
+     * Like {@link #save()}, but on a background thread, for schedulers which are destroyed on the main thread.
+     */
+    void saveInBackground() {
+        SAVE_EXECUTOR.execute(this::save);
+    }
+
+    /**
+     * Replace the stats of this scheduler in the DB with the current ones.
+     */
+    void save() {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>(2);
+        operations.add(ContentProviderOperation.newDelete(SchedulerStatsColumns.CONTENT_URI)
+                .withSelection(SchedulerStatsColumns.SCHEDULER_NAME + "=?", new String[]{mSchedulerName})
+                .build());
+        OverrunPolicy policy = NetMonPreferences.getInstance(mContext).getOverrunPolicy();
+        synchronized (this) {
+            operations.add(ContentProviderOperation.newInsert(SchedulerStatsColumns.CONTENT_URI)
+                    .withValue(SchedulerStatsColumns.SCHEDULER_NAME, mSchedulerName)
+                    .withValue(SchedulerStatsColumns.OVERRUN_POLICY, policy.name())
+                    .withValue(SchedulerStatsColumns.INTERVAL, mInterval)
+                    .withValue(SchedulerStatsColumns.TICK_COUNT, mTickCount)
+                    .withValue(SchedulerStatsColumns.OVERRUN_COUNT, mOverrunCount)
+                    .withValue(SchedulerStatsColumns.SKIPPED_COUNT, mSkippedCount)
+                    .withValue(SchedulerStatsColumns.DRIFT_MEAN, mDriftCount == 0 ? 0 : mTotalDrift / mDriftCount)
+                    .withValue(SchedulerStatsColumns.DRIFT_MAX, mMaxDrift)
+                    .withValue(SchedulerStatsColumns.DURATION_MEAN, mTickCount == 0 ? 0 : mTotalDuration / mTickCount)
+                    .withValue(SchedulerStatsColumns.DURATION_MAX, mMaxDuration)
+                    .withValue(SchedulerStatsColumns.TIMESTAMP, mClock.currentTimeMillis())
+                    .build());
+        }
+        try {
+            mContext.getContentResolver().applyBatch(NetMonProvider.AUTHORITY, operations);
+        } catch (RemoteException | OperationApplicationException e) {
+            Log.w(TAG, "Could not save the scheduler stats: " + e.getMessage(), e);
+        }
+    }
+}
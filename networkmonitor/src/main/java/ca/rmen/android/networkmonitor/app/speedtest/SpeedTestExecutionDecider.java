@@ -26,7 +26,6 @@ package ca.rmen.android.networkmonitor.app.speedtest;
 
 import android.content.Context;
 import android.content.SharedPreferences;
-import android.database.Cursor;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
 import android.net.wifi.WifiInfo;
@@ -39,6 +38,7 @@ import android.telephony.SignalStrength;
 import android.telephony.TelephonyManager;
 
 import ca.rmen.android.networkmonitor.Constants;
+import ca.rmen.android.networkmonitor.provider.AggregateColumns;
 import ca.rmen.android.networkmonitor.provider.NetMonColumns;
 import ca.rmen.android.networkmonitor.util.DBUtil;
 import ca.rmen.android.networkmonitor.util.Log;
@@ -63,8 +63,10 @@ public class SpeedTestExecutionDecider {
     private final WifiManager mWifiManager;
     private final ConnectivityManager mConnectivityManager;
 
-    // Using this selection in a query will make the query only return results in which a speed test was performed.
-    private static final String QUERY_FILTER_HAS_SPEED_TEST = "CAST(" + NetMonColumns.DOWNLOAD_SPEED + " AS REAL) > 0 OR CAST(" + NetMonColumns.UPLOAD_SPEED + " AS REAL) > 0";
+    // Using these selections in a query will make the query only return results in which a download or upload speed test succeeded.
+    // Each one can be answered with an index on its status column.
+    private static final String QUERY_FILTER_HAS_DOWNLOAD_SPEED_TEST = NetMonColumns.DOWNLOAD_SPEED_STATUS + "='" + SpeedTestResult.SpeedTestStatus.SUCCESS.name() + "'";
+    private static final String QUERY_FILTER_HAS_UPLOAD_SPEED_TEST = NetMonColumns.UPLOAD_SPEED_STATUS + "='" + SpeedTestResult.SpeedTestStatus.SUCCESS.name() + "'";
 
     public SpeedTestExecutionDecider(Context context) {
         Log.v(TAG, "onCreate");
@@ -114,7 +116,7 @@ public class SpeedTestExecutionDecider {
      * @return true if the current network type is different from the network type during the last speed test.
      */
     private boolean hasNetworkTypeChanged() {
-        String lastLoggedNetworkType = DBUtil.readLastLoggedValue(mContext, NetMonColumns.NETWORK_TYPE, QUERY_FILTER_HAS_SPEED_TEST);
+        String lastLoggedNetworkType = readValueAtLastSpeedTest(NetMonColumns.NETWORK_TYPE);
         String currentNetworkType = TelephonyUtil.getNetworkType(mContext);
 
         if (currentNetworkType == null) return false;
@@ -142,7 +144,7 @@ public class SpeedTestExecutionDecider {
      */
     private boolean hasCellSignalStrengthChanged() {
         Log.v(TAG, "hasCellSignalStrengthChanged by: " + SIGNAL_STRENGTH_VARIATION_THRESHOLD_DBM + '?');
-        String lastLoggedCellSignalStrength = DBUtil.readLastLoggedValue(mContext, NetMonColumns.CELL_SIGNAL_STRENGTH_DBM, QUERY_FILTER_HAS_SPEED_TEST);
+        String lastLoggedCellSignalStrength = readValueAtLastSpeedTest(NetMonColumns.CELL_SIGNAL_STRENGTH_DBM);
         return lastLoggedCellSignalStrength != null &&
                 signalStrengthChangeExceedsThreshold(Integer.valueOf(lastLoggedCellSignalStrength), mCurrentCellSignalStrengthDbm);
     }
@@ -154,7 +156,7 @@ public class SpeedTestExecutionDecider {
         Log.v(TAG, "hasWifiSignalStrengthChanged by: " + SIGNAL_STRENGTH_VARIATION_THRESHOLD_DBM + '?');
         WifiInfo connectionInfo = mWifiManager.getConnectionInfo();
         int currentWifiSignalStrengthDbm = connectionInfo.getRssi();
-        String lastLoggedWifiSignalStrength = DBUtil.readLastLoggedValue(mContext, NetMonColumns.WIFI_RSSI, QUERY_FILTER_HAS_SPEED_TEST);
+        String lastLoggedWifiSignalStrength = readValueAtLastSpeedTest(NetMonColumns.WIFI_RSSI);
         return lastLoggedWifiSignalStrength != null &&
                 signalStrengthChangeExceedsThreshold(Integer.valueOf(lastLoggedWifiSignalStrength), currentWifiSignalStrengthDbm);
     }
@@ -186,20 +188,34 @@ public class SpeedTestExecutionDecider {
                 || (numberOfRecordsSinceLastSpeedTest >= mPreferences.getSpeedTestInterval() - 1);
     }
 
+    /**
+     * @return the id of the most recent record with a successful download or upload speed test, or -1 if there is none.
+     */
+    private long readIdOfLatestSpeedTest() {
+        String idOfLatestDownload = DBUtil.readLastLoggedValue(mContext, BaseColumns._ID, QUERY_FILTER_HAS_DOWNLOAD_SPEED_TEST);
+        String idOfLatestUpload = DBUtil.readLastLoggedValue(mContext, BaseColumns._ID, QUERY_FILTER_HAS_UPLOAD_SPEED_TEST);
+        long result = -1;
+        if (idOfLatestDownload != null) result = Long.parseLong(idOfLatestDownload);
+        if (idOfLatestUpload != null) result = Math.max(result, Long.parseLong(idOfLatestUpload));
+        return result;
+    }
+
+    /**
+     * @return the value of the given column in the most recent record with a speed test.  May return null.
+     */
+    private String readValueAtLastSpeedTest(String columnName) {
+        long idOfLatestSpeedTest = readIdOfLatestSpeedTest();
+        if (idOfLatestSpeedTest < 0) return null;
+        return DBUtil.readLastLoggedValue(mContext, columnName, BaseColumns._ID + "=" + idOfLatestSpeedTest);
+    }
+
     private int readNumberOfRecordsSinceLastSpeedTest() {
-        String idOfLatestSpeedTest = DBUtil.readLastLoggedValue(mContext, BaseColumns._ID, QUERY_FILTER_HAS_SPEED_TEST);
-        if (idOfLatestSpeedTest == null) return 0;
-        String orderBy = BaseColumns._ID + " DESC";
+        long idOfLatestSpeedTest = readIdOfLatestSpeedTest();
+        if (idOfLatestSpeedTest < 0) return 0;
         String selection = BaseColumns._ID + " > " + idOfLatestSpeedTest;
-        Cursor cursor = mContext.getContentResolver().query(NetMonColumns.CONTENT_URI, null, selection, null, orderBy);
-        if (cursor != null) {
-            try {
-                return cursor.getCount();
-            } finally {
-                cursor.close();
-            }
-        }
-        return 0;
+        // With change-only recording, a row can stand for many samples.
+        Long count = DBUtil.readLongAggregate(mContext, AggregateColumns.Function.SAMPLE_COUNT, BaseColumns._ID, selection);
+        return count == null ? 0 : count.intValue();
     }
 
     private void registerPhoneStateListener() {
@@ -29,7 +29,8 @@ import android.content.SharedPreferences.Editor;
 
 public class SpeedTestResult {
     public enum SpeedTestStatus {
-        SUCCESS, INVALID_FILE, FAILURE, AUTH_FAILURE, UNKNOWN
+        // SKIPPED is only logged: the speed test wasn't run for this sample.
+        SUCCESS, INVALID_FILE, FAILURE, AUTH_FAILURE, UNKNOWN, SKIPPED
     }
 
     public final long fileBytes;
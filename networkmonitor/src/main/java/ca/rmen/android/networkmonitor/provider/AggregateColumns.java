@@ -0,0 +1,72 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ *
+ * Copyright (C) 2016 Carmen Alvarez (c@rmen.ca)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.rmen.android.networkmonitor.provider;
+
+import android.net.Uri;
+
+/**
+ * This is neither a db table nor view. These columns and content uri allow retrieving an aggregate of a column of the {@link NetMonColumns#TABLE_NAME}
+ * table, computed by SQLite, for the rows matching the selection. With the {@link NetMonProvider#QUERY_PARAMETER_BUCKET_WIDTH} parameter, there is
+ * one row per time bucket, otherwise a single row.
+ *
+ * The rows which have been moved to the archive file aren't included.
+ */
+public class AggregateColumns {
+    static final String NAME = "aggregate";
+    public static final Uri CONTENT_URI = Uri.parse(NetMonProvider.CONTENT_URI_BASE + "/" + NAME);
+
+    /**
+     * The start of the time bucket: the timestamp rounded down to a multiple of the bucket width. Only present with a bucket width.
+     */
+    public static final String BUCKET_START = "bucket_start";
+    public static final String VALUE = "value";
+
+    public enum Function {
+        /**
+         * The number of non-null values. Use the {@link NetMonColumns#_ID} column to count the rows.
+         */
+        COUNT,
+        /**
+         * The number of samples logged in the rows with a non-null value. When only changes are logged, a row stands for 1 +
+         * {@link NetMonColumns#REPEAT_COUNT} samples. Use the {@link NetMonColumns#_ID} column to count the samples of all the rows.
+         */
+        SAMPLE_COUNT,
+        MIN,
+        MAX,
+        AVG,
+        SUM,
+        /**
+         * The value at the {@link NetMonProvider#QUERY_PARAMETER_PERCENTILE} (the median by default) of the sorted non-null values, using the
+         * nearest-rank method. There is no row for a selection without any value.
+         */
+        PERCENTILE
+    }
+
+    /**
+     * @return the uri to read the aggregate of the given column.
+     */
+    public static Uri getUri(Function function, String columnName) {
+        return CONTENT_URI.buildUpon().appendPath(function.name()).appendPath(columnName).build();
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ *
+ * Copyright (C) 2016 Carmen Alvarez (c@rmen.ca)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.rmen.android.networkmonitor.provider;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.text.TextUtils;
+
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Builds the SQL for a uri of the {@link AggregateColumns}: content://authority/aggregate/FUNCTION/column.
+ */
+class AggregateQuery {
+    private static final Pattern COLUMN_NAME = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+    private static final double DEFAULT_PERCENTILE = 50;
+
+    private final AggregateColumns.Function mFunction;
+    private final String mColumnName;
+    private final long mBucketWidth;
+    private final double mPercentile;
+    private final String mSelection;
+    private final String[] mSelectionArgs;
+
+    /**
+     * @throws IllegalArgumentException if the uri doesn't have a valid function, column, bucket width or percentile.
+     */
+    AggregateQuery(Uri uri, String selection, String[] selectionArgs) {
+        List<String> pathSegments = uri.getPathSegments();
+        if (pathSegments.size() != 3) throw new IllegalArgumentException("The uri '" + uri + "' should be " + AggregateColumns.NAME + "/function/column");
+        mFunction = AggregateColumns.Function.valueOf(pathSegments.get(1));
+        mColumnName = pathSegments.get(2);
+        if (!COLUMN_NAME.matcher(mColumnName).matches()) throw new IllegalArgumentException("Invalid column in the uri '" + uri + "'");
+        String bucketWidth = uri.getQueryParameter(NetMonProvider.QUERY_PARAMETER_BUCKET_WIDTH);
+        mBucketWidth = bucketWidth == null ? 0 : Long.parseLong(bucketWidth);
+        if (bucketWidth != null && mBucketWidth <= 0) throw new IllegalArgumentException("Invalid bucket width in the uri '" + uri + "'");
+        String percentile = uri.getQueryParameter(NetMonProvider.QUERY_PARAMETER_PERCENTILE);
+        mPercentile = percentile == null ? DEFAULT_PERCENTILE : Double.parseDouble(percentile);
+        if (mPercentile < 0 || mPercentile > 100) throw new IllegalArgumentException("Invalid percentile in the uri '" + uri + "'");
+        mSelection = TextUtils.isEmpty(selection) ? null : selection;
+        mSelectionArgs = selectionArgs;
+    }
+
+    /**
+     * SQLite can't use a column of the outer query in a LIMIT or OFFSET, so the percentile of each bucket needs its own query: see
+     * {@link #queryBucketedPercentiles(SQLiteDatabase)}.
+     */
+    boolean isBucketedPercentile() {
+        return mFunction == AggregateColumns.Function.PERCENTILE && mBucketWidth > 0;
+    }
+
+    String getSql() {
+        if (mFunction == AggregateColumns.Function.PERCENTILE) return getPercentileSql();
+        // @formatter:off
+        if (mBucketWidth > 0) {
+            return "SELECT " + getBucketStart() + " AS " + AggregateColumns.BUCKET_START + ","
+                    + getAggregate() + " AS " + AggregateColumns.VALUE
+                    + " FROM " + NetMonColumns.TABLE_NAME
+                    + getWhere(null)
+                    + " GROUP BY " + AggregateColumns.BUCKET_START
+                    + " ORDER BY " + AggregateColumns.BUCKET_START;
+        }
+        return "SELECT " + getAggregate() + " AS " + AggregateColumns.VALUE
+                + " FROM " + NetMonColumns.TABLE_NAME
+                + getWhere(null);
+        // @formatter:on
+    }
+
+    private String getAggregate() {
+        if (mFunction == AggregateColumns.Function.SAMPLE_COUNT) {
+            return "SUM(CASE WHEN " + mColumnName + " IS NOT NULL THEN 1+IFNULL(" + NetMonColumns.REPEAT_COUNT + ",0) END)";
+        }
+        return mFunction.name() + "(" + mColumnName + ")";
+    }
+
+    /**
+     * @return the selection args for {@link #getSql()}: the selection appears twice in the percentile query.
+     */
+    String[] getSelectionArgs() {
+        if (mFunction != AggregateColumns.Function.PERCENTILE || mSelectionArgs == null) return mSelectionArgs;
+        return concat(mSelectionArgs, mSelectionArgs);
+    }
+
+    /**
+     * Read the number of values of each bucket, then the value at the percentile of each bucket, with a query which reads the bucket from the
+     * timestamp index.
+     *
+     * @return a cursor with the {@link AggregateColumns#BUCKET_START} and {@link AggregateColumns#VALUE} of each bucket which has values.
+     */
+    Cursor queryBucketedPercentiles(SQLiteDatabase db) {
+        String[] columns = new String[]{AggregateColumns.BUCKET_START, AggregateColumns.VALUE};
+        // @formatter:off
+        String bucketsSql = "SELECT " + getBucketStart() + " AS " + AggregateColumns.BUCKET_START + ","
+                + "COUNT(" + mColumnName + ")"
+                + " FROM " + NetMonColumns.TABLE_NAME
+                + getWhere(mColumnName + " IS NOT NULL")
+                + " GROUP BY " + AggregateColumns.BUCKET_START
+                + " ORDER BY " + AggregateColumns.BUCKET_START;
+        // @formatter:on
+        Cursor buckets = db.rawQuery(bucketsSql, mSelectionArgs);
+        try {
+            MatrixCursor result = new MatrixCursor(columns, buckets.getCount());
+            while (buckets.moveToNext()) {
+                long bucketStart = buckets.getLong(0);
+                long offset = getPercentileOffset(buckets.getLong(1));
+                // @formatter:off
+                String bucketSql = "SELECT " + mColumnName
+                        + " FROM " + NetMonColumns.TABLE_NAME
+                        + getWhere(mColumnName + " IS NOT NULL"
+                                + " AND " + NetMonColumns.TIMESTAMP + ">=" + bucketStart
+                                + " AND " + NetMonColumns.TIMESTAMP + "<" + (bucketStart + mBucketWidth))
+                        + " ORDER BY " + mColumnName
+                        + " LIMIT 1 OFFSET " + offset;
+                // @formatter:on
+                Cursor value = db.rawQuery(bucketSql, mSelectionArgs);
+                try {
+                    if (value.moveToFirst()) result.addRow(new Object[]{bucketStart, value.getString(0)});
+                } finally {
+                    value.close();
+                }
+            }
+            return result;
+        } finally {
+            buckets.close();
+        }
+    }
+
+    /**
+     * The OFFSET of the value at the percentile, in the sorted values, is computed from the number of values by a subquery.
+     */
+    private String getPercentileSql() {
+        // @formatter:off
+        return "SELECT " + mColumnName + " AS " + AggregateColumns.VALUE
+                + " FROM " + NetMonColumns.TABLE_NAME
+                + getWhere(mColumnName + " IS NOT NULL")
+                + " ORDER BY " + mColumnName
+                + " LIMIT 1 OFFSET (SELECT CAST((COUNT(" + mColumnName + ") - 1) * " + mPercentile + " / 100 AS INTEGER)"
+                        + " FROM " + NetMonColumns.TABLE_NAME + getWhere(null) + ")";
+        // @formatter:on
+    }
+
+    private long getPercentileOffset(long valueCount) {
+        return (long) ((valueCount - 1) * mPercentile / 100);
+    }
+
+    private String getBucketStart() {
+        return "(" + NetMonColumns.TIMESTAMP + "/" + mBucketWidth + ")*" + mBucketWidth;
+    }
+
+    /**
+     * @return the where clause with the selection and the given condition, or an empty string if there are neither.
+     */
+    private String getWhere(String condition) {
+        if (mSelection == null) return condition == null ? "" : " WHERE " + condition;
+        return " WHERE " + (condition == null ? "" : condition + " AND ") + "(" + mSelection + ")";
+    }
+
+    private static String[] concat(String[] args1, String[] args2) {
+        String[] result = new String[args1.length + args2.length];
+        System.arraycopy(args1, 0, result, 0, args1.length);
+        System.arraycopy(args2, 0, result, args1.length, args2.length);
+        return result;
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ *
+ * Copyright (C) 2016 Carmen Alvarez (c@rmen.ca)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.rmen.android.networkmonitor.provider;
+
+import android.annotation.TargetApi;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Build;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import ca.rmen.android.networkmonitor.Constants;
+import ca.rmen.android.networkmonitor.util.Log;
+
+/**
+ * Writes many rows directly to the DB in large transactions, instead of going through {@link SQLiteDatabase#insert}, which compiles a statement for
+ * every row. A compiled insert statement is kept for each table and set of columns, and the values are bound with their types.
+ * Rows of the {@link NetMonColumns#TABLE_NAME} view are written to the {@link NetMonColumns#DATA_TABLE_NAME} table, like the {@link NetMonProvider} does.
+ *
+ * An instance should only be used by one thread.
+ */
+public class BulkInserter {
+    private static final String TAG = Constants.TAG + BulkInserter.class.getSimpleName();
+
+    private final Context mContext;
+    private final NetMonDatabase mNetMonDatabase;
+    private final Map<String, Map<Set<String>, CompiledInsert>> mStatements = new HashMap<>();
+
+    public BulkInserter(Context context) {
+        this(context, NetMonDatabase.getInstance(context));
+    }
+
+    BulkInserter(Context context, NetMonDatabase netMonDatabase) {
+        mContext = context.getApplicationContext();
+        mNetMonDatabase = netMonDatabase;
+    }
+
+    /**
+     * Insert the rows in the given table, in a single transaction. Observers of the table's uri are not notified: the caller does it once it has
+     * inserted all its rows.
+     *
+     * @return the number of inserted rows.
+     */
+    public int insert(String table, ContentValues[] rows, int offset, int count) {
+        SQLiteDatabase db = mNetMonDatabase.getWritableDatabase();
+        int result = 0;
+        boolean isSuccessful = false;
+        db.beginTransaction();
+        try {
+            for (int i = offset; i < offset + count; i++) {
+                if (insert(db, table, rows[i]) != -1) result++;
+            }
+            db.setTransactionSuccessful();
+            isSuccessful = true;
+        } finally {
+            db.endTransaction();
+            mNetMonDatabase.incrementWriteSequence();
+            if (!isSuccessful) mNetMonDatabase.getDictionaries().clearCache();
+        }
+        Log.v(TAG, "Inserted " + result + " rows in " + table);
+        return result;
+    }
+
+    /**
+     * Insert one row, in the caller's transaction.
+     *
+     * @return the id of the inserted row.
+     */
+    long insert(SQLiteDatabase db, String table, ContentValues values) {
+        if (NetMonColumns.TABLE_NAME.equals(table)) {
+            table = NetMonColumns.DATA_TABLE_NAME;
+            values = mNetMonDatabase.getDictionaries().encode(SpeedColumns.convert(values));
+        }
+        CompiledInsert compiledInsert = getCompiledInsert(db, table, values);
+        SQLiteStatement statement = compiledInsert.statement;
+        String[] columns = compiledInsert.columns;
+        for (int i = 0; i < columns.length; i++) {
+            bind(statement, i + 1, values.get(columns[i]));
+        }
+        try {
+            return statement.executeInsert();
+        } catch (SQLException e) {
+            // Like SQLiteDatabase.insert(), skip the rows which can't be inserted.
+            Log.e(TAG, "Couldn't insert " + values + " in " + table, e);
+            return -1;
+        }
+    }
+
+    /**
+     * Release the compiled statements.
+     */
+    public void close() {
+        for (Map<Set<String>, CompiledInsert> tableStatements : mStatements.values()) {
+            for (CompiledInsert compiledInsert : tableStatements.values())
+                compiledInsert.statement.close();
+        }
+        mStatements.clear();
+    }
+
+    private CompiledInsert getCompiledInsert(SQLiteDatabase db, String table, ContentValues values) {
+        Map<Set<String>, CompiledInsert> tableStatements = mStatements.get(table);
+        if (tableStatements == null) {
+            tableStatements = new HashMap<>();
+            mStatements.put(table, tableStatements);
+        }
+        Set<String> columnSet = getColumns(values);
+        CompiledInsert result = tableStatements.get(columnSet);
+        if (result == null) {
+            String[] columns = columnSet.toArray(new String[columnSet.size()]);
+            result = new CompiledInsert(columns, db.compileStatement(getInsertStatement(table, columns)));
+            tableStatements.put(new HashSet<>(columnSet), result);
+            Log.v(TAG, "Compiled an insert statement for " + columns.length + " columns of " + table);
+        }
+        return result;
+    }
+
+    private static Set<String> getColumns(ContentValues values) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) return getColumnsHoneycomb(values);
+        Set<String> result = new HashSet<>(values.size());
+        for (Map.Entry<String, Object> entry : values.valueSet())
+            result.add(entry.getKey());
+        return result;
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static Set<String> getColumnsHoneycomb(ContentValues values) {
+        return values.keySet();
+    }
+
+    private static String getInsertStatement(String table, String[] columns) {
+        if (columns.length == 0) return "INSERT INTO " + table + " DEFAULT VALUES";
+        StringBuilder sql = new StringBuilder("INSERT INTO ").append(table).append(" (");
+        StringBuilder parameters = new StringBuilder(") VALUES (");
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                sql.append(',');
+                parameters.append(',');
+            }
+            sql.append(columns[i]);
+            parameters.append('?');
+        }
+        return sql.append(parameters).append(')').toString();
+    }
+
+    private static void bind(SQLiteStatement statement, int index, Object value) {
+        if (value == null) statement.bindNull(index);
+        else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte)
+            statement.bindLong(index, ((Number) value).longValue());
+        else if (value instanceof Double || value instanceof Float) statement.bindDouble(index, ((Number) value).doubleValue());
+        else if (value instanceof Boolean) statement.bindLong(index, (Boolean) value ? 1 : 0);
+        else if (value instanceof byte[]) statement.bindBlob(index, (byte[]) value);
+        else statement.bindString(index, value.toString());
+    }
+
+    private static class CompiledInsert {
+        final String[] columns;
+        final SQLiteStatement statement;
+
+        CompiledInsert(String[] columns, SQLiteStatement statement) {
+            this.columns = columns;
+            this.statement = statement;
+        }
+    }
+}
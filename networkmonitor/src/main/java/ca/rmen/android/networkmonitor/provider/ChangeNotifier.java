@@ -0,0 +1,108 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ *
+ * Copyright (C) 2016 Carmen Alvarez (c@rmen.ca)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.rmen.android.networkmonitor.provider;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import ca.rmen.android.networkmonitor.Constants;
+import ca.rmen.android.networkmonitor.R;
+import ca.rmen.android.networkmonitor.util.Log;
+
+/**
+ * Coalesces the change notifications of the provider's uris: the writes in a debounce window result in at most one notification per uri, sent at
+ * the end of the window. The window is the notification_debounce_window_ms resource.
+ *
+ * The notified uri has the {@link NetMonProvider#QUERY_PARAMETER_SEQUENCE} parameter: the write sequence of the DB when the notification was sent.
+ * An observer which has already read the data after this sequence can skip its refresh.
+ */
+final class ChangeNotifier {
+    private static final String TAG = Constants.TAG + ChangeNotifier.class.getSimpleName();
+
+    private static ChangeNotifier sInstance;
+
+    private final Context mContext;
+    private final long mDebounceWindow;
+    private final Handler mHandler;
+    // The uris to notify at the end of the current window. Guarded by this.
+    private final Set<Uri> mPendingUris = new LinkedHashSet<>();
+    private final Runnable mFlushRunnable = this::flush;
+
+    /**
+     * @return the only instance in this process: the provider and the {@link NetMonDao}s share it.
+     */
+    static synchronized ChangeNotifier getInstance(Context context) {
+        if (sInstance == null) sInstance = new ChangeNotifier(context.getApplicationContext());
+        return sInstance;
+    }
+
+    private ChangeNotifier(Context context) {
+        mContext = context;
+        mDebounceWindow = context.getResources().getInteger(R.integer.notification_debounce_window_ms);
+        HandlerThread handlerThread = new HandlerThread(TAG, android.os.Process.THREAD_PRIORITY_BACKGROUND);
+        handlerThread.start();
+        mHandler = new Handler(handlerThread.getLooper());
+    }
+
+    /**
+     * Notify the observers of the given uri at the end of the current window, or now if there is no window.
+     */
+    void notifyChange(Uri uri) {
+        Uri notificationUri = uri.buildUpon().clearQuery().build();
+        if (mDebounceWindow <= 0) {
+            send(notificationUri);
+            return;
+        }
+        synchronized (this) {
+            boolean isWindowStarted = !mPendingUris.isEmpty();
+            mPendingUris.add(notificationUri);
+            if (isWindowStarted) return;
+        }
+        mHandler.postDelayed(mFlushRunnable, mDebounceWindow);
+    }
+
+    private void flush() {
+        List<Uri> uris;
+        synchronized (this) {
+            uris = new ArrayList<>(mPendingUris);
+            mPendingUris.clear();
+        }
+        for (Uri uri : uris)
+            send(uri);
+    }
+
+    private void send(Uri uri) {
+        long sequence = NetMonDatabase.getInstance(mContext).getWriteSequence();
+        Uri notificationUri = uri.buildUpon().appendQueryParameter(NetMonProvider.QUERY_PARAMETER_SEQUENCE, String.valueOf(sequence)).build();
+        Log.v(TAG, "notifyChange " + notificationUri);
+        mContext.getContentResolver().notifyChange(notificationUri, null);
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ *
+ * Copyright (C) 2016 Carmen Alvarez (c@rmen.ca)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.rmen.android.networkmonitor.provider;
+
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.text.TextUtils;
+
+import ca.rmen.android.networkmonitor.Constants;
+import ca.rmen.android.networkmonitor.Constants.ConnectionType;
+import ca.rmen.android.networkmonitor.util.Log;
+
+/**
+ * Maintains the {@link ConnectionTestStatsColumns#TABLE_NAME} table, which counts the rows of the {@link NetMonColumns#DATA_TABLE_NAME} table per
+ * network (type, ids and label) and socket connection test result. Triggers update the counts when a row is inserted, deleted, or when an update
+ * changes one of the {@link #COUNTED_COLUMNS}.
+ *
+ * A row is counted for a cell type if the data state is connected and it has ids for this cell type, and for wifi if the network type is wifi and it
+ * has a BSSID. So a row can be counted for several types.
+ *
+ * The ids, label and result are part of a unique key, so they are stored as empty strings instead of null. The
+ * {@link ConnectionTestStatsColumns#VIEW_NAME} view gives them back as null.
+ *
+ * The DB upgrade which creates the table doesn't compute the counts: it only creates the {@link #REBUILD_TABLE_NAME} table, and
+ * {@link NetMonDatabase} rebuilds the counts in the background. The rebuild drops the table.
+ */
+class ConnectionTestStats {
+    private static final String TAG = Constants.TAG + ConnectionTestStats.class.getSimpleName();
+
+    // The number of rows in the group. The test count doesn't count the rows without a test result.
+    private static final String ROW_COUNT = "row_count";
+    private static final String INSERT_TRIGGER_NAME = ConnectionTestStatsColumns.TABLE_NAME + "_insert";
+    private static final String DELETE_TRIGGER_NAME = ConnectionTestStatsColumns.TABLE_NAME + "_delete";
+    private static final String UPDATE_TRIGGER_NAME = ConnectionTestStatsColumns.TABLE_NAME + "_update";
+    private static final String REBUILD_TABLE_NAME = ConnectionTestStatsColumns.TABLE_NAME + "_rebuild";
+
+    private static final String[] KEY_COLUMNS = new String[]{ConnectionTestStatsColumns.TYPE, ConnectionTestStatsColumns.ID1,
+            ConnectionTestStatsColumns.ID2, ConnectionTestStatsColumns.ID3, ConnectionTestStatsColumns.LABEL, ConnectionTestStatsColumns.TEST_RESULT};
+
+    // The columns of the data table which decide if and where a row is counted.
+    private static final String[] COUNTED_COLUMNS = new String[]{NetMonColumns.DATA_STATE, NetMonColumns.NETWORK_TYPE,
+            NetMonColumns.GSM_CELL_LAC, NetMonColumns.GSM_SHORT_CELL_ID, NetMonColumns.GSM_FULL_CELL_ID,
+            NetMonColumns.CDMA_CELL_BASE_STATION_ID, NetMonColumns.CDMA_CELL_NETWORK_ID, NetMonColumns.CDMA_CELL_SYSTEM_ID,
+            NetMonColumns.EXTRA_INFO, NetMonColumns.WIFI_BSSID, NetMonColumns.WIFI_SSID, NetMonColumns.SOCKET_CONNECTION_TEST};
+
+    private ConnectionTestStats() {
+        // prevent instantiation
+    }
+
+    /**
+     * Create the table, its triggers, and the {@link ConnectionTestStatsColumns#VIEW_NAME} view.  The table is empty: call
+     * {@link #rebuild(SQLiteDatabase)} if the DB already has rows.
+     */
+    static void createTable(SQLiteDatabase db) {
+        StringBuilder createTable = new StringBuilder("CREATE TABLE IF NOT EXISTS ").append(ConnectionTestStatsColumns.TABLE_NAME).append(" ( ")
+                .append(ConnectionTestStatsColumns._ID).append(" INTEGER PRIMARY KEY");
+        for (String column : KEY_COLUMNS)
+            createTable.append(", ").append(column).append(" TEXT NOT NULL");
+        createTable.append(", ").append(ROW_COUNT).append(" INTEGER NOT NULL DEFAULT 0")
+                .append(", UNIQUE (").append(TextUtils.join(",", KEY_COLUMNS)).append(")")
+                .append(" );");
+        db.execSQL(createTable.toString());
+
+        StringBuilder onInsert = new StringBuilder();
+        StringBuilder onDelete = new StringBuilder();
+        for (ConnectionType type : ConnectionType.values()) {
+            String[] newKeys = buildKeyExpressions(type, "NEW");
+            String isNewCounted = buildIsCounted(type, "NEW");
+            onInsert.append("INSERT OR IGNORE INTO ").append(ConnectionTestStatsColumns.TABLE_NAME).append(" (").append(TextUtils.join(",", KEY_COLUMNS))
+                    .append(") SELECT ").append(TextUtils.join(",", newKeys)).append(" WHERE ").append(isNewCounted).append("; ")
+                    .append("UPDATE ").append(ConnectionTestStatsColumns.TABLE_NAME).append(" SET ").append(ROW_COUNT).append("=").append(ROW_COUNT)
+                    .append("+1 WHERE ").append(buildKeyMatches(newKeys)).append(" AND ").append(isNewCounted).append("; ");
+
+            String[] oldKeys = buildKeyExpressions(type, "OLD");
+            String isOldCounted = buildIsCounted(type, "OLD");
+            onDelete.append("UPDATE ").append(ConnectionTestStatsColumns.TABLE_NAME).append(" SET ").append(ROW_COUNT).append("=").append(ROW_COUNT)
+                    .append("-1 WHERE ").append(buildKeyMatches(oldKeys)).append(" AND ").append(isOldCounted).append("; ")
+                    .append("DELETE FROM ").append(ConnectionTestStatsColumns.TABLE_NAME).append(" WHERE ").append(buildKeyMatches(oldKeys))
+                    .append(" AND ").append(ROW_COUNT).append("<=0; ");
+        }
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS " + INSERT_TRIGGER_NAME + " AFTER INSERT ON " + NetMonColumns.DATA_TABLE_NAME
+                + " BEGIN " + onInsert + "END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS " + DELETE_TRIGGER_NAME + " AFTER DELETE ON " + NetMonColumns.DATA_TABLE_NAME
+                + " BEGIN " + onDelete + "END");
+        // An update removes the row from the group of its old values, and adds it to the group of its new values.
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS " + UPDATE_TRIGGER_NAME + " AFTER UPDATE OF " + TextUtils.join(",", COUNTED_COLUMNS)
+                + " ON " + NetMonColumns.DATA_TABLE_NAME + " BEGIN " + onDelete + onInsert + "END");
+
+        StringBuilder viewColumns = new StringBuilder(ConnectionTestStatsColumns.TYPE);
+        for (int i = 1; i < KEY_COLUMNS.length; i++)
+            viewColumns.append(", NULLIF(").append(KEY_COLUMNS[i]).append(",'') AS ").append(KEY_COLUMNS[i]);
+        viewColumns.append(", CASE WHEN ").append(ConnectionTestStatsColumns.TEST_RESULT).append("='' THEN 0 ELSE ").append(ROW_COUNT)
+                .append(" END AS ").append(ConnectionTestStatsColumns.TEST_COUNT);
+        db.execSQL("CREATE VIEW IF NOT EXISTS " + ConnectionTestStatsColumns.VIEW_NAME + " AS SELECT " + viewColumns
+                + " FROM " + ConnectionTestStatsColumns.TABLE_NAME);
+    }
+
+    /**
+     * Drop the trigger which updates the counts when a row is deleted. {@link #createTable(SQLiteDatabase)} creates it again.
+     */
+    static void dropDeleteTrigger(SQLiteDatabase db) {
+        db.execSQL("DROP TRIGGER IF EXISTS " + DELETE_TRIGGER_NAME);
+    }
+
+    /**
+     * Record that the counts need to be recomputed, for {@link #isRebuildNeeded(SQLiteDatabase)}.
+     */
+    static void requestRebuild(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + REBUILD_TABLE_NAME + " (_id INTEGER)");
+    }
+
+    static boolean isRebuildNeeded(SQLiteDatabase db) {
+        return DatabaseUtils.longForQuery(db, "SELECT COUNT(*) FROM sqlite_master WHERE type='table' AND name=?", new String[]{REBUILD_TABLE_NAME}) > 0;
+    }
+
+    /**
+     * Recompute all the counts from the rows of the {@link NetMonColumns#DATA_TABLE_NAME} table.
+     */
+    static void rebuild(SQLiteDatabase db) {
+        Log.v(TAG, "rebuild");
+        long startTime = System.currentTimeMillis();
+        db.beginTransaction();
+        try {
+            db.execSQL("DELETE FROM " + ConnectionTestStatsColumns.TABLE_NAME);
+            for (ConnectionType type : ConnectionType.values()) {
+                db.execSQL("INSERT INTO " + ConnectionTestStatsColumns.TABLE_NAME + " (" + TextUtils.join(",", KEY_COLUMNS) + "," + ROW_COUNT + ")"
+                        + " SELECT " + TextUtils.join(",", buildKeyExpressions(type, "d")) + ",COUNT(*)"
+                        + " FROM " + NetMonColumns.DATA_TABLE_NAME + " d"
+                        + " WHERE " + buildIsCounted(type, "d")
+                        + " GROUP BY 1,2,3,4,5,6");
+            }
+            db.execSQL("DROP TABLE IF EXISTS " + REBUILD_TABLE_NAME);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        Log.v(TAG, "rebuild: done in " + (System.currentTimeMillis() - startTime) + "ms");
+    }
+
+    /**
+     * @param row NEW or OLD in a trigger, or the alias of the {@link NetMonColumns#DATA_TABLE_NAME} table.
+     * @return the expressions of the {@link #KEY_COLUMNS} for the given row.
+     */
+    private static String[] buildKeyExpressions(ConnectionType type, String row) {
+        String id1, id2, id3, label;
+        switch (type) {
+            case GSM:
+                id1 = row + "." + NetMonColumns.GSM_CELL_LAC;
+                id2 = row + "." + NetMonColumns.GSM_SHORT_CELL_ID;
+                id3 = row + "." + NetMonColumns.GSM_FULL_CELL_ID;
+                label = Dictionaries.buildDecodedValue(row, NetMonColumns.EXTRA_INFO);
+                break;
+            case CDMA:
+                id1 = row + "." + NetMonColumns.CDMA_CELL_BASE_STATION_ID;
+                id2 = row + "." + NetMonColumns.CDMA_CELL_NETWORK_ID;
+                id3 = row + "." + NetMonColumns.CDMA_CELL_SYSTEM_ID;
+                label = Dictionaries.buildDecodedValue(row, NetMonColumns.EXTRA_INFO);
+                break;
+            case WIFI:
+            default:
+                id1 = Dictionaries.buildDecodedValue(row, NetMonColumns.WIFI_BSSID);
+                id2 = "NULL";
+                id3 = "NULL";
+                label = Dictionaries.buildDecodedValue(row, NetMonColumns.WIFI_SSID);
+                break;
+        }
+        return new String[]{
+                "'" + type + "'",
+                "IFNULL(" + id1 + ",'')",
+                "IFNULL(" + id2 + ",'')",
+                "IFNULL(" + id3 + ",'')",
+                "IFNULL(" + label + ",'')",
+                "IFNULL(" + Dictionaries.buildDecodedValue(row, NetMonColumns.SOCKET_CONNECTION_TEST) + ",'')"
+        };
+    }
+
+    /**
+     * @return a condition which is true if the given row is counted for the given network type.
+     */
+    private static String buildIsCounted(ConnectionType type, String row) {
+        switch (type) {
+            case GSM:
+                return "(" + row + "." + NetMonColumns.DATA_STATE + "=" + Dictionaries.buildEncodedValue(NetMonColumns.DATA_STATE, Constants.DATA_STATE_CONNECTED)
+                        + " AND (" + row + "." + NetMonColumns.GSM_CELL_LAC + " NOT NULL"
+                        + " OR " + row + "." + NetMonColumns.GSM_SHORT_CELL_ID + " NOT NULL"
+                        + " OR " + row + "." + NetMonColumns.GSM_FULL_CELL_ID + " NOT NULL))";
+            case CDMA:
+                return "(" + row + "." + NetMonColumns.DATA_STATE + "=" + Dictionaries.buildEncodedValue(NetMonColumns.DATA_STATE, Constants.DATA_STATE_CONNECTED)
+                        + " AND (" + row + "." + NetMonColumns.CDMA_CELL_BASE_STATION_ID + " NOT NULL"
+                        + " OR " + row + "." + NetMonColumns.CDMA_CELL_NETWORK_ID + " NOT NULL"
+                        + " OR " + row + "." + NetMonColumns.CDMA_CELL_SYSTEM_ID + " NOT NULL))";
+            case WIFI:
+            default:
+                return "(" + row + "." + NetMonColumns.NETWORK_TYPE + "=" + Dictionaries.buildEncodedValue(NetMonColumns.NETWORK_TYPE, ConnectionType.WIFI.name())
+                        + " AND " + row + "." + NetMonColumns.WIFI_BSSID + " NOT NULL)";
+        }
+    }
+
+    private static String buildKeyMatches(String[] keys) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < KEY_COLUMNS.length; i++) {
+            if (i > 0) result.append(" AND ");
+            result.append(KEY_COLUMNS[i]).append("=").append(keys[i]);
+        }
+        return result.toString();
+    }
+}
@@ -27,8 +27,12 @@ package ca.rmen.android.networkmonitor.provider;
 import android.net.Uri;
 import android.provider.BaseColumns;
 
+/**
+ * The number of connection test results per network. The {@link #VIEW_NAME} view reads the counts maintained in the {@link #TABLE_NAME} table.
+ */
 public class ConnectionTestStatsColumns implements BaseColumns {
     static final String VIEW_NAME = "connection_test_stats";
+    static final String TABLE_NAME = "connection_test_counts";
     public static final Uri CONTENT_URI = Uri.parse(NetMonProvider.CONTENT_URI_BASE + "/" + VIEW_NAME);
     public static final String TYPE = "type";
     public static final String ID1 = "id1";
@@ -0,0 +1,44 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ *
+ * Copyright (C) 2016 Carmen Alvarez (c@rmen.ca)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.rmen.android.networkmonitor.provider;
+
+import android.net.Uri;
+import android.provider.BaseColumns;
+
+/**
+ * Timing and health statistics of each data source. The counts include the calls of all the previous runs of the service. The durations are in
+ * milliseconds, and are computed over the most recent calls of the current run.
+ */
+public class DataSourceStatsColumns implements BaseColumns {
+    static final String TABLE_NAME = "data_source_stats";
+    public static final Uri CONTENT_URI = Uri.parse(NetMonProvider.CONTENT_URI_BASE + "/" + TABLE_NAME);
+    public static final String DATA_SOURCE_NAME = "data_source_name";
+    public static final String CALL_COUNT = "call_count";
+    public static final String ERROR_COUNT = "error_count";
+    public static final String TIMEOUT_COUNT = "timeout_count";
+    public static final String DURATION_P50 = "duration_p50";
+    public static final String DURATION_P95 = "duration_p95";
+    public static final String DURATION_MAX = "duration_max";
+    public static final String TIMESTAMP = "timestamp";
+}
@@ -0,0 +1,166 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ *
+ * Copyright (C) 2016 Carmen Alvarez (c@rmen.ca)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.rmen.android.networkmonitor.provider;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.provider.BaseColumns;
+import android.text.TextUtils;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import ca.rmen.android.networkmonitor.Constants;
+import ca.rmen.android.networkmonitor.provider.DictionaryColumns.Family;
+import ca.rmen.android.networkmonitor.util.Log;
+
+/**
+ * Converts the values of the dictionary-encoded text columns to the ids of the {@link DictionaryColumns} tables, adding the new values to the
+ * dictionaries.
+ *
+ * The ids are cached. If a transaction which added new values is rolled back, {@link #clearCache()} must be called, since the cached ids of these
+ * values don't exist anymore.
+ */
+class Dictionaries {
+    private static final String TAG = Constants.TAG + Dictionaries.class.getSimpleName();
+
+    // There are only a few distinct values per family in practice (mostly WiFi access points). This is just a safety net.
+    private static final int MAX_CACHED_VALUES = 1000;
+    // The columns of the view which aren't stored as is in the data table.
+    private static final Pattern DECODED_COLUMNS_PATTERN = Pattern.compile("\\b(" + getDecodedColumnsRegex() + ")\\b");
+
+    private final SQLiteOpenHelper mDatabase;
+    private final Map<Family, Map<String, Long>> mCaches = new EnumMap<>(Family.class);
+
+    Dictionaries(SQLiteOpenHelper database) {
+        mDatabase = database;
+        for (Family family : Family.values())
+            mCaches.put(family, new HashMap<>());
+    }
+
+    /**
+     * @return the id of the given value in the dictionary of the given family. The value is added to the dictionary if needed.
+     */
+    long getId(Family family, String value) {
+        Map<String, Long> cache = mCaches.get(family);
+        synchronized (cache) {
+            Long id = cache.get(value);
+            if (id != null) return id;
+        }
+        // We don't hold the lock while using the DB: another thread may be waiting for the lock while holding the DB connection.
+        SQLiteDatabase db = mDatabase.getWritableDatabase();
+        long id = readId(db, family, value);
+        if (id < 0) {
+            ContentValues values = new ContentValues(1);
+            values.put(DictionaryColumns.VALUE, value);
+            db.insertWithOnConflict(family.tableName, null, values, SQLiteDatabase.CONFLICT_IGNORE);
+            id = readId(db, family, value);
+        }
+        synchronized (cache) {
+            if (cache.size() >= MAX_CACHED_VALUES) cache.clear();
+            cache.put(value, id);
+        }
+        return id;
+    }
+
+    /**
+     * @return the given values, with the values of the dictionary-encoded columns replaced by their ids. The given values aren't modified.
+     */
+    ContentValues encode(ContentValues values) {
+        if (values == null) return null;
+        ContentValues result = null;
+        for (Family family : Family.values()) {
+            for (String column : family.columns) {
+                if (!values.containsKey(column)) continue;
+                if (result == null) result = new ContentValues(values);
+                String value = values.getAsString(column);
+                if (value == null) result.putNull(column);
+                else result.put(column, getId(family, value));
+            }
+        }
+        return result == null ? values : result;
+    }
+
+    void clearCache() {
+        Log.v(TAG, "clearCache");
+        for (Map<String, Long> cache : mCaches.values()) {
+            synchronized (cache) {
+                cache.clear();
+            }
+        }
+    }
+
+    /**
+     * @param row the alias of the {@link NetMonColumns#DATA_TABLE_NAME} table, or NEW or OLD in a trigger.
+     * @return a sub-query for the text value of a dictionary-encoded column of the given row.
+     */
+    static String buildDecodedValue(String row, String column) {
+        Family family = Family.getFamily(column);
+        return "(SELECT " + DictionaryColumns.VALUE + " FROM " + family.tableName + " WHERE " + DictionaryColumns._ID + "=" + row + "." + column + ")";
+    }
+
+    /**
+     * @return a sub-query for the id of the given text value of a dictionary-encoded column.
+     */
+    static String buildEncodedValue(String column, String value) {
+        Family family = Family.getFamily(column);
+        return "(SELECT " + DictionaryColumns._ID + " FROM " + family.tableName + " WHERE " + DictionaryColumns.VALUE + "='" + value + "')";
+    }
+
+    /**
+     * @param selection a where clause on the {@link NetMonColumns#TABLE_NAME} view.
+     * @return an equivalent where clause on the {@link NetMonColumns#DATA_TABLE_NAME} table.
+     */
+    static String getDataTableSelection(String selection) {
+        // Most deletes only use the _id or the timestamp: these don't need the view.
+        if (selection == null || !DECODED_COLUMNS_PATTERN.matcher(selection).find()) return selection;
+        return BaseColumns._ID + " IN (SELECT " + BaseColumns._ID + " FROM " + NetMonColumns.TABLE_NAME + " WHERE " + selection + ")";
+    }
+
+    private static long readId(SQLiteDatabase db, Family family, String value) {
+        Cursor c = db.query(family.tableName, new String[]{BaseColumns._ID}, DictionaryColumns.VALUE + "=?", new String[]{value}, null, null, null);
+        try {
+            return c.moveToFirst() ? c.getLong(0) : -1;
+        } finally {
+            c.close();
+        }
+    }
+
+    private static String getDecodedColumnsRegex() {
+        List<String> columns = new ArrayList<>();
+        for (Family family : Family.values()) {
+            for (String column : family.columns)
+                columns.add(Pattern.quote(column));
+        }
+        columns.add(NetMonColumns.DOWNLOAD_SPEED);
+        columns.add(NetMonColumns.UPLOAD_SPEED);
+        return TextUtils.join("|", columns);
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ *
+ * Copyright (C) 2016 Carmen Alvarez (c@rmen.ca)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.rmen.android.networkmonitor.provider;
+
+import android.provider.BaseColumns;
+
+/**
+ * The dictionary tables: each one stores the distinct values of a family of text columns of the {@link NetMonColumns#TABLE_NAME} view. The
+ * {@link NetMonColumns#DATA_TABLE_NAME} table stores the {@link #_ID} of the value instead of the text.
+ */
+class DictionaryColumns implements BaseColumns {
+    static final String VALUE = "value";
+
+    enum Family {
+        TEST_RESULT("dict_test_result",
+                NetMonColumns.SOCKET_CONNECTION_TEST,
+                NetMonColumns.HTTP_CONNECTION_TEST),
+        NETWORK_STATE("dict_network_state",
+                NetMonColumns.NETWORK_TYPE,
+                NetMonColumns.MOBILE_DATA_NETWORK_TYPE,
+                NetMonColumns.SIM_STATE,
+                NetMonColumns.SERVICE_STATE,
+                NetMonColumns.DETAILED_STATE,
+                NetMonColumns.DATA_ACTIVITY,
+                NetMonColumns.DATA_STATE),
+        OPERATOR("dict_operator",
+                NetMonColumns.SIM_OPERATOR,
+                NetMonColumns.NETWORK_OPERATOR),
+        WIFI("dict_wifi",
+                NetMonColumns.WIFI_SSID,
+                NetMonColumns.WIFI_BSSID),
+        LABEL("dict_label",
+                NetMonColumns.REASON,
+                NetMonColumns.EXTRA_INFO,
+                NetMonColumns.MOST_CONSUMING_APP_NAME);
+
+        final String tableName;
+        final String[] columns;
+
+        Family(String tableName, String... columns) {
+            this.tableName = tableName;
+            this.columns = columns;
+        }
+
+        /**
+         * @return the family of the given column of the {@link NetMonColumns#TABLE_NAME} view, or null if the column isn't dictionary-encoded.
+         */
+        static Family getFamily(String columnName) {
+            for (Family family : values()) {
+                for (String column : family.columns) {
+                    if (column.equals(columnName)) return family;
+                }
+            }
+            return null;
+        }
+    }
+}
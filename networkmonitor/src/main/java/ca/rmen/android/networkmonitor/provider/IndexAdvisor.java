@@ -0,0 +1,311 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ *
+ * Copyright (C) 2016 Carmen Alvarez (c@rmen.ca)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.rmen.android.networkmonitor.provider;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.provider.BaseColumns;
+import android.text.TextUtils;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import ca.rmen.android.networkmonitor.Constants;
+import ca.rmen.android.networkmonitor.provider.IndexDecisionColumns.Decision;
+import ca.rmen.android.networkmonitor.util.Log;
+
+/**
+ * Manages the indexes of the {@link NetMonColumns#DATA_TABLE_NAME} table. The queries are made on the {@link NetMonColumns#TABLE_NAME} view, which
+ * reads this table.
+ *
+ * The default indexes, on the timestamp and on the columns which identify a cell or a WiFi access point, are created with the table.
+ * Other indexes are created on demand, for the columns the user sorts or filters on: before running a query, the caller passes the query and the
+ * columns of a candidate index to {@link #adviseIndex(String, String[], String, String...)}. If the query plan, given by EXPLAIN QUERY PLAN,
+ * doesn't already use an index, we create the candidate index. We keep it only if the new query plan uses it.
+ *
+ * Indexes created on demand which haven't been needed for {@link #UNUSED_INDEX_DAYS} days are dropped, and we keep at most
+ * {@link #MAX_ON_DEMAND_INDEXES} of them, since each index slows down inserts.
+ *
+ * All decisions are recorded in the {@link IndexDecisionColumns} table.
+ */
+public class IndexAdvisor {
+    private static final String TAG = Constants.TAG + IndexAdvisor.class.getSimpleName();
+
+    private static final String ON_DEMAND_INDEX_PREFIX = "idx_auto_";
+    private static final int MAX_ON_DEMAND_INDEXES = 5;
+    private static final int UNUSED_INDEX_DAYS = 30;
+    private static final long PRUNE_INTERVAL_MS = TimeUnit.DAYS.toMillis(1);
+
+    private static class DefaultIndex {
+        final String name;
+        final String[] columns;
+        // A query which should use the index.
+        final String query;
+
+        DefaultIndex(String name, String query, String... columns) {
+            this.name = name;
+            this.query = query;
+            this.columns = columns;
+        }
+    }
+
+    // @formatter:off
+    private static final DefaultIndex[] DEFAULT_INDEXES = new DefaultIndex[] {
+        new DefaultIndex("idx_networkmonitor_timestamp",
+                "SELECT MIN(" + NetMonColumns.TIMESTAMP + "), MAX(" + NetMonColumns.TIMESTAMP + ") FROM " + NetMonColumns.TABLE_NAME,
+                NetMonColumns.TIMESTAMP),
+        new DefaultIndex("idx_networkmonitor_gsm_cell",
+                "SELECT " + BaseColumns._ID + " FROM " + NetMonColumns.TABLE_NAME
+                        + " WHERE " + NetMonColumns.GSM_CELL_LAC + "=1 AND " + NetMonColumns.GSM_FULL_CELL_ID + "=1",
+                NetMonColumns.GSM_CELL_LAC, NetMonColumns.GSM_FULL_CELL_ID),
+        new DefaultIndex("idx_networkmonitor_cdma_cell",
+                "SELECT " + BaseColumns._ID + " FROM " + NetMonColumns.TABLE_NAME
+                        + " WHERE " + NetMonColumns.CDMA_CELL_SYSTEM_ID + "=1 AND " + NetMonColumns.CDMA_CELL_NETWORK_ID + "=1"
+                        + " AND " + NetMonColumns.CDMA_CELL_BASE_STATION_ID + "=1",
+                NetMonColumns.CDMA_CELL_SYSTEM_ID, NetMonColumns.CDMA_CELL_NETWORK_ID, NetMonColumns.CDMA_CELL_BASE_STATION_ID),
+        new DefaultIndex("idx_networkmonitor_wifi_bssid",
+                "SELECT " + BaseColumns._ID + " FROM " + NetMonColumns.TABLE_NAME + " WHERE " + NetMonColumns.WIFI_BSSID + "='x'",
+                NetMonColumns.WIFI_BSSID),
+        // The speed test decider looks for the last speed test.
+        new DefaultIndex("idx_networkmonitor_download_speed_status",
+                "SELECT " + BaseColumns._ID + " FROM " + NetMonColumns.TABLE_NAME + " WHERE " + NetMonColumns.DOWNLOAD_SPEED_STATUS + "='x'"
+                        + " ORDER BY " + BaseColumns._ID + " DESC LIMIT 1",
+                NetMonColumns.DOWNLOAD_SPEED_STATUS),
+        new DefaultIndex("idx_networkmonitor_upload_speed_status",
+                "SELECT " + BaseColumns._ID + " FROM " + NetMonColumns.TABLE_NAME + " WHERE " + NetMonColumns.UPLOAD_SPEED_STATUS + "='x'"
+                        + " ORDER BY " + BaseColumns._ID + " DESC LIMIT 1",
+                NetMonColumns.UPLOAD_SPEED_STATUS)
+    };
+    // @formatter:on
+
+    private static IndexAdvisor sInstance;
+
+    private final Context mContext;
+    // Candidate indexes which didn't improve the query plan: we don't try them again.
+    private final Set<String> mRejectedIndexes = new HashSet<>();
+    private long mLastPruneTime;
+
+    public static synchronized IndexAdvisor getInstance(Context context) {
+        if (sInstance == null) sInstance = new IndexAdvisor(context.getApplicationContext());
+        return sInstance;
+    }
+
+    private IndexAdvisor(Context context) {
+        mContext = context;
+    }
+
+    /**
+     * Create the default indexes which don't exist yet, and record each one with the plans of a query which needs it.
+     */
+    static void createDefaultIndexes(SQLiteDatabase db) {
+        List<String> existingIndexes = getIndexes(db, "%");
+        for (DefaultIndex index : DEFAULT_INDEXES) {
+            if (existingIndexes.contains(index.name)) continue;
+            String planBefore = explainQueryPlan(db, index.query, null);
+            db.execSQL(getCreateIndexStatement(index.name, index.columns));
+            String planAfter = explainQueryPlan(db, index.query, null);
+            Log.v(TAG, "Created " + index.name + ": " + planBefore + " -> " + planAfter);
+            recordDecision(db, index.name, index.columns, Decision.CREATED, index.query, planBefore, planAfter);
+        }
+    }
+
+    /**
+     * Make sure the given query on the {@link NetMonColumns#TABLE_NAME} view can use an index: if it doesn't already, create an index
+     * on the given columns, if this improves the query plan.  This may take a while on a big table: call it on a background thread.
+     *
+     * @param selection the where clause of the query, or null.
+     * @param orderBy the order by clause of the query, or null.
+     * @param indexColumns the columns of the candidate index.
+     */
+    public synchronized void adviseIndex(String selection, String[] selectionArgs, String orderBy, String... indexColumns) {
+        String indexName = ON_DEMAND_INDEX_PREFIX + TextUtils.join("_", indexColumns);
+        if (mRejectedIndexes.contains(indexName)) return;
+        StringBuilder query = new StringBuilder("SELECT " + BaseColumns._ID + " FROM " + NetMonColumns.TABLE_NAME);
+        if (!TextUtils.isEmpty(selection)) query.append(" WHERE ").append(selection);
+        if (!TextUtils.isEmpty(orderBy)) query.append(" ORDER BY ").append(orderBy);
+        try {
+            SQLiteDatabase db = NetMonDatabase.getInstance(mContext).getWritableDatabase();
+            pruneIndexes(db);
+            if (getOnDemandIndexes(db).contains(indexName)) {
+                touch(db, indexName);
+                return;
+            }
+            String planBefore = explainQueryPlan(db, query.toString(), selectionArgs);
+            if (isPlanOptimal(planBefore, !TextUtils.isEmpty(selection))) {
+                Log.v(TAG, "No index needed for " + query + ": " + planBefore);
+                return;
+            }
+            db.execSQL(getCreateIndexStatement(indexName, indexColumns));
+            String planAfter = explainQueryPlan(db, query.toString(), selectionArgs);
+            if (planAfter.contains(indexName)) {
+                Log.v(TAG, "Created " + indexName + ": " + planBefore + " -> " + planAfter);
+                recordDecision(db, indexName, indexColumns, Decision.CREATED, query.toString(), planBefore, planAfter);
+                dropExtraIndexes(db);
+            } else {
+                Log.v(TAG, "Rejected " + indexName + ": " + planBefore + " -> " + planAfter);
+                db.execSQL("DROP INDEX IF EXISTS " + indexName);
+                mRejectedIndexes.add(indexName);
+                recordDecision(db, indexName, indexColumns, Decision.REJECTED, query.toString(), planBefore, planAfter);
+            }
+        } catch (Exception e) {
+            // Not having an index is never fatal.
+            Log.w(TAG, "Could not advise an index for " + query + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Drop the indexes created on demand which haven't been needed for a while.  This is done at most once a day.
+     */
+    private void pruneIndexes(SQLiteDatabase db) {
+        long now = System.currentTimeMillis();
+        if (now - mLastPruneTime < PRUNE_INTERVAL_MS) return;
+        mLastPruneTime = now;
+        long oldestAllowedUse = now - TimeUnit.DAYS.toMillis(UNUSED_INDEX_DAYS);
+        for (String indexName : getOnDemandIndexes(db)) {
+            if (getLastUsed(db, indexName) < oldestAllowedUse) dropIndex(db, indexName, "unused for " + UNUSED_INDEX_DAYS + " days");
+        }
+    }
+
+    /**
+     * Drop the least recently used indexes created on demand, if there are too many.
+     */
+    private void dropExtraIndexes(SQLiteDatabase db) {
+        List<String> indexNames = getOnDemandIndexes(db);
+        while (indexNames.size() > MAX_ON_DEMAND_INDEXES) {
+            String leastRecentlyUsedIndex = null;
+            long leastRecentUse = Long.MAX_VALUE;
+            for (String indexName : indexNames) {
+                long lastUsed = getLastUsed(db, indexName);
+                if (lastUsed < leastRecentUse) {
+                    leastRecentUse = lastUsed;
+                    leastRecentlyUsedIndex = indexName;
+                }
+            }
+            dropIndex(db, leastRecentlyUsedIndex, "more than " + MAX_ON_DEMAND_INDEXES + " indexes");
+            indexNames.remove(leastRecentlyUsedIndex);
+        }
+    }
+
+    private static void dropIndex(SQLiteDatabase db, String indexName, String reason) {
+        Log.v(TAG, "Dropping " + indexName + ": " + reason);
+        db.execSQL("DROP INDEX IF EXISTS " + indexName);
+        recordDecision(db, indexName, null, Decision.DROPPED, null, reason, null);
+    }
+
+    /**
+     * @return the names of the existing indexes which were created on demand.
+     */
+    private static List<String> getOnDemandIndexes(SQLiteDatabase db) {
+        return getIndexes(db, ON_DEMAND_INDEX_PREFIX + "%");
+    }
+
+    /**
+     * @return the names of the existing indexes of the table, which match the given LIKE pattern.
+     */
+    private static List<String> getIndexes(SQLiteDatabase db, String namePattern) {
+        List<String> result = new ArrayList<>();
+        Cursor c = db.rawQuery("SELECT name FROM sqlite_master WHERE type='index' AND tbl_name=? AND name LIKE ?",
+                new String[]{NetMonColumns.DATA_TABLE_NAME, namePattern});
+        try {
+            while (c.moveToNext())
+                result.add(c.getString(0));
+        } finally {
+            c.close();
+        }
+        return result;
+    }
+
+    /**
+     * @return the last time the given index was needed, or 0 if we don't know.
+     */
+    private static long getLastUsed(SQLiteDatabase db, String indexName) {
+        Cursor c = db.query(IndexDecisionColumns.TABLE_NAME, new String[]{"MAX(" + IndexDecisionColumns.LAST_USED + ")"},
+                IndexDecisionColumns.INDEX_NAME + "=? AND " + IndexDecisionColumns.DECISION + "=?",
+                new String[]{indexName, Decision.CREATED.name()}, null, null, null);
+        try {
+            return c.moveToFirst() ? c.getLong(0) : 0;
+        } finally {
+            c.close();
+        }
+    }
+
+    private static void touch(SQLiteDatabase db, String indexName) {
+        ContentValues values = new ContentValues(1);
+        values.put(IndexDecisionColumns.LAST_USED, System.currentTimeMillis());
+        db.update(IndexDecisionColumns.TABLE_NAME, values, IndexDecisionColumns.INDEX_NAME + "=? AND " + IndexDecisionColumns.DECISION + "=?",
+                new String[]{indexName, Decision.CREATED.name()});
+    }
+
+    private static void recordDecision(SQLiteDatabase db, String indexName, String[] indexColumns, Decision decision, String query, String planBefore,
+                                       String planAfter) {
+        long now = System.currentTimeMillis();
+        ContentValues values = new ContentValues(8);
+        values.put(IndexDecisionColumns.INDEX_NAME, indexName);
+        if (indexColumns != null) values.put(IndexDecisionColumns.INDEXED_COLUMNS, TextUtils.join(",", indexColumns));
+        values.put(IndexDecisionColumns.DECISION, decision.name());
+        values.put(IndexDecisionColumns.QUERY, query);
+        values.put(IndexDecisionColumns.PLAN_BEFORE, planBefore);
+        values.put(IndexDecisionColumns.PLAN_AFTER, planAfter);
+        values.put(IndexDecisionColumns.TIMESTAMP, now);
+        if (decision == Decision.CREATED) values.put(IndexDecisionColumns.LAST_USED, now);
+        db.insert(IndexDecisionColumns.TABLE_NAME, null, values);
+    }
+
+    private static String getCreateIndexStatement(String indexName, String[] columns) {
+        String[] dataColumns = new String[columns.length];
+        for (int i = 0; i < columns.length; i++)
+            dataColumns[i] = NetMonColumns.getDataColumnName(columns[i]);
+        return "CREATE INDEX IF NOT EXISTS " + indexName + " ON " + NetMonColumns.DATA_TABLE_NAME + " (" + TextUtils.join(",", dataColumns) + ")";
+    }
+
+    /**
+     * @return the details of the query plan of the given query, separated by semicolons.
+     */
+    static String explainQueryPlan(SQLiteDatabase db, String query, String[] selectionArgs) {
+        List<String> details = new ArrayList<>();
+        Cursor c = db.rawQuery("EXPLAIN QUERY PLAN " + query, selectionArgs);
+        try {
+            int detailIndex = c.getColumnIndex("detail");
+            while (c.moveToNext())
+                details.add(c.getString(detailIndex));
+        } finally {
+            c.close();
+        }
+        return TextUtils.join("; ", details);
+    }
+
+    /**
+     * @return true if the plan doesn't need to sort the rows in a temporary table, and, if the query has a where clause, uses an index to find the
+     * rows.
+     */
+    private static boolean isPlanOptimal(String plan, boolean hasSelection) {
+        if (plan.contains("TEMP B-TREE")) return false;
+        return !hasSelection || plan.contains(" INDEX ") || plan.contains(" PRIMARY KEY");
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ *
+ * Copyright (C) 2016 Carmen Alvarez (c@rmen.ca)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.rmen.android.networkmonitor.provider;
+
+import android.net.Uri;
+import android.provider.BaseColumns;
+
+/**
+ * The decisions of the {@link IndexAdvisor}: which indexes it created, rejected or dropped, with the query plans which justified each decision.
+ */
+public class IndexDecisionColumns implements BaseColumns {
+    static final String TABLE_NAME = "index_decisions";
+    public static final Uri CONTENT_URI = Uri.parse(NetMonProvider.CONTENT_URI_BASE + "/" + TABLE_NAME);
+    public static final String INDEX_NAME = "index_name";
+    public static final String INDEXED_COLUMNS = "indexed_columns";
+    /**
+     * One of the {@link Decision} names.
+     */
+    public static final String DECISION = "decision";
+    /**
+     * The query whose plan we checked.
+     */
+    public static final String QUERY = "query";
+    public static final String PLAN_BEFORE = "plan_before";
+    public static final String PLAN_AFTER = "plan_after";
+    public static final String TIMESTAMP = "timestamp";
+    /**
+     * For an index created on demand, the last time a query needed it.
+     */
+    public static final String LAST_USED = "last_used";
+
+    public enum Decision {
+        CREATED, REJECTED, DROPPED
+    }
+}
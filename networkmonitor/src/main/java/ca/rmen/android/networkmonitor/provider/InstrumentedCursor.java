@@ -0,0 +1,148 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ *
+ * Copyright (C) 2016 Carmen Alvarez (c@rmen.ca)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.rmen.android.networkmonitor.provider;
+
+import android.database.AbstractWindowedCursor;
+import android.database.Cursor;
+import android.database.CursorWindow;
+import android.database.CursorWrapper;
+import android.os.SystemClock;
+
+/**
+ * Measures the cost of an SQLite query, without making it run sooner than the reader needs it.
+ *
+ * The query only runs when the first window of rows is filled, the first time the reader counts the rows or moves the cursor. This fill is timed.
+ * The duration and the number of rows are reported to the {@link OnQueryListener} when the cursor is closed. A cursor which is closed without being
+ * read reports no rows.
+ *
+ * Also counts, in the {@link QueryStats}, the times the window of the cursor is filled again because the reader moved past its rows.
+ */
+class InstrumentedCursor extends CursorWrapper {
+    interface OnQueryListener {
+        /**
+         * @param duration the time to run the query, until the first window of rows was filled.
+         */
+        void onQuery(long duration, int rowCount);
+    }
+
+    private final Cursor mCursor;
+    private final QueryStats mQueryStats;
+    private final String mUriType;
+    private final OnQueryListener mListener;
+    private long mDuration;
+    private int mRowCount;
+    private boolean mIsFilled;
+    private boolean mIsReported;
+    private int mWindowStartPosition = -1;
+
+    /**
+     * @param prepareDuration the time it took to prepare the query, which is included in the reported duration.
+     */
+    InstrumentedCursor(Cursor cursor, QueryStats queryStats, String uriType, long prepareDuration, OnQueryListener listener) {
+        super(cursor);
+        mCursor = cursor;
+        mQueryStats = queryStats;
+        mUriType = uriType;
+        mDuration = prepareDuration;
+        mListener = listener;
+    }
+
+    @Override
+    public int getCount() {
+        fill();
+        return super.getCount();
+    }
+
+    @Override
+    public boolean move(int offset) {
+        fill();
+        return checkWindow(super.move(offset));
+    }
+
+    @Override
+    public boolean moveToPosition(int position) {
+        fill();
+        return checkWindow(super.moveToPosition(position));
+    }
+
+    @Override
+    public boolean moveToFirst() {
+        fill();
+        return checkWindow(super.moveToFirst());
+    }
+
+    @Override
+    public boolean moveToLast() {
+        fill();
+        return checkWindow(super.moveToLast());
+    }
+
+    @Override
+    public boolean moveToNext() {
+        fill();
+        return checkWindow(super.moveToNext());
+    }
+
+    @Override
+    public boolean moveToPrevious() {
+        fill();
+        return checkWindow(super.moveToPrevious());
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        if (!mIsReported) {
+            mIsReported = true;
+            mListener.onQuery(mDuration, mRowCount);
+        }
+    }
+
+    /**
+     * Run the query, if it didn't run yet.
+     */
+    private void fill() {
+        if (mIsFilled) return;
+        mIsFilled = true;
+        long start = SystemClock.elapsedRealtime();
+        mRowCount = mCursor.getCount();
+        mDuration += SystemClock.elapsedRealtime() - start;
+        mWindowStartPosition = getWindowStartPosition();
+    }
+
+    private boolean checkWindow(boolean result) {
+        int windowStartPosition = getWindowStartPosition();
+        if (windowStartPosition != mWindowStartPosition) {
+            mWindowStartPosition = windowStartPosition;
+            mQueryStats.onWindowFill(mUriType);
+        }
+        return result;
+    }
+
+    private int getWindowStartPosition() {
+        if (!(mCursor instanceof AbstractWindowedCursor)) return -1;
+        CursorWindow window = ((AbstractWindowedCursor) mCursor).getWindow();
+        return window == null ? -1 : window.getStartPosition();
+    }
+}
@@ -37,6 +37,12 @@ import ca.rmen.android.networkmonitor.R;
 public class NetMonColumns implements BaseColumns {
     public static final String TABLE_NAME = "networkmonitor";
     public static final Uri CONTENT_URI = Uri.parse(NetMonProvider.CONTENT_URI_BASE + "/" + TABLE_NAME);
+    // TABLE_NAME is a view: the rows are stored in this table, with the ids of the values of the dictionary-encoded text columns.
+    static final String DATA_TABLE_NAME = "networkmonitor_data";
+    // The DATA_TABLE_NAME table stores the speeds in these REAL columns. Its DOWNLOAD_SPEED and UPLOAD_SPEED TEXT columns only have the
+    // locale-formatted speeds logged by older versions, until SpeedColumns converts them.
+    static final String DOWNLOAD_SPEED_MBPS = "download_speed_mbps";
+    static final String UPLOAD_SPEED_MBPS = "upload_speed_mbps";
 
     static final String _ID = BaseColumns._ID;
 
@@ -97,8 +103,16 @@ public class NetMonColumns implements BaseColumns {
     public static final String MOST_CONSUMING_APP_NAME = "most_consuming_app_name";
     public static final String MOST_CONSUMING_APP_BYTES = "most_consuming_app_bytes";
     public static final String BATTERY_LEVEL = "battery_level";
+    // In Mbps, or null if the speed test wasn't run or failed.
     public static final String DOWNLOAD_SPEED = "download_speed";
     public static final String UPLOAD_SPEED = "upload_speed";
+    // One of the SpeedTestStatus values: SKIPPED if the speed test is disabled or wasn't due for this sample. Null if the speed test config is invalid,
+    // or for a row logged by an older version whose speeds haven't been converted yet.
+    public static final String DOWNLOAD_SPEED_STATUS = "download_speed_status";
+    public static final String UPLOAD_SPEED_STATUS = "upload_speed_status";
+    // Set when identical consecutive samples are merged into one row.
+    public static final String LAST_SEEN_TIMESTAMP = "last_seen_timestamp";
+    public static final String REPEAT_COUNT = "repeat_count";
 
 
     /**
@@ -202,4 +216,13 @@ public class NetMonColumns implements BaseColumns {
     }
 
     static final String DEFAULT_ORDER = _ID;
+
+    /**
+     * @return the column of the {@link #DATA_TABLE_NAME} table which stores the given column of the {@link #TABLE_NAME} view.
+     */
+    static String getDataColumnName(String columnName) {
+        if (DOWNLOAD_SPEED.equals(columnName)) return DOWNLOAD_SPEED_MBPS;
+        if (UPLOAD_SPEED.equals(columnName)) return UPLOAD_SPEED_MBPS;
+        return columnName;
+    }
 }
\ No newline at end of file
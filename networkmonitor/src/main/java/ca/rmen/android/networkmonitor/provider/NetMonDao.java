@@ -0,0 +1,158 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ *
+ * Copyright (C) 2016 Carmen Alvarez (c@rmen.ca)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.rmen.android.networkmonitor.provider;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.provider.BaseColumns;
+
+import java.util.List;
+
+import ca.rmen.android.networkmonitor.Constants;
+import ca.rmen.android.networkmonitor.util.Log;
+
+/**
+ * Writes to the {@link NetMonColumns#TABLE_NAME} log for the writers in this process (the sampler, purge, compress, import...), directly with the
+ * {@link NetMonDatabase}, instead of going through the {@link NetMonProvider}. The provider remains the way to read the log.
+ *
+ * Observers of {@link NetMonColumns#CONTENT_URI} are not notified by each write: the writer calls {@link #notifyChanges()} once it has written a
+ * batch, and a single notification is sent if anything changed.
+ *
+ * An instance should only be used by one thread.
+ */
+public class NetMonDao {
+    private static final String TAG = Constants.TAG + NetMonDao.class.getSimpleName();
+
+    private final Context mContext;
+    private final NetMonDatabase mNetMonDatabase;
+    private final BulkInserter mBulkInserter;
+    private SQLiteStatement mInsertStatement;
+    private boolean mHasChanges;
+
+    public NetMonDao(Context context) {
+        mContext = context.getApplicationContext();
+        mNetMonDatabase = NetMonDatabase.getInstance(mContext);
+        mBulkInserter = new BulkInserter(mContext);
+    }
+
+    /**
+     * Insert the samples in a single transaction, with a compiled insert statement.
+     *
+     * @return the id of the last inserted row.
+     */
+    public long insert(List<Sample> samples) {
+        Dictionaries dictionaries = mNetMonDatabase.getDictionaries();
+        SQLiteDatabase db = mNetMonDatabase.getWritableDatabase();
+        if (mInsertStatement == null) mInsertStatement = db.compileStatement(Sample.getInsertStatement());
+        long lastRowId = -1;
+        boolean isSuccessful = false;
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < samples.size(); i++) {
+                samples.get(i).bind(mInsertStatement, dictionaries);
+                lastRowId = mInsertStatement.executeInsert();
+            }
+            db.setTransactionSuccessful();
+            isSuccessful = true;
+        } finally {
+            db.endTransaction();
+            mNetMonDatabase.incrementWriteSequence();
+            if (!isSuccessful) dictionaries.clearCache();
+        }
+        Log.v(TAG, "Inserted " + samples.size() + " rows, up to id " + lastRowId);
+        mHasChanges = true;
+        return lastRowId;
+    }
+
+    /**
+     * Insert rows with the columns of the {@link NetMonColumns#TABLE_NAME} view, in a single transaction.
+     *
+     * @return the number of inserted rows.
+     * @see BulkInserter
+     */
+    public int insert(ContentValues[] rows, int offset, int count) {
+        int result = mBulkInserter.insert(NetMonColumns.TABLE_NAME, rows, offset, count);
+        if (result > 0) mHasChanges = true;
+        return result;
+    }
+
+    /**
+     * Update the {@link NetMonColumns#LAST_SEEN_TIMESTAMP} and {@link NetMonColumns#REPEAT_COUNT} of an existing row.
+     *
+     * @return false if the row doesn't exist.
+     */
+    public boolean updateRepeatCount(long id, long lastSeenTimestamp, long repeatCount) {
+        ContentValues values = new ContentValues(2);
+        values.put(NetMonColumns.LAST_SEEN_TIMESTAMP, lastSeenTimestamp);
+        values.put(NetMonColumns.REPEAT_COUNT, repeatCount);
+        String[] selectionArgs = new String[] { String.valueOf(id) };
+        TextColumns.moveOldRows(mNetMonDatabase.getWritableDatabase(), BaseColumns._ID + "=?", selectionArgs);
+        int result = mNetMonDatabase.getWritableDatabase().update(NetMonColumns.DATA_TABLE_NAME, values, BaseColumns._ID + "=?", selectionArgs);
+        mNetMonDatabase.incrementWriteSequence();
+        if (result > 0) mHasChanges = true;
+        return result > 0;
+    }
+
+    /**
+     * Delete the rows matching the selection, which refers to the columns of the {@link NetMonColumns#TABLE_NAME} view.
+     * A null selection deletes all the rows. Each call is its own transaction: callers deleting many rows do it in chunks, so
+     * that the WAL stays within its size limit.
+     *
+     * @return the number of deleted rows.
+     */
+    public int delete(String selection, String[] selectionArgs) {
+        SQLiteDatabase db = mNetMonDatabase.getWritableDatabase();
+        int result;
+        if (selection == null) result = NetMonDatabase.deleteAllRows(db);
+        else result = TextColumns.deleteOldRows(db, selection, selectionArgs)
+                + db.delete(NetMonColumns.DATA_TABLE_NAME, Dictionaries.getDataTableSelection(selection), selectionArgs);
+        mNetMonDatabase.incrementWriteSequence();
+        if (result > 0) mHasChanges = true;
+        return result;
+    }
+
+    /**
+     * Notify the observers of {@link NetMonColumns#CONTENT_URI}, if the log changed since the last notification. Like the provider's
+     * notifications, it may be delayed and coalesced with others by the {@link ChangeNotifier}.
+     */
+    public void notifyChanges() {
+        if (!mHasChanges) return;
+        mHasChanges = false;
+        ChangeNotifier.getInstance(mContext).notifyChange(NetMonColumns.CONTENT_URI);
+    }
+
+    /**
+     * Send the pending notification, and release the compiled statements.
+     */
+    public void close() {
+        notifyChanges();
+        mBulkInserter.close();
+        if (mInsertStatement != null) {
+            mInsertStatement.close();
+            mInsertStatement = null;
+        }
+    }
+}
@@ -27,54 +27,78 @@ package ca.rmen.android.networkmonitor.provider;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
 import android.support.v4.util.LongSparseArray;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import ca.rmen.android.networkmonitor.Constants;
-import ca.rmen.android.networkmonitor.Constants.ConnectionType;
+import ca.rmen.android.networkmonitor.provider.DictionaryColumns.Family;
 import ca.rmen.android.networkmonitor.util.Log;
 import ca.rmen.android.networkmonitor.util.TelephonyUtil;
 
+/**
+ * On API 11 and above, the DB is opened in write-ahead logging mode: the sampler's inserts append to the WAL and don't wait for a long export or
+ * compress to finish reading, and the readers don't wait for the writer. Android then keeps a pool of connections: the primary connection is used for
+ * writes and transactions, and queries made outside of a transaction get one of the read-only connections.
+ *
+ * The WAL is checkpointed into the DB file automatically every {@link #WAL_AUTOCHECKPOINT_PAGES} pages. Call {@link #checkpoint(Context)} before
+ * reading the DB file directly, or after a big write.
+ */
 public class NetMonDatabase extends SQLiteOpenHelper {
     private static final String TAG = Constants.TAG + NetMonDatabase.class.getSimpleName();
 
     public static final String DATABASE_NAME = "networkmonitor.db";
-    private static final int DATABASE_VERSION = 17;
+    private static final int DATABASE_VERSION = 25;
+
+    // The pragmas below only apply to the connection they're run on, which is the primary (writer) connection. The reader connections of the pool
+    // keep the defaults of the platform.
+    // A negative cache size is in KiB.
+    private static final int CACHE_SIZE_KIB = 2048;
+    private static final long MMAP_SIZE_BYTES = 8 * 1024 * 1024;
+    private static final int WAL_AUTOCHECKPOINT_PAGES = 1000;
+    // After a checkpoint, the WAL file is truncated to this size, so that it doesn't keep the size it reached during a big import or compress.
+    private static final long JOURNAL_SIZE_LIMIT_BYTES = 4 * 1024 * 1024;
 
     // @formatter:off
-    private static final String SQL_CREATE_TABLE_NETWORKMONITOR = "CREATE TABLE IF NOT EXISTS "
-            + NetMonColumns.TABLE_NAME + " ( "
+    // The dictionary-encoded text columns store the id of their value in a dictionary table.
+    private static final String SQL_CREATE_TABLE_NETWORKMONITOR_DATA = "CREATE TABLE IF NOT EXISTS "
+            + NetMonColumns.DATA_TABLE_NAME + " ( "
             + NetMonColumns._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
             + NetMonColumns.TIMESTAMP + " INTEGER, "
-            + NetMonColumns.SOCKET_CONNECTION_TEST + " TEXT, "
-            + NetMonColumns.HTTP_CONNECTION_TEST + " TEXT, "
-            + NetMonColumns.NETWORK_TYPE + " TEXT, "
-            + NetMonColumns.MOBILE_DATA_NETWORK_TYPE + " TEXT, "
-            + NetMonColumns.SIM_STATE + " TEXT, "
-            + NetMonColumns.SERVICE_STATE + " TEXT, "
-            + NetMonColumns.DETAILED_STATE + " TEXT, "
+            + NetMonColumns.SOCKET_CONNECTION_TEST + " INTEGER, "
+            + NetMonColumns.HTTP_CONNECTION_TEST + " INTEGER, "
+            + NetMonColumns.NETWORK_TYPE + " INTEGER, "
+            + NetMonColumns.MOBILE_DATA_NETWORK_TYPE + " INTEGER, "
+            + NetMonColumns.SIM_STATE + " INTEGER, "
+            + NetMonColumns.SERVICE_STATE + " INTEGER, "
+            + NetMonColumns.DETAILED_STATE + " INTEGER, "
             + NetMonColumns.IS_CONNECTED + " INTEGER, "
             + NetMonColumns.IS_ROAMING + " INTEGER, "
             + NetMonColumns.IS_AVAILABLE + " INTEGER, "
             + NetMonColumns.IS_FAILOVER + " INTEGER, "
-            + NetMonColumns.DATA_ACTIVITY + " TEXT, "
-            + NetMonColumns.DATA_STATE + " TEXT, "
-            + NetMonColumns.REASON + " TEXT, "
-            + NetMonColumns.EXTRA_INFO + " TEXT, "
-            + NetMonColumns.WIFI_SSID + " TEXT, "
-            + NetMonColumns.WIFI_BSSID + " TEXT, "
+            + NetMonColumns.DATA_ACTIVITY + " INTEGER, "
+            + NetMonColumns.DATA_STATE + " INTEGER, "
+            + NetMonColumns.REASON + " INTEGER, "
+            + NetMonColumns.EXTRA_INFO + " INTEGER, "
+            + NetMonColumns.WIFI_SSID + " INTEGER, "
+            + NetMonColumns.WIFI_BSSID + " INTEGER, "
             + NetMonColumns.WIFI_FREQUENCY+ " INTEGER, "
             + NetMonColumns.WIFI_CHANNEL+ " INTEGER, "
             + NetMonColumns.WIFI_SIGNAL_STRENGTH + " INTEGER, "
             + NetMonColumns.WIFI_RSSI + " INTEGER, "
-            + NetMonColumns.SIM_OPERATOR + " TEXT, "
+            + NetMonColumns.SIM_OPERATOR + " INTEGER, "
             + NetMonColumns.SIM_MCC + " TEXT, "
             + NetMonColumns.SIM_MNC + " TEXT, "
-            + NetMonColumns.NETWORK_OPERATOR + " TEXT, "
+            + NetMonColumns.NETWORK_OPERATOR + " INTEGER, "
             + NetMonColumns.NETWORK_MCC + " TEXT, "
             + NetMonColumns.NETWORK_MNC + " TEXT, "
             + NetMonColumns.IS_NETWORK_METERED + " INTEGER, "
@@ -102,10 +126,17 @@ public class NetMonDatabase extends SQLiteOpenHelper {
             + NetMonColumns.IPV4_ADDRESS+ " TEXT,"
             + NetMonColumns.IPV6_ADDRESS+ " TEXT,"
             + NetMonColumns.BATTERY_LEVEL+ " INTEGER, "
-            + NetMonColumns.MOST_CONSUMING_APP_NAME + " TEXT, "
+            + NetMonColumns.MOST_CONSUMING_APP_NAME + " INTEGER, "
             + NetMonColumns.MOST_CONSUMING_APP_BYTES + " INTEGER, "
+            // The locale-formatted speeds of older versions, until they're converted to the Mbps and status columns.
             + NetMonColumns.DOWNLOAD_SPEED+ " TEXT, "
-            + NetMonColumns.UPLOAD_SPEED+ " TEXt"
+            + NetMonColumns.UPLOAD_SPEED+ " TEXT, "
+            + NetMonColumns.DOWNLOAD_SPEED_MBPS + " REAL, "
+            + NetMonColumns.UPLOAD_SPEED_MBPS + " REAL, "
+            + NetMonColumns.DOWNLOAD_SPEED_STATUS + " TEXT, "
+            + NetMonColumns.UPLOAD_SPEED_STATUS + " TEXT, "
+            + NetMonColumns.LAST_SEEN_TIMESTAMP + " INTEGER, "
+            + NetMonColumns.REPEAT_COUNT + " INTEGER"
             + " );";
     // @formatter:on
 
@@ -202,18 +233,288 @@ public class NetMonDatabase extends SQLiteOpenHelper {
     private static final String SQL_UPDATE_TABLE_NETWORKMONITOR_V17_MOST_CONSUMING_APP_BYTES = "ALTER TABLE " + NetMonColumns.TABLE_NAME + " ADD COLUMN "
             + NetMonColumns.MOST_CONSUMING_APP_BYTES + " INTEGER";
 
-    private static final String SQL_CREATE_VIEW_CONNECTION_TEST_STATS = "CREATE VIEW " + ConnectionTestStatsColumns.VIEW_NAME + " AS "
-            + buildConnectionTestQuery();
+    private static final String SQL_UPDATE_TABLE_NETWORKMONITOR_V19_LAST_SEEN_TIMESTAMP = "ALTER TABLE " + NetMonColumns.TABLE_NAME + " ADD COLUMN "
+            + NetMonColumns.LAST_SEEN_TIMESTAMP + " INTEGER";
+
+    private static final String SQL_UPDATE_TABLE_NETWORKMONITOR_V19_REPEAT_COUNT = "ALTER TABLE " + NetMonColumns.TABLE_NAME + " ADD COLUMN "
+            + NetMonColumns.REPEAT_COUNT + " INTEGER";
+
+    // @formatter:off
+    private static final String SQL_CREATE_TABLE_DATA_SOURCE_STATS = "CREATE TABLE IF NOT EXISTS "
+            + DataSourceStatsColumns.TABLE_NAME + " ( "
+            + DataSourceStatsColumns._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+            + DataSourceStatsColumns.DATA_SOURCE_NAME + " TEXT UNIQUE, "
+            + DataSourceStatsColumns.CALL_COUNT + " INTEGER, "
+            + DataSourceStatsColumns.ERROR_COUNT + " INTEGER, "
+            + DataSourceStatsColumns.TIMEOUT_COUNT + " INTEGER, "
+            + DataSourceStatsColumns.DURATION_P50 + " INTEGER, "
+            + DataSourceStatsColumns.DURATION_P95 + " INTEGER, "
+            + DataSourceStatsColumns.DURATION_MAX + " INTEGER, "
+            + DataSourceStatsColumns.TIMESTAMP + " INTEGER"
+            + " );";
+
+    private static final String SQL_INSERT_DATA_SOURCE_STATS = "INSERT OR IGNORE INTO "
+            + DataSourceStatsColumns.TABLE_NAME + " ("
+            + DataSourceStatsColumns.DATA_SOURCE_NAME + ", "
+            + DataSourceStatsColumns.CALL_COUNT + ", "
+            + DataSourceStatsColumns.ERROR_COUNT + ", "
+            + DataSourceStatsColumns.TIMEOUT_COUNT
+            + ") VALUES (?, 0, 0, 0)";
+
+    private static final String SQL_ADD_DATA_SOURCE_STATS = "UPDATE "
+            + DataSourceStatsColumns.TABLE_NAME + " SET "
+            + DataSourceStatsColumns.CALL_COUNT + "=" + DataSourceStatsColumns.CALL_COUNT + "+?, "
+            + DataSourceStatsColumns.ERROR_COUNT + "=" + DataSourceStatsColumns.ERROR_COUNT + "+?, "
+            + DataSourceStatsColumns.TIMEOUT_COUNT + "=" + DataSourceStatsColumns.TIMEOUT_COUNT + "+?, "
+            + DataSourceStatsColumns.DURATION_P50 + "=?, "
+            + DataSourceStatsColumns.DURATION_P95 + "=?, "
+            + DataSourceStatsColumns.DURATION_MAX + "=?, "
+            + DataSourceStatsColumns.TIMESTAMP + "=?"
+            + " WHERE " + DataSourceStatsColumns.DATA_SOURCE_NAME + "=?";
+
+    private static final String SQL_CREATE_TABLE_SCHEDULER_STATS = "CREATE TABLE IF NOT EXISTS "
+            + SchedulerStatsColumns.TABLE_NAME + " ( "
+            + SchedulerStatsColumns._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+            + SchedulerStatsColumns.SCHEDULER_NAME + " TEXT UNIQUE, "
+            + SchedulerStatsColumns.OVERRUN_POLICY + " TEXT, "
+            + SchedulerStatsColumns.INTERVAL + " INTEGER, "
+            + SchedulerStatsColumns.TICK_COUNT + " INTEGER, "
+            + SchedulerStatsColumns.OVERRUN_COUNT + " INTEGER, "
+            + SchedulerStatsColumns.SKIPPED_COUNT + " INTEGER, "
+            + SchedulerStatsColumns.DRIFT_MEAN + " INTEGER, "
+            + SchedulerStatsColumns.DRIFT_MAX + " INTEGER, "
+            + SchedulerStatsColumns.DURATION_MEAN + " INTEGER, "
+            + SchedulerStatsColumns.DURATION_MAX + " INTEGER, "
+            + SchedulerStatsColumns.TIMESTAMP + " INTEGER"
+            + " );";
+
+    private static final String SQL_CREATE_TABLE_INDEX_DECISIONS = "CREATE TABLE IF NOT EXISTS "
+            + IndexDecisionColumns.TABLE_NAME + " ( "
+            + IndexDecisionColumns._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+            + IndexDecisionColumns.INDEX_NAME + " TEXT, "
+            + IndexDecisionColumns.INDEXED_COLUMNS + " TEXT, "
+            + IndexDecisionColumns.DECISION + " TEXT, "
+            + IndexDecisionColumns.QUERY + " TEXT, "
+            + IndexDecisionColumns.PLAN_BEFORE + " TEXT, "
+            + IndexDecisionColumns.PLAN_AFTER + " TEXT, "
+            + IndexDecisionColumns.TIMESTAMP + " INTEGER, "
+            + IndexDecisionColumns.LAST_USED + " INTEGER"
+            + " );";
+    // @formatter:on
+
+    private static final String SQL_CREATE_VIEW_NETWORKMONITOR = "CREATE VIEW " + NetMonColumns.TABLE_NAME + " AS "
+            + buildDecodedDataQuery();
+
+    private static NetMonDatabase sInstance;
+    private static final AtomicBoolean sIsFinishingUpgrade = new AtomicBoolean(false);
+
+    private final Dictionaries mDictionaries = new Dictionaries(this);
+    // Incremented after each write, once the write is visible to readers.
+    private final AtomicLong mWriteSequence = new AtomicLong();
+
+    /**
+     * @return the only instance of the DB helper in this process: the provider and the {@link NetMonDao}s share it.
+     */
+    static synchronized NetMonDatabase getInstance(Context context) {
+        if (sInstance == null) sInstance = new NetMonDatabase(context.getApplicationContext());
+        return sInstance;
+    }
+
+    private NetMonDatabase(Context context) {
+        this(context, DATABASE_NAME);
+    }
+
+    /**
+     * Only the benchmarks should open a DB with another name, to leave the app's DB untouched.
+     */
+    NetMonDatabase(Context context, String name) {
+        super(context, name, null, DATABASE_VERSION);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) setWriteAheadLoggingEnabled(true);
+    }
+
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        if (db.isReadOnly()) return;
+        // Before Jelly Bean, the helper can't enable WAL itself.
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB && Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+            db.enableWriteAheadLogging();
+        }
+        db.execSQL("PRAGMA cache_size=-" + CACHE_SIZE_KIB);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            // With WAL, NORMAL can't corrupt the DB: only the last transactions may be lost if the device loses power.
+            db.execSQL("PRAGMA synchronous=NORMAL");
+            // These pragmas return the new value: they have to be run as queries.
+            DatabaseUtils.longForQuery(db, "PRAGMA wal_autocheckpoint=" + WAL_AUTOCHECKPOINT_PAGES, null);
+            DatabaseUtils.longForQuery(db, "PRAGMA journal_size_limit=" + JOURNAL_SIZE_LIMIT_BYTES, null);
+        }
+        // Memory-mapped I/O needs SQLite 3.7.17.
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            DatabaseUtils.longForQuery(db, "PRAGMA mmap_size=" + MMAP_SIZE_BYTES, null);
+        }
+        Log.v(TAG, "onOpen: journal mode: " + getJournalMode(db));
+        finishUpgradeInBackground(db);
+    }
+
+    /**
+     * Finish the upgrade of the rows logged by an older version, and compute the aggregates the DB upgrade created, on a background thread, if the
+     * DB upgrade left some of this to the background: the DB is usable while it runs.
+     */
+    private void finishUpgradeInBackground(SQLiteDatabase db) {
+        if (!TextColumns.isEncodingNeeded(db) && !SpeedColumns.isConversionNeeded(db) && !Rollups.isRebuildNeeded(db)
+                && !ConnectionTestStats.isRebuildNeeded(db)) return;
+        if (!sIsFinishingUpgrade.compareAndSet(false, true)) return;
+        new Thread(() -> {
+            try {
+                SQLiteDatabase writableDb = getWritableDatabase();
+                // The speeds of the old rows are converted once they are in the new table.
+                if (TextColumns.isEncodingNeeded(writableDb)) TextColumns.encodeAll(writableDb);
+                if (SpeedColumns.isConversionNeeded(writableDb)) SpeedColumns.convertAll(writableDb);
+                // The conversion also rebuilds the rollups.
+                if (Rollups.isRebuildNeeded(writableDb)) Rollups.rebuild(writableDb);
+                if (ConnectionTestStats.isRebuildNeeded(writableDb)) ConnectionTestStats.rebuild(writableDb);
+                incrementWriteSequence();
+            } catch (Exception e) {
+                // We'll try again the next time the DB is opened.
+                Log.w(TAG, "Could not finish the upgrade: " + e.getMessage(), e);
+            } finally {
+                sIsFinishingUpgrade.set(false);
+            }
+        }, NetMonDatabase.class.getSimpleName()).start();
+    }
+
+    /**
+     * Copy the contents of the WAL into the DB file, waiting for the readers and the writer to be done. After this, the DB file has all the data (until
+     * the next write).
+     *
+     * This should be called on a background thread.
+     */
+    public static void checkpoint(Context context) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) return;
+        SQLiteDatabase db = getInstance(context).getWritableDatabase();
+        // TRUNCATE (SQLite 3.8.8) also empties the WAL file. With FULL, the WAL file is truncated to the journal_size_limit at the next write.
+        String mode = Build.VERSION.SDK_INT >= Build.VERSION_CODES.M ? "TRUNCATE" : "FULL";
+        Cursor cursor = db.rawQuery("PRAGMA wal_checkpoint(" + mode + ")", null);
+        try {
+            // The result is: busy (1 if the checkpoint couldn't complete), number of pages in the WAL, number of pages checkpointed.
+            if (cursor.moveToFirst()) {
+                Log.v(TAG, "checkpoint " + mode + ": busy=" + cursor.getInt(0) + ", log=" + cursor.getInt(1) + ", checkpointed=" + cursor.getInt(2));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Add the call, error and timeout counts of each data source to its stored counts, and replace its stored durations and timestamp.
+     *
+     * This should be called on a background thread.
+     *
+     * @param stats rows with the {@link DataSourceStatsColumns}. Their counts are the ones since the previous call.
+     */
+    public static void addDataSourceStats(Context context, List<ContentValues> stats) {
+        NetMonDatabase netMonDatabase = getInstance(context);
+        SQLiteDatabase db = netMonDatabase.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (ContentValues values : stats) {
+                String name = values.getAsString(DataSourceStatsColumns.DATA_SOURCE_NAME);
+                db.execSQL(SQL_INSERT_DATA_SOURCE_STATS, new Object[]{name});
+                db.execSQL(SQL_ADD_DATA_SOURCE_STATS, new Object[]{
+                        values.getAsLong(DataSourceStatsColumns.CALL_COUNT),
+                        values.getAsLong(DataSourceStatsColumns.ERROR_COUNT),
+                        values.getAsLong(DataSourceStatsColumns.TIMEOUT_COUNT),
+                        values.getAsLong(DataSourceStatsColumns.DURATION_P50),
+                        values.getAsLong(DataSourceStatsColumns.DURATION_P95),
+                        values.getAsLong(DataSourceStatsColumns.DURATION_MAX),
+                        values.getAsLong(DataSourceStatsColumns.TIMESTAMP),
+                        name});
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            netMonDatabase.incrementWriteSequence();
+        }
+        ChangeNotifier.getInstance(context).notifyChange(DataSourceStatsColumns.CONTENT_URI);
+    }
+
+    /**
+     * @return the journal mode of the DB: "wal" or one of the rollback journal modes ("delete", "truncate"...).
+     */
+    public static String getJournalMode(Context context) {
+        return getJournalMode(getInstance(context).getReadableDatabase());
+    }
 
-    NetMonDatabase(Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    private static String getJournalMode(SQLiteDatabase db) {
+        return DatabaseUtils.stringForQuery(db, "PRAGMA journal_mode", null);
+    }
+
+    /**
+     * Recompute the {@link RollupColumns} tables and the connection test stats, after deleting or importing many rows.
+     *
+     * This should be called on a background thread.
+     */
+    public static void rebuildAggregates(Context context) {
+        NetMonDatabase netMonDatabase = getInstance(context);
+        SQLiteDatabase db = netMonDatabase.getWritableDatabase();
+        Rollups.rebuild(db);
+        ConnectionTestStats.rebuild(db);
+        netMonDatabase.incrementWriteSequence();
+    }
+
+    /**
+     * Delete all the rows of the {@link NetMonColumns#DATA_TABLE_NAME} table.  SQLite only empties a table without visiting each row if the table has
+     * no delete trigger, so the trigger of the connection test stats is dropped during the delete, and the stats are emptied instead. The rows of an
+     * older version which {@link TextColumns} hasn't moved to the table yet are also deleted.
+     *
+     * @return the number of deleted rows.
+     */
+    static int deleteAllRows(SQLiteDatabase db) {
+        db.beginTransaction();
+        try {
+            ConnectionTestStats.dropDeleteTrigger(db);
+            int result = db.delete(NetMonColumns.DATA_TABLE_NAME, null, null);
+            result += TextColumns.deleteOldRows(db, null, null);
+            db.delete(ConnectionTestStatsColumns.TABLE_NAME, null, null);
+            ConnectionTestStats.createTable(db);
+            db.setTransactionSuccessful();
+            return result;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    Dictionaries getDictionaries() {
+        return mDictionaries;
+    }
+
+    /**
+     * @return a number which changes each time data is written to the DB.
+     */
+    long getWriteSequence() {
+        return mWriteSequence.get();
+    }
+
+    /**
+     * To be called after data is written to the DB, and after the transaction, if any, is committed.
+     */
+    void incrementWriteSequence() {
+        mWriteSequence.incrementAndGet();
     }
 
     @Override
     public void onCreate(SQLiteDatabase db) {
         Log.d(TAG, "onCreate");
-        db.execSQL(SQL_CREATE_TABLE_NETWORKMONITOR);
-        db.execSQL(SQL_CREATE_VIEW_CONNECTION_TEST_STATS);
+        db.execSQL(SQL_CREATE_TABLE_NETWORKMONITOR_DATA);
+        for (Family family : Family.values())
+            db.execSQL(buildCreateDictionaryTable(family));
+        db.execSQL(SQL_CREATE_VIEW_NETWORKMONITOR);
+        ConnectionTestStats.createTable(db);
+        db.execSQL(SQL_CREATE_TABLE_DATA_SOURCE_STATS);
+        db.execSQL(SQL_CREATE_TABLE_SCHEDULER_STATS);
+        db.execSQL(SQL_CREATE_TABLE_INDEX_DECISIONS);
+        IndexAdvisor.createDefaultIndexes(db);
+        Rollups.createTables(db);
     }
 
     @Override
@@ -234,7 +535,7 @@ public class NetMonDatabase extends SQLiteOpenHelper {
             db.execSQL(SQL_UPDATE_TABLE_NETWORKMONITOR_V6_WIFI_RSSI);
             db.execSQL(SQL_UPDATE_TABLE_NETWORKMONITOR_V6_WIFI_BSSID);
             db.execSQL(SQL_UPDATE_TABLE_NETWORKMONITOR_V6_CELL_SIGNAL_STRENGTH_DBM);
-            db.execSQL(SQL_CREATE_VIEW_CONNECTION_TEST_STATS);
+            // The connection test stats are created in version 25.
         }
 
         if (oldVersion < 7) db.execSQL(SQL_UPDATE_TABLE_NETWORKMONITOR_V7_CELL_ASU_LEVEL);
@@ -291,48 +592,113 @@ public class NetMonDatabase extends SQLiteOpenHelper {
             db.execSQL(SQL_UPDATE_TABLE_NETWORKMONITOR_V17_MOST_CONSUMING_APP_NAME);
             db.execSQL(SQL_UPDATE_TABLE_NETWORKMONITOR_V17_MOST_CONSUMING_APP_BYTES);
         }
+
+        if (oldVersion < 18) {
+            db.execSQL(SQL_CREATE_TABLE_DATA_SOURCE_STATS);
+        }
+
+        if (oldVersion < 19) {
+            db.execSQL(SQL_UPDATE_TABLE_NETWORKMONITOR_V19_LAST_SEEN_TIMESTAMP);
+            db.execSQL(SQL_UPDATE_TABLE_NETWORKMONITOR_V19_REPEAT_COUNT);
+        }
+
+        if (oldVersion < 20) {
+            db.execSQL(SQL_CREATE_TABLE_SCHEDULER_STATS);
+        }
+
+        // The default indexes are created in version 23, once the new table has all its columns.
+        if (oldVersion < 21) {
+            db.execSQL(SQL_CREATE_TABLE_INDEX_DECISIONS);
+        }
+
+        if (oldVersion < 22) {
+            // The rows are moved to the new table in the background.
+            TextColumns.renameOldTable(db);
+            db.execSQL(SQL_CREATE_TABLE_NETWORKMONITOR_DATA);
+            for (Family family : Family.values())
+                db.execSQL(buildCreateDictionaryTable(family));
+            TextColumns.prepareEncoding(db);
+        }
+
+        if (oldVersion < 23) {
+            // The table already has these columns if it was created in the version 22 upgrade above.
+            addColumnIfMissing(db, NetMonColumns.DATA_TABLE_NAME, NetMonColumns.DOWNLOAD_SPEED_MBPS, "REAL");
+            addColumnIfMissing(db, NetMonColumns.DATA_TABLE_NAME, NetMonColumns.UPLOAD_SPEED_MBPS, "REAL");
+            addColumnIfMissing(db, NetMonColumns.DATA_TABLE_NAME, NetMonColumns.DOWNLOAD_SPEED_STATUS, "TEXT");
+            addColumnIfMissing(db, NetMonColumns.DATA_TABLE_NAME, NetMonColumns.UPLOAD_SPEED_STATUS, "TEXT");
+            SpeedColumns.prepareConversion(db);
+            createView(db);
+            IndexAdvisor.createDefaultIndexes(db);
+        }
+
+        if (oldVersion < 24) {
+            Rollups.createTables(db);
+            // Computing the rollups reads the whole log: it's done in the background.
+            Rollups.requestRebuild(db);
+        }
+
+        if (oldVersion < 25) {
+            // The view was a query on the whole table. It's now a view on a table of counts.
+            db.execSQL("DROP VIEW IF EXISTS " + ConnectionTestStatsColumns.VIEW_NAME);
+            ConnectionTestStats.createTable(db);
+            // Like the rollups, the counts are computed in the background.
+            ConnectionTestStats.requestRebuild(db);
+        }
+    }
+
+    private static void addColumnIfMissing(SQLiteDatabase db, String table, String column, String type) {
+        if (!getColumnNames(db, table).contains(column)) db.execSQL("ALTER TABLE " + table + " ADD COLUMN " + column + " " + type);
+    }
+
+    static List<String> getColumnNames(SQLiteDatabase db, String table) {
+        List<String> result = new ArrayList<>();
+        Cursor c = db.rawQuery("PRAGMA table_info(" + table + ")", null);
+        try {
+            int nameIndex = c.getColumnIndex("name");
+            while (c.moveToNext())
+                result.add(c.getString(nameIndex));
+        } finally {
+            c.close();
+        }
+        return result;
     }
 
     /**
-     * @return a query to retrieve the stats of the connection test results.
+     * Create the {@link NetMonColumns#TABLE_NAME} view again. While {@link TextColumns} hasn't moved all the rows of an older version to the
+     * {@link NetMonColumns#DATA_TABLE_NAME} table, the view also reads them.
      */
-    private static String buildConnectionTestQuery() {
-        String gsmQuery = buildConnectionTestSubQuery(ConnectionType.GSM, NetMonColumns.GSM_CELL_LAC, NetMonColumns.GSM_SHORT_CELL_ID,
-                NetMonColumns.GSM_FULL_CELL_ID, NetMonColumns.EXTRA_INFO, NetMonColumns.DATA_STATE + "='" + Constants.DATA_STATE_CONNECTED + "'");
-        String cdmaQuery = buildConnectionTestSubQuery(ConnectionType.CDMA, NetMonColumns.CDMA_CELL_BASE_STATION_ID, NetMonColumns.CDMA_CELL_NETWORK_ID,
-                NetMonColumns.CDMA_CELL_SYSTEM_ID, NetMonColumns.EXTRA_INFO, NetMonColumns.DATA_STATE + "='" + Constants.DATA_STATE_CONNECTED + "'");
-        String wifiQuery = buildConnectionTestSubQuery(ConnectionType.WIFI, NetMonColumns.WIFI_BSSID, "NULL", "NULL", NetMonColumns.WIFI_SSID,
-                NetMonColumns.NETWORK_TYPE + "='" + ConnectionType.WIFI + "'");
-        return gsmQuery + " UNION " + cdmaQuery + " UNION " + wifiQuery;
+    static void createView(SQLiteDatabase db) {
+        db.execSQL("DROP VIEW IF EXISTS " + NetMonColumns.TABLE_NAME);
+        String query = buildDecodedDataQuery();
+        if (TextColumns.isEncodingNeeded(db)) query += " UNION ALL " + TextColumns.buildOldRowsQuery(db);
+        db.execSQL("CREATE VIEW " + NetMonColumns.TABLE_NAME + " AS " + query);
+    }
+
+    private static String buildCreateDictionaryTable(Family family) {
+        return "CREATE TABLE IF NOT EXISTS " + family.tableName + " ( "
+                + DictionaryColumns._ID + " INTEGER PRIMARY KEY, "
+                + DictionaryColumns.VALUE + " TEXT UNIQUE"
+                + " );";
     }
 
     /**
-     * @return a query to retrieve the stats of the connection test results, for a particular connection type (gsm, cdma, or wifi).
+     * @return a query which returns the rows of the {@link NetMonColumns#DATA_TABLE_NAME} table, with the text values of the dictionary-encoded
+     * columns.  The name of each dictionary-encoded column is also the alias of the dictionary table joined for it.
      */
-    private static String buildConnectionTestSubQuery(ConnectionType type, String id1Column, String id2Column, String id3Column, String labelColumn,
-            String selection) {
-        // @formatter:off
-        return "SELECT '" + type + "' as " + ConnectionTestStatsColumns.TYPE + ","
-        + id1Column + " as " + ConnectionTestStatsColumns.ID1 + ", "
-        + id2Column + " as " + ConnectionTestStatsColumns.ID2 + ", "
-        + id3Column + " as " + ConnectionTestStatsColumns.ID3 + ", "
-        + labelColumn + " as " + ConnectionTestStatsColumns.LABEL + ", "
-        + NetMonColumns.SOCKET_CONNECTION_TEST + " as " + ConnectionTestStatsColumns.TEST_RESULT + ", "
-        + "COUNT(" + NetMonColumns.SOCKET_CONNECTION_TEST +") as " + ConnectionTestStatsColumns.TEST_COUNT
-        + " FROM " + NetMonColumns.TABLE_NAME
-        + " WHERE (" + selection + ") AND "
-        + "("
-        + ConnectionTestStatsColumns.ID1 + " NOT NULL OR "
-        + ConnectionTestStatsColumns.ID2 + " NOT NULL OR "
-        + ConnectionTestStatsColumns.ID3 + " NOT NULL "
-        + ")"
-        + " GROUP BY "
-        + ConnectionTestStatsColumns.ID1 + ","
-        + ConnectionTestStatsColumns.ID2 + ","
-        + ConnectionTestStatsColumns.ID3 + ","
-        + ConnectionTestStatsColumns.LABEL + ","
-        + ConnectionTestStatsColumns.TEST_RESULT;
-        // @formatter:on
+    private static String buildDecodedDataQuery() {
+        StringBuilder columns = new StringBuilder("d." + NetMonColumns._ID + " AS " + NetMonColumns._ID);
+        StringBuilder joins = new StringBuilder();
+        for (String column : Sample.COLUMNS) {
+            Family family = Family.getFamily(column);
+            if (family == null) {
+                columns.append(", d.").append(NetMonColumns.getDataColumnName(column)).append(" AS ").append(column);
+            } else {
+                columns.append(", ").append(column).append(".").append(DictionaryColumns.VALUE).append(" AS ").append(column);
+                joins.append(" LEFT JOIN ").append(family.tableName).append(" ").append(column)
+                        .append(" ON ").append(column).append(".").append(DictionaryColumns._ID).append("=d.").append(column);
+            }
+        }
+        return "SELECT " + columns + " FROM " + NetMonColumns.DATA_TABLE_NAME + " d" + joins;
     }
 
     /**
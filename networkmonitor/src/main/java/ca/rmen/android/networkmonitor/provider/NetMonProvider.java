@@ -24,12 +24,12 @@
  */
 package ca.rmen.android.networkmonitor.provider;
 
-import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.regex.Pattern;
 import java8.util.stream.Collectors;
 
 import android.content.ContentProvider;
@@ -41,11 +41,11 @@ import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.content.pm.ProviderInfo;
 import android.database.Cursor;
-import android.database.sqlite.SQLiteCursor;
+import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
-import android.database.sqlite.SQLiteQuery;
 import android.database.sqlite.SQLiteQueryBuilder;
 import android.net.Uri;
+import android.os.SystemClock;
 import android.provider.BaseColumns;
 import android.support.annotation.NonNull;
 
@@ -64,14 +64,50 @@ public class NetMonProvider extends ContentProvider { // NO_UCD (use default)
 
     public static final String QUERY_PARAMETER_NOTIFY = "QUERY_PARAMETER_NOTIFY";
     public static final String QUERY_PARAMETER_LIMIT = "QUERY_PARAMETER_LIMIT";
+    /**
+     * Keyset pagination of {@link NetMonColumns#CONTENT_URI}: only the rows after or before the given _id and/or timestamp are returned. When a
+     * timestamp and an _id are given together, they are compared as one key, (timestamp, _id): a page sorted by timestamp, _id can end in the middle
+     * of rows with the same timestamp. The pages are read from the primary key or the timestamp index, whatever their position in the log.
+     * The parameters are combined with the selection, and the sort order is left to the caller: to read the next page, sort in ascending order and
+     * pass the keys of the last row of the previous page as the "after" parameters.
+     */
+    public static final String QUERY_PARAMETER_AFTER_ID = "QUERY_PARAMETER_AFTER_ID";
+    public static final String QUERY_PARAMETER_BEFORE_ID = "QUERY_PARAMETER_BEFORE_ID";
+    public static final String QUERY_PARAMETER_AFTER_TIMESTAMP = "QUERY_PARAMETER_AFTER_TIMESTAMP";
+    public static final String QUERY_PARAMETER_BEFORE_TIMESTAMP = "QUERY_PARAMETER_BEFORE_TIMESTAMP";
+    /**
+     * The maximum number of rows of a page. Overrides the {@link #QUERY_PARAMETER_LIMIT}.
+     */
+    public static final String QUERY_PARAMETER_PAGE_SIZE = "QUERY_PARAMETER_PAGE_SIZE";
+    /**
+     * For the {@link AggregateColumns}: the width of the time buckets, in milliseconds.
+     */
+    public static final String QUERY_PARAMETER_BUCKET_WIDTH = "QUERY_PARAMETER_BUCKET_WIDTH";
+    /**
+     * For the {@link AggregateColumns.Function#PERCENTILE} aggregate: a number between 0 and 100.
+     */
+    public static final String QUERY_PARAMETER_PERCENTILE = "QUERY_PARAMETER_PERCENTILE";
     private static final String QUERY_PARAMETER_GROUP_BY = "QUERY_PARAMETER_GROUP_BY";
+    /**
+     * Added by the provider to the uris it notifies: the notifications of the same uri have increasing sequences.
+     * @see #getSequence(Uri)
+     */
+    public static final String QUERY_PARAMETER_SEQUENCE = "seq";
 
     private static final int URI_TYPE_NETWORKMONITOR = 0;
     private static final int URI_TYPE_NETWORKMONITOR_ID = 1;
     private static final int URI_TYPE_SUMMARY = 2;
     private static final int URI_TYPE_UNIQUE_VALUES_ID = 3;
+    private static final int URI_TYPE_DATA_SOURCE_STATS = 4;
+    private static final int URI_TYPE_SCHEDULER_STATS = 5;
+    private static final int URI_TYPE_INDEX_DECISIONS = 6;
+    private static final int URI_TYPE_ROLLUP = 7;
+    private static final int URI_TYPE_QUERY_STATS = 8;
+    private static final int URI_TYPE_SLOW_QUERIES = 9;
+    private static final int URI_TYPE_AGGREGATE = 10;
 
     private static final UriMatcher URI_MATCHER = new UriMatcher(UriMatcher.NO_MATCH);
+    private static final Pattern AGGREGATE_FUNCTION = Pattern.compile("(?i)\\b(count|min|max|sum|avg|total|group_concat)\\s*\\(");
     private Context mContext;
 
     static {
@@ -79,13 +115,40 @@ public class NetMonProvider extends ContentProvider { // NO_UCD (use default)
         URI_MATCHER.addURI(AUTHORITY, NetMonColumns.TABLE_NAME + "/#", URI_TYPE_NETWORKMONITOR_ID);
         URI_MATCHER.addURI(AUTHORITY, ConnectionTestStatsColumns.VIEW_NAME, URI_TYPE_SUMMARY);
         URI_MATCHER.addURI(AUTHORITY, UniqueValuesColumns.NAME + "/*", URI_TYPE_UNIQUE_VALUES_ID);
+        URI_MATCHER.addURI(AUTHORITY, DataSourceStatsColumns.TABLE_NAME, URI_TYPE_DATA_SOURCE_STATS);
+        URI_MATCHER.addURI(AUTHORITY, SchedulerStatsColumns.TABLE_NAME, URI_TYPE_SCHEDULER_STATS);
+        URI_MATCHER.addURI(AUTHORITY, IndexDecisionColumns.TABLE_NAME, URI_TYPE_INDEX_DECISIONS);
+        for (RollupColumns.Granularity granularity : RollupColumns.Granularity.values())
+            URI_MATCHER.addURI(AUTHORITY, granularity.tableName, URI_TYPE_ROLLUP);
+        URI_MATCHER.addURI(AUTHORITY, QueryStatsColumns.NAME, URI_TYPE_QUERY_STATS);
+        URI_MATCHER.addURI(AUTHORITY, SlowQueryColumns.NAME, URI_TYPE_SLOW_QUERIES);
+        URI_MATCHER.addURI(AUTHORITY, AggregateColumns.NAME + "/*/*", URI_TYPE_AGGREGATE);
     }
 
     private NetMonDatabase mNetworkMonitorDatabase;
+    private ChangeNotifier mChangeNotifier;
+    private final QueryCache mQueryCache = new QueryCache();
+    private final QueryStats mQueryStats = new QueryStats();
+
+    /**
+     * @param uri the uri received by {@link android.database.ContentObserver#onChange(boolean, Uri)}.
+     * @return the sequence of the notification, or -1 if the uri doesn't have one. An observer which has already refreshed its data for a sequence
+     * doesn't need to refresh it again for a notification with the same or a lower sequence.
+     */
+    public static long getSequence(Uri uri) {
+        String sequence = uri == null ? null : uri.getQueryParameter(QUERY_PARAMETER_SEQUENCE);
+        if (sequence == null) return -1;
+        try {
+            return Long.parseLong(sequence);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
 
     @Override
     public boolean onCreate() {
-        mNetworkMonitorDatabase = new NetMonDatabase(mContext);
+        mNetworkMonitorDatabase = NetMonDatabase.getInstance(mContext);
+        mChangeNotifier = ChangeNotifier.getInstance(mContext);
         return true;
     }
 
@@ -106,6 +169,20 @@ public class NetMonProvider extends ContentProvider { // NO_UCD (use default)
                 return TYPE_CURSOR_ITEM + NetMonColumns.TABLE_NAME;
             case URI_TYPE_UNIQUE_VALUES_ID:
                 return TYPE_CURSOR_DIR + UniqueValuesColumns.NAME;
+            case URI_TYPE_DATA_SOURCE_STATS:
+                return TYPE_CURSOR_DIR + DataSourceStatsColumns.TABLE_NAME;
+            case URI_TYPE_SCHEDULER_STATS:
+                return TYPE_CURSOR_DIR + SchedulerStatsColumns.TABLE_NAME;
+            case URI_TYPE_INDEX_DECISIONS:
+                return TYPE_CURSOR_DIR + IndexDecisionColumns.TABLE_NAME;
+            case URI_TYPE_ROLLUP:
+                return TYPE_CURSOR_DIR + uri.getLastPathSegment();
+            case URI_TYPE_QUERY_STATS:
+                return TYPE_CURSOR_DIR + QueryStatsColumns.NAME;
+            case URI_TYPE_SLOW_QUERIES:
+                return TYPE_CURSOR_DIR + SlowQueryColumns.NAME;
+            case URI_TYPE_AGGREGATE:
+                return TYPE_CURSOR_DIR + AggregateColumns.NAME;
         }
         return null;
     }
@@ -114,10 +191,11 @@ public class NetMonProvider extends ContentProvider { // NO_UCD (use default)
     public Uri insert(@NonNull Uri uri, ContentValues values) {
         Log.d(TAG, "insert uri=" + uri + " values=" + values);
         final String table = uri.getLastPathSegment();
-        final long rowId = mNetworkMonitorDatabase.getWritableDatabase().insert(table, null, values);
+        final long rowId = insert(mNetworkMonitorDatabase.getWritableDatabase(), table, values);
+        mNetworkMonitorDatabase.incrementWriteSequence();
         String notify;
         if (rowId != -1 && ((notify = uri.getQueryParameter(QUERY_PARAMETER_NOTIFY)) == null || "true".equals(notify))) {
-            mContext.getContentResolver().notifyChange(uri, null);
+            mChangeNotifier.notifyChange(uri);
         }
         return uri.buildUpon().appendEncodedPath(String.valueOf(rowId)).build();
     }
@@ -126,23 +204,16 @@ public class NetMonProvider extends ContentProvider { // NO_UCD (use default)
     public int bulkInsert(@NonNull Uri uri, @NonNull ContentValues[] values) {
         Log.d(TAG, "bulkInsert uri=" + uri + " values.length=" + values.length);
         final String table = uri.getLastPathSegment();
-        final SQLiteDatabase db = mNetworkMonitorDatabase.getWritableDatabase();
-        int res = 0;
-        db.beginTransaction();
+        BulkInserter bulkInserter = new BulkInserter(mContext);
+        final int res;
         try {
-            for (final ContentValues v : values) {
-                final long id = db.insert(table, null, v);
-                if (id != -1) {
-                    res++;
-                }
-            }
-            db.setTransactionSuccessful();
+            res = bulkInserter.insert(table, values, 0, values.length);
         } finally {
-            db.endTransaction();
+            bulkInserter.close();
         }
         String notify;
         if (res != 0 && ((notify = uri.getQueryParameter(QUERY_PARAMETER_NOTIFY)) == null || "true".equals(notify))) {
-            mContext.getContentResolver().notifyChange(uri, null);
+            mChangeNotifier.notifyChange(uri);
         }
 
         return res;
@@ -152,10 +223,19 @@ public class NetMonProvider extends ContentProvider { // NO_UCD (use default)
     public int update(@NonNull Uri uri, ContentValues values, String selection, String[] selectionArgs) {
         Log.d(TAG, "update uri=" + uri + " values=" + values + " selection=" + selection);
         final QueryParams queryParams = getQueryParams(uri, selection);
-        final int res = mNetworkMonitorDatabase.getWritableDatabase().update(queryParams.table, values, queryParams.whereClause, selectionArgs);
+        final int res;
+        if (NetMonColumns.TABLE_NAME.equals(queryParams.table)) {
+            ContentValues dataValues = mNetworkMonitorDatabase.getDictionaries().encode(SpeedColumns.convert(values));
+            TextColumns.moveOldRows(mNetworkMonitorDatabase.getWritableDatabase(), queryParams.whereClause, selectionArgs);
+            res = mNetworkMonitorDatabase.getWritableDatabase().update(NetMonColumns.DATA_TABLE_NAME, dataValues,
+                    Dictionaries.getDataTableSelection(queryParams.whereClause), selectionArgs);
+        } else {
+            res = mNetworkMonitorDatabase.getWritableDatabase().update(queryParams.table, values, queryParams.whereClause, selectionArgs);
+        }
+        mNetworkMonitorDatabase.incrementWriteSequence();
         String notify;
         if (res != 0 && ((notify = uri.getQueryParameter(QUERY_PARAMETER_NOTIFY)) == null || "true".equals(notify))) {
-            mContext.getContentResolver().notifyChange(uri, null);
+            mChangeNotifier.notifyChange(uri);
         }
         return res;
     }
@@ -164,10 +244,20 @@ public class NetMonProvider extends ContentProvider { // NO_UCD (use default)
     public int delete(@NonNull Uri uri, String selection, String[] selectionArgs) {
         Log.d(TAG, "delete uri=" + uri + " selection=" + selection);
         final QueryParams queryParams = getQueryParams(uri, selection);
-        final int res = mNetworkMonitorDatabase.getWritableDatabase().delete(queryParams.table, queryParams.whereClause, selectionArgs);
+        final int res;
+        if (NetMonColumns.TABLE_NAME.equals(queryParams.table) && queryParams.whereClause == null) {
+            res = NetMonDatabase.deleteAllRows(mNetworkMonitorDatabase.getWritableDatabase());
+        } else if (NetMonColumns.TABLE_NAME.equals(queryParams.table)) {
+            res = TextColumns.deleteOldRows(mNetworkMonitorDatabase.getWritableDatabase(), queryParams.whereClause, selectionArgs)
+                    + mNetworkMonitorDatabase.getWritableDatabase().delete(NetMonColumns.DATA_TABLE_NAME,
+                    Dictionaries.getDataTableSelection(queryParams.whereClause), selectionArgs);
+        } else {
+            res = mNetworkMonitorDatabase.getWritableDatabase().delete(queryParams.table, queryParams.whereClause, selectionArgs);
+        }
+        mNetworkMonitorDatabase.incrementWriteSequence();
         String notify;
         if (res != 0 && ((notify = uri.getQueryParameter(QUERY_PARAMETER_NOTIFY)) == null || "true".equals(notify))) {
-            mContext.getContentResolver().notifyChange(uri, null);
+            mChangeNotifier.notifyChange(uri);
         }
         return res;
     }
@@ -175,24 +265,42 @@ public class NetMonProvider extends ContentProvider { // NO_UCD (use default)
     @Override
     public Cursor query(@NonNull Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
         final String groupBy = uri.getQueryParameter(QUERY_PARAMETER_GROUP_BY);
-        final String limit = uri.getQueryParameter(QUERY_PARAMETER_LIMIT);
+        final String pageSize = uri.getQueryParameter(QUERY_PARAMETER_PAGE_SIZE);
+        final String limit = pageSize == null ? uri.getQueryParameter(QUERY_PARAMETER_LIMIT) : pageSize;
         Log.d(TAG,
                 "query uri=" + uri + ", projection = " + Arrays.toString(projection) + ", selection=" + selection + ", selectionArgs = "
                         + Arrays.toString(selectionArgs) + ", sortOrder=" + sortOrder + ", groupBy=" + groupBy);
 
         final int matchedId = URI_MATCHER.match(uri);
-        final Cursor res;
+        final String cacheKey = isCacheable(matchedId, projection, groupBy) ? QueryCache.getKey(uri, projection, selection, selectionArgs, sortOrder) : null;
+        final long writeSequence = mNetworkMonitorDatabase.getWriteSequence();
+        // Without a match, the uri may have no path: the query returns null, in the default case below.
+        final String uriType = matchedId == UriMatcher.NO_MATCH ? null : uri.getPathSegments().get(0);
+        if (cacheKey != null) {
+            Cursor cachedResult = mQueryCache.get(cacheKey, writeSequence);
+            if (cachedResult != null) {
+                mQueryStats.onCacheHit(uriType);
+                cachedResult.setNotificationUri(mContext.getContentResolver(), uri);
+                return cachedResult;
+            }
+        }
+        String sql = null;
+        String[] queryArgs = selectionArgs;
+        Cursor res = null;
         switch (matchedId) {
             case URI_TYPE_NETWORKMONITOR:
             case URI_TYPE_NETWORKMONITOR_ID:
+            case URI_TYPE_DATA_SOURCE_STATS:
+            case URI_TYPE_SCHEDULER_STATS:
+            case URI_TYPE_INDEX_DECISIONS:
+            case URI_TYPE_ROLLUP:
 
                 final QueryParams queryParams = getQueryParams(uri, selection);
-                res = mNetworkMonitorDatabase.getReadableDatabase().query(queryParams.table, projection, queryParams.whereClause, selectionArgs, groupBy, null,
+                sql = SQLiteQueryBuilder.buildQueryString(false, queryParams.table, projection, queryParams.whereClause, groupBy, null,
                         sortOrder == null ? queryParams.orderBy : sortOrder, limit);
                 break;
             case URI_TYPE_SUMMARY:
-                res = mNetworkMonitorDatabase.getReadableDatabase().query(ConnectionTestStatsColumns.VIEW_NAME, projection, selection, selectionArgs, groupBy,
-                        null, sortOrder, limit);
+                sql = SQLiteQueryBuilder.buildQueryString(false, ConnectionTestStatsColumns.VIEW_NAME, projection, selection, groupBy, null, sortOrder, limit);
                 break;
             case URI_TYPE_UNIQUE_VALUES_ID:
                 String columnName = uri.getLastPathSegment();
@@ -203,16 +311,79 @@ public class NetMonProvider extends ContentProvider { // NO_UCD (use default)
                 qb.setDistinct(true);
                 qb.setTables(NetMonColumns.TABLE_NAME);
                 qb.setProjectionMap(projectionMap);
-                res = qb.query(mNetworkMonitorDatabase.getReadableDatabase(), projection, selection, selectionArgs, columnName, null, sortOrder, limit);
+                // The variant without the selectionArgs is only available from Honeycomb. The selectionArgs aren't used to build the query anyway.
+                //noinspection deprecation
+                sql = qb.buildQuery(projection, selection, selectionArgs, columnName, null, sortOrder, limit);
+                break;
+            case URI_TYPE_AGGREGATE:
+                AggregateQuery aggregateQuery = new AggregateQuery(uri, selection, selectionArgs);
+                if (aggregateQuery.isBucketedPercentile()) {
+                    res = aggregateQuery.queryBucketedPercentiles(mNetworkMonitorDatabase.getReadableDatabase());
+                } else {
+                    sql = aggregateQuery.getSql();
+                    queryArgs = aggregateQuery.getSelectionArgs();
+                }
                 break;
+            case URI_TYPE_QUERY_STATS:
+                return mQueryStats.getStatsCursor();
+            case URI_TYPE_SLOW_QUERIES:
+                return mQueryStats.getSlowQueriesCursor();
             default:
                 return null;
         }
+        if (res == null) res = instrumentedQuery(uriType, sql, queryArgs);
+        if (cacheKey != null) res = mQueryCache.put(cacheKey, writeSequence, res);
         res.setNotificationUri(mContext.getContentResolver(), uri);
-        logCursor(res, selectionArgs);
         return res;
     }
 
+    /**
+     * Run the query. Its cost is recorded in the {@link QueryStats} when the cursor is closed, and the query plan of a slow query is logged.
+     */
+    private Cursor instrumentedQuery(String uriType, String sql, String[] selectionArgs) {
+        Log.v(TAG, sql + ": " + Arrays.toString(selectionArgs));
+        SQLiteDatabase db = mNetworkMonitorDatabase.getReadableDatabase();
+        long start = SystemClock.elapsedRealtime();
+        // The query only runs when the cursor fills its first window: the InstrumentedCursor measures it then.
+        Cursor cursor = db.rawQuery(sql, selectionArgs);
+        return new InstrumentedCursor(cursor, mQueryStats, uriType, SystemClock.elapsedRealtime() - start,
+                (duration, rowCount) -> onQuery(uriType, sql, selectionArgs, duration, rowCount));
+    }
+
+    private void onQuery(String uriType, String sql, String[] selectionArgs, long duration, int rowCount) {
+        mQueryStats.onQuery(uriType, duration, rowCount);
+        if (duration >= QueryStats.SLOW_QUERY_MS) {
+            String plan;
+            try {
+                plan = IndexAdvisor.explainQueryPlan(mNetworkMonitorDatabase.getReadableDatabase(), sql, selectionArgs);
+            } catch (SQLException e) {
+                plan = e.getMessage();
+            }
+            mQueryStats.onSlowQuery(uriType, sql, selectionArgs, duration, rowCount, plan);
+        }
+    }
+
+    /**
+     * @return true if the result of the query is small enough to be cached: the summary, the unique values of a column, or aggregates of the log.
+     */
+    private static boolean isCacheable(int matchedId, String[] projection, String groupBy) {
+        switch (matchedId) {
+            case URI_TYPE_SUMMARY:
+            case URI_TYPE_UNIQUE_VALUES_ID:
+            case URI_TYPE_AGGREGATE:
+                return true;
+            case URI_TYPE_NETWORKMONITOR:
+                if (groupBy != null) return true;
+                if (projection != null) {
+                    for (String column : projection)
+                        if (AGGREGATE_FUNCTION.matcher(column).find()) return true;
+                }
+                return false;
+            default:
+                return false;
+        }
+    }
+
     /**
      * Perform all operations in a single transaction and notify all relevant URIs at the end.
      *
@@ -226,27 +397,40 @@ public class NetMonProvider extends ContentProvider { // NO_UCD (use default)
                         .collect(Collectors.toSet());
         Log.v(TAG, "applyBatch: will notify these uris after persisting: " + urisToNotify);
         SQLiteDatabase db = mNetworkMonitorDatabase.getWritableDatabase();
+        boolean isSuccessful = false;
         db.beginTransaction();
         try {
             int batchSize = 100;
-            int operationsProcessed = 0;
-            ContentProviderResult[] result = new ContentProviderResult[operations.size()];
-            while (!operations.isEmpty()) {
-                ArrayList<ContentProviderOperation> batch = new ArrayList<>(batchSize);
-                for (int i = 0; i < batchSize && !operations.isEmpty(); i++)
-                    batch.add(operations.remove(0));
+            int operationCount = operations.size();
+            ContentProviderResult[] result = new ContentProviderResult[operationCount];
+            for (int operationsProcessed = 0; operationsProcessed < operationCount; operationsProcessed += batchSize) {
+                ArrayList<ContentProviderOperation> batch =
+                        new ArrayList<>(operations.subList(operationsProcessed, Math.min(operationCount, operationsProcessed + batchSize)));
                 Log.v(TAG, "applyBatch of " + batch.size() + " operations");
                 ContentProviderResult[] batchResult = super.applyBatch(batch);
                 System.arraycopy(batchResult, 0, result, operationsProcessed, batchResult.length);
-                operationsProcessed += batch.size();
             }
             db.setTransactionSuccessful();
+            isSuccessful = true;
             for (Uri uri : urisToNotify)
-                mContext.getContentResolver().notifyChange(uri, null);
+                mChangeNotifier.notifyChange(uri);
             return result;
         } finally {
             db.endTransaction();
+            mNetworkMonitorDatabase.incrementWriteSequence();
+            if (!isSuccessful) mNetworkMonitorDatabase.getDictionaries().clearCache();
+        }
+    }
+
+    /**
+     * The rows of the {@link NetMonColumns#TABLE_NAME} view are inserted in the {@link NetMonColumns#DATA_TABLE_NAME} table, with their dictionary-encoded
+     * values, and their speeds in Mbps.
+     */
+    private long insert(SQLiteDatabase db, String table, ContentValues values) {
+        if (NetMonColumns.TABLE_NAME.equals(table)) {
+            return db.insert(NetMonColumns.DATA_TABLE_NAME, null, mNetworkMonitorDatabase.getDictionaries().encode(SpeedColumns.convert(values)));
         }
+        return db.insert(table, null, values);
     }
 
     private static class QueryParams {
@@ -266,6 +450,23 @@ public class NetMonProvider extends ContentProvider { // NO_UCD (use default)
                 res.table = NetMonColumns.TABLE_NAME;
                 res.orderBy = NetMonColumns.DEFAULT_ORDER;
                 break;
+            case URI_TYPE_DATA_SOURCE_STATS:
+                res.table = DataSourceStatsColumns.TABLE_NAME;
+                res.orderBy = DataSourceStatsColumns.DATA_SOURCE_NAME;
+                break;
+            case URI_TYPE_SCHEDULER_STATS:
+                res.table = SchedulerStatsColumns.TABLE_NAME;
+                res.orderBy = SchedulerStatsColumns.SCHEDULER_NAME;
+                break;
+            case URI_TYPE_INDEX_DECISIONS:
+                res.table = IndexDecisionColumns.TABLE_NAME;
+                res.orderBy = IndexDecisionColumns._ID;
+                break;
+            case URI_TYPE_ROLLUP:
+                // The uri matcher only matches the names of the rollup tables.
+                res.table = uri.getLastPathSegment();
+                res.orderBy = RollupColumns.BUCKET_START;
+                break;
             case URI_TYPE_SUMMARY:
                 // Nothing to do here.  We will construct our query params in query().
                 break;
@@ -286,20 +487,48 @@ public class NetMonProvider extends ContentProvider { // NO_UCD (use default)
         } else {
             res.whereClause = selection;
         }
+        if (matchedId == URI_TYPE_NETWORKMONITOR) {
+            String keysetSelection = getKeysetSelection(uri);
+            if (keysetSelection != null) {
+                res.whereClause = res.whereClause == null ? keysetSelection : keysetSelection + " and (" + res.whereClause + ")";
+            }
+        }
         return res;
     }
 
     /**
-     * Log the query of the given cursor.
+     * @return the where clause for the keyset pagination parameters of the uri, or null if it has none.
+     */
+    private static String getKeysetSelection(Uri uri) {
+        String after = getKeysetSelection(uri, QUERY_PARAMETER_AFTER_TIMESTAMP, QUERY_PARAMETER_AFTER_ID, ">");
+        String before = getKeysetSelection(uri, QUERY_PARAMETER_BEFORE_TIMESTAMP, QUERY_PARAMETER_BEFORE_ID, "<");
+        if (after == null) return before;
+        if (before == null) return after;
+        return after + " and " + before;
+    }
+
+    /**
+     * @param operator > or <
+     * @return the comparison of the (timestamp, _id) key, or of the one of them which is given, or null if neither is given.
      */
-    private void logCursor(Cursor cursor, String[] selectionArgs) {
+    private static String getKeysetSelection(Uri uri, String timestampParameter, String idParameter, String operator) {
+        Long timestamp = getLongQueryParameter(uri, timestampParameter);
+        Long id = getLongQueryParameter(uri, idParameter);
+        if (timestamp == null && id == null) return null;
+        if (timestamp == null) return BaseColumns._ID + operator + id;
+        if (id == null) return NetMonColumns.TIMESTAMP + operator + timestamp;
+        // Written as a range on the timestamp, so the timestamp index (which also holds the _id) finds the first row of the page.
+        return "(" + NetMonColumns.TIMESTAMP + operator + "=" + timestamp
+                + " and (" + NetMonColumns.TIMESTAMP + operator + timestamp + " or " + BaseColumns._ID + operator + id + "))";
+    }
+
+    private static Long getLongQueryParameter(Uri uri, String parameter) {
+        String value = uri.getQueryParameter(parameter);
+        if (value == null) return null;
         try {
-            Field queryField = SQLiteCursor.class.getDeclaredField("mQuery");
-            queryField.setAccessible(true);
-            SQLiteQuery sqliteQuery = (SQLiteQuery) queryField.get(cursor);
-            Log.v(TAG, sqliteQuery.toString() + ": " + Arrays.toString(selectionArgs));
-        } catch (Exception e) {
-            Log.v(TAG, e.getMessage(), e);
+            return Long.valueOf(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("The " + parameter + " parameter of the uri '" + uri + "' is not a number");
         }
     }
 }
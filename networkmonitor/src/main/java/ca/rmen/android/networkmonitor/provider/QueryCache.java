@@ -0,0 +1,190 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ *
+ * Copyright (C) 2016 Carmen Alvarez (c@rmen.ca)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.rmen.android.networkmonitor.provider;
+
+import android.annotation.TargetApi;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.os.Build;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import ca.rmen.android.networkmonitor.Constants;
+import ca.rmen.android.networkmonitor.util.Log;
+
+/**
+ * Caches the small results of the {@link NetMonProvider} queries which are run again and again with the same arguments: the filter values, the
+ * min and max of a column, the summary...
+ *
+ * A result is only returned while the write sequence of the {@link NetMonDatabase} is the same as when the result was read: the whole cache is
+ * cleared after any write. The least recently used results are evicted when the cache holds more than {@link #MAX_CACHED_VALUES} values.
+ */
+class QueryCache {
+    private static final String TAG = Constants.TAG + QueryCache.class.getSimpleName();
+
+    // Results with more rows than this aren't cached.
+    private static final int MAX_CACHED_ROWS = 500;
+    private static final int MAX_CACHED_VALUES = 20000;
+
+    private static class Result {
+        final String[] columnNames;
+        final List<Object[]> rows;
+
+        Result(String[] columnNames, List<Object[]> rows) {
+            this.columnNames = columnNames;
+            this.rows = rows;
+        }
+
+        int getValueCount() {
+            return columnNames.length * rows.size();
+        }
+    }
+
+    private final Map<String, Result> mResults = new LinkedHashMap<>(16, 0.75f, true);
+    private long mWriteSequence = -1;
+    private int mValueCount;
+    private long mHitCount;
+    private long mMissCount;
+
+    /**
+     * @return the key of the result of a query.
+     */
+    static String getKey(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+        return uri + "\u0000" + Arrays.toString(projection) + "\u0000" + selection + "\u0000" + Arrays.toString(selectionArgs) + "\u0000" + sortOrder;
+    }
+
+    /**
+     * @param writeSequence the current write sequence of the DB.
+     * @return a cursor on the cached result of the query with the given key, or null if the result isn't in the cache.
+     */
+    synchronized Cursor get(String key, long writeSequence) {
+        Result result = isCurrent(writeSequence) ? mResults.get(key) : null;
+        if (result == null) {
+            mMissCount++;
+            return null;
+        }
+        mHitCount++;
+        Log.v(TAG, "hit: " + mHitCount + " hits, " + mMissCount + " misses");
+        MatrixCursor cursor = new MatrixCursor(result.columnNames, result.rows.size());
+        for (Object[] row : result.rows)
+            cursor.addRow(row);
+        return cursor;
+    }
+
+    /**
+     * Cache the result of a query, if it's small enough.
+     *
+     * @param writeSequence the write sequence of the DB before the query was run.
+     * @return a cursor on the same result as the given cursor: the given cursor is closed if its result was cached.
+     */
+    Cursor put(String key, long writeSequence, Cursor cursor) {
+        if (cursor.getCount() > MAX_CACHED_ROWS) return cursor;
+        String[] columnNames = cursor.getColumnNames();
+        List<Object[]> rows = new ArrayList<>(cursor.getCount());
+        try {
+            while (cursor.moveToNext()) {
+                Object[] row = new Object[columnNames.length];
+                for (int i = 0; i < columnNames.length; i++)
+                    row[i] = readValue(cursor, i);
+                rows.add(row);
+            }
+        } finally {
+            cursor.close();
+        }
+        Result result = new Result(columnNames, rows);
+        synchronized (this) {
+            // If the DB was written to during the query, the result may already be stale.
+            if (isCurrent(writeSequence)) {
+                Result previousResult = mResults.put(key, result);
+                if (previousResult != null) mValueCount -= previousResult.getValueCount();
+                mValueCount += result.getValueCount();
+                evict();
+            }
+        }
+        MatrixCursor resultCursor = new MatrixCursor(columnNames, rows.size());
+        for (Object[] row : rows)
+            resultCursor.addRow(row);
+        return resultCursor;
+    }
+
+    synchronized long getHitCount() {
+        return mHitCount;
+    }
+
+    synchronized long getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * Clear the cache if the DB was written to since the cached results were read.
+     *
+     * @return false if the given write sequence is older than the cached results.
+     */
+    private boolean isCurrent(long writeSequence) {
+        if (writeSequence > mWriteSequence) {
+            mResults.clear();
+            mValueCount = 0;
+            mWriteSequence = writeSequence;
+        }
+        return writeSequence == mWriteSequence;
+    }
+
+    private void evict() {
+        Iterator<Result> iterator = mResults.values().iterator();
+        while (mValueCount > MAX_CACHED_VALUES && iterator.hasNext()) {
+            mValueCount -= iterator.next().getValueCount();
+            iterator.remove();
+        }
+    }
+
+    /**
+     * @return the value, with the type SQLite stored it with if available.
+     */
+    private static Object readValue(Cursor cursor, int column) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) return readTypedValue(cursor, column);
+        return cursor.getString(column);
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static Object readTypedValue(Cursor cursor, int column) {
+        switch (cursor.getType(column)) {
+            case Cursor.FIELD_TYPE_NULL:
+                return null;
+            case Cursor.FIELD_TYPE_INTEGER:
+                return cursor.getLong(column);
+            case Cursor.FIELD_TYPE_FLOAT:
+                return cursor.getDouble(column);
+            case Cursor.FIELD_TYPE_BLOB:
+                return cursor.getBlob(column);
+            default:
+                return cursor.getString(column);
+        }
+    }
+}
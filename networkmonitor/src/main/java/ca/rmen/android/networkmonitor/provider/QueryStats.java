@@ -0,0 +1,150 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ *
+ * Copyright (C) 2016 Carmen Alvarez (c@rmen.ca)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.rmen.android.networkmonitor.provider;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Map;
+import java.util.TreeMap;
+
+import ca.rmen.android.networkmonitor.Constants;
+import ca.rmen.android.networkmonitor.util.Log;
+
+/**
+ * Aggregates the cost of the {@link NetMonProvider} queries for each type of uri, and keeps the most recent slow queries.
+ * The stats are in memory only: they cover the queries since the process started.
+ *
+ * @see QueryStatsColumns
+ * @see SlowQueryColumns
+ */
+class QueryStats {
+    private static final String TAG = Constants.TAG + QueryStats.class.getSimpleName();
+
+    static final long SLOW_QUERY_MS = 200;
+    private static final int MAX_SLOW_QUERIES = 20;
+
+    private static class UriTypeStats {
+        long queryCount;
+        long cacheHitCount;
+        long durationTotal;
+        long durationMax;
+        long rowCount;
+        long windowFillCount;
+        long slowQueryCount;
+    }
+
+    private static class SlowQuery {
+        final long timestamp;
+        final String uriType;
+        final String query;
+        final String selectionArgs;
+        final long duration;
+        final int rowCount;
+        final String plan;
+
+        SlowQuery(long timestamp, String uriType, String query, String selectionArgs, long duration, int rowCount, String plan) {
+            this.timestamp = timestamp;
+            this.uriType = uriType;
+            this.query = query;
+            this.selectionArgs = selectionArgs;
+            this.duration = duration;
+            this.rowCount = rowCount;
+            this.plan = plan;
+        }
+    }
+
+    private final Map<String, UriTypeStats> mStats = new TreeMap<>();
+    private final Deque<SlowQuery> mSlowQueries = new ArrayDeque<>(MAX_SLOW_QUERIES);
+
+    synchronized void onCacheHit(String uriType) {
+        getStats(uriType).cacheHitCount++;
+    }
+
+    /**
+     * @param duration the time to run the query, until the first window of rows was filled.
+     */
+    synchronized void onQuery(String uriType, long duration, int rowCount) {
+        UriTypeStats stats = getStats(uriType);
+        stats.queryCount++;
+        stats.durationTotal += duration;
+        stats.durationMax = Math.max(stats.durationMax, duration);
+        stats.rowCount += rowCount;
+        stats.windowFillCount++;
+    }
+
+    /**
+     * A cursor filled its window again, because it was moved past the rows of the window.
+     */
+    synchronized void onWindowFill(String uriType) {
+        getStats(uriType).windowFillCount++;
+    }
+
+    synchronized void onSlowQuery(String uriType, String query, String[] selectionArgs, long duration, int rowCount, String plan) {
+        Log.w(TAG, "Slow query (" + duration + "ms, " + rowCount + " rows): " + query + ": " + Arrays.toString(selectionArgs) + ", plan: " + plan);
+        getStats(uriType).slowQueryCount++;
+        if (mSlowQueries.size() == MAX_SLOW_QUERIES) mSlowQueries.removeLast();
+        mSlowQueries.addFirst(new SlowQuery(System.currentTimeMillis(), uriType, query, Arrays.toString(selectionArgs), duration, rowCount, plan));
+    }
+
+    /**
+     * @return a cursor with the {@link QueryStatsColumns}, one row per uri type.
+     */
+    synchronized Cursor getStatsCursor() {
+        MatrixCursor result = new MatrixCursor(new String[]{QueryStatsColumns.URI_TYPE, QueryStatsColumns.QUERY_COUNT, QueryStatsColumns.CACHE_HIT_COUNT,
+                QueryStatsColumns.DURATION_TOTAL, QueryStatsColumns.DURATION_MAX, QueryStatsColumns.ROW_COUNT, QueryStatsColumns.WINDOW_FILL_COUNT,
+                QueryStatsColumns.SLOW_QUERY_COUNT}, mStats.size());
+        for (Map.Entry<String, UriTypeStats> entry : mStats.entrySet()) {
+            UriTypeStats stats = entry.getValue();
+            result.addRow(new Object[]{entry.getKey(), stats.queryCount, stats.cacheHitCount, stats.durationTotal, stats.durationMax, stats.rowCount,
+                    stats.windowFillCount, stats.slowQueryCount});
+        }
+        return result;
+    }
+
+    /**
+     * @return a cursor with the {@link SlowQueryColumns}, the most recent query first.
+     */
+    synchronized Cursor getSlowQueriesCursor() {
+        MatrixCursor result = new MatrixCursor(new String[]{SlowQueryColumns.TIMESTAMP, SlowQueryColumns.URI_TYPE, SlowQueryColumns.QUERY,
+                SlowQueryColumns.SELECTION_ARGS, SlowQueryColumns.DURATION, SlowQueryColumns.ROW_COUNT, SlowQueryColumns.PLAN}, mSlowQueries.size());
+        for (SlowQuery slowQuery : mSlowQueries) {
+            result.addRow(new Object[]{slowQuery.timestamp, slowQuery.uriType, slowQuery.query, slowQuery.selectionArgs, slowQuery.duration,
+                    slowQuery.rowCount, slowQuery.plan});
+        }
+        return result;
+    }
+
+    private UriTypeStats getStats(String uriType) {
+        UriTypeStats result = mStats.get(uriType);
+        if (result == null) {
+            result = new UriTypeStats();
+            mStats.put(uriType, result);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ *
+ * Copyright (C) 2016 Carmen Alvarez (c@rmen.ca)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.rmen.android.networkmonitor.provider;
+
+import android.net.Uri;
+
+/**
+ * This is neither a db table nor view. These columns and content uri allow retrieving the cost of the queries the provider ran since the process
+ * started, for each type of uri. The durations are in milliseconds. A query is counted once its cursor is closed.
+ */
+public class QueryStatsColumns {
+    static final String NAME = "query_stats";
+    public static final Uri CONTENT_URI = Uri.parse(NetMonProvider.CONTENT_URI_BASE + "/" + NAME);
+
+    /**
+     * The first path segment of the queried uris: a table name, or a name like {@link UniqueValuesColumns#NAME}.
+     */
+    public static final String URI_TYPE = "uri_type";
+    public static final String QUERY_COUNT = "query_count";
+    /**
+     * The number of queries answered by the cache, without reading the DB. They aren't included in the other counts.
+     */
+    public static final String CACHE_HIT_COUNT = "cache_hit_count";
+    /**
+     * The time to run the queries, until their first rows were read.
+     */
+    public static final String DURATION_TOTAL = "duration_total";
+    public static final String DURATION_MAX = "duration_max";
+    public static final String ROW_COUNT = "row_count";
+    /**
+     * The number of times a CursorWindow was filled with rows: once for small results, and again each time the reader moves past the rows of
+     * the window.
+     */
+    public static final String WINDOW_FILL_COUNT = "window_fill_count";
+    public static final String SLOW_QUERY_COUNT = "slow_query_count";
+}
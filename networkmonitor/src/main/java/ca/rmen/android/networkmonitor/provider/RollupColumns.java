@@ -0,0 +1,85 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ *
+ * Copyright (C) 2016 Carmen Alvarez (c@rmen.ca)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.rmen.android.networkmonitor.provider;
+
+import android.net.Uri;
+import android.provider.BaseColumns;
+
+/**
+ * Aggregates of the {@link NetMonColumns#TABLE_NAME} rows, per time bucket and per network. There is one table per {@link Granularity}.
+ *
+ * The network is identified like in {@link ConnectionTestStatsColumns}: the {@link #TYPE} is a {@link ca.rmen.android.networkmonitor.Constants.ConnectionType}
+ * name, or empty if the device wasn't on wifi and no cell was logged. Unknown ids are empty, not null.
+ *
+ * A sample extended by identical samples ({@link NetMonColumns#REPEAT_COUNT}) counts as several samples. To get the average of a measurement over
+ * several buckets, divide the sum of its {@link #SUM_SUFFIX} column by the sum of its {@link #COUNT_SUFFIX} column.
+ */
+public class RollupColumns implements BaseColumns {
+    public enum Granularity {
+        MINUTE("rollup_minute", 60),
+        HOUR("rollup_hour", 60 * 60),
+        DAY("rollup_day", 24 * 60 * 60);
+
+        final String tableName;
+        final int seconds;
+        public final Uri contentUri;
+
+        Granularity(String tableName, int seconds) {
+            this.tableName = tableName;
+            this.seconds = seconds;
+            contentUri = Uri.parse(NetMonProvider.CONTENT_URI_BASE + "/" + tableName);
+        }
+    }
+
+    /**
+     * The start of the bucket, in the local time of the device when the sample was logged.
+     */
+    public static final String BUCKET_START = "bucket_start";
+    public static final String TYPE = "type";
+    public static final String ID1 = "id1";
+    public static final String ID2 = "id2";
+    public static final String ID3 = "id3";
+    public static final String LABEL = "label";
+    public static final String SAMPLE_COUNT = "sample_count";
+    public static final String SOCKET_PASS_COUNT = "socket_pass_count";
+    public static final String SOCKET_SLOW_COUNT = "socket_slow_count";
+    public static final String SOCKET_FAIL_COUNT = "socket_fail_count";
+    public static final String HTTP_PASS_COUNT = "http_pass_count";
+    public static final String HTTP_SLOW_COUNT = "http_slow_count";
+    public static final String HTTP_FAIL_COUNT = "http_fail_count";
+
+    /**
+     * Each measurement has a min, max, sum and count column, named after the measurement's {@link NetMonColumns} column with one of these suffixes.
+     * Unknown values (no speed test, or a signal strength of 0) aren't counted. The speeds are in Mbps.
+     */
+    public static final String MIN_SUFFIX = "_min";
+    public static final String MAX_SUFFIX = "_max";
+    public static final String SUM_SUFFIX = "_sum";
+    public static final String COUNT_SUFFIX = "_count";
+    public static final String[] MEASUREMENTS = new String[]{
+            NetMonColumns.WIFI_RSSI,
+            NetMonColumns.CELL_SIGNAL_STRENGTH_DBM,
+            NetMonColumns.DOWNLOAD_SPEED,
+            NetMonColumns.UPLOAD_SPEED};
+}
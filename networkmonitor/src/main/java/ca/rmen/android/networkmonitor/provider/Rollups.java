@@ -0,0 +1,251 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ *
+ * Copyright (C) 2016 Carmen Alvarez (c@rmen.ca)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.rmen.android.networkmonitor.provider;
+
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.text.TextUtils;
+
+import ca.rmen.android.networkmonitor.Constants;
+import ca.rmen.android.networkmonitor.Constants.ConnectionType;
+import ca.rmen.android.networkmonitor.provider.RollupColumns.Granularity;
+import ca.rmen.android.networkmonitor.util.Log;
+
+/**
+ * Creates and maintains the {@link RollupColumns} tables.
+ *
+ * Triggers on the {@link NetMonColumns#DATA_TABLE_NAME} table update the bucket of each inserted row, and of each row whose
+ * {@link NetMonColumns#REPEAT_COUNT} changes. Deleting rows doesn't update the rollups: the operations which delete many rows (import, purge,
+ * compress) call {@link #rebuild(SQLiteDatabase)} at the end. The rows deleted by the retention policy stay in the rollups.
+ *
+ * The DB upgrade which creates the tables doesn't compute them: it only creates the {@link #REBUILD_TABLE_NAME} table, and {@link NetMonDatabase}
+ * rebuilds the rollups in the background. The rebuild drops the table.
+ */
+class Rollups {
+    private static final String TAG = Constants.TAG + Rollups.class.getSimpleName();
+
+    private static final String REBUILD_TABLE_NAME = "rollups_rebuild";
+
+    private static final String[] KEY_COLUMNS = new String[]{RollupColumns.BUCKET_START, RollupColumns.TYPE, RollupColumns.ID1, RollupColumns.ID2,
+            RollupColumns.ID3, RollupColumns.LABEL};
+
+    // For each test count column: the test column, and the result counted.
+    // @formatter:off
+    private static final String[][] TEST_COUNTS = new String[][]{
+        {RollupColumns.SOCKET_PASS_COUNT, NetMonColumns.SOCKET_CONNECTION_TEST, Constants.CONNECTION_TEST_PASS},
+        {RollupColumns.SOCKET_SLOW_COUNT, NetMonColumns.SOCKET_CONNECTION_TEST, Constants.CONNECTION_TEST_SLOW},
+        {RollupColumns.SOCKET_FAIL_COUNT, NetMonColumns.SOCKET_CONNECTION_TEST, Constants.CONNECTION_TEST_FAIL},
+        {RollupColumns.HTTP_PASS_COUNT, NetMonColumns.HTTP_CONNECTION_TEST, Constants.CONNECTION_TEST_PASS},
+        {RollupColumns.HTTP_SLOW_COUNT, NetMonColumns.HTTP_CONNECTION_TEST, Constants.CONNECTION_TEST_SLOW},
+        {RollupColumns.HTTP_FAIL_COUNT, NetMonColumns.HTTP_CONNECTION_TEST, Constants.CONNECTION_TEST_FAIL},
+    };
+    // @formatter:on
+
+    private Rollups() {
+        // prevent instantiation
+    }
+
+    /**
+     * Create the tables and their triggers.  The tables are empty: call {@link #rebuild(SQLiteDatabase)} if the DB already has rows.
+     */
+    static void createTables(SQLiteDatabase db) {
+        for (Granularity granularity : Granularity.values()) {
+            db.execSQL(buildCreateTable(granularity));
+            db.execSQL(buildCreateTrigger(granularity, "_insert", "AFTER INSERT ON " + NetMonColumns.DATA_TABLE_NAME,
+                    "(1+IFNULL(NEW." + NetMonColumns.REPEAT_COUNT + ",0))"));
+            db.execSQL(buildCreateTrigger(granularity, "_repeat", "AFTER UPDATE OF " + NetMonColumns.REPEAT_COUNT + " ON " + NetMonColumns.DATA_TABLE_NAME
+                            + " WHEN IFNULL(NEW." + NetMonColumns.REPEAT_COUNT + ",0)<>IFNULL(OLD." + NetMonColumns.REPEAT_COUNT + ",0)",
+                    "(IFNULL(NEW." + NetMonColumns.REPEAT_COUNT + ",0)-IFNULL(OLD." + NetMonColumns.REPEAT_COUNT + ",0))"));
+        }
+    }
+
+    /**
+     * Record that the rollups need to be recomputed, for {@link #isRebuildNeeded(SQLiteDatabase)}.
+     */
+    static void requestRebuild(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + REBUILD_TABLE_NAME + " (_id INTEGER)");
+    }
+
+    static boolean isRebuildNeeded(SQLiteDatabase db) {
+        return DatabaseUtils.longForQuery(db, "SELECT COUNT(*) FROM sqlite_master WHERE type='table' AND name=?", new String[]{REBUILD_TABLE_NAME}) > 0;
+    }
+
+    /**
+     * Recompute all the rollups from the rows of the {@link NetMonColumns#DATA_TABLE_NAME} table.
+     */
+    static void rebuild(SQLiteDatabase db) {
+        Log.v(TAG, "rebuild");
+        long startTime = System.currentTimeMillis();
+        db.beginTransaction();
+        try {
+            for (Granularity granularity : Granularity.values()) {
+                db.execSQL("DELETE FROM " + granularity.tableName);
+                db.execSQL(buildRebuildStatement(granularity));
+            }
+            db.execSQL("DROP TABLE IF EXISTS " + REBUILD_TABLE_NAME);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        Log.v(TAG, "rebuild: done in " + (System.currentTimeMillis() - startTime) + "ms");
+    }
+
+    private static String buildCreateTable(Granularity granularity) {
+        StringBuilder sql = new StringBuilder("CREATE TABLE IF NOT EXISTS ").append(granularity.tableName).append(" ( ")
+                .append(RollupColumns._ID).append(" INTEGER PRIMARY KEY, ")
+                .append(RollupColumns.BUCKET_START).append(" INTEGER NOT NULL");
+        for (int i = 1; i < KEY_COLUMNS.length; i++)
+            sql.append(", ").append(KEY_COLUMNS[i]).append(" TEXT NOT NULL");
+        sql.append(", ").append(RollupColumns.SAMPLE_COUNT).append(" INTEGER NOT NULL DEFAULT 0");
+        for (String[] testCount : TEST_COUNTS)
+            sql.append(", ").append(testCount[0]).append(" INTEGER NOT NULL DEFAULT 0");
+        for (String measurement : RollupColumns.MEASUREMENTS) {
+            String type = isSpeed(measurement) ? "REAL" : "INTEGER";
+            sql.append(", ").append(measurement).append(RollupColumns.MIN_SUFFIX).append(" ").append(type)
+                    .append(", ").append(measurement).append(RollupColumns.MAX_SUFFIX).append(" ").append(type)
+                    .append(", ").append(measurement).append(RollupColumns.SUM_SUFFIX).append(" ").append(type).append(" NOT NULL DEFAULT 0")
+                    .append(", ").append(measurement).append(RollupColumns.COUNT_SUFFIX).append(" INTEGER NOT NULL DEFAULT 0");
+        }
+        // The unique index is used to find the bucket to update, and by the queries on a time range.
+        sql.append(", UNIQUE (").append(TextUtils.join(",", KEY_COLUMNS)).append(")");
+        return sql.append(" );").toString();
+    }
+
+    /**
+     * @param weight the number of samples to add to the bucket of the NEW row.
+     */
+    private static String buildCreateTrigger(Granularity granularity, String nameSuffix, String event, String weight) {
+        String[] keys = buildKeyExpressions(granularity, "NEW");
+        StringBuilder set = new StringBuilder(RollupColumns.SAMPLE_COUNT).append("=").append(RollupColumns.SAMPLE_COUNT).append("+").append(weight);
+        for (String[] testCount : TEST_COUNTS) {
+            set.append(", ").append(testCount[0]).append("=").append(testCount[0]).append("+")
+                    .append(buildTestCount("NEW", testCount[1], testCount[2], weight));
+        }
+        for (String measurement : RollupColumns.MEASUREMENTS) {
+            String value = "NEW." + NetMonColumns.getDataColumnName(measurement);
+            String isValid = buildIsValid(measurement, value);
+            String min = measurement + RollupColumns.MIN_SUFFIX;
+            String max = measurement + RollupColumns.MAX_SUFFIX;
+            String sum = measurement + RollupColumns.SUM_SUFFIX;
+            String count = measurement + RollupColumns.COUNT_SUFFIX;
+            set.append(", ").append(min).append("=CASE WHEN ").append(isValid).append(" THEN MIN(IFNULL(").append(min).append(",").append(value).append("),")
+                    .append(value).append(") ELSE ").append(min).append(" END")
+                    .append(", ").append(max).append("=CASE WHEN ").append(isValid).append(" THEN MAX(IFNULL(").append(max).append(",").append(value).append("),")
+                    .append(value).append(") ELSE ").append(max).append(" END")
+                    .append(", ").append(sum).append("=").append(sum).append("+").append(buildSum(isValid, value, weight))
+                    .append(", ").append(count).append("=").append(count).append("+").append(buildSum(isValid, "1", weight));
+        }
+        StringBuilder where = new StringBuilder();
+        for (int i = 0; i < KEY_COLUMNS.length; i++) {
+            if (i > 0) where.append(" AND ");
+            where.append(KEY_COLUMNS[i]).append("=").append(keys[i]);
+        }
+        return "CREATE TRIGGER IF NOT EXISTS " + granularity.tableName + nameSuffix + " " + event + " BEGIN "
+                + "INSERT OR IGNORE INTO " + granularity.tableName + " (" + TextUtils.join(",", KEY_COLUMNS) + ") VALUES (" + TextUtils.join(",", keys) + "); "
+                + "UPDATE " + granularity.tableName + " SET " + set + " WHERE " + where + "; "
+                + "END";
+    }
+
+    private static String buildRebuildStatement(Granularity granularity) {
+        String weight = "(1+IFNULL(d." + NetMonColumns.REPEAT_COUNT + ",0))";
+        StringBuilder columns = new StringBuilder(TextUtils.join(",", KEY_COLUMNS)).append(",").append(RollupColumns.SAMPLE_COUNT);
+        StringBuilder values = new StringBuilder(TextUtils.join(",", buildKeyExpressions(granularity, "d"))).append(",SUM(").append(weight).append(")");
+        for (String[] testCount : TEST_COUNTS) {
+            columns.append(",").append(testCount[0]);
+            values.append(",SUM(").append(buildTestCount("d", testCount[1], testCount[2], weight)).append(")");
+        }
+        for (String measurement : RollupColumns.MEASUREMENTS) {
+            String value = "d." + NetMonColumns.getDataColumnName(measurement);
+            String isValid = buildIsValid(measurement, value);
+            columns.append(",").append(measurement).append(RollupColumns.MIN_SUFFIX)
+                    .append(",").append(measurement).append(RollupColumns.MAX_SUFFIX)
+                    .append(",").append(measurement).append(RollupColumns.SUM_SUFFIX)
+                    .append(",").append(measurement).append(RollupColumns.COUNT_SUFFIX);
+            values.append(",MIN(CASE WHEN ").append(isValid).append(" THEN ").append(value).append(" END)")
+                    .append(",MAX(CASE WHEN ").append(isValid).append(" THEN ").append(value).append(" END)")
+                    .append(",SUM(").append(buildSum(isValid, value, weight)).append(")")
+                    .append(",SUM(").append(buildSum(isValid, "1", weight)).append(")");
+        }
+        StringBuilder groupBy = new StringBuilder();
+        for (int i = 1; i <= KEY_COLUMNS.length; i++) {
+            if (i > 1) groupBy.append(",");
+            groupBy.append(i);
+        }
+        return "INSERT INTO " + granularity.tableName + " (" + columns + ")"
+                + " SELECT " + values + " FROM " + NetMonColumns.DATA_TABLE_NAME + " d"
+                + " GROUP BY " + groupBy;
+    }
+
+    /**
+     * @param row NEW in a trigger, or the alias of the {@link NetMonColumns#DATA_TABLE_NAME} table.
+     * @return the expressions of the {@link #KEY_COLUMNS} for the given row.
+     */
+    private static String[] buildKeyExpressions(Granularity granularity, String row) {
+        String seconds = "(" + row + "." + NetMonColumns.TIMESTAMP + "/1000)";
+        // The offset of the local time zone, in seconds.
+        String offset = "(strftime('%s'," + seconds + ",'unixepoch','localtime')-" + seconds + ")";
+        String bucketStart = "((" + seconds + "+" + offset + ")/" + granularity.seconds + "*" + granularity.seconds + "-" + offset + ")*1000";
+        String gsmLabel = Dictionaries.buildDecodedValue(row, NetMonColumns.EXTRA_INFO);
+        return new String[]{
+                bucketStart,
+                buildByType(row, "'" + ConnectionType.WIFI + "'", "'" + ConnectionType.GSM + "'", "'" + ConnectionType.CDMA + "'"),
+                buildByType(row, Dictionaries.buildDecodedValue(row, NetMonColumns.WIFI_BSSID), row + "." + NetMonColumns.GSM_CELL_LAC,
+                        row + "." + NetMonColumns.CDMA_CELL_BASE_STATION_ID),
+                buildByType(row, "''", row + "." + NetMonColumns.GSM_SHORT_CELL_ID, row + "." + NetMonColumns.CDMA_CELL_NETWORK_ID),
+                buildByType(row, "''", row + "." + NetMonColumns.GSM_FULL_CELL_ID, row + "." + NetMonColumns.CDMA_CELL_SYSTEM_ID),
+                buildByType(row, Dictionaries.buildDecodedValue(row, NetMonColumns.WIFI_SSID), gsmLabel, gsmLabel)
+        };
+    }
+
+    /**
+     * @return an expression which is the value for the network type of the row: wifi if the network type is wifi, otherwise the cell type
+     * for which a cell id was logged.
+     */
+    private static String buildByType(String row, String wifiValue, String gsmValue, String cdmaValue) {
+        return "CASE WHEN " + row + "." + NetMonColumns.NETWORK_TYPE + "=" + Dictionaries.buildEncodedValue(NetMonColumns.NETWORK_TYPE, ConnectionType.WIFI.name())
+                + " THEN IFNULL(" + wifiValue + ",'')"
+                + " WHEN " + row + "." + NetMonColumns.GSM_FULL_CELL_ID + " NOT NULL THEN IFNULL(" + gsmValue + ",'')"
+                + " WHEN " + row + "." + NetMonColumns.CDMA_CELL_BASE_STATION_ID + " NOT NULL THEN IFNULL(" + cdmaValue + ",'')"
+                + " ELSE '' END";
+    }
+
+    private static String buildTestCount(String row, String testColumn, String result, String weight) {
+        return buildSum(row + "." + testColumn + "=" + Dictionaries.buildEncodedValue(testColumn, result), "1", weight);
+    }
+
+    private static String buildSum(String isValid, String value, String weight) {
+        return "CASE WHEN " + isValid + " THEN " + value + "*" + weight + " ELSE 0 END";
+    }
+
+    /**
+     * A signal strength of 0 means it's unknown.
+     */
+    private static String buildIsValid(String measurement, String value) {
+        return isSpeed(measurement) ? value + " NOT NULL" : value + "<0";
+    }
+
+    private static boolean isSpeed(String measurement) {
+        return NetMonColumns.DOWNLOAD_SPEED.equals(measurement) || NetMonColumns.UPLOAD_SPEED.equals(measurement);
+    }
+}
@@ -0,0 +1,313 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ *
+ * Copyright (C) 2016 Carmen Alvarez (c@rmen.ca)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.rmen.android.networkmonitor.provider;
+
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteStatement;
+import android.text.TextUtils;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import ca.rmen.android.networkmonitor.provider.DictionaryColumns.Family;
+
+/**
+ * One row of the {@link NetMonColumns#TABLE_NAME} table, with one slot per column.
+ *
+ * Numbers are kept in primitive arrays, so filling a sample and binding it to an insert statement doesn't box anything. A sample is meant to be
+ * cleared and reused, instead of creating a new one for every row.
+ *
+ * This class is not thread-safe.
+ */
+public class Sample {
+    // All the columns except the _id.
+    // @formatter:off
+    static final String[] COLUMNS = new String[] {
+        NetMonColumns.TIMESTAMP,
+        NetMonColumns.SOCKET_CONNECTION_TEST,
+        NetMonColumns.HTTP_CONNECTION_TEST,
+        NetMonColumns.NETWORK_TYPE,
+        NetMonColumns.MOBILE_DATA_NETWORK_TYPE,
+        NetMonColumns.SIM_STATE,
+        NetMonColumns.SERVICE_STATE,
+        NetMonColumns.DETAILED_STATE,
+        NetMonColumns.IS_CONNECTED,
+        NetMonColumns.IS_ROAMING,
+        NetMonColumns.IS_AVAILABLE,
+        NetMonColumns.IS_FAILOVER,
+        NetMonColumns.DATA_ACTIVITY,
+        NetMonColumns.DATA_STATE,
+        NetMonColumns.REASON,
+        NetMonColumns.EXTRA_INFO,
+        NetMonColumns.WIFI_SSID,
+        NetMonColumns.WIFI_BSSID,
+        NetMonColumns.WIFI_FREQUENCY,
+        NetMonColumns.WIFI_CHANNEL,
+        NetMonColumns.WIFI_SIGNAL_STRENGTH,
+        NetMonColumns.WIFI_RSSI,
+        NetMonColumns.SIM_OPERATOR,
+        NetMonColumns.SIM_MCC,
+        NetMonColumns.SIM_MNC,
+        NetMonColumns.NETWORK_OPERATOR,
+        NetMonColumns.NETWORK_MCC,
+        NetMonColumns.NETWORK_MNC,
+        NetMonColumns.IS_NETWORK_METERED,
+        NetMonColumns.DEVICE_LATITUDE,
+        NetMonColumns.DEVICE_LONGITUDE,
+        NetMonColumns.DEVICE_POSITION_ACCURACY,
+        NetMonColumns.DEVICE_SPEED,
+        NetMonColumns.CELL_SIGNAL_STRENGTH,
+        NetMonColumns.CELL_SIGNAL_STRENGTH_DBM,
+        NetMonColumns.CELL_ASU_LEVEL,
+        NetMonColumns.GSM_BER,
+        NetMonColumns.LTE_RSRQ,
+        NetMonColumns.CDMA_CELL_BASE_STATION_ID,
+        NetMonColumns.CDMA_CELL_LATITUDE,
+        NetMonColumns.CDMA_CELL_LONGITUDE,
+        NetMonColumns.CDMA_CELL_NETWORK_ID,
+        NetMonColumns.CDMA_CELL_SYSTEM_ID,
+        NetMonColumns.GSM_FULL_CELL_ID,
+        NetMonColumns.GSM_RNC,
+        NetMonColumns.GSM_SHORT_CELL_ID,
+        NetMonColumns.GSM_CELL_LAC,
+        NetMonColumns.GSM_CELL_PSC,
+        NetMonColumns.NETWORK_INTERFACE,
+        NetMonColumns.IPV4_ADDRESS,
+        NetMonColumns.IPV6_ADDRESS,
+        NetMonColumns.BATTERY_LEVEL,
+        NetMonColumns.MOST_CONSUMING_APP_NAME,
+        NetMonColumns.MOST_CONSUMING_APP_BYTES,
+        NetMonColumns.DOWNLOAD_SPEED,
+        NetMonColumns.UPLOAD_SPEED,
+        NetMonColumns.DOWNLOAD_SPEED_STATUS,
+        NetMonColumns.UPLOAD_SPEED_STATUS,
+        NetMonColumns.LAST_SEEN_TIMESTAMP,
+        NetMonColumns.REPEAT_COUNT
+    };
+    // @formatter:on
+
+    private static final Map<String, Integer> COLUMN_INDEXES = new HashMap<>(COLUMNS.length * 2);
+    // The dictionary of each column, or null if the column isn't dictionary-encoded.
+    private static final Family[] FAMILIES = new Family[COLUMNS.length];
+
+    static {
+        for (int i = 0; i < COLUMNS.length; i++) {
+            COLUMN_INDEXES.put(COLUMNS[i], i);
+            FAMILIES[i] = Family.getFamily(COLUMNS[i]);
+        }
+    }
+
+    private static final byte TYPE_NULL = 0;
+    private static final byte TYPE_LONG = 1;
+    private static final byte TYPE_DOUBLE = 2;
+    private static final byte TYPE_STRING = 3;
+
+    private final byte[] mTypes = new byte[COLUMNS.length];
+    private final long[] mLongs = new long[COLUMNS.length];
+    private final double[] mDoubles = new double[COLUMNS.length];
+    private final String[] mStrings = new String[COLUMNS.length];
+
+    /**
+     * @return an insert statement into the {@link NetMonColumns#DATA_TABLE_NAME} table, with one parameter per column, in the order used by
+     * {@link #bind(SQLiteStatement, Dictionaries)}.
+     */
+    static String getInsertStatement() {
+        String[] placeholders = new String[COLUMNS.length];
+        Arrays.fill(placeholders, "?");
+        String[] dataColumns = new String[COLUMNS.length];
+        for (int i = 0; i < COLUMNS.length; i++)
+            dataColumns[i] = NetMonColumns.getDataColumnName(COLUMNS[i]);
+        return "INSERT INTO " + NetMonColumns.DATA_TABLE_NAME
+                + " (" + TextUtils.join(",", dataColumns) + ")"
+                + " VALUES (" + TextUtils.join(",", placeholders) + ")";
+    }
+
+    public void put(String columnName, long value) {
+        int i = getColumnIndex(columnName);
+        mTypes[i] = TYPE_LONG;
+        mLongs[i] = value;
+    }
+
+    public void put(String columnName, double value) {
+        int i = getColumnIndex(columnName);
+        mTypes[i] = TYPE_DOUBLE;
+        mDoubles[i] = value;
+    }
+
+    /**
+     * Booleans are stored as 1 or 0, like {@link ContentValues} does.
+     */
+    public void put(String columnName, boolean value) {
+        put(columnName, value ? 1L : 0L);
+    }
+
+    public void put(String columnName, String value) {
+        int i = getColumnIndex(columnName);
+        mTypes[i] = value == null ? TYPE_NULL : TYPE_STRING;
+        mStrings[i] = value;
+    }
+
+    /**
+     * Copy all the non-null values of the other sample into this one.
+     */
+    public void putAll(Sample other) {
+        for (int i = 0; i < COLUMNS.length; i++) {
+            if (other.mTypes[i] == TYPE_NULL) continue;
+            mTypes[i] = other.mTypes[i];
+            mLongs[i] = other.mLongs[i];
+            mDoubles[i] = other.mDoubles[i];
+            mStrings[i] = other.mStrings[i];
+        }
+    }
+
+    public boolean isNull(String columnName) {
+        return mTypes[getColumnIndex(columnName)] == TYPE_NULL;
+    }
+
+    /**
+     * @return the value of the given column as a long, or 0 if it is null or a String.
+     */
+    public long getLong(String columnName) {
+        int i = getColumnIndex(columnName);
+        if (mTypes[i] == TYPE_LONG) return mLongs[i];
+        if (mTypes[i] == TYPE_DOUBLE) return (long) mDoubles[i];
+        return 0;
+    }
+
+    /**
+     * @return the value of the given column if it is a String, or null otherwise.
+     */
+    public String getString(String columnName) {
+        int i = getColumnIndex(columnName);
+        return mTypes[i] == TYPE_STRING ? mStrings[i] : null;
+    }
+
+    /**
+     * Adds the names of the columns which have a text value, to the given collection.
+     */
+    public void getTextColumns(Collection<String> result) {
+        for (int i = 0; i < COLUMNS.length; i++) {
+            if (mTypes[i] == TYPE_STRING) result.add(COLUMNS[i]);
+        }
+    }
+
+    /**
+     * @return true if all the columns, except the ignored ones, have the same values in both samples.
+     */
+    public boolean hasSameValues(Sample other, String... ignoredColumnNames) {
+        for (int i = 0; i < COLUMNS.length; i++) {
+            if (isIgnored(COLUMNS[i], ignoredColumnNames)) continue;
+            if (mTypes[i] != other.mTypes[i]) return false;
+            switch (mTypes[i]) {
+                case TYPE_LONG:
+                    if (mLongs[i] != other.mLongs[i]) return false;
+                    break;
+                case TYPE_DOUBLE:
+                    if (Double.compare(mDoubles[i], other.mDoubles[i]) != 0) return false;
+                    break;
+                case TYPE_STRING:
+                    if (!mStrings[i].equals(other.mStrings[i])) return false;
+                    break;
+                default:
+                    break;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Set all the columns to null.
+     */
+    public void clear() {
+        Arrays.fill(mTypes, TYPE_NULL);
+        Arrays.fill(mStrings, null);
+    }
+
+    /**
+     * Bind all the columns of this sample to the given statement, created from {@link #getInsertStatement()}. The values of the dictionary-encoded
+     * columns are bound to their ids.
+     */
+    void bind(SQLiteStatement statement, Dictionaries dictionaries) {
+        for (int i = 0; i < COLUMNS.length; i++) {
+            switch (mTypes[i]) {
+                case TYPE_LONG:
+                    statement.bindLong(i + 1, mLongs[i]);
+                    break;
+                case TYPE_DOUBLE:
+                    statement.bindDouble(i + 1, mDoubles[i]);
+                    break;
+                case TYPE_STRING:
+                    if (FAMILIES[i] == null) statement.bindString(i + 1, mStrings[i]);
+                    else statement.bindLong(i + 1, dictionaries.getId(FAMILIES[i], mStrings[i]));
+                    break;
+                default:
+                    statement.bindNull(i + 1);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * @return the non-null values of this sample.
+     */
+    public ContentValues toContentValues() {
+        ContentValues result = new ContentValues(COLUMNS.length);
+        for (int i = 0; i < COLUMNS.length; i++) {
+            switch (mTypes[i]) {
+                case TYPE_LONG:
+                    result.put(COLUMNS[i], mLongs[i]);
+                    break;
+                case TYPE_DOUBLE:
+                    result.put(COLUMNS[i], mDoubles[i]);
+                    break;
+                case TYPE_STRING:
+                    result.put(COLUMNS[i], mStrings[i]);
+                    break;
+                default:
+                    break;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "Sample{" + toContentValues() + "}";
+    }
+
+    private static int getColumnIndex(String columnName) {
+        Integer result = COLUMN_INDEXES.get(columnName);
+        if (result == null) throw new IllegalArgumentException("Unknown column " + columnName);
+        return result;
+    }
+
+    private static boolean isIgnored(String columnName, String[] ignoredColumnNames) {
+        for (String ignoredColumnName : ignoredColumnNames) {
+            if (ignoredColumnName.equals(columnName)) return true;
+        }
+        return false;
+    }
+}
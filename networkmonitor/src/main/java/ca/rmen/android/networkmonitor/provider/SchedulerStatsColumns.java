@@ -0,0 +1,52 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ *
+ * Copyright (C) 2016 Carmen Alvarez (c@rmen.ca)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.rmen.android.networkmonitor.provider;
+
+import android.net.Uri;
+import android.provider.BaseColumns;
+
+/**
+ * Timing statistics of the scheduler which runs the tests. The times are in milliseconds.
+ *
+ * A tick overruns when the previous tick was still running at the time it should have started. A tick drifts when it starts late for any
+ * other reason, for example if an alarm was delivered late.
+ */
+public class SchedulerStatsColumns implements BaseColumns {
+    static final String TABLE_NAME = "scheduler_stats";
+    public static final Uri CONTENT_URI = Uri.parse(NetMonProvider.CONTENT_URI_BASE + "/" + TABLE_NAME);
+    public static final String SCHEDULER_NAME = "scheduler_name";
+    public static final String OVERRUN_POLICY = "overrun_policy";
+    public static final String INTERVAL = "interval";
+    public static final String TICK_COUNT = "tick_count";
+    public static final String OVERRUN_COUNT = "overrun_count";
+    /**
+     * The number of planned ticks which didn't run, because they were skipped or coalesced with another tick.
+     */
+    public static final String SKIPPED_COUNT = "skipped_count";
+    public static final String DRIFT_MEAN = "drift_mean";
+    public static final String DRIFT_MAX = "drift_max";
+    public static final String DURATION_MEAN = "duration_mean";
+    public static final String DURATION_MAX = "duration_max";
+    public static final String TIMESTAMP = "timestamp";
+}
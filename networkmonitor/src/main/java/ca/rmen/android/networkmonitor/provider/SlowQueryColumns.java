@@ -0,0 +1,52 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ *
+ * Copyright (C) 2016 Carmen Alvarez (c@rmen.ca)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.rmen.android.networkmonitor.provider;
+
+import android.net.Uri;
+
+/**
+ * This is neither a db table nor view. These columns and content uri allow retrieving the most recent queries which took longer than
+ * {@link QueryStats#SLOW_QUERY_MS}, with their query plans. The most recent query is first.
+ */
+public class SlowQueryColumns {
+    static final String NAME = "slow_queries";
+    public static final Uri CONTENT_URI = Uri.parse(NetMonProvider.CONTENT_URI_BASE + "/" + NAME);
+
+    public static final String TIMESTAMP = "timestamp";
+    /**
+     * @see QueryStatsColumns#URI_TYPE
+     */
+    public static final String URI_TYPE = "uri_type";
+    public static final String QUERY = "query";
+    public static final String SELECTION_ARGS = "selection_args";
+    /**
+     * In milliseconds.
+     */
+    public static final String DURATION = "duration";
+    public static final String ROW_COUNT = "row_count";
+    /**
+     * The output of EXPLAIN QUERY PLAN.
+     */
+    public static final String PLAN = "plan";
+}
@@ -0,0 +1,176 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ *
+ * Copyright (C) 2016 Carmen Alvarez (c@rmen.ca)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.rmen.android.networkmonitor.provider;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import ca.rmen.android.networkmonitor.Constants;
+import ca.rmen.android.networkmonitor.util.Log;
+
+/**
+ * Converts the download and upload speeds logged by older versions to the {@link NetMonColumns#DOWNLOAD_SPEED_MBPS} and
+ * {@link NetMonColumns#DOWNLOAD_SPEED_STATUS} columns (and their upload equivalents). The old values are text: a speed formatted with the locale of
+ * the device ("12,345" in French), or the "disabled" label, also in the language of the device, when the speed test wasn't run.
+ *
+ * The DB upgrade only records the last id to convert, in the {@link #PROGRESS_TABLE_NAME} table. The rows are converted in the background, in chunks
+ * of {@link #CHUNK_SIZE} ids starting with the newest rows. Each chunk is a short transaction which also saves the progress, so the sampler isn't
+ * blocked, and the conversion resumes where it stopped if the app is killed. The table is dropped at the end, and the {@link Rollups} are rebuilt.
+ */
+class SpeedColumns {
+    private static final String TAG = Constants.TAG + SpeedColumns.class.getSimpleName();
+
+    // The SpeedTestStatus values we log for the old values.
+    private static final String STATUS_SUCCESS = "SUCCESS";
+    private static final String STATUS_SKIPPED = "SKIPPED";
+
+    private static final String PROGRESS_TABLE_NAME = "speed_conversion";
+    private static final String PROGRESS_NEXT_ID = "next_id";
+    private static final int CHUNK_SIZE = 1000;
+
+    private SpeedColumns() {
+        // prevent instantiation
+    }
+
+    /**
+     * Record that all the existing rows need to be converted: the rows of the table, and the rows {@link TextColumns} hasn't moved to it yet, which
+     * all have an id below the sequence of the table.
+     */
+    static void prepareConversion(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + PROGRESS_TABLE_NAME + " (" + PROGRESS_NEXT_ID + " INTEGER)");
+        db.execSQL("DELETE FROM " + PROGRESS_TABLE_NAME);
+        db.execSQL("INSERT INTO " + PROGRESS_TABLE_NAME + " SELECT IFNULL(MAX(seq), 0) FROM sqlite_sequence WHERE name='" + NetMonColumns.DATA_TABLE_NAME + "'");
+    }
+
+    /**
+     * @return the given values, with the speeds of an older DB (when importing one) converted to the Mbps and status columns. The given values aren't
+     * modified.
+     */
+    static ContentValues convert(ContentValues values) {
+        if (values == null || !values.containsKey(NetMonColumns.DOWNLOAD_SPEED) && !values.containsKey(NetMonColumns.UPLOAD_SPEED)) return values;
+        ContentValues result = new ContentValues(values);
+        convert(result, NetMonColumns.DOWNLOAD_SPEED, NetMonColumns.DOWNLOAD_SPEED_MBPS, NetMonColumns.DOWNLOAD_SPEED_STATUS);
+        convert(result, NetMonColumns.UPLOAD_SPEED, NetMonColumns.UPLOAD_SPEED_MBPS, NetMonColumns.UPLOAD_SPEED_STATUS);
+        return result;
+    }
+
+    private static void convert(ContentValues values, String column, String mbpsColumn, String statusColumn) {
+        if (!values.containsKey(column)) return;
+        String value = values.getAsString(column);
+        values.remove(column);
+        Double mbps = null;
+        if (value != null) {
+            try {
+                mbps = Double.valueOf(value.replace(',', '.'));
+            } catch (NumberFormatException e) {
+                // This is the "disabled" label.
+            }
+            if (!values.containsKey(statusColumn)) values.put(statusColumn, mbps == null ? STATUS_SKIPPED : STATUS_SUCCESS);
+        }
+        values.put(mbpsColumn, mbps);
+    }
+
+    static boolean isConversionNeeded(SQLiteDatabase db) {
+        Cursor c = db.rawQuery("SELECT 1 FROM sqlite_master WHERE type='table' AND name=?", new String[]{PROGRESS_TABLE_NAME});
+        try {
+            return c.moveToFirst();
+        } finally {
+            c.close();
+        }
+    }
+
+    /**
+     * Convert the remaining old rows. {@link NetMonDatabase} calls this on a background thread, after {@link TextColumns#encodeAll(SQLiteDatabase)}.
+     */
+    static void convertAll(SQLiteDatabase db) {
+        Log.v(TAG, "convert");
+        long startTime = System.currentTimeMillis();
+        boolean isDone = false;
+        while (!isDone) {
+            db.beginTransaction();
+            try {
+                long nextId = readNextId(db);
+                if (nextId <= 0) {
+                    db.execSQL("DROP TABLE IF EXISTS " + PROGRESS_TABLE_NAME);
+                    // The rollups were computed without the speeds of the old rows.
+                    Rollups.rebuild(db);
+                    isDone = true;
+                } else {
+                    long fromId = Math.max(nextId - CHUNK_SIZE, 0);
+                    convertRows(db, NetMonColumns.DOWNLOAD_SPEED, NetMonColumns.DOWNLOAD_SPEED_MBPS, NetMonColumns.DOWNLOAD_SPEED_STATUS, fromId, nextId);
+                    convertRows(db, NetMonColumns.UPLOAD_SPEED, NetMonColumns.UPLOAD_SPEED_MBPS, NetMonColumns.UPLOAD_SPEED_STATUS, fromId, nextId);
+                    db.execSQL("UPDATE " + PROGRESS_TABLE_NAME + " SET " + PROGRESS_NEXT_ID + "=" + fromId);
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        }
+        Log.v(TAG, "convert: done in " + (System.currentTimeMillis() - startTime) + "ms");
+    }
+
+    /**
+     * @return the id of the newest row which hasn't been converted yet, or 0 if all the rows have been converted.
+     */
+    private static long readNextId(SQLiteDatabase db) {
+        Cursor c = db.rawQuery("SELECT " + PROGRESS_NEXT_ID + " FROM " + PROGRESS_TABLE_NAME, null);
+        try {
+            return c.moveToFirst() ? c.getLong(0) : 0;
+        } finally {
+            c.close();
+        }
+    }
+
+    /**
+     * Convert the speeds of the rows with an id in ]fromId, toId].
+     */
+    private static void convertRows(SQLiteDatabase db, String column, String mbpsColumn, String statusColumn, long fromId, long toId) {
+        db.execSQL("UPDATE " + NetMonColumns.DATA_TABLE_NAME + " SET "
+                        + mbpsColumn + "=" + buildMbpsValue(column) + ", "
+                        + statusColumn + "=" + buildStatusValue(column) + ", "
+                        + column + "=NULL"
+                        + " WHERE " + NetMonColumns._ID + ">? AND " + NetMonColumns._ID + "<=? AND " + column + " NOT NULL",
+                new Object[]{fromId, toId});
+    }
+
+    /**
+     * @return an expression for the speed in Mbps of the old value of the given column: null if it isn't a speed.
+     */
+    static String buildMbpsValue(String column) {
+        return "CASE WHEN " + buildIsSpeed(column) + " THEN CAST(REPLACE(" + column + ", ',', '.') AS REAL) END";
+    }
+
+    /**
+     * @return an expression for the speed test status of the old value of the given column: null if there's no value.
+     */
+    static String buildStatusValue(String column) {
+        return "CASE WHEN " + column + " IS NULL THEN NULL WHEN " + buildIsSpeed(column) + " THEN '" + STATUS_SUCCESS + "' ELSE '" + STATUS_SKIPPED + "' END";
+    }
+
+    // The speeds of older versions always start with a digit.
+    private static String buildIsSpeed(String column) {
+        return column + " GLOB '[0-9]*'";
+    }
+}
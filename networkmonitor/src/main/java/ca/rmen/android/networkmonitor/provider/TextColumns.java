@@ -0,0 +1,202 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ *
+ * Copyright (C) 2016 Carmen Alvarez (c@rmen.ca)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.rmen.android.networkmonitor.provider;
+
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.text.TextUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import ca.rmen.android.networkmonitor.Constants;
+import ca.rmen.android.networkmonitor.provider.DictionaryColumns.Family;
+import ca.rmen.android.networkmonitor.util.Log;
+
+/**
+ * Moves the rows logged by versions older than 22 from the {@link #OLD_TABLE_NAME} table to the {@link NetMonColumns#DATA_TABLE_NAME} table, replacing
+ * the values of the dictionary-encoded columns by their ids. The ids of the rows are kept.
+ *
+ * The DB upgrade only renames the old table, and makes the ids of the new rows start after the ids of the old rows. The rows are moved in the
+ * background, in chunks of {@link #CHUNK_SIZE} ids starting with the newest rows. Each chunk is a short transaction, so the sampler isn't blocked, and
+ * the move resumes where it stopped if the app is killed. Until then, the {@link NetMonColumns#TABLE_NAME} view also reads the rows of the old table,
+ * and the rows deleted or updated through the view are also deleted or updated in the old table. The old table is dropped at the end, and the view
+ * is created again without it.
+ */
+class TextColumns {
+    private static final String TAG = Constants.TAG + TextColumns.class.getSimpleName();
+
+    private static final String OLD_TABLE_NAME = "networkmonitor_v21";
+    private static final int CHUNK_SIZE = 1000;
+
+    // Once the old table is gone, it doesn't come back: we don't need to look for it anymore.
+    private static volatile boolean sIsEncodingDone;
+
+    private TextColumns() {
+        // prevent instantiation
+    }
+
+    /**
+     * Rename the table of the rows logged by an older version. {@link #prepareEncoding(SQLiteDatabase)} must be called once the new table is created.
+     */
+    static void renameOldTable(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE " + NetMonColumns.TABLE_NAME + " RENAME TO " + OLD_TABLE_NAME);
+    }
+
+    /**
+     * Make the ids of the rows inserted in the new table start after the ids of the old rows, which keep their ids when they are moved.
+     */
+    static void prepareEncoding(SQLiteDatabase db) {
+        db.execSQL("INSERT INTO sqlite_sequence (name, seq) SELECT '" + NetMonColumns.DATA_TABLE_NAME + "', IFNULL(MAX(" + NetMonColumns._ID + "), 0)"
+                + " FROM " + OLD_TABLE_NAME);
+    }
+
+    static boolean isEncodingNeeded(SQLiteDatabase db) {
+        if (sIsEncodingDone) return false;
+        boolean result = DatabaseUtils.longForQuery(db, "SELECT COUNT(*) FROM sqlite_master WHERE type='table' AND name=?", new String[]{OLD_TABLE_NAME}) > 0;
+        if (!result) sIsEncodingDone = true;
+        return result;
+    }
+
+    /**
+     * @return a query on the old table, with the same columns as the query of the view on the new table.
+     */
+    static String buildOldRowsQuery(SQLiteDatabase db) {
+        List<String> oldColumns = NetMonDatabase.getColumnNames(db, OLD_TABLE_NAME);
+        StringBuilder columns = new StringBuilder(NetMonColumns._ID);
+        for (String column : Sample.COLUMNS)
+            columns.append(", ").append(buildOldValue(column, oldColumns)).append(" AS ").append(column);
+        return "SELECT " + columns + " FROM " + OLD_TABLE_NAME;
+    }
+
+    /**
+     * @return an expression for the value of the given column of the view, in the old table.
+     */
+    private static String buildOldValue(String column, List<String> oldColumns) {
+        // The old table only has the text speeds.
+        if (NetMonColumns.DOWNLOAD_SPEED_STATUS.equals(column)) return buildOldValue(NetMonColumns.DOWNLOAD_SPEED, oldColumns, SpeedColumns.buildStatusValue(NetMonColumns.DOWNLOAD_SPEED));
+        if (NetMonColumns.UPLOAD_SPEED_STATUS.equals(column)) return buildOldValue(NetMonColumns.UPLOAD_SPEED, oldColumns, SpeedColumns.buildStatusValue(NetMonColumns.UPLOAD_SPEED));
+        if (NetMonColumns.DOWNLOAD_SPEED.equals(column) || NetMonColumns.UPLOAD_SPEED.equals(column))
+            return buildOldValue(column, oldColumns, SpeedColumns.buildMbpsValue(column));
+        return buildOldValue(column, oldColumns, column);
+    }
+
+    private static String buildOldValue(String oldColumn, List<String> oldColumns, String value) {
+        return oldColumns.contains(oldColumn) ? value : "NULL";
+    }
+
+    /**
+     * Move all the rows of the old table, and drop it. {@link NetMonDatabase} calls this on a background thread.
+     */
+    static void encodeAll(SQLiteDatabase db) {
+        Log.v(TAG, "encodeAll");
+        long startTime = System.currentTimeMillis();
+        String idRange = NetMonColumns._ID + ">? AND " + NetMonColumns._ID + "<=?";
+        boolean isDone = false;
+        while (!isDone) {
+            db.beginTransaction();
+            try {
+                long lastId = DatabaseUtils.longForQuery(db, "SELECT IFNULL(MAX(" + NetMonColumns._ID + "), 0) FROM " + OLD_TABLE_NAME, null);
+                if (lastId <= 0) {
+                    db.execSQL("DROP TABLE " + OLD_TABLE_NAME);
+                    NetMonDatabase.createView(db);
+                    isDone = true;
+                } else {
+                    long fromId = Math.max(lastId - CHUNK_SIZE, 0);
+                    moveRows(db, idRange, new Object[]{fromId, lastId});
+                    db.execSQL("DELETE FROM " + OLD_TABLE_NAME + " WHERE " + idRange, new Object[]{fromId, lastId});
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        }
+        sIsEncodingDone = true;
+        Log.v(TAG, "encodeAll: done in " + (System.currentTimeMillis() - startTime) + "ms");
+    }
+
+    /**
+     * Delete the rows of the old table which match a selection on the view, if the old table still exists.  A null selection deletes all the rows.
+     *
+     * @return the number of deleted rows.
+     */
+    static int deleteOldRows(SQLiteDatabase db, String selection, String[] selectionArgs) {
+        if (!isEncodingNeeded(db)) return 0;
+        if (selection == null) return db.delete(OLD_TABLE_NAME, null, null);
+        return db.delete(OLD_TABLE_NAME, buildViewSelection(selection), selectionArgs);
+    }
+
+    /**
+     * Move the rows of the old table which match a selection on the view to the new table now, if the old table still exists. This is done before
+     * updating the new table, so that the update also applies to these rows.
+     */
+    static void moveOldRows(SQLiteDatabase db, String selection, String[] selectionArgs) {
+        if (!isEncodingNeeded(db)) return;
+        String where = selection == null ? "1" : buildViewSelection(selection);
+        Object[] bindArgs = selectionArgs == null ? new Object[0] : selectionArgs;
+        db.beginTransaction();
+        try {
+            moveRows(db, where, bindArgs);
+            db.execSQL("DELETE FROM " + OLD_TABLE_NAME + " WHERE " + where, bindArgs);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * @return a where clause on the old table, for the rows which match the given selection on the view.
+     */
+    private static String buildViewSelection(String selection) {
+        return NetMonColumns._ID + " IN (SELECT " + NetMonColumns._ID + " FROM " + NetMonColumns.TABLE_NAME + " WHERE " + selection + ")";
+    }
+
+    /**
+     * Copy the rows of the old table matching the where clause to the new table, adding their text values to the dictionaries.
+     */
+    private static void moveRows(SQLiteDatabase db, String where, Object[] bindArgs) {
+        List<String> oldColumns = NetMonDatabase.getColumnNames(db, OLD_TABLE_NAME);
+        for (Family family : Family.values()) {
+            for (String column : family.columns) {
+                if (!oldColumns.contains(column)) continue;
+                db.execSQL("INSERT OR IGNORE INTO " + family.tableName + " (" + DictionaryColumns.VALUE + ")"
+                        + " SELECT DISTINCT " + column + " FROM " + OLD_TABLE_NAME + " WHERE " + column + " NOT NULL AND " + where, bindArgs);
+            }
+        }
+        // The columns of the old table all exist in the new table, with the same names.
+        List<String> columns = new ArrayList<>();
+        List<String> values = new ArrayList<>();
+        for (String column : oldColumns) {
+            columns.add(column);
+            Family family = Family.getFamily(column);
+            if (family == null) {
+                values.add(column);
+            } else {
+                values.add("(SELECT " + DictionaryColumns._ID + " FROM " + family.tableName + " WHERE " + DictionaryColumns.VALUE + "=" + column + ")");
+            }
+        }
+        db.execSQL("INSERT INTO " + NetMonColumns.DATA_TABLE_NAME + " (" + TextUtils.join(",", columns) + ")"
+                + " SELECT " + TextUtils.join(",", values) + " FROM " + OLD_TABLE_NAME + " WHERE " + where, bindArgs);
+    }
+}
@@ -25,9 +25,12 @@ package ca.rmen.android.networkmonitor.util;
 
 import android.content.Context;
 import android.database.Cursor;
+import android.net.Uri;
 import android.provider.BaseColumns;
 
+import ca.rmen.android.networkmonitor.provider.AggregateColumns;
 import ca.rmen.android.networkmonitor.provider.NetMonColumns;
+import ca.rmen.android.networkmonitor.provider.NetMonProvider;
 
 public final class DBUtil {
 
@@ -41,7 +44,8 @@ public final class DBUtil {
     public static String readLastLoggedValue(Context context, String columnName, String selection) {
         String[] projection = new String[]{columnName};
         String orderBy = BaseColumns._ID + " DESC";
-        Cursor cursor = context.getContentResolver().query(NetMonColumns.CONTENT_URI, projection, selection, null, orderBy);
+        Uri uri = NetMonColumns.CONTENT_URI.buildUpon().appendQueryParameter(NetMonProvider.QUERY_PARAMETER_LIMIT, "1").build();
+        Cursor cursor = context.getContentResolver().query(uri, projection, selection, null, orderBy);
         if (cursor != null) {
             try {
                 if (cursor.moveToFirst()) {
@@ -54,4 +58,22 @@ public final class DBUtil {
         return null;
     }
 
+    /**
+     * @return the aggregate of the given column, computed by SQLite over the rows which match the given selection.  Returns null if there is no
+     * value.
+     */
+    public static Long readLongAggregate(Context context, AggregateColumns.Function function, String columnName, String selection) {
+        Cursor cursor = context.getContentResolver().query(AggregateColumns.getUri(function, columnName), null, selection, null, null);
+        if (cursor != null) {
+            try {
+                if (cursor.moveToFirst() && !cursor.isNull(0)) {
+                    return cursor.getLong(0);
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        return null;
+    }
+
 }
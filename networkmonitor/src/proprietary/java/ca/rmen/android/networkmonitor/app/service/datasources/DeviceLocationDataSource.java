@@ -23,7 +23,6 @@
  */
 package ca.rmen.android.networkmonitor.app.service.datasources;
 
-import android.content.ContentValues;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.os.Bundle;
@@ -32,6 +31,7 @@ import android.preference.PreferenceManager;
 import ca.rmen.android.networkmonitor.Constants;
 import ca.rmen.android.networkmonitor.app.prefs.NetMonPreferences;
 import ca.rmen.android.networkmonitor.provider.NetMonColumns;
+import ca.rmen.android.networkmonitor.provider.Sample;
 import ca.rmen.android.networkmonitor.util.Log;
 
 import com.google.android.gms.common.ConnectionResult;
@@ -67,18 +67,16 @@ public class DeviceLocationDataSource implements NetMonDataSource {
     }
 
     /**
-     * @return the last location the device recorded in a ContentValues with keys {@link NetMonColumns#DEVICE_LATITUDE} and
+     * Puts the last location the device recorded in the sample, with keys {@link NetMonColumns#DEVICE_LATITUDE} and
      *         {@link NetMonColumns#DEVICE_LONGITUDE}. Tries to use Google Play Services if available. Otherwise falls back
      *         to the most recently retrieved location among all the providers.
      */
     @Override
-    public ContentValues getContentValues() {
-        Log.v(TAG, "getContentValues");
-        if (mDeviceLocationDataSourceImpl != null) return mDeviceLocationDataSourceImpl.getContentValues();
-        else {
+    public void fillSample(Sample sample) {
+        Log.v(TAG, "fillSample");
+        if (mDeviceLocationDataSourceImpl != null) mDeviceLocationDataSourceImpl.fillSample(sample);
+        else
             Log.w(TAG, "No data source available to get location");
-            return new ContentValues();
-        }
     }
 
     @Override
@@ -23,7 +23,6 @@
  */
 package ca.rmen.android.networkmonitor.app.service.datasources;
 
-import android.content.ContentValues;
 import android.content.Context;
 import android.content.SharedPreferences.OnSharedPreferenceChangeListener;
 import android.location.Location;
@@ -33,6 +32,7 @@ import ca.rmen.android.networkmonitor.Constants;
 import ca.rmen.android.networkmonitor.app.prefs.NetMonPreferences;
 import ca.rmen.android.networkmonitor.app.prefs.NetMonPreferences.LocationFetchingStrategy;
 import ca.rmen.android.networkmonitor.provider.NetMonColumns;
+import ca.rmen.android.networkmonitor.provider.Sample;
 import ca.rmen.android.networkmonitor.util.Log;
 import ca.rmen.android.networkmonitor.util.PermissionUtil;
 
@@ -63,32 +63,30 @@ public class GmsDeviceLocationDataSource implements NetMonDataSource {
     }
 
     /**
-     * @return the last location the device recorded in a ContentValues with keys {@link NetMonColumns#DEVICE_LATITUDE} and
+     * Puts the last location the device recorded in the sample, with keys {@link NetMonColumns#DEVICE_LATITUDE} and
      *         {@link NetMonColumns#DEVICE_LONGITUDE}. Uses Google Play Services.
      */
     @Override
     @SuppressWarnings("MissingPermission")
-    public ContentValues getContentValues() {
-        Log.v(TAG, "getContentValues");
-        ContentValues values = new ContentValues(3);
+    public void fillSample(Sample sample) {
+        Log.v(TAG, "fillSample");
         if (!PermissionUtil.hasLocationPermission(mContext)) {
             Log.v(TAG, "No location permission.");
-            return values;
+            return;
         }
         if (!mLocationClient.isConnected()) {
             Log.v(TAG, "LocationClient not connected, doing nothing");
-            return values;
+            return;
         }
         // Try getting the location from the LocationClient
         mMostRecentLocation = LocationServices.FusedLocationApi.getLastLocation(mLocationClient);
         Log.v(TAG, "Most recent location: " + mMostRecentLocation);
         if (mMostRecentLocation != null) {
-            values.put(NetMonColumns.DEVICE_LATITUDE, mMostRecentLocation.getLatitude());
-            values.put(NetMonColumns.DEVICE_LONGITUDE, mMostRecentLocation.getLongitude());
-            values.put(NetMonColumns.DEVICE_POSITION_ACCURACY, mMostRecentLocation.getAccuracy());
-            values.put(NetMonColumns.DEVICE_SPEED, mMostRecentLocation.getSpeed());
+            sample.put(NetMonColumns.DEVICE_LATITUDE, mMostRecentLocation.getLatitude());
+            sample.put(NetMonColumns.DEVICE_LONGITUDE, mMostRecentLocation.getLongitude());
+            sample.put(NetMonColumns.DEVICE_POSITION_ACCURACY, mMostRecentLocation.getAccuracy());
+            sample.put(NetMonColumns.DEVICE_SPEED, mMostRecentLocation.getSpeed());
         }
-        return values;
     }
 
     @Override
@@ -0,0 +1,267 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ *
+ * Copyright (C) 2016 Carmen Alvarez (c@rmen.ca)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.rmen.android.networkmonitor.app.dbops.backend.archive;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.provider.BaseColumns;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+import java.util.List;
+
+import ca.rmen.android.networkmonitor.BuildConfig;
+import ca.rmen.android.networkmonitor.provider.NetMonColumns;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class ArchiveFileTest {
+    static final String[] COLUMNS = new String[]{BaseColumns._ID, NetMonColumns.TIMESTAMP, NetMonColumns.NETWORK_TYPE,
+            NetMonColumns.CELL_SIGNAL_STRENGTH_DBM, NetMonColumns.DOWNLOAD_SPEED};
+    private static final int ROWS_PER_ROW_GROUP = 100;
+
+    private File mFile;
+
+    @Before
+    public void setUp() {
+        mFile = new File(RuntimeEnvironment.application.getCacheDir(), "test.archive");
+        //noinspection ResultOfMethodCallIgnored
+        mFile.delete();
+    }
+
+    @After
+    public void tearDown() {
+        //noinspection ResultOfMethodCallIgnored
+        mFile.delete();
+    }
+
+    @Test
+    public void testAppendAndRead() throws IOException {
+        append(1);
+        append(ROWS_PER_ROW_GROUP + 1);
+        List<ArchiveFile.RowGroup> rowGroups = readRowGroups();
+        assertEquals(2, rowGroups.size());
+        assertEquals(ROWS_PER_ROW_GROUP, rowGroups.get(1).rowCount);
+        assertEquals(ROWS_PER_ROW_GROUP + 1, rowGroups.get(1).firstId);
+        assertEquals(2 * ROWS_PER_ROW_GROUP, rowGroups.get(1).lastId);
+        assertEquals(getArchivedBefore(ROWS_PER_ROW_GROUP + 1), rowGroups.get(1).archivedBefore);
+        assertRows(new ArchiveCursor(mFile, COLUMNS, new ArchiveFilter(), false, 0), 1, 2 * ROWS_PER_ROW_GROUP, false);
+        assertRows(new ArchiveCursor(mFile, COLUMNS, new ArchiveFilter(), true, 0), 1, 2 * ROWS_PER_ROW_GROUP, true);
+        assertEquals(2 * ROWS_PER_ROW_GROUP, ArchiveFile.readLastRowGroup(mFile).lastId);
+    }
+
+    @Test
+    public void testEmptyArchive() throws IOException {
+        assertNull(ArchiveFile.readLastRowGroup(mFile));
+    }
+
+    @Test
+    public void testProjectionAndFilter() throws IOException {
+        append(1);
+        append(ROWS_PER_ROW_GROUP + 1);
+        ArchiveFilter filter = new ArchiveFilter();
+        filter.addValues(NetMonColumns.NETWORK_TYPE, Collections.singletonList("WIFI"));
+        filter.addNotNull(NetMonColumns.CELL_SIGNAL_STRENGTH_DBM);
+        // A column which didn't exist when the rows were archived is null.
+        String[] projection = new String[]{BaseColumns._ID, NetMonColumns.BATTERY_LEVEL};
+        Cursor cursor = new ArchiveCursor(mFile, projection, filter, false, 0);
+        try {
+            int count = 0;
+            for (long id = 1; id <= 2 * ROWS_PER_ROW_GROUP; id++) {
+                if (!isWifi(id) || getSignalStrength(id) == null) continue;
+                assertTrue(cursor.moveToNext());
+                assertEquals(id, cursor.getLong(0));
+                assertTrue(cursor.isNull(1));
+                count++;
+            }
+            assertFalse(cursor.moveToNext());
+            assertEquals(count, cursor.getCount());
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void testTruncatedRowGroupIsIgnoredAndOverwritten() throws IOException {
+        append(1);
+        append(ROWS_PER_ROW_GROUP + 1);
+        // The app died while writing the second row group.
+        RandomAccessFile raf = new RandomAccessFile(mFile, "rw");
+        try {
+            raf.setLength(raf.length() - 10);
+        } finally {
+            raf.close();
+        }
+        assertEquals(1, readRowGroups().size());
+        assertRows(new ArchiveCursor(mFile, COLUMNS, new ArchiveFilter(), false, 0), 1, ROWS_PER_ROW_GROUP, false);
+
+        // Its rows are still in the DB: they are archived again.
+        append(ROWS_PER_ROW_GROUP + 1);
+        assertEquals(2, readRowGroups().size());
+        assertRows(new ArchiveCursor(mFile, COLUMNS, new ArchiveFilter(), false, 0), 1, 2 * ROWS_PER_ROW_GROUP, false);
+    }
+
+    @Test
+    public void testCorruptRowGroupIsSkippedAndOverwritten() throws IOException {
+        append(1);
+        append(ROWS_PER_ROW_GROUP + 1);
+        RandomAccessFile raf = new RandomAccessFile(mFile, "rw");
+        try {
+            raf.seek(raf.length() - 1);
+            int lastByte = raf.read();
+            raf.seek(raf.length() - 1);
+            raf.write(lastByte ^ 0xFF);
+            List<ArchiveFile.RowGroup> rowGroups = ArchiveFile.readRowGroups(raf);
+            assertEquals(2, rowGroups.size());
+            rowGroups.get(0).readPayload(raf);
+            try {
+                rowGroups.get(1).readPayload(raf);
+                fail("The CRC should not match");
+            } catch (IOException e) {
+                // expected
+            }
+        } finally {
+            raf.close();
+        }
+        // Reading with a filter checks each row group first.
+        ArchiveFilter filter = new ArchiveFilter();
+        filter.addNotNull(NetMonColumns.TIMESTAMP);
+        assertRows(new ArchiveCursor(mFile, COLUMNS, filter, false, 0), 1, ROWS_PER_ROW_GROUP, false);
+
+        append(ROWS_PER_ROW_GROUP + 1);
+        assertEquals(2, readRowGroups().size());
+        assertRows(new ArchiveCursor(mFile, COLUMNS, filter, false, 0), 1, 2 * ROWS_PER_ROW_GROUP, false);
+    }
+
+    @Test
+    public void testNotAnArchive() throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(mFile, "rw");
+        try {
+            raf.writeInt(0x12345678);
+            ArchiveFile.readRowGroups(raf);
+            fail("The file isn't an archive");
+        } catch (IOException e) {
+            // expected
+        } finally {
+            raf.close();
+        }
+    }
+
+    private void append(long firstId) throws IOException {
+        Cursor cursor = createRows(firstId, ROWS_PER_ROW_GROUP);
+        try {
+            ArchiveFile.append(mFile, cursor, getArchivedBefore(firstId));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private List<ArchiveFile.RowGroup> readRowGroups() throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(mFile, "r");
+        try {
+            return ArchiveFile.readRowGroups(raf);
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static long getArchivedBefore(long firstId) {
+        return getTimestamp(firstId + ROWS_PER_ROW_GROUP);
+    }
+
+    /**
+     * @return rows with the {@link #COLUMNS}, with values of each type, and nulls.
+     */
+    static MatrixCursor createRows(long firstId, int count) {
+        MatrixCursor result = new MatrixCursor(COLUMNS, count);
+        for (long id = firstId; id < firstId + count; id++)
+            result.addRow(new Object[]{id, getTimestamp(id), isWifi(id) ? "WIFI" : "MOBILE", getSignalStrength(id), getSpeed(id)});
+        return result;
+    }
+
+    static long getTimestamp(long id) {
+        return 1478000000000L + id * 10000L;
+    }
+
+    private static boolean isWifi(long id) {
+        return id % 2 == 0;
+    }
+
+    static Long getSignalStrength(long id) {
+        return id % 3 == 0 ? null : -60 - (id * 7919) % 50;
+    }
+
+    private static Double getSpeed(long id) {
+        return id % 4 == 0 ? null : id / 10.0;
+    }
+
+    /**
+     * Check that the cursor has the rows from firstId to lastId, and close it.
+     */
+    private static void assertRows(Cursor cursor, long firstId, long lastId, boolean isDescending) {
+        try {
+            assertEquals(lastId - firstId + 1, cursor.getCount());
+            for (int i = 0; i < cursor.getCount(); i++) {
+                assertTrue(cursor.moveToPosition(i));
+                long id = isDescending ? lastId - i : firstId + i;
+                assertEquals(id, cursor.getLong(0));
+                assertEquals(getTimestamp(id), cursor.getLong(1));
+                assertEquals(isWifi(id) ? "WIFI" : "MOBILE", cursor.getString(2));
+                Long signalStrength = getSignalStrength(id);
+                if (signalStrength == null) {
+                    assertTrue(cursor.isNull(3));
+                } else {
+                    assertEquals(Cursor.FIELD_TYPE_INTEGER, cursor.getType(3));
+                    assertEquals((long) signalStrength, cursor.getLong(3));
+                }
+                Double speed = getSpeed(id);
+                if (speed == null) {
+                    assertTrue(cursor.isNull(4));
+                } else {
+                    assertEquals(Cursor.FIELD_TYPE_FLOAT, cursor.getType(4));
+                    assertEquals(speed, cursor.getDouble(4), 0);
+                }
+            }
+            assertFalse(cursor.moveToPosition(cursor.getCount()));
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ *
+ * Copyright (C) 2016 Carmen Alvarez (c@rmen.ca)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.rmen.android.networkmonitor.app.dbops.backend.archive;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Round trips of the values written by {@link ArchiveOutput} and read by {@link ArchiveInput}.
+ */
+public class ArchiveOutputTest {
+    private static final long[] LONGS = new long[]{0, 1, -1, 63, -64, 64, 127, 128, 16383, 16384, Integer.MAX_VALUE, Integer.MIN_VALUE,
+            1478000000000L, -1478000000000L, Long.MAX_VALUE, Long.MIN_VALUE};
+
+    @Test
+    public void testVarLongs() {
+        ArchiveOutput out = new ArchiveOutput();
+        for (long value : LONGS)
+            out.writeVarLong(value);
+        ArchiveInput in = new ArchiveInput(out.toByteArray(), 0);
+        for (long value : LONGS)
+            assertEquals(value, in.readVarLong());
+        assertEquals(out.size(), in.getPosition());
+    }
+
+    @Test
+    public void testVarLongSizes() {
+        assertEquals(1, getVarLongSize(0));
+        assertEquals(1, getVarLongSize(127));
+        assertEquals(2, getVarLongSize(128));
+        assertEquals(2, getVarLongSize(16383));
+        assertEquals(3, getVarLongSize(16384));
+        // Negative values are written as unsigned values.
+        assertEquals(10, getVarLongSize(-1));
+    }
+
+    @Test
+    public void testSignedVarLongs() {
+        ArchiveOutput out = new ArchiveOutput();
+        for (long value : LONGS)
+            out.writeSignedVarLong(value);
+        ArchiveInput in = new ArchiveInput(out.toByteArray(), 0);
+        for (long value : LONGS)
+            assertEquals(value, in.readSignedVarLong());
+        assertEquals(out.size(), in.getPosition());
+    }
+
+    @Test
+    public void testZigzag() {
+        assertEquals(0, ArchiveOutput.zigzag(0));
+        assertEquals(1, ArchiveOutput.zigzag(-1));
+        assertEquals(2, ArchiveOutput.zigzag(1));
+        assertEquals(3, ArchiveOutput.zigzag(-2));
+        assertEquals(-2, ArchiveOutput.zigzag(Long.MAX_VALUE));
+        assertEquals(-1, ArchiveOutput.zigzag(Long.MIN_VALUE));
+        // Small negative deltas take as little space as small positive ones.
+        ArchiveOutput out = new ArchiveOutput();
+        out.writeSignedVarLong(-60);
+        assertEquals(1, out.size());
+    }
+
+    @Test
+    public void testBits() {
+        int[] bitCounts = new int[]{0, 1, 2, 3, 7, 8, 9, 13, 31, 32, 33, 63, 64};
+        Random random = new Random(42);
+        long[] values = new long[bitCounts.length * 10];
+        ArchiveOutput out = new ArchiveOutput();
+        for (int i = 0; i < values.length; i++) {
+            int bitCount = bitCounts[i % bitCounts.length];
+            values[i] = random.nextLong() & ArchiveOutput.mask(bitCount);
+            out.writeBits(values[i], bitCount);
+        }
+        out.flushBits();
+        out.writeVarLong(300);
+        ArchiveInput in = new ArchiveInput(out.toByteArray(), 0);
+        for (int i = 0; i < values.length; i++)
+            assertEquals(values[i], in.readBits(bitCounts[i % bitCounts.length]));
+        in.alignToByte();
+        // The next value starts on the byte after the packed values.
+        assertEquals(300, in.readVarLong());
+        assertEquals(out.size(), in.getPosition());
+    }
+
+    @Test
+    public void testBitsArePacked() {
+        ArchiveOutput out = new ArchiveOutput();
+        for (int i = 0; i < 8; i++)
+            out.writeBits(i, 3);
+        out.flushBits();
+        assertEquals(3, out.size());
+        out.writeBits(1, 1);
+        out.flushBits();
+        assertEquals(4, out.size());
+    }
+
+    @Test
+    public void testStrings() {
+        String[] values = new String[]{"", "WIFI", "Café", "日本語", "a\u0000b"};
+        ArchiveOutput out = new ArchiveOutput();
+        for (String value : values)
+            out.writeString(value);
+        ArchiveInput in = new ArchiveInput(out.toByteArray(), 0);
+        for (String value : values)
+            assertEquals(value, in.readString());
+        assertEquals(out.size(), in.getPosition());
+    }
+
+    @Test
+    public void testDoubles() {
+        double[] values = new double[]{0, -0.0, 0.1, -12.345, Double.MIN_VALUE, Double.MAX_VALUE, Double.NEGATIVE_INFINITY, Double.NaN};
+        ArchiveOutput out = new ArchiveOutput();
+        for (double value : values)
+            out.writeDouble(value);
+        assertEquals(values.length * 8, out.size());
+        ArchiveInput in = new ArchiveInput(out.toByteArray(), 0);
+        for (double value : values)
+            assertEquals(Double.doubleToRawLongBits(value), Double.doubleToRawLongBits(in.readDouble()));
+    }
+
+    @Test
+    public void testBitCount() {
+        assertEquals(0, ArchiveOutput.getBitCount(0));
+        assertEquals(1, ArchiveOutput.getBitCount(1));
+        assertEquals(8, ArchiveOutput.getBitCount(255));
+        assertEquals(9, ArchiveOutput.getBitCount(256));
+        assertEquals(64, ArchiveOutput.getBitCount(-1));
+    }
+
+    private static int getVarLongSize(long value) {
+        ArchiveOutput out = new ArchiveOutput();
+        out.writeVarLong(value);
+        return out.size();
+    }
+}
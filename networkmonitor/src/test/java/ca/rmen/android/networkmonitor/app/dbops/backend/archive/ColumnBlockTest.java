@@ -0,0 +1,223 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ *
+ * Copyright (C) 2016 Carmen Alvarez (c@rmen.ca)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.rmen.android.networkmonitor.app.dbops.backend.archive;
+
+import android.database.Cursor;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Round trips of each encoding of {@link ColumnBlock}.
+ */
+public class ColumnBlockTest {
+    private static final int ROW_COUNT = 500;
+
+    @Test
+    public void testAllNull() {
+        Object[] values = new Object[ROW_COUNT];
+        ArchiveOutput out = new ArchiveOutput();
+        ColumnBlock.write(out, values, toTexts(values), ROW_COUNT);
+        assertEquals(1, out.size());
+        ColumnBlock block = read(out, ColumnBlock.ENCODING_NULL, ROW_COUNT);
+        for (int i = 0; i < ROW_COUNT; i++) {
+            assertTrue(block.isNull(i));
+            assertEquals(null, block.getValue(i));
+            assertEquals(Cursor.FIELD_TYPE_NULL, block.getType(i));
+        }
+    }
+
+    @Test
+    public void testIdsAreDeltaEncoded() {
+        Object[] values = new Object[ROW_COUNT];
+        for (int i = 0; i < ROW_COUNT; i++)
+            values[i] = 1000000L + i + (i > ROW_COUNT / 2 ? 100 : 0);
+        ArchiveOutput out = new ArchiveOutput();
+        ColumnBlock.write(out, values, toTexts(values), ROW_COUNT);
+        // A byte per row, smaller than the 10 bits of the packed values.
+        assertTrue(out.size() < ROW_COUNT + 16);
+        assertRoundTrip(read(out, ColumnBlock.ENCODING_LONG_DELTA, ROW_COUNT), values);
+    }
+
+    @Test
+    public void testDecreasingLongsAreDeltaEncoded() {
+        Object[] values = new Object[ROW_COUNT];
+        for (int i = 0; i < ROW_COUNT; i++)
+            values[i] = i % 10 == 0 ? null : 1000000L - i;
+        assertRoundTrip(writeAndRead(values, ColumnBlock.ENCODING_LONG_DELTA), values);
+    }
+
+    @Test
+    public void testTimestamps() {
+        Object[] values = new Object[ROW_COUNT];
+        for (int i = 0; i < ROW_COUNT; i++)
+            values[i] = 1478000000000L + i * 10000L + i % 7;
+        ArchiveOutput out = new ArchiveOutput();
+        ColumnBlock.write(out, values, toTexts(values), ROW_COUNT);
+        // The smaller of the two long encodings: 3 bytes per row instead of 8.
+        assertTrue(out.size() < ROW_COUNT * 3 + 16);
+        ArchiveInput in = new ArchiveInput(out.toByteArray(), 0);
+        assertRoundTrip(new ColumnBlock(in, ROW_COUNT), values);
+    }
+
+    @Test
+    public void testSmallIntsArePacked() {
+        Object[] values = new Object[ROW_COUNT];
+        for (int i = 0; i < ROW_COUNT; i++)
+            values[i] = i % 3 == 0 ? null : (long) (-113 + i % 63);
+        ArchiveOutput out = new ArchiveOutput();
+        ColumnBlock.write(out, values, toTexts(values), ROW_COUNT);
+        // 6 bits per value, and 1 bit per row for the nulls.
+        assertTrue(out.size() < ROW_COUNT * 7 / 8 + 16);
+        assertRoundTrip(read(out, ColumnBlock.ENCODING_LONG_PACKED, ROW_COUNT), values);
+    }
+
+    @Test
+    public void testConstantLongIsPacked() {
+        Object[] values = new Object[ROW_COUNT];
+        for (int i = 0; i < ROW_COUNT; i++)
+            values[i] = 42L;
+        ArchiveOutput out = new ArchiveOutput();
+        ColumnBlock.write(out, values, toTexts(values), ROW_COUNT);
+        // No bits per value.
+        assertTrue(out.size() < 8);
+        assertRoundTrip(read(out, ColumnBlock.ENCODING_LONG_PACKED, ROW_COUNT), values);
+    }
+
+    @Test
+    public void testExtremeLongs() {
+        // The range of these values doesn't fit in a long: they can't be packed.
+        Object[] values = new Object[]{Long.MIN_VALUE, Long.MAX_VALUE, 0L, null, -1L, Long.MAX_VALUE, Long.MIN_VALUE};
+        assertRoundTrip(writeAndRead(values, ColumnBlock.ENCODING_LONG_DELTA), values);
+    }
+
+    @Test
+    public void testDoubles() {
+        Object[] values = new Object[ROW_COUNT];
+        for (int i = 0; i < ROW_COUNT; i++)
+            values[i] = i % 4 == 0 ? null : i / 10.0 - 3;
+        values[1] = Double.MAX_VALUE;
+        values[2] = -0.0;
+        ColumnBlock block = writeAndRead(values, ColumnBlock.ENCODING_DOUBLE);
+        assertRoundTrip(block, values);
+        assertEquals(Cursor.FIELD_TYPE_FLOAT, block.getType(1));
+        assertEquals(1.7, block.getDouble(47), 1e-9);
+        assertEquals(1, block.getLong(47));
+    }
+
+    @Test
+    public void testStrings() {
+        String[] distinctValues = new String[]{"WIFI", "MOBILE", "", "Café", "日本語"};
+        Object[] values = new Object[ROW_COUNT];
+        for (int i = 0; i < ROW_COUNT; i++)
+            values[i] = i % 6 == 5 ? null : distinctValues[i % 6];
+        ArchiveOutput out = new ArchiveOutput();
+        ColumnBlock.write(out, values, toTexts(values), ROW_COUNT);
+        // Each distinct value is stored once, and the rows only take 3 bits for the index, and 1 bit for the nulls.
+        assertTrue(out.size() < ROW_COUNT / 2 + 64);
+        ColumnBlock block = read(out, ColumnBlock.ENCODING_STRING_DICTIONARY, ROW_COUNT);
+        assertRoundTrip(block, values);
+        assertEquals(Cursor.FIELD_TYPE_STRING, block.getType(0));
+    }
+
+    @Test
+    public void testSingleString() {
+        Object[] values = new Object[]{"WIFI"};
+        assertRoundTrip(writeAndRead(values, ColumnBlock.ENCODING_STRING_DICTIONARY), values);
+    }
+
+    @Test
+    public void testMixedTypesUseTheText() {
+        Object[] values = new Object[]{12L, "-87", 0.5, null, "unknown", 12L};
+        String[] texts = new String[]{"12", "-87", "0.5", null, "unknown", "12"};
+        ArchiveOutput out = new ArchiveOutput();
+        ColumnBlock.write(out, values, texts, values.length);
+        ColumnBlock block = read(out, ColumnBlock.ENCODING_STRING_DICTIONARY, values.length);
+        for (int i = 0; i < values.length; i++)
+            assertEquals(texts[i], block.getString(i));
+        assertEquals(12, block.getLong(0));
+        assertEquals(-87, block.getLong(1));
+        assertEquals(0.5, block.getDouble(2), 0);
+        assertEquals(0, block.getLong(4));
+        assertTrue(block.isNull(3));
+    }
+
+    @Test
+    public void testConsecutiveBlocks() {
+        // The row groups store the blocks of the columns one after the other: each block must end on its last byte.
+        Object[][] columns = new Object[][]{
+                {1L, 2L, null, 4L, 5L},
+                {null, null, null, null, null},
+                {-60L, -61L, -60L, null, -75L},
+                {0.1, null, 0.3, 0.4, 0.5},
+                {"a", "b", null, "a", "c"},
+        };
+        int rowCount = columns[0].length;
+        ArchiveOutput out = new ArchiveOutput();
+        for (Object[] values : columns)
+            ColumnBlock.write(out, values, toTexts(values), rowCount);
+        ArchiveInput in = new ArchiveInput(out.toByteArray(), 0);
+        for (Object[] values : columns)
+            assertRoundTrip(new ColumnBlock(in, rowCount), values);
+        assertEquals(out.size(), in.getPosition());
+    }
+
+    private static ColumnBlock writeAndRead(Object[] values, int expectedEncoding) {
+        ArchiveOutput out = new ArchiveOutput();
+        ColumnBlock.write(out, values, toTexts(values), values.length);
+        return read(out, expectedEncoding, values.length);
+    }
+
+    private static ColumnBlock read(ArchiveOutput out, int expectedEncoding, int rowCount) {
+        byte[] bytes = out.toByteArray();
+        assertEquals(expectedEncoding, bytes[0]);
+        ArchiveInput in = new ArchiveInput(bytes, 0);
+        ColumnBlock result = new ColumnBlock(in, rowCount);
+        assertEquals(bytes.length, in.getPosition());
+        return result;
+    }
+
+    private static void assertRoundTrip(ColumnBlock block, Object[] values) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == null) {
+                assertTrue(block.isNull(i));
+                assertEquals(Cursor.FIELD_TYPE_NULL, block.getType(i));
+            } else {
+                assertFalse(block.isNull(i));
+                assertEquals(values[i], block.getValue(i));
+                assertEquals(values[i].toString(), block.getString(i));
+            }
+        }
+    }
+
+    private static String[] toTexts(Object[] values) {
+        String[] result = new String[values.length];
+        for (int i = 0; i < values.length; i++)
+            result[i] = values[i] == null ? null : values[i].toString();
+        return result;
+    }
+}
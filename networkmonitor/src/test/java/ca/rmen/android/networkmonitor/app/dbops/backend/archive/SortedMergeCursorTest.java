@@ -0,0 +1,212 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ *
+ * Copyright (C) 2016 Carmen Alvarez (c@rmen.ca)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.rmen.android.networkmonitor.app.dbops.backend.archive;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import ca.rmen.android.networkmonitor.BuildConfig;
+import ca.rmen.android.networkmonitor.app.prefs.SortPreferences.SortOrder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Archived rows, sorted by a {@link SortedArchiveCursor}, merged with the rows of the DB by a {@link SortedMergeCursor}.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class SortedMergeCursorTest {
+    // Like DBArchive. Three row groups are more rows than a sorted run.
+    private static final int ROWS_PER_ROW_GROUP = 4096;
+    private static final int ARCHIVED_ROW_COUNT = 3 * ROWS_PER_ROW_GROUP;
+    private static final int LIVE_ROW_COUNT = 1000;
+    private static final int SIGNAL_STRENGTH_COLUMN = 3;
+    private static final int TIMESTAMP_COLUMN = 1;
+
+    private File mFile;
+    private File mTempDir;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = new File(RuntimeEnvironment.application.getCacheDir(), "test.archive");
+        //noinspection ResultOfMethodCallIgnored
+        mFile.delete();
+        mTempDir = new File(RuntimeEnvironment.application.getCacheDir(), "sort");
+        //noinspection ResultOfMethodCallIgnored
+        mTempDir.mkdirs();
+        for (long firstId = 1; firstId <= ARCHIVED_ROW_COUNT; firstId += ROWS_PER_ROW_GROUP) {
+            Cursor cursor = ArchiveFileTest.createRows(firstId, ROWS_PER_ROW_GROUP);
+            try {
+                ArchiveFile.append(mFile, cursor, ArchiveFileTest.getTimestamp(firstId + ROWS_PER_ROW_GROUP));
+            } finally {
+                cursor.close();
+            }
+        }
+    }
+
+    @After
+    public void tearDown() {
+        //noinspection ResultOfMethodCallIgnored
+        mFile.delete();
+    }
+
+    @Test
+    public void testArchivedAndLiveRowsAreMergedInOrder() throws IOException {
+        RowComparator comparator = new RowComparator(SIGNAL_STRENGTH_COLUMN, SortOrder.ASC, TIMESTAMP_COLUMN, SortOrder.DESC);
+        Cursor cursor = query(comparator, 0);
+        try {
+            assertEquals(ARCHIVED_ROW_COUNT + LIVE_ROW_COUNT, cursor.getCount());
+            boolean[] isIdRead = new boolean[ARCHIVED_ROW_COUNT + LIVE_ROW_COUNT + 1];
+            Object[] previousRow = null;
+            boolean isNullSignalStrengthRead = false;
+            while (cursor.moveToNext()) {
+                Object[] row = readRow(cursor);
+                if (previousRow != null) assertTrue(comparator.compare(previousRow, row) <= 0);
+                // The nulls are at the end.
+                if (row[SIGNAL_STRENGTH_COLUMN] == null) isNullSignalStrengthRead = true;
+                else assertFalse(isNullSignalStrengthRead);
+                int id = (int) cursor.getLong(0);
+                assertFalse(isIdRead[id]);
+                isIdRead[id] = true;
+                // The values come back with the row.
+                assertEquals(ArchiveFileTest.getTimestamp(id), cursor.getLong(TIMESTAMP_COLUMN));
+                assertEquals(ArchiveFileTest.getSignalStrength(id), row[SIGNAL_STRENGTH_COLUMN]);
+                previousRow = row;
+            }
+            assertTrue(isNullSignalStrengthRead);
+        } finally {
+            cursor.close();
+        }
+        assertEquals(0, countTempFiles());
+    }
+
+    @Test
+    public void testDescendingOrder() throws IOException {
+        RowComparator comparator = new RowComparator(SIGNAL_STRENGTH_COLUMN, SortOrder.DESC, TIMESTAMP_COLUMN, SortOrder.ASC);
+        Cursor cursor = query(comparator, 0);
+        try {
+            Object[] previousRow = null;
+            int count = 0;
+            while (cursor.moveToNext()) {
+                Object[] row = readRow(cursor);
+                if (previousRow != null) assertTrue(comparator.compare(previousRow, row) <= 0);
+                previousRow = row;
+                count++;
+            }
+            assertEquals(ARCHIVED_ROW_COUNT + LIVE_ROW_COUNT, count);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void testMovingBackwards() throws IOException {
+        RowComparator comparator = new RowComparator(SIGNAL_STRENGTH_COLUMN, SortOrder.ASC, TIMESTAMP_COLUMN, SortOrder.DESC);
+        Cursor cursor = query(comparator, 0);
+        try {
+            assertTrue(cursor.moveToPosition(500));
+            Object[] row500 = readRow(cursor);
+            assertTrue(cursor.moveToLast());
+            assertTrue(cursor.moveToFirst());
+            Object[] firstRow = readRow(cursor);
+            assertTrue(cursor.moveToPosition(500));
+            assertArrayEquals(row500, readRow(cursor));
+            assertTrue(cursor.moveToFirst());
+            assertArrayEquals(firstRow, readRow(cursor));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void testLimit() throws IOException {
+        RowComparator comparator = new RowComparator(SIGNAL_STRENGTH_COLUMN, SortOrder.ASC, TIMESTAMP_COLUMN, SortOrder.DESC);
+        int limit = 50;
+        List<Object[]> expectedRows = new ArrayList<>();
+        Cursor cursor = query(comparator, 0);
+        try {
+            while (expectedRows.size() < limit && cursor.moveToNext())
+                expectedRows.add(readRow(cursor));
+        } finally {
+            cursor.close();
+        }
+        cursor = query(comparator, limit);
+        try {
+            assertEquals(limit, cursor.getCount());
+            for (Object[] expectedRow : expectedRows) {
+                assertTrue(cursor.moveToNext());
+                assertArrayEquals(expectedRow, readRow(cursor));
+            }
+            assertFalse(cursor.moveToNext());
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * @return the archived rows merged with the "live" rows of the DB, which follow them.
+     */
+    private Cursor query(RowComparator comparator, int limit) throws IOException {
+        Cursor liveRows = ArchiveFileTest.createRows(ARCHIVED_ROW_COUNT + 1, LIVE_ROW_COUNT);
+        List<Object[]> sortedLiveRows = new ArrayList<>(LIVE_ROW_COUNT);
+        while (liveRows.moveToNext())
+            sortedLiveRows.add(readRow(liveRows));
+        liveRows.close();
+        Collections.sort(sortedLiveRows, comparator);
+        MatrixCursor dbCursor = new MatrixCursor(ArchiveFileTest.COLUMNS, LIVE_ROW_COUNT);
+        for (Object[] row : sortedLiveRows)
+            dbCursor.addRow(row);
+        Cursor archiveCursor = new SortedArchiveCursor(mFile, mTempDir, ArchiveFileTest.COLUMNS, new ArchiveFilter(), comparator);
+        return new SortedMergeCursor(dbCursor, archiveCursor, comparator, limit);
+    }
+
+    private static Object[] readRow(Cursor cursor) {
+        Object[] result = new Object[cursor.getColumnCount()];
+        for (int i = 0; i < result.length; i++)
+            result[i] = ArchiveValues.readValue(cursor, i);
+        return result;
+    }
+
+    private int countTempFiles() {
+        String[] fileNames = mTempDir.list();
+        return fileNames == null ? 0 : fileNames.length;
+    }
+}
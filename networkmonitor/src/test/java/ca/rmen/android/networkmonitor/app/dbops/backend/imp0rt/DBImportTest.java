@@ -0,0 +1,159 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ *
+ * Copyright (C) 2016 Carmen Alvarez (c@rmen.ca)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.rmen.android.networkmonitor.app.dbops.backend.imp0rt;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.provider.BaseColumns;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+
+import ca.rmen.android.networkmonitor.BuildConfig;
+import ca.rmen.android.networkmonitor.app.dbops.ProgressListener;
+import ca.rmen.android.networkmonitor.provider.NetMonColumns;
+import ca.rmen.android.networkmonitor.provider.NetMonProvider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class DBImportTest {
+    // More than one import transaction.
+    private static final int IMPORTED_ROW_COUNT = 12345;
+
+    private File mImportedDb;
+
+    @Before
+    public void setUp() {
+        Robolectric.setupContentProvider(NetMonProvider.class, NetMonProvider.AUTHORITY);
+        mImportedDb = new File(RuntimeEnvironment.application.getCacheDir(), "imported.db");
+        SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(mImportedDb, null);
+        try {
+            db.execSQL("CREATE TABLE " + NetMonColumns.TABLE_NAME + " (" + BaseColumns._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                    + NetMonColumns.TIMESTAMP + " INTEGER, " + NetMonColumns.NETWORK_TYPE + " TEXT, " + NetMonColumns.CELL_SIGNAL_STRENGTH_DBM + " INTEGER)");
+            db.beginTransaction();
+            try {
+                for (int i = 0; i < IMPORTED_ROW_COUNT; i++) {
+                    ContentValues values = new ContentValues(3);
+                    values.put(NetMonColumns.TIMESTAMP, 1000L * i);
+                    values.put(NetMonColumns.NETWORK_TYPE, i % 2 == 0 ? "WIFI" : "MOBILE");
+                    if (i % 3 != 0) values.put(NetMonColumns.CELL_SIGNAL_STRENGTH_DBM, -60 - i % 50);
+                    db.insert(NetMonColumns.TABLE_NAME, null, values);
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        } finally {
+            db.close();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        //noinspection ResultOfMethodCallIgnored
+        mImportedDb.delete();
+    }
+
+    @Test
+    public void testImportReplacesTheRows() {
+        Context context = RuntimeEnvironment.application;
+        ContentValues oldRow = new ContentValues(1);
+        oldRow.put(NetMonColumns.TIMESTAMP, -1L);
+        context.getContentResolver().insert(NetMonColumns.CONTENT_URI, oldRow);
+
+        TestProgressListener listener = new TestProgressListener();
+        new DBImport(context, Uri.fromFile(mImportedDb)).execute(listener);
+        assertNotNull(listener.completeMessage);
+        assertNull(listener.errorMessage);
+
+        Cursor c = context.getContentResolver().query(NetMonColumns.CONTENT_URI, null, null, null, NetMonColumns.TIMESTAMP);
+        assertNotNull(c);
+        try {
+            assertEquals(IMPORTED_ROW_COUNT, c.getCount());
+            int timestampIndex = c.getColumnIndex(NetMonColumns.TIMESTAMP);
+            int networkTypeIndex = c.getColumnIndex(NetMonColumns.NETWORK_TYPE);
+            int cellSignalStrengthIndex = c.getColumnIndex(NetMonColumns.CELL_SIGNAL_STRENGTH_DBM);
+            for (int i = 0; i < IMPORTED_ROW_COUNT; i++) {
+                assertTrue(c.moveToNext());
+                assertEquals(1000L * i, c.getLong(timestampIndex));
+                assertEquals(i % 2 == 0 ? "WIFI" : "MOBILE", c.getString(networkTypeIndex));
+                if (i % 3 == 0) assertTrue(c.isNull(cellSignalStrengthIndex));
+                else assertEquals(-60 - i % 50, c.getInt(cellSignalStrengthIndex));
+            }
+            assertFalse(c.moveToNext());
+        } finally {
+            c.close();
+        }
+    }
+
+    @Test
+    public void testCanceledImport() {
+        TestProgressListener listener = new TestProgressListener();
+        DBImport dbImport = new DBImport(RuntimeEnvironment.application, Uri.fromFile(mImportedDb));
+        dbImport.cancel();
+        dbImport.execute(listener);
+        assertNull(listener.completeMessage);
+        assertNotNull(listener.errorMessage);
+    }
+
+    private static class TestProgressListener implements ProgressListener {
+        private String completeMessage;
+        private String errorMessage;
+
+        @Override
+        public void onProgress(int progress, int max) {
+        }
+
+        @Override
+        public void onWarning(String message) {
+        }
+
+        @Override
+        public void onComplete(String message) {
+            completeMessage = message;
+        }
+
+        @Override
+        public void onError(String message) {
+            errorMessage = message;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ *
+ * Copyright (C) 2016 Carmen Alvarez (c@rmen.ca)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.rmen.android.networkmonitor.app.service;
+
+import android.content.Context;
+import android.os.SystemClock;
+
+import ca.rmen.android.networkmonitor.Constants;
+import ca.rmen.android.networkmonitor.app.dbops.backend.clean.DBCompress;
+import ca.rmen.android.networkmonitor.app.service.datasources.NetMonDataSources;
+import ca.rmen.android.networkmonitor.app.service.datasources.SimulatedDataSources;
+import ca.rmen.android.networkmonitor.app.service.scheduler.VirtualClock;
+import ca.rmen.android.networkmonitor.app.service.scheduler.VirtualClockScheduler;
+import ca.rmen.android.networkmonitor.provider.NetMonDatabase;
+import ca.rmen.android.networkmonitor.util.Log;
+import ca.rmen.android.networkmonitor.util.TestDBUtil;
+
+/**
+ * Runs the sampling loop of {@link NetMonService} with simulated data and a {@link VirtualClock}, so that days of sampling take seconds, and two runs
+ * with the same seed produce the same rows.
+ *
+ * This is meant to benchmark and regression-test the collection and writing of samples, the DB growth, the retention and the compression.
+ * The samples are written to the app's DB, with the current preferences (number of rows to keep, only logging changes...).
+ */
+public class SamplingSimulator {
+    private static final String TAG = Constants.TAG + SamplingSimulator.class.getSimpleName();
+    // The simulated time starts at 2017-01-01 00:00:00 UTC.
+    static final long START_TIME_MILLIS = 1483228800000L;
+
+    private final Context mContext;
+    private final long mSeed;
+
+    public SamplingSimulator(Context context, long seed) {
+        mContext = context.getApplicationContext();
+        mSeed = seed;
+    }
+
+    /**
+     * What happened during a simulation. The durations are in milliseconds.
+     */
+    public static class Result {
+        public final int sampleCount;
+        public final long simulatedDuration;
+        // The real time it took to collect and write the samples.
+        public final long samplingDuration;
+        public final long rowCount;
+        public final long dbSizeBytes;
+        // The real time it took to compress the DB, and the number of rows left after, or -1 if we didn't compress the DB.
+        public final long compressDuration;
+        public final long compressedRowCount;
+
+        private Result(int sampleCount, long simulatedDuration, long samplingDuration, long rowCount, long dbSizeBytes, long compressDuration,
+                       long compressedRowCount) {
+            this.sampleCount = sampleCount;
+            this.simulatedDuration = simulatedDuration;
+            this.samplingDuration = samplingDuration;
+            this.rowCount = rowCount;
+            this.dbSizeBytes = dbSizeBytes;
+            this.compressDuration = compressDuration;
+            this.compressedRowCount = compressedRowCount;
+        }
+
+        /**
+         * @return the number of samples collected and written per second of real time.
+         */
+        public double getSamplesPerSecond() {
+            return samplingDuration == 0 ? 0 : sampleCount * 1000.0 / samplingDuration;
+        }
+
+        @Override
+        public String toString() {
+            return "Result{" +
+                    "sampleCount=" + sampleCount +
+                    ", simulatedDuration=" + simulatedDuration +
+                    ", samplingDuration=" + samplingDuration +
+                    ", samplesPerSecond=" + getSamplesPerSecond() +
+                    ", rowCount=" + rowCount +
+                    ", dbSizeBytes=" + dbSizeBytes +
+                    ", compressDuration=" + compressDuration +
+                    ", compressedRowCount=" + compressedRowCount +
+                    '}';
+        }
+    }
+
+    /**
+     * Collect a sample at the given interval, for the given simulated duration.
+     *
+     * @param compress if true, compress the DB at the end of the simulation.
+     */
+    public Result run(int interval, long duration, boolean compress) {
+        Log.v(TAG, "run: interval=" + interval + ", duration=" + duration + ", compress=" + compress);
+        VirtualClock clock = new VirtualClock(START_TIME_MILLIS);
+        NetMonDataSources dataSources = SimulatedDataSources.create(mContext, clock, mSeed);
+        // We don't start the writer thread: we write each sample right away, as the writer thread does at the usual polling intervals.
+        SampleWriter sampleWriter = new SampleWriter(mContext);
+        VirtualClockScheduler scheduler = new VirtualClockScheduler(clock);
+        scheduler.onCreate(mContext);
+
+        long samplingStart = SystemClock.elapsedRealtime();
+        scheduler.schedule(() -> {
+            NetMonService.collectSample(dataSources, sampleWriter, clock.currentTimeMillis());
+            sampleWriter.flush();
+        }, interval);
+        int sampleCount = scheduler.advance(duration);
+        scheduler.onDestroy();
+        dataSources.onDestroy();
+        sampleWriter.stop();
+        long samplingDuration = SystemClock.elapsedRealtime() - samplingStart;
+        long rowCount = TestDBUtil.countRows(mContext, null);
+
+        long compressDuration = -1;
+        long compressedRowCount = -1;
+        if (compress) {
+            long compressStart = SystemClock.elapsedRealtime();
+            new DBCompress(mContext).execute(null);
+            compressDuration = SystemClock.elapsedRealtime() - compressStart;
+            compressedRowCount = TestDBUtil.countRows(mContext, null);
+        }
+        long dbSizeBytes = mContext.getDatabasePath(NetMonDatabase.DATABASE_NAME).length();
+        Result result = new Result(sampleCount, duration, samplingDuration, rowCount, dbSizeBytes, compressDuration, compressedRowCount);
+        Log.v(TAG, "run: " + result);
+        return result;
+    }
+}
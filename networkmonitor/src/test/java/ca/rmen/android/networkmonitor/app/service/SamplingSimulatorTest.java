@@ -0,0 +1,85 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ *
+ * Copyright (C) 2016 Carmen Alvarez (c@rmen.ca)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.rmen.android.networkmonitor.app.service;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.text.format.DateUtils;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import ca.rmen.android.networkmonitor.BuildConfig;
+import ca.rmen.android.networkmonitor.Constants;
+import ca.rmen.android.networkmonitor.provider.NetMonColumns;
+import ca.rmen.android.networkmonitor.provider.NetMonProvider;
+import ca.rmen.android.networkmonitor.util.TestDBUtil;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class SamplingSimulatorTest {
+    private static final int INTERVAL_MS = 10000;
+
+    @Before
+    public void setUp() {
+        Robolectric.setupContentProvider(NetMonProvider.class, NetMonProvider.AUTHORITY);
+    }
+
+    @Test
+    public void testOneTickPerInterval() {
+        SamplingSimulator.Result result = new SamplingSimulator(RuntimeEnvironment.application, 1).run(INTERVAL_MS, DateUtils.HOUR_IN_MILLIS, false);
+        // The first tick is at the start, and the last one at the end. The simulated connection tests are shorter than the interval: no tick is skipped.
+        assertEquals(DateUtils.HOUR_IN_MILLIS / INTERVAL_MS + 1, result.sampleCount);
+        // By default, all the samples are logged and kept: there's one row per tick, timestamped with the simulated time of the tick.
+        Cursor c = RuntimeEnvironment.application.getContentResolver().query(NetMonColumns.CONTENT_URI, new String[]{NetMonColumns.TIMESTAMP},
+                null, null, NetMonColumns.TIMESTAMP);
+        try {
+            assertEquals(result.sampleCount, c.getCount());
+            while (c.moveToNext()) {
+                assertEquals(SamplingSimulator.START_TIME_MILLIS + c.getPosition() * INTERVAL_MS, c.getLong(0));
+            }
+        } finally {
+            c.close();
+        }
+    }
+
+    @Test
+    public void testSimulatedValuesAreLogged() {
+        new SamplingSimulator(RuntimeEnvironment.application, 1).run(INTERVAL_MS, DateUtils.DAY_IN_MILLIS, false);
+        Context context = RuntimeEnvironment.application;
+        long rowCount = TestDBUtil.countRows(context, null);
+        long failedTestCount = TestDBUtil.countRows(context, NetMonColumns.SOCKET_CONNECTION_TEST + "='" + Constants.CONNECTION_TEST_FAIL + "'");
+        assertTrue(failedTestCount > 0);
+        assertTrue(failedTestCount < rowCount);
+        assertEquals(rowCount, TestDBUtil.countRows(context, NetMonColumns.BATTERY_LEVEL + " IS NOT NULL"));
+    }
+}
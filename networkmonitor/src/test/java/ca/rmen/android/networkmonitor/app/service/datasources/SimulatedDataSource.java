@@ -0,0 +1,123 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ *
+ * Copyright (C) 2016 Carmen Alvarez (c@rmen.ca)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.rmen.android.networkmonitor.app.service.datasources;
+
+import android.content.Context;
+
+import java.util.Random;
+
+import ca.rmen.android.networkmonitor.Constants;
+import ca.rmen.android.networkmonitor.app.service.scheduler.VirtualClock;
+import ca.rmen.android.networkmonitor.provider.NetMonColumns;
+import ca.rmen.android.networkmonitor.provider.Sample;
+import ca.rmen.android.networkmonitor.util.Log;
+
+/**
+ * Makes up the values of the main fields, without using the device or the network, for simulations.
+ *
+ * The values follow a random walk: the device stays on a network and cell for a while, with small signal strength variations, then moves to
+ * another one. Connection tests sometimes fail, and take some time, which is simulated by advancing the {@link VirtualClock}. The same seed always
+ * gives the same sequence of values.
+ */
+class SimulatedDataSource implements NetMonDataSource {
+    private static final String TAG = Constants.TAG + SimulatedDataSource.class.getSimpleName();
+    // The probability, at each call, that the device moves to another network or cell.
+    private static final double NETWORK_CHANGE_PROBABILITY = 0.02;
+    private static final double CONNECTION_TEST_FAIL_PROBABILITY = 0.05;
+    private static final double SIGNAL_CHANGE_PROBABILITY = 0.2;
+    // The duration of a passing connection test, and of a failing one, which waits for its timeout.
+    private static final int CONNECTION_TEST_DURATION_MS = 300;
+    private static final int CONNECTION_TEST_TIMEOUT_MS = 5000;
+    private static final int BATTERY_DRAIN_CALLS_PER_PERCENT = 200;
+    private static final String[] MOBILE_DATA_NETWORK_TYPES = new String[] { "LTE", "HSPAP", "UMTS", "EDGE" };
+
+    private final VirtualClock mClock;
+    private final Random mRandom;
+
+    private boolean mIsOnWiFi;
+    private String mMobileDataNetworkType;
+    private int mCellId;
+    private int mLac;
+    private int mCellSignalStrengthDbm;
+    private int mWifiRssi;
+    private int mCallCount;
+
+    SimulatedDataSource(VirtualClock clock, long seed) {
+        mClock = clock;
+        mRandom = new Random(seed);
+        changeNetwork();
+    }
+
+    @Override
+    public void onCreate(Context context) {
+        Log.v(TAG, "onCreate");
+    }
+
+    @Override
+    public void onDestroy() {}
+
+    @Override
+    public void fillSample(Sample sample) {
+        if (mRandom.nextDouble() < NETWORK_CHANGE_PROBABILITY) changeNetwork();
+        if (mRandom.nextDouble() < SIGNAL_CHANGE_PROBABILITY) {
+            mCellSignalStrengthDbm = clamp(mCellSignalStrengthDbm + 2 * (mRandom.nextInt(5) - 2), -120, -50);
+            mWifiRssi = clamp(mWifiRssi + 2 * (mRandom.nextInt(5) - 2), -95, -30);
+        }
+
+        sample.put(NetMonColumns.NETWORK_TYPE, mIsOnWiFi ? "WIFI" : "MOBILE");
+        sample.put(NetMonColumns.IS_CONNECTED, true);
+        sample.put(NetMonColumns.DETAILED_STATE, "CONNECTED");
+        sample.put(NetMonColumns.MOBILE_DATA_NETWORK_TYPE, mMobileDataNetworkType);
+        sample.put(NetMonColumns.DATA_STATE, mIsOnWiFi ? "DISCONNECTED" : Constants.DATA_STATE_CONNECTED);
+        sample.put(NetMonColumns.GSM_FULL_CELL_ID, mCellId);
+        sample.put(NetMonColumns.GSM_SHORT_CELL_ID, mCellId & 0xFFFF);
+        sample.put(NetMonColumns.GSM_CELL_LAC, mLac);
+        sample.put(NetMonColumns.CELL_SIGNAL_STRENGTH_DBM, mCellSignalStrengthDbm);
+        if (mIsOnWiFi) {
+            sample.put(NetMonColumns.WIFI_SSID, "\"simulated\"");
+            sample.put(NetMonColumns.WIFI_RSSI, mWifiRssi);
+        }
+        sample.put(NetMonColumns.BATTERY_LEVEL, 100 - (mCallCount / BATTERY_DRAIN_CALLS_PER_PERCENT) % 100);
+
+        boolean isConnectionTestFailed = mRandom.nextDouble() < CONNECTION_TEST_FAIL_PROBABILITY;
+        String connectionTestResult = isConnectionTestFailed ? Constants.CONNECTION_TEST_FAIL : Constants.CONNECTION_TEST_PASS;
+        sample.put(NetMonColumns.SOCKET_CONNECTION_TEST, connectionTestResult);
+        sample.put(NetMonColumns.HTTP_CONNECTION_TEST, connectionTestResult);
+        mClock.advance(isConnectionTestFailed ? CONNECTION_TEST_TIMEOUT_MS : CONNECTION_TEST_DURATION_MS);
+        mCallCount++;
+    }
+
+    private void changeNetwork() {
+        mIsOnWiFi = mRandom.nextBoolean();
+        mMobileDataNetworkType = MOBILE_DATA_NETWORK_TYPES[mRandom.nextInt(MOBILE_DATA_NETWORK_TYPES.length)];
+        mLac = 1000 + mRandom.nextInt(10);
+        mCellId = mLac * 65536 + mRandom.nextInt(65536);
+        mCellSignalStrengthDbm = -110 + mRandom.nextInt(50);
+        mWifiRssi = -85 + mRandom.nextInt(50);
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+}
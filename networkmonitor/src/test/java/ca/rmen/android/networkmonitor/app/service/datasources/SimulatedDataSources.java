@@ -0,0 +1,50 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ *
+ * Copyright (C) 2016 Carmen Alvarez (c@rmen.ca)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.rmen.android.networkmonitor.app.service.datasources;
+
+import android.content.Context;
+
+import java.util.Collections;
+
+import ca.rmen.android.networkmonitor.app.service.scheduler.VirtualClock;
+
+/**
+ * Creates {@link NetMonDataSources} which use a {@link SimulatedDataSource} instead of the data sources of the device.
+ */
+public final class SimulatedDataSources {
+
+    private SimulatedDataSources() {
+        // prevent instantiation
+    }
+
+    /**
+     * @param clock the clock the data source advances to simulate how long it takes.
+     * @param seed the same seed always gives the same values.
+     */
+    public static NetMonDataSources create(Context context, VirtualClock clock, long seed) {
+        NetMonDataSources result = new NetMonDataSources();
+        result.onCreate(context, Collections.singletonList(new SimulatedDataSource(clock, seed)));
+        return result;
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ *
+ * Copyright (C) 2016 Carmen Alvarez (c@rmen.ca)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.rmen.android.networkmonitor.app.service.scheduler;
+
+/**
+ * A {@link Clock} which only moves forward when told to.
+ */
+public class VirtualClock implements Clock {
+    private final long mStartTimeMillis;
+    private volatile long mElapsedRealtime;
+
+    /**
+     * @param startTimeMillis the wall clock time at which the clock starts.
+     */
+    public VirtualClock(long startTimeMillis) {
+        mStartTimeMillis = startTimeMillis;
+    }
+
+    @Override
+    public long elapsedRealtime() {
+        return mElapsedRealtime;
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return mStartTimeMillis + mElapsedRealtime;
+    }
+
+    /**
+     * Move the clock forward by the given number of milliseconds.
+     */
+    public synchronized void advance(long durationMs) {
+        if (durationMs < 0) throw new IllegalArgumentException("Time can't go backwards: " + durationMs);
+        mElapsedRealtime += durationMs;
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ *
+ * Copyright (C) 2016 Carmen Alvarez (c@rmen.ca)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.rmen.android.networkmonitor.app.service.scheduler;
+
+import android.content.Context;
+
+import ca.rmen.android.networkmonitor.Constants;
+import ca.rmen.android.networkmonitor.util.Log;
+
+/**
+ * Runs a single Runnable periodically according to a {@link VirtualClock}, on the thread which calls {@link #advance(long)}.
+ *
+ * Nothing runs until {@link #advance(long)} is called. Then, the clock jumps from one planned tick to the next, so days of sampling can be
+ * simulated in seconds. The task may itself advance the clock, to simulate how long it takes: the {@link TickTimer} detects overruns the same way
+ * as with the other schedulers.
+ */
+public class VirtualClockScheduler implements Scheduler {
+    private static final String TAG = Constants.TAG + VirtualClockScheduler.class.getSimpleName();
+
+    private final VirtualClock mClock;
+    private TickTimer mTickTimer;
+    private Runnable mRunnableImpl;
+
+    public VirtualClockScheduler(VirtualClock clock) {
+        mClock = clock;
+    }
+
+    @Override
+    public void onCreate(Context context) {
+        Log.v(TAG, "onCreate");
+        mTickTimer = new TickTimer(context, VirtualClockScheduler.class, mClock);
+    }
+
+    @Override
+    public void onDestroy() {
+        Log.v(TAG, "onDestroy");
+        mTickTimer.save();
+    }
+
+    @Override
+    public void schedule(Runnable runnable, int interval) {
+        Log.v(TAG, "schedule at interval " + interval);
+        mRunnableImpl = runnable;
+        setInterval(interval);
+    }
+
+    @Override
+    public void setInterval(int interval) {
+        Log.v(TAG, "Set interval " + interval);
+        // Without a positive interval, advance() would never move the clock.
+        if (interval <= 0) throw new IllegalArgumentException("The interval must be positive: " + interval);
+        mTickTimer.start(interval);
+    }
+
+    /**
+     * Move the clock forward by the given duration, running all the ticks planned in the meantime.
+     *
+     * @return the number of times the task was run.
+     */
+    public int advance(long durationMs) {
+        long endTime = mClock.elapsedRealtime() + durationMs;
+        int runCount = 0;
+        while (true) {
+            long delay = mTickTimer.getDelayUntilNextTick();
+            if (mClock.elapsedRealtime() + delay > endTime) break;
+            mClock.advance(delay);
+            if (mTickTimer.onTickStarted()) {
+                mRunnableImpl.run();
+                mTickTimer.onTickFinished();
+                runCount++;
+            }
+        }
+        // The task may have advanced the clock past the end time.
+        mClock.advance(Math.max(0, endTime - mClock.elapsedRealtime()));
+        return runCount;
+    }
+}
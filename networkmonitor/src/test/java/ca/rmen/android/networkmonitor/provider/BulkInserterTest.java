@@ -0,0 +1,134 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ *
+ * Copyright (C) 2016 Carmen Alvarez (c@rmen.ca)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.rmen.android.networkmonitor.provider;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.provider.BaseColumns;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import ca.rmen.android.networkmonitor.BuildConfig;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class BulkInserterTest {
+    private BulkInserter mBulkInserter;
+
+    @Before
+    public void setUp() {
+        Robolectric.setupContentProvider(NetMonProvider.class, NetMonProvider.AUTHORITY);
+        mBulkInserter = new BulkInserter(RuntimeEnvironment.application);
+    }
+
+    @After
+    public void tearDown() {
+        mBulkInserter.close();
+    }
+
+    @Test
+    public void testRowsAreReadableFromTheView() {
+        ContentValues[] rows = new ContentValues[]{
+                createRow(1000, "WIFI", -70, "home"),
+                createRow(2000, "MOBILE", -95, null),
+                createRow(3000, "WIFI", -72, "home")};
+        assertEquals(3, mBulkInserter.insert(NetMonColumns.TABLE_NAME, rows, 0, rows.length));
+
+        Cursor c = query();
+        try {
+            assertEquals(3, c.getCount());
+            for (ContentValues row : rows) {
+                assertTrue(c.moveToNext());
+                assertEquals(row.getAsLong(NetMonColumns.TIMESTAMP).longValue(), c.getLong(c.getColumnIndex(NetMonColumns.TIMESTAMP)));
+                assertEquals(row.getAsString(NetMonColumns.NETWORK_TYPE), c.getString(c.getColumnIndex(NetMonColumns.NETWORK_TYPE)));
+                assertEquals(row.getAsInteger(NetMonColumns.CELL_SIGNAL_STRENGTH_DBM).longValue(),
+                        c.getLong(c.getColumnIndex(NetMonColumns.CELL_SIGNAL_STRENGTH_DBM)));
+                assertEquals(row.getAsString(NetMonColumns.WIFI_SSID), c.getString(c.getColumnIndex(NetMonColumns.WIFI_SSID)));
+            }
+            assertFalse(c.moveToNext());
+        } finally {
+            c.close();
+        }
+    }
+
+    @Test
+    public void testRowsWithDifferentColumns() {
+        ContentValues rowWithoutSignal = new ContentValues();
+        rowWithoutSignal.put(NetMonColumns.TIMESTAMP, 4000L);
+        ContentValues[] rows = new ContentValues[]{createRow(1000, "WIFI", -70, "home"), rowWithoutSignal, createRow(5000, "WIFI", -71, "office")};
+        assertEquals(3, mBulkInserter.insert(NetMonColumns.TABLE_NAME, rows, 0, rows.length));
+        Cursor c = query();
+        try {
+            assertEquals(3, c.getCount());
+            assertTrue(c.moveToPosition(1));
+            assertTrue(c.isNull(c.getColumnIndex(NetMonColumns.CELL_SIGNAL_STRENGTH_DBM)));
+            assertTrue(c.moveToPosition(2));
+            assertEquals("office", c.getString(c.getColumnIndex(NetMonColumns.WIFI_SSID)));
+        } finally {
+            c.close();
+        }
+    }
+
+    @Test
+    public void testOnlyTheGivenRangeIsInserted() {
+        ContentValues[] rows = new ContentValues[]{
+                createRow(1000, "WIFI", -70, "home"),
+                createRow(2000, "MOBILE", -95, null),
+                createRow(3000, "WIFI", -72, "home"),
+                createRow(4000, "WIFI", -73, "home")};
+        assertEquals(2, mBulkInserter.insert(NetMonColumns.TABLE_NAME, rows, 1, 2));
+        Cursor c = query();
+        try {
+            assertEquals(2, c.getCount());
+            assertTrue(c.moveToFirst());
+            assertEquals(2000, c.getLong(c.getColumnIndex(NetMonColumns.TIMESTAMP)));
+        } finally {
+            c.close();
+        }
+    }
+
+    private static ContentValues createRow(long timestamp, String networkType, int cellSignalStrength, String wifiSsid) {
+        ContentValues values = new ContentValues(4);
+        values.put(NetMonColumns.TIMESTAMP, timestamp);
+        values.put(NetMonColumns.NETWORK_TYPE, networkType);
+        values.put(NetMonColumns.CELL_SIGNAL_STRENGTH_DBM, cellSignalStrength);
+        values.put(NetMonColumns.WIFI_SSID, wifiSsid);
+        return values;
+    }
+
+    private static Cursor query() {
+        return RuntimeEnvironment.application.getContentResolver().query(NetMonColumns.CONTENT_URI, null, null, null, BaseColumns._ID);
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ *
+ * Copyright (C) 2016 Carmen Alvarez (c@rmen.ca)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.rmen.android.networkmonitor.provider;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import ca.rmen.android.networkmonitor.BuildConfig;
+import ca.rmen.android.networkmonitor.Constants;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class ConnectionTestStatsTest {
+    private ContentResolver mContentResolver;
+
+    @Before
+    public void setUp() {
+        Robolectric.setupContentProvider(NetMonProvider.class, NetMonProvider.AUTHORITY);
+        mContentResolver = RuntimeEnvironment.application.getContentResolver();
+    }
+
+    @Test
+    public void testInsertAndDelete() {
+        Uri first = insertWifiRow(1000, "bssid1", Constants.CONNECTION_TEST_PASS);
+        insertWifiRow(2000, "bssid1", Constants.CONNECTION_TEST_PASS);
+        insertWifiRow(3000, "bssid1", Constants.CONNECTION_TEST_FAIL);
+        assertSummary(new Object[][]{{"bssid1", Constants.CONNECTION_TEST_FAIL, 1}, {"bssid1", Constants.CONNECTION_TEST_PASS, 2}});
+
+        mContentResolver.delete(first, null, null);
+        assertSummary(new Object[][]{{"bssid1", Constants.CONNECTION_TEST_FAIL, 1}, {"bssid1", Constants.CONNECTION_TEST_PASS, 1}});
+    }
+
+    @Test
+    public void testUpdateOfTheTestResult() {
+        Uri first = insertWifiRow(1000, "bssid1", Constants.CONNECTION_TEST_PASS);
+        insertWifiRow(2000, "bssid1", Constants.CONNECTION_TEST_PASS);
+
+        ContentValues values = new ContentValues(1);
+        values.put(NetMonColumns.SOCKET_CONNECTION_TEST, Constants.CONNECTION_TEST_FAIL);
+        assertEquals(1, mContentResolver.update(first, values, null, null));
+        assertSummary(new Object[][]{{"bssid1", Constants.CONNECTION_TEST_FAIL, 1}, {"bssid1", Constants.CONNECTION_TEST_PASS, 1}});
+    }
+
+    @Test
+    public void testUpdateOfTheNetwork() {
+        Uri first = insertWifiRow(1000, "bssid1", Constants.CONNECTION_TEST_PASS);
+
+        ContentValues values = new ContentValues(1);
+        values.put(NetMonColumns.WIFI_BSSID, "bssid2");
+        assertEquals(1, mContentResolver.update(first, values, null, null));
+        // The group of the old BSSID is empty, so it's removed.
+        assertSummary(new Object[][]{{"bssid2", Constants.CONNECTION_TEST_PASS, 1}});
+    }
+
+    @Test
+    public void testUpdateOutOfTheCountedRows() {
+        Uri first = insertWifiRow(1000, "bssid1", Constants.CONNECTION_TEST_PASS);
+        insertWifiRow(2000, "bssid1", Constants.CONNECTION_TEST_PASS);
+
+        ContentValues values = new ContentValues(1);
+        values.put(NetMonColumns.NETWORK_TYPE, "MOBILE");
+        assertEquals(1, mContentResolver.update(first, values, null, null));
+        assertSummary(new Object[][]{{"bssid1", Constants.CONNECTION_TEST_PASS, 1}});
+
+        values.put(NetMonColumns.NETWORK_TYPE, "WIFI");
+        assertEquals(1, mContentResolver.update(first, values, null, null));
+        assertSummary(new Object[][]{{"bssid1", Constants.CONNECTION_TEST_PASS, 2}});
+    }
+
+    @Test
+    public void testUpdateOfAnotherColumn() {
+        Uri first = insertWifiRow(1000, "bssid1", Constants.CONNECTION_TEST_PASS);
+
+        ContentValues values = new ContentValues(1);
+        values.put(NetMonColumns.WIFI_SIGNAL_STRENGTH, -60);
+        assertEquals(1, mContentResolver.update(first, values, null, null));
+        assertSummary(new Object[][]{{"bssid1", Constants.CONNECTION_TEST_PASS, 1}});
+    }
+
+    private Uri insertWifiRow(long timestamp, String bssid, String testResult) {
+        ContentValues values = new ContentValues(5);
+        values.put(NetMonColumns.TIMESTAMP, timestamp);
+        values.put(NetMonColumns.NETWORK_TYPE, "WIFI");
+        values.put(NetMonColumns.WIFI_BSSID, bssid);
+        values.put(NetMonColumns.WIFI_SSID, "home");
+        values.put(NetMonColumns.SOCKET_CONNECTION_TEST, testResult);
+        return mContentResolver.insert(NetMonColumns.CONTENT_URI, values);
+    }
+
+    /**
+     * @param expected the wifi rows of the summary, ordered by BSSID and test result: each row has the BSSID, the test result and the count.
+     */
+    private void assertSummary(Object[][] expected) {
+        Cursor c = mContentResolver.query(ConnectionTestStatsColumns.CONTENT_URI,
+                new String[]{ConnectionTestStatsColumns.ID1, ConnectionTestStatsColumns.TEST_RESULT, ConnectionTestStatsColumns.TEST_COUNT},
+                ConnectionTestStatsColumns.TYPE + "=?", new String[]{Constants.ConnectionType.WIFI.name()},
+                ConnectionTestStatsColumns.ID1 + "," + ConnectionTestStatsColumns.TEST_RESULT);
+        try {
+            for (Object[] row : expected) {
+                assertTrue(c.moveToNext());
+                assertEquals(row[0], c.getString(0));
+                assertEquals(row[1], c.getString(1));
+                assertEquals(((Integer) row[2]).longValue(), c.getLong(2));
+            }
+            assertFalse(c.moveToNext());
+        } finally {
+            c.close();
+        }
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * This source is part of the
+ *      _____  ___   ____
+ *  __ / / _ \/ _ | / __/___  _______ _
+ * / // / , _/ __ |/ _/_/ _ \/ __/ _ `/
+ * \___/_/|_/_/ |_/_/ (_)___/_/  \_, /
+ *                              /___/
+ * repository.
+ *
+ * Copyright (C) 2016 Carmen Alvarez (c@rmen.ca)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.rmen.android.networkmonitor.util;
+
+import android.content.Context;
+import android.provider.BaseColumns;
+
+import ca.rmen.android.networkmonitor.provider.AggregateColumns;
+
+/**
+ * DB queries shared by the tests.
+ */
+public class TestDBUtil {
+    private TestDBUtil() {
+        // prevent instantiation
+    }
+
+    /**
+     * @param selection refers to the columns of the {@link ca.rmen.android.networkmonitor.provider.NetMonColumns#TABLE_NAME} view. If null, all
+     *                  the rows are counted.
+     * @return the number of rows matching the selection.
+     */
+    public static long countRows(Context context, String selection) {
+        Long count = DBUtil.readLongAggregate(context, AggregateColumns.Function.COUNT, BaseColumns._ID, selection);
+        return count == null ? 0 : count;
+    }
+}